@@ -0,0 +1,107 @@
+package info.chrismcgee.dbutil;
+
+import java.sql.SQLException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * @author Marketing
+ *
+ * Stops a ConnectionPool from trying a database that can't be reached over and over again.
+ * After enough failures in a row, the breaker "opens" and every request for a connection fails straight away,
+ * instead of each one waiting for its own connection attempt to time out. While it's open, the pool's keepalive
+ * tries to reconnect in the background, waiting twice as long after each failed try (up to a limit),
+ * and the breaker "closes" again as soon as one of those tries works.
+ */
+class CircuitBreaker {
+
+	private final static Logger logger = Logger.getLogger(CircuitBreaker.class.getName()); // Logging!
+
+	private final String database; // The name of the database, for the logs.
+	private final int threshold; // How many failures in a row open the breaker.
+	private final long firstRetryMillis; // How long to wait before the first try at reconnecting.
+	private final long maxRetryMillis; // The longest to ever wait between tries.
+
+	private int failures = 0; // How many failures in a row there have been.
+	private boolean open = false;
+	private long retryMillis; // How long to wait after the next failed try.
+	private long retryAt = 0; // When the next try at reconnecting is due.
+	private long openedAt = 0; // When the breaker opened.
+
+	/**
+	 * @param database The name of the database, for the logs.
+	 * @param threshold How many failures in a row open the breaker.
+	 * @param firstRetryMillis How long to wait before the first try at reconnecting.
+	 * @param maxRetryMillis The longest to ever wait between tries.
+	 */
+	CircuitBreaker(String database, int threshold, long firstRetryMillis, long maxRetryMillis) {
+		this.database = database;
+		this.threshold = Math.max(1, threshold);
+		this.firstRetryMillis = firstRetryMillis;
+		this.maxRetryMillis = Math.max(firstRetryMillis, maxRetryMillis);
+		this.retryMillis = firstRetryMillis;
+	}
+
+	/**
+	 * Fails straight away if the breaker is open.
+	 *
+	 * @throws SQLException If the breaker is open.
+	 */
+	synchronized void check() throws SQLException {
+
+		if (open) {
+			throw new SQLException(database + " can't be reached (since " + (System.currentTimeMillis() - openedAt) / 1000
+					+ " seconds ago); the next try is in " + Math.max(0, retryAt - System.currentTimeMillis()) + " ms.", "08001");
+		}
+	}
+
+	/**
+	 * Notes that a connection was made or used without any trouble.
+	 *
+	 * @return True if this closed the breaker, meaning the database is back.
+	 */
+	synchronized boolean success() {
+
+		failures = 0;
+		retryMillis = firstRetryMillis;
+		if (open) {
+			open = false;
+			logger.log(Level.INFO, database + " can be reached again, after " + (System.currentTimeMillis() - openedAt) / 1000 + " seconds.");
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Notes that a connection couldn't be made, or was lost while it was being used.
+	 */
+	synchronized void failure() {
+
+		failures++;
+		long now = System.currentTimeMillis();
+		if (!open && failures >= threshold) {
+			open = true;
+			openedAt = now;
+			logger.log(Level.WARNING, database + " can't be reached after " + failures + " tries; failing fast until it's back.");
+		}
+		if (open) {
+			retryAt = now + retryMillis;
+			retryMillis = Math.min(retryMillis * 2, maxRetryMillis); // Back off a little more each time.
+		}
+	}
+
+	/**
+	 * @return True if the breaker is open.
+	 */
+	synchronized boolean isOpen() {
+		return open;
+	}
+
+	/**
+	 * @return True if the breaker is open and it's time for another try at reconnecting.
+	 */
+	synchronized boolean isRetryDue() {
+		return open && System.currentTimeMillis() >= retryAt;
+	}
+
+}
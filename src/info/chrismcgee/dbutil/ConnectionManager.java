@@ -3,6 +3,14 @@ package info.chrismcgee.dbutil;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -14,22 +22,27 @@ public class ConnectionManager {
 	// The single and only instance of the connection manager; starts off as null.
 	private static ConnectionManager instance = null;
 
-	// These constants are for connecting to the database.
-	// Username & Password are obvious.
-	// The Connection String constants define the address to which jdbc will be connecting,
-	//   which includes the database name.
-	private final String USERNAME = "web";
-	private final String PASSWORD = "web";
-	private final String H_CONN_STRING = "jdbc:hsqldb:data/";
-	private final String M_CONN_STRING = "jdbc:mysql://apache.local/";
-	private final String S_CONN_STRING = "jdbc:sqlserver://192.168.0.248;databaseName=";
+	// The settings for connecting, from "datasource.properties"; swapped out whole by reload().
+	private volatile DataSourceConfig config = DataSourceConfig.load();
 
-	// Now set the actual database type that we will be using,
-	//   with a custom-defined enum.
-	private DBType dbType = DBType.MSSQL;
+	// The type of database set by setDBType(), which overrides the one in the settings; null to use the settings.
+	private volatile DBType dbTypeOverride = null;
 
-	// The actual connection instance starts life as null (doesn't exist).
-	private Connection conn = null;
+	// One pool of connections for each database on the primary server (including each of the yearly ones), by name,
+	// and one for each database on each read replica, by connection string.
+	// They're all drained and made again from the new settings when the settings change.
+	private final Map<String, ConnectionPool> pools = new HashMap<String, ConnectionPool>();
+	private final Map<String, ConnectionPool> replicaPools = new HashMap<String, ConnectionPool>();
+
+	// Watches the read replicas in the settings, if there are any; null until it's needed.
+	private ReplicaMonitor replicaMonitor = null;
+	private boolean replicasChecked = false; // Whether the replica settings have been read since the pools were last drained.
+
+	private String loadedDriver = null; // The JDBC driver that has been loaded (and set up) for the current settings.
+	// Keeps the pools healthy and checks the settings file for changes; null while stopped.
+	private ScheduledExecutorService maintenance = null;
+	// Told whenever a database that couldn't be reached can be again.
+	private final List<Runnable> recoveryListeners = new CopyOnWriteArrayList<Runnable>();
 
 	// The constructor for the ConnectionManager remains empty.
 	//   (Although I don't really know why.)
@@ -41,7 +54,7 @@ public class ConnectionManager {
 	 * 
 	 * @return	ConnectionManager
 	 */
-	public static ConnectionManager getInstance() {
+	public static synchronized ConnectionManager getInstance() {
 		
 		if (instance == null) {
 			instance = new ConnectionManager();
@@ -51,106 +64,416 @@ public class ConnectionManager {
 
 	/**
 	 * A simple method that defines which type of database this
-	 * instance of the connection will use.
+	 * instance of the connection will use, instead of the one in the settings.
+	 * Any connections that are already open are closed.
 	 * 
 	 * @param dbType	The type of database enum
 	 */
 	public void setDBType(DBType dbType) {
 		
-		this.dbType = dbType;
+		synchronized (pools) {
+			this.dbTypeOverride = dbType;
+			drain();
+		}
 	}
 
 	/**
-	 * This method opens the connection to the database, depending on which
-	 * of the DBType enums is selected above.
-	 * 
-	 * @return boolean	Whether or not the connection was made to the database.
-	 * @throws ClassNotFoundException If the class cannot be found for the SQLServerDriver.
+	 * @return The type of database being connected to.
 	 */
-	private boolean openConnection(DBName dbName) throws ClassNotFoundException {
+	public DBType getDBType() {
 		
-		// For Java versions below 7.
-		Class.forName("com.microsoft.sqlserver.jdbc.SQLServerDriver");
-		// If the above line throws a "ClassNotFoundException", refer to
-		// http://stackoverflow.com/questions/19626808/getting-a-noclassdeffounderror-after-installing-vaadin/19630339#19630339
-		// TL;DR: Just add the JDBC .jar file to the WEB-INF/lib folder in the Deployment Assembly of this project's Properties.
+		DBType override = dbTypeOverride;
+		return override != null ? override : config.getType();
+	}
+
+	/**
+	 * @return The current settings for connecting, such as the fetch sizes.
+	 */
+	public DataSourceConfig getConfig() {
+		return config;
+	}
 
-		logger.log(Level.INFO, "Opening connection.");
+	/**
+	 * Reads the settings again. If anything has changed, every pool is drained (the connections that are in use
+	 * are closed as they're given back) and new ones are made from the new settings as they're needed,
+	 * so pool sizes and the like can be changed without restarting anything.
+	 * This is done by itself whenever the settings file changes.
+	 * If the new settings can't be read, or are missing where the database is or who to log in as,
+	 * the ones in use are kept (and the pools left alone) until the file is fixed.
+	 * 
+	 * @return True if anything had changed.
+	 */
+	public boolean reload() {
 		
-		try {
-			switch (dbType) { // Check the DBType...
-			// and open a connection to the corresponding type of database.
-			//   Returns true if the DBType corresponds correctly
-			//   and if the connection was made. 
-			case MYSQL:
-				conn = DriverManager.getConnection(M_CONN_STRING + dbName.getValue(), USERNAME, PASSWORD);
-				return true;
-
-			case HSQLDB:
-				conn = DriverManager.getConnection(H_CONN_STRING + dbName.getValue(), USERNAME, PASSWORD);
-				return true;
-				
-			case MSSQL:
-				conn = DriverManager.getConnection(S_CONN_STRING + dbName.getValue(), USERNAME, PASSWORD);
-				return true;
-
-			default: // If the wrong type of enum was specified, return false.
+		DataSourceConfig fresh = DataSourceConfig.load();
+		synchronized (pools) {
+			if (!fresh.isValid() && config.isValid()) {
+				logger.log(Level.WARNING, fresh.getProblem() + " Keeping the settings that were in use.");
+				config = config.keptOver(fresh); // So it isn't read again until it changes again.
 				return false;
 			}
+			boolean changed = !fresh.sameAs(config);
+			boolean rescheduled = fresh.getReloadSeconds() != config.getReloadSeconds();
+			config = fresh; // Even if nothing's changed, so the file isn't read again until it changes again.
+			if (!changed) {
+				return false;
+			}
+			logger.log(Level.INFO, "The datasource settings have changed; swapping in new connection pools.");
+			loadedDriver = null;
+			drain();
+			if (rescheduled) {
+				stopMaintenance(); // Started again, on the new schedule, by the next connection.
+			}
+			return true;
 		}
-		catch (SQLException e) {
-			// If there was an error connecting to the database,
-			//   log it and return false.
-			logger.log(Level.SEVERE, "Error getting a connection to the database", e);
-			return false;
+	}
+
+	/**
+	 * This method opens a new connection to a database server.
+	 * The JDBC driver is only loaded the first time, rather than every time.
+	 * 
+	 * @param url The connection string, including the database name.
+	 * @return Connection	The new connection.
+	 * @throws SQLException If the connection could not be made to the database.
+	 */
+	private Connection openConnection(String url) throws SQLException {
+		
+		DataSourceConfig settings = config;
+		if (!settings.isValid()) {
+			throw new SQLException(settings.getProblem());
+		}
+		String driver = settings.getDriver(getDBType());
+		synchronized (pools) {
+			if (!driver.equals(loadedDriver)) {
+				try {
+					// Only needed when the driver's .jar isn't where the DriverManager looks for it by itself.
+					Class.forName(driver);
+					// If the above line throws a "ClassNotFoundException", refer to
+					// http://stackoverflow.com/questions/19626808/getting-a-noclassdeffounderror-after-installing-vaadin/19630339#19630339
+					// TL;DR: Just add the JDBC .jar file to the WEB-INF/lib folder in the Deployment Assembly of this project's Properties.
+				} catch (ClassNotFoundException e) {
+					logger.log(Level.SEVERE, "ClassNotFound exception", e);
+				}
+				DriverManager.setLoginTimeout(settings.getLoginTimeoutSeconds());
+				loadedDriver = driver;
+			}
 		}
 
+		logger.log(Level.INFO, "Opening connection to " + url);
+		return DriverManager.getConnection(url, settings.getUsername(), settings.getPassword());
 	}
 
 	/**
-	 * Gets a singleton connection to the database
+	 * @return The connection string of the primary database server, up to the database name,
+	 * for whichever of the DBType enums is being used.
+	 */
+	private String getPrimaryPrefix() {
+		
+		return config.getUrl(getDBType());
+	}
+
+	/**
+	 * Borrows a connection to a database from its pool. It must be closed when it's done with
+	 * (best with a try-with-resources block), which gives it back to the pool.
+	 * For a yearly database, this is the newest year's; use DBRouter to pick one by date.
 	 * 
+	 * @param dbName The database.
 	 * @return	Connection
+	 * @throws SQLException If a connection could not be made, or none came free in time.
 	 */
-	public Connection getConnection(DBName dbName) {
+	public Connection getConnection(DBName dbName) throws SQLException {
 		
-		logger.log(Level.CONFIG, "Getting connection...");
+		return getConnection(DBRouter.getInstance().getCurrentDatabase(dbName));
+	}
+
+	/**
+	 * Borrows a connection to a database on the primary server, by name, from its pool. It must be closed when it's done with.
+	 * This is for reads that have to see the very latest, such as a read just before a write;
+	 * writes should use getConnection(database, DBAccess.READ_WRITE).
+	 * 
+	 * @param database The name of the database, such as one from the DBRouter.
+	 * @return	Connection
+	 * @throws SQLException If a connection could not be made, or none came free in time.
+	 */
+	public Connection getConnection(String database) throws SQLException {
+		
+		logger.log(Level.CONFIG, "Getting connection to " + database);
+		
+		String url = getPrimaryPrefix() + database;
+		return borrow(pools, database, database, () -> openConnection(url), null);
+	}
+
+	/**
+	 * Borrows a connection to a database for reading or for writing. It must be closed when it's done with.
+	 * 
+	 * @param dbName The database. For a yearly database, this is the newest year's.
+	 * @param access What the connection is for.
+	 * @return	Connection
+	 * @throws SQLException If a connection could not be made, or none came free in time.
+	 */
+	public Connection getConnection(DBName dbName, DBAccess access) throws SQLException {
+		
+		return getConnection(DBRouter.getInstance().getCurrentDatabase(dbName), access);
+	}
+
+	/**
+	 * Borrows a connection to a database, by name, for reading or for writing. It must be closed when it's done with.
+	 * A READ_ONLY connection comes from a read replica that's caught up, if there is one, or else from the primary.
+	 * A READ_WRITE connection always comes from the primary, and sends that database's reads to the primary
+	 * as well until the replicas have caught up with whatever was written.
+	 * 
+	 * @param database The name of the database, such as one from the DBRouter.
+	 * @param access What the connection is for.
+	 * @return	Connection
+	 * @throws SQLException If a connection could not be made, or none came free in time.
+	 */
+	public Connection getConnection(String database, DBAccess access) throws SQLException {
 		
-		if (conn == null) { // If a connection does not yet exist...
-			logger.log(Level.INFO, "No connection yet; creating one.");
+		ReplicaMonitor monitor = getReplicaMonitor();
+		if (monitor == null) { // No replicas, so everything comes from the primary.
+			return getConnection(database);
+		}
+		
+		if (access == DBAccess.READ_WRITE) {
+			logger.log(Level.CONFIG, "Getting connection to " + database + " for writing");
+			monitor.markWritten(database);
+			String url = getPrimaryPrefix() + database;
+			// Marked again once it's given back, since the write is only on its way to the replicas after it's committed.
+			return borrow(pools, database, database, () -> openConnection(url), () -> monitor.markWritten(database));
+		}
+		
+		String replica = monitor.choose(database);
+		if (replica != null) {
 			try {
-				if (openConnection(dbName)) { // Try to open a connection. And if that succeeds...
-					logger.log(Level.INFO, "Connection opened.");
-					return conn; // Return the connection instance.
-				} else { // Otherwise, return null.
-					logger.log(Level.WARNING, "Connection to the database failed.");
-					return null;
+				return getReplicaConnection(replica, database);
+			} catch (SQLException e) {
+				logger.log(Level.WARNING, "Could not get a connection to " + replica + database + "; reading from the primary instead.", e);
+				monitor.markDown(replica, database);
+			}
+		}
+		return getConnection(database);
+	}
+
+	/**
+	 * Borrows a connection to a database on a read replica. It must be closed when it's done with.
+	 * 
+	 * @param replica The connection string of the replica, up to the database name.
+	 * @param database The name of the database.
+	 * @return	Connection
+	 * @throws SQLException If a connection could not be made, or none came free in time.
+	 */
+	Connection getReplicaConnection(String replica, String database) throws SQLException {
+		
+		logger.log(Level.CONFIG, "Getting connection to " + replica + database);
+		
+		return borrow(replicaPools, replica + database, database, () -> {
+			Connection conn = openConnection(replica + database);
+			conn.setReadOnly(true); // Just in case something tries to write to it anyway.
+			return conn;
+		}, null);
+	}
+
+	/**
+	 * Borrows a connection from a pool, making the pool if there isn't one yet.
+	 * If the pool is swapped for a new one while waiting, the connection comes from the new one instead.
+	 * 
+	 * @param poolMap Either the primary's pools or the replicas' pools.
+	 * @param key The name of the pool; the database name, for the primary.
+	 * @param database The name of the database, for its pool size.
+	 * @param opener Opens a new connection to the database.
+	 * @param afterClose Run once the connection has been given back, or null for nothing.
+	 * @return The connection.
+	 * @throws SQLException If a connection could not be made, or none came free in time.
+	 */
+	private Connection borrow(Map<String, ConnectionPool> poolMap, String key, String database,
+			ConnectionPool.Opener opener, Runnable afterClose) throws SQLException {
+		
+		for (int attempt = 1; ; attempt++) {
+			ConnectionPool pool;
+			synchronized (pools) {
+				startMaintenance();
+				pool = poolMap.get(key);
+				if (pool == null) { // If there's no pool for this database yet, make one.
+					DataSourceConfig settings = config;
+					pool = new ConnectionPool(key, opener, settings.getPoolSize(database), settings.getPoolTimeoutMillis(),
+							settings.getValidateAfterMillis(), settings.getValidateTimeoutSeconds(),
+							new CircuitBreaker(key, settings.getBreakerFailures(),
+									settings.getBreakerRetryMillis(), settings.getBreakerMaxRetryMillis()));
+					poolMap.put(key, pool);
 				}
-			} catch (ClassNotFoundException e) {
-				e.printStackTrace();
-				logger.log(Level.SEVERE, "ClassNotFound exception", e);
-				return null;
 			}
+			try {
+				return pool.borrow(afterClose);
+			} catch (SQLException e) {
+				if (!pool.isClosed() || attempt == 3) {
+					throw e;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the replica monitor, starting it the first time if any replicas are set up.
+	 * 
+	 * @return The monitor; or null if there are no replicas.
+	 */
+	private ReplicaMonitor getReplicaMonitor() {
+		
+		synchronized (pools) {
+			if (!replicasChecked) {
+				replicasChecked = true;
+				List<String> replicas = config.getReplicas();
+				if (!replicas.isEmpty()) {
+					logger.log(Level.CONFIG, "Read replicas: " + replicas);
+					replicaMonitor = new ReplicaMonitor(this, replicas, config.getMaxLagMillis(), config.getLagIntervalMillis());
+				}
+			}
+			return replicaMonitor;
+		}
+	}
+
+	/**
+	 * Notes that a database was changed by something other than this server (such as the ERP import),
+	 * so it's read from the primary until the replicas have caught up with the change.
+	 * 
+	 * @param database The name of the database.
+	 */
+	public void markWritten(String database) {
+		
+		ReplicaMonitor monitor = getReplicaMonitor();
+		if (monitor != null) {
+			monitor.markWritten(database);
 		}
-		// If a connection already exists, just return it. (Singleton)
-		return conn;
 	}
 	
 	/**
-	 * Simply closes the connection to the database.
+	 * @return True if any database on the primary server can't be reached right now, in which case
+	 * asking for a connection to it fails straight away until it's back.
+	 */
+	public boolean isDown() {
+		
+		synchronized (pools) {
+			for (ConnectionPool pool : pools.values()) {
+				if (pool.isDown()) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Adds something to be run (on a background thread) whenever a database that couldn't be reached can be again,
+	 * such as reloading whatever was shown from a cache in the meantime.
+	 * 
+	 * @param listener What to run.
+	 */
+	public void addRecoveryListener(Runnable listener) {
+		recoveryListeners.add(listener);
+	}
+
+	/**
+	 * Closes every connection to every database, such as when the servlet is shutting down.
+	 * Connections that are in use are closed when they're given back.
 	 */
 	public void close() {
 		
-		if (conn != null) {
-			logger.log(Level.INFO, "Closing connection");
-			try { // Attempt to close the connection and set its variable to null.
-				conn.close();
-				conn = null;
-				logger.log(Level.INFO, "Connection closed.");
-			} catch (Exception e) {
-				// If an exception occurs when trying to close the connection, do nothing (except log it).
-				logger.log(Level.SEVERE, "Exception when trying to CLOSE the database connection.", e);
+		synchronized (pools) {
+			logger.log(Level.INFO, "Closing connections");
+			drain();
+			stopMaintenance();
+		}
+	}
+
+	/**
+	 * Drains every pool and stops watching the replicas. New pools are made as they're needed.
+	 * Must be called while holding the pools lock.
+	 */
+	private void drain() {
+		
+		if (replicaMonitor != null) {
+			replicaMonitor.stop();
+			replicaMonitor = null;
+		}
+		replicasChecked = false;
+		for (ConnectionPool pool : pools.values()) {
+			pool.close();
+		}
+		pools.clear();
+		for (ConnectionPool pool : replicaPools.values()) {
+			pool.close();
+		}
+		replicaPools.clear();
+	}
+
+	/**
+	 * Starts keeping the pools healthy (every second) and checking the settings file for changes,
+	 * if that isn't being done already.
+	 * Must be called while holding the pools lock.
+	 */
+	private void startMaintenance() {
+		
+		if (maintenance != null) {
+			return;
+		}
+		maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "datasource-maintenance");
+			thread.setDaemon(true); // Never keep the servlet container from shutting down.
+			return thread;
+		});
+		maintenance.scheduleWithFixedDelay(this::maintain, 1, 1, TimeUnit.SECONDS);
+		int seconds = config.getReloadSeconds();
+		if (seconds > 0) {
+			maintenance.scheduleWithFixedDelay(() -> {
+				try {
+					if (config.isStale()) {
+						reload();
+					}
+				} catch (RuntimeException e) {
+					// An exception would otherwise cancel every future check.
+					logger.log(Level.SEVERE, "Unexpected exception when reloading the datasource settings.", e);
+				}
+			}, seconds, seconds, TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * Stops keeping the pools healthy and checking the settings file for changes.
+	 * Must be called while holding the pools lock.
+	 */
+	private void stopMaintenance() {
+		
+		if (maintenance != null) {
+			maintenance.shutdown();
+			maintenance = null;
+		}
+	}
+
+	/**
+	 * One round of keeping the pools healthy: the keepalive, and reconnecting to any database that's down.
+	 * The connections are checked outside of the pools lock, so nobody has to wait on a slow check.
+	 */
+	private void maintain() {
+		
+		try {
+			List<ConnectionPool> all = new ArrayList<ConnectionPool>();
+			synchronized (pools) {
+				all.addAll(pools.values());
+				all.addAll(replicaPools.values());
+			}
+			long keepaliveMillis = config.getKeepaliveMillis();
+			boolean recovered = false;
+			for (ConnectionPool pool : all) {
+				recovered |= pool.maintain(keepaliveMillis);
+			}
+			if (recovered) {
+				for (Runnable listener : recoveryListeners) {
+					listener.run();
+				}
 			}
+		} catch (RuntimeException e) {
+			// An exception would otherwise cancel every future round.
+			logger.log(Level.SEVERE, "Unexpected exception when keeping the connection pools healthy.", e);
 		}
 	}
 
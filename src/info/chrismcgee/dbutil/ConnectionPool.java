@@ -0,0 +1,403 @@
+package info.chrismcgee.dbutil;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * @author Marketing
+ *
+ * A small pool of connections to one database. Each connection that's handed out is a stand-in for a real one;
+ * closing it (which the DAOs do with try-with-resources) puts the real connection back in the pool
+ * instead of closing it, after rolling back anything that was left uncommitted.
+ *
+ * There are never more than a set number of connections out at once. Anyone who asks for one when they're
+ * all in use waits for one to come back, for up to the timeout.
+ *
+ * Connections that have been sitting idle for a while are checked before they're handed out, and the keepalive
+ * checks the rest in the background, so a connection that died while it was idle is never handed out.
+ * A connection that fails with a connection error while it's in use (whether running a statement or reading its results)
+ * is thrown away instead of going back in the pool. The pool's CircuitBreaker makes it fail fast while the database
+ * can't be reached at all, and every connection that goes back in the pool in working order counts as a success.
+ */
+class ConnectionPool {
+
+	private final static Logger logger = Logger.getLogger(ConnectionPool.class.getName()); // Logging!
+
+	/**
+	 * Opens a new real connection.
+	 */
+	interface Opener {
+		Connection open() throws SQLException;
+	}
+
+	private final String database; // The name of the database, for the logs.
+	private final Opener opener;
+	private final int maxSize; // The most connections that can be out at once.
+	private final long timeoutMillis; // How long to wait for a connection when they're all in use.
+	private final long validateAfterMillis; // How long a connection can sit idle before it's checked again.
+	private final int validateTimeoutSeconds; // How long to wait for a connection to answer a check.
+	private final CircuitBreaker breaker;
+	private final Semaphore permits; // One for each connection that can still be handed out.
+	private final Deque<Idle> idle = new ArrayDeque<Idle>(); // The real connections that are free, most recently used first.
+	private boolean closed = false;
+	private final AtomicBoolean recovered = new AtomicBoolean(); // A connection given back closed the breaker, and nobody's been told yet.
+
+	/**
+	 * @param database The name of the database, for the logs.
+	 * @param opener Opens a new real connection.
+	 * @param maxSize The most connections that can be out at once.
+	 * @param timeoutMillis How long to wait for a connection when they're all in use.
+	 * @param validateAfterMillis How long a connection can sit idle before it's checked again.
+	 * @param validateTimeoutSeconds How long to wait for a connection to answer a check.
+	 * @param breaker Decides when to stop trying the database.
+	 */
+	ConnectionPool(String database, Opener opener, int maxSize, long timeoutMillis,
+			long validateAfterMillis, int validateTimeoutSeconds, CircuitBreaker breaker) {
+		this.database = database;
+		this.opener = opener;
+		this.maxSize = maxSize;
+		this.timeoutMillis = timeoutMillis;
+		this.validateAfterMillis = validateAfterMillis;
+		this.validateTimeoutSeconds = validateTimeoutSeconds;
+		this.breaker = breaker;
+		this.permits = new Semaphore(maxSize, true);
+	}
+
+	/**
+	 * Borrows a connection, which must be closed to give it back.
+	 *
+	 * @return The connection.
+	 * @throws SQLException If none came free in time, or a new one could not be opened.
+	 */
+	Connection borrow() throws SQLException {
+		return borrow(null);
+	}
+
+	/**
+	 * Borrows a connection, which must be closed to give it back.
+	 *
+	 * @param afterClose Run once the connection has been given back, or null for nothing.
+	 * @return The connection.
+	 * @throws SQLException If the database can't be reached, none came free in time, or a new one could not be opened.
+	 */
+	Connection borrow(Runnable afterClose) throws SQLException {
+
+		breaker.check(); // Don't wait around for a database that's known to be down.
+		try {
+			if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+				throw new SQLException("Timed out after " + timeoutMillis + " ms waiting for a connection to " + database);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a connection to " + database, e);
+		}
+
+		try {
+			Connection real = null;
+			while (real == null) {
+				Idle next;
+				synchronized (this) {
+					if (closed) {
+						throw new SQLException("The connection pool for " + database + " has been closed.");
+					}
+					next = idle.pollFirst();
+				}
+				if (next == null) {
+					break; // None left, so open a new one.
+				}
+				// Only check the ones that have been sitting long enough to have died; the rest were just used.
+				if (System.currentTimeMillis() - next.since < validateAfterMillis || isValid(next.real)) {
+					real = next.real;
+				} else {
+					logger.log(Level.INFO, "Throwing out a dead connection to " + database);
+					closeQuietly(next.real);
+				}
+			}
+			if (real == null) {
+				real = open();
+			}
+			return wrap(real, afterClose);
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Keeps the pool healthy; meant to be called every second or so from a background thread.
+	 * Checks the idle connections that haven't been used in a while (throwing out the dead ones),
+	 * and while the breaker is open, tries to reconnect whenever the next try is due.
+	 *
+	 * @param keepaliveMillis How long a connection can sit idle before the keepalive checks it.
+	 * @return True if the database has just come back.
+	 */
+	boolean maintain(long keepaliveMillis) {
+
+		if (recovered.getAndSet(false)) {
+			return true;
+		}
+		if (breaker.isRetryDue()) {
+			try {
+				Connection real = open();
+				synchronized (this) {
+					if (!closed) {
+						idle.addFirst(new Idle(real)); // Straight into the pool, ready to be handed out.
+						real = null;
+					}
+				}
+				if (real != null) {
+					closeQuietly(real);
+				}
+				return true;
+			} catch (SQLException e) {
+				logger.log(Level.INFO, "Still can't reach " + database + ": " + e.getMessage());
+				return false;
+			}
+		}
+
+		// Take out the ones that are due for a check, so they can't be handed out while they're being checked.
+		List<Connection> due = new ArrayList<Connection>();
+		long now = System.currentTimeMillis();
+		synchronized (this) {
+			for (Iterator<Idle> i = idle.iterator(); i.hasNext();) {
+				Idle next = i.next();
+				if (now - next.since >= keepaliveMillis && permits.tryAcquire()) {
+					i.remove();
+					due.add(next.real);
+				}
+			}
+		}
+		for (Connection real : due) {
+			boolean valid = isValid(real);
+			if (!valid) {
+				logger.log(Level.INFO, "The keepalive found a dead connection to " + database);
+			}
+			giveBack(real, !valid, true);
+		}
+		return false;
+	}
+
+	/**
+	 * Closes every connection that isn't in use, and the rest as they're given back.
+	 * Anyone still waiting for a connection is let go straight away, and told the pool has been closed.
+	 */
+	void close() {
+
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			for (Idle next : idle) {
+				closeQuietly(next.real);
+			}
+			idle.clear();
+		}
+		permits.release(maxSize); // Wakes up the waiters; nothing is ever handed out again, so the count doesn't matter.
+	}
+
+	/**
+	 * @return True if the pool has been closed.
+	 */
+	synchronized boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * @return True if the database can't be reached right now.
+	 */
+	boolean isDown() {
+		return breaker.isOpen();
+	}
+
+	/**
+	 * Opens a new real connection, keeping the breaker up to date.
+	 */
+	private Connection open() throws SQLException {
+
+		logger.log(Level.INFO, "Opening a new connection to " + database);
+		try {
+			Connection real = opener.open();
+			breaker.success();
+			return real;
+		} catch (SQLException e) {
+			breaker.failure();
+			throw e;
+		}
+	}
+
+	/**
+	 * Checks that a connection still works.
+	 */
+	private boolean isValid(Connection real) {
+
+		try {
+			return real.isValid(validateTimeoutSeconds);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Takes a real connection back. It's put back the way it was handed out,
+	 * or closed for good if that can't be done.
+	 *
+	 * @param real The real connection.
+	 * @param broken True if it failed with a connection error, so it can't be used again.
+	 * @param idleAlready True if it was taken straight from the idle connections, so it doesn't need resetting.
+	 */
+	private void giveBack(Connection real, boolean broken, boolean idleAlready) {
+
+		try {
+			if (!broken && !idleAlready && !real.isClosed() && !real.getAutoCommit()) {
+				real.rollback(); // Anything that wasn't committed shouldn't leak into the next borrower's transaction.
+				real.setAutoCommit(true);
+			}
+			synchronized (this) {
+				if (!broken && !closed && !real.isClosed()) {
+					idle.addFirst(new Idle(real));
+					real = null;
+				}
+			}
+			if (real == null && breaker.success()) { // It worked to the end, so the database is there.
+				recovered.set(true);
+			}
+		} catch (SQLException e) {
+			logger.log(Level.WARNING, "Could not reset a connection to " + database + "; it will be closed.", e);
+		} finally {
+			if (real != null) {
+				closeQuietly(real);
+			}
+			permits.release();
+		}
+	}
+
+	private void closeQuietly(Connection real) {
+		try {
+			real.close();
+		} catch (SQLException e) {
+			logger.log(Level.WARNING, "Exception when trying to CLOSE a connection to " + database, e);
+		}
+	}
+
+	/**
+	 * @param e An exception thrown by a connection.
+	 * @return True if it means the connection itself is no good anymore (SQL state class "08", connection exception).
+	 */
+	private static boolean isConnectionError(SQLException e) {
+		return e instanceof SQLNonTransientConnectionException || e instanceof SQLRecoverableException
+				|| (e.getSQLState() != null && e.getSQLState().startsWith("08"));
+	}
+
+	/**
+	 * Wraps a real connection in a stand-in that gives it back when it's closed.
+	 * Anything else is passed straight through. Once it's been closed, the stand-in can't be used again.
+	 * The Statements it makes (and their ResultSets) are wrapped as well, just to watch for connection errors.
+	 */
+	private Connection wrap(Connection real, Runnable afterClose) {
+
+		AtomicBoolean broken = new AtomicBoolean(); // Failed with a connection error, so it mustn't go back in the pool.
+		InvocationHandler handler = new InvocationHandler() {
+			private boolean returned = false;
+
+			@Override
+			public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				switch (method.getName()) {
+				case "close":
+					if (!returned) {
+						returned = true;
+						giveBack(real, broken.get(), false);
+						if (afterClose != null) {
+							afterClose.run();
+						}
+					}
+					return null;
+				case "isClosed":
+					return returned || real.isClosed();
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				case "toString":
+					return "Pooled connection to " + database + (returned ? " (returned)" : "");
+				default:
+					if (returned) {
+						throw new SQLException("This connection to " + database + " has already been closed.");
+					}
+					try {
+						return watch(method.invoke(real, args), method.getReturnType(), broken);
+					} catch (InvocationTargetException e) {
+						throw noteFailure(e.getCause(), broken);
+					}
+				}
+			}
+		};
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class}, handler);
+	}
+
+	/**
+	 * Wraps a Statement made by a borrowed connection, or a ResultSet made by one of those Statements,
+	 * so that a connection error while running it or reading from it marks the connection as broken.
+	 * Anything else is left as it is.
+	 */
+	private Object watch(Object target, Class<?> type, AtomicBoolean broken) {
+
+		if (target == null || !(Statement.class.isAssignableFrom(type) || ResultSet.class.isAssignableFrom(type))) {
+			return target;
+		}
+		return Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+			try {
+				return watch(method.invoke(target, args), method.getReturnType(), broken); // Such as executeQuery()'s ResultSet.
+			} catch (InvocationTargetException e) {
+				throw noteFailure(e.getCause(), broken);
+			}
+		});
+	}
+
+	/**
+	 * Marks the connection as broken (and tells the breaker) if an exception was a connection error.
+	 *
+	 * @return The exception, to be thrown.
+	 */
+	private Throwable noteFailure(Throwable cause, AtomicBoolean broken) {
+
+		if (cause instanceof SQLException && isConnectionError((SQLException) cause) && !broken.getAndSet(true)) {
+			breaker.failure();
+		}
+		return cause;
+	}
+
+
+	/**
+	 * A free real connection, and when it was last given back (or checked).
+	 */
+	private static final class Idle {
+
+		private final Connection real;
+		private final long since;
+
+		Idle(Connection real) {
+			this.real = real;
+			this.since = System.currentTimeMillis();
+		}
+	}
+
+}
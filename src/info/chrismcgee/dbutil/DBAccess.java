@@ -0,0 +1,10 @@
+package info.chrismcgee.dbutil;
+
+public enum DBAccess {
+
+	// What a connection is going to be used for, which decides where it can come from.
+	// READ_ONLY connections can come from a read replica (if there are any that have caught up);
+	// READ_WRITE connections always come from the primary database server.
+	READ_ONLY, READ_WRITE
+
+}
@@ -1,37 +1,51 @@
 package info.chrismcgee.dbutil;
 
 public enum DBName {
-	
+
 	// The names of the databases available.
-	JOB_ORDERS("job_orders_2014"), LOGIN("logins");
+	// The job orders are split into one database per year (of ship date), such as "job_orders_2014";
+	// the DBRouter works out which years there are and which one a Job belongs in.
+	JOB_ORDERS("job_orders_", true), LOGIN("logins", false);
+
+	private final String value; // Stores the database name (or the start of it, for a yearly database).
+	private final boolean yearly; // Whether there is one of these databases for each year.
 
-	private String value; // Stores the database name we're working with.
-	
 	/**
 	 * When/if this class is instantiated, this constructor stores the database name
-	 * 
+	 *
 	 * @param value
+	 * @param yearly
 	 */
-	private DBName(String value) {
+	private DBName(String value, boolean yearly) {
 		this.value = value;
+		this.yearly = yearly;
 	}
 
 	/**
 	 * Standard getter.
-	 * 
-	 * @return value
+	 *
+	 * @return value The database name, or just the start of it for a yearly database.
 	 */
 	public String getValue() {
 		return value;
 	}
 
 	/**
-	 * Standard setter.
-	 * 
-	 * @param value
+	 * Gets the name of one year's database.
+	 *
+	 * @param year The year.
+	 * @return The name of that year's database, such as "job_orders_2014";
+	 * or just the database name if this isn't a yearly database.
 	 */
-	public void setValue(String value) {
-		this.value = value;
+	public String getValue(int year) {
+		return yearly ? value + year : value;
+	}
+
+	/**
+	 * @return True if there is one of these databases for each year.
+	 */
+	public boolean isYearly() {
+		return yearly;
 	}
 
 }
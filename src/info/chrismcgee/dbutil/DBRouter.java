@@ -0,0 +1,373 @@
+package info.chrismcgee.dbutil;
+
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * @author Marketing
+ *
+ * Works out which of the yearly databases (see DBName.isYearly()) a Job belongs in.
+ * A Job lives in the database of the year it ships in. Ship dates from before the first year go in the first
+ * year's database (and those in a year that was left out of the list, in the year before's).
+ * A ship date after the last year has no database at all, and is turned down with an IllegalArgumentException,
+ * rather than quietly put somewhere it won't be looked for once that year's database is added.
+ *
+ * The "On Hold" and "Proofing" dates (see DateManager.HOLD_DATE) are pinned to one database that never changes:
+ * the one of "sky.db.sentinelYear", which is the last year listed, by default.
+ *
+ * The years are set with "sky.db.years", a comma-separated list such as "2014,2015,2016". Ending the last year
+ * with a "+" (such as "2014+") means every year from then on up to the current one, and the next one too,
+ * from "sky.db.aheadDays" (92, by default) days before it starts, so Jobs for January can be entered in the fall.
+ * A new year's database is used without any change to the code or the settings
+ * (the database itself still has to be made ahead of time). The default is just "2014", which keeps everything
+ * in the one database.
+ *
+ * Ranges of dates that cross from one year's database into another are split into Slices,
+ * which can be read at the same time with fanOut().
+ */
+public class DBRouter {
+
+	private final static Logger logger = Logger.getLogger(DBRouter.class.getName()); // Logging!
+
+	private static final int HOME_CACHE_SIZE = 10000; // How many Jobs' databases are remembered.
+	private static final LocalDate FIRST_SENTINEL = LocalDate.of(9999, 12, 30); // The "Proofing" date.
+	private static final LocalDate LAST_SENTINEL = LocalDate.of(9999, 12, 31); // The "On Hold" date.
+
+	// The single and only instance of the router; starts off as null.
+	private static DBRouter instance = null;
+
+	private final List<Integer> fixedYears; // The years that were listed.
+	private final boolean openEnded; // Whether every year after the last one listed (up to now) has a database too.
+	private final int sentinelYear; // The year of the database that holds the "On Hold" and "Proofing" Jobs.
+	private final int aheadDays; // How long before New Year's Day an open-ended router takes in the next year.
+	private final Clock clock; // What "now" is.
+	private final ExecutorService executor; // Runs the Slices of a fanOut() at the same time.
+
+	// The database that each of the most recently used Jobs is in, by job number.
+	private final Map<String, String> homes = new LinkedHashMap<String, String>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+			return size() > HOME_CACHE_SIZE;
+		}
+	};
+
+	/**
+	 * @param years The years setting, such as "2014,2015" or "2014+".
+	 * @param threads How many Slices can be read at the same time.
+	 */
+	public DBRouter(String years, int threads) {
+		this(years, null, 92, threads, Clock.systemDefaultZone());
+	}
+
+	/**
+	 * @param years The years setting, such as "2014,2015" or "2014+".
+	 * @param sentinelYear The year of the database to keep the "On Hold" and "Proofing" Jobs in,
+	 * or null for the last year listed.
+	 * @param aheadDays How many days before New Year's Day an open-ended router takes in the next year.
+	 * @param threads How many Slices can be read at the same time.
+	 * @param clock What "now" is.
+	 */
+	public DBRouter(String years, Integer sentinelYear, int aheadDays, int threads, Clock clock) {
+
+		String setting = years.trim();
+		openEnded = setting.endsWith("+");
+		if (openEnded) {
+			setting = setting.substring(0, setting.length() - 1);
+		}
+		TreeSet<Integer> parsed = new TreeSet<Integer>();
+		for (String year : setting.split(",")) {
+			parsed.add(Integer.valueOf(year.trim()));
+		}
+		fixedYears = new ArrayList<Integer>(parsed);
+		this.sentinelYear = sentinelYear != null ? sentinelYear : fixedYears.get(fixedYears.size() - 1);
+		if (!fixedYears.contains(this.sentinelYear)) {
+			throw new IllegalArgumentException("The sentinel year " + this.sentinelYear + " isn't one of the years listed: " + years);
+		}
+		this.aheadDays = aheadDays;
+		this.clock = clock;
+
+		AtomicInteger count = new AtomicInteger();
+		executor = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "db-fan-out-" + count.incrementAndGet());
+			thread.setDaemon(true); // Never keep the servlet container from shutting down.
+			return thread;
+		});
+		logger.log(Level.CONFIG, "Yearly databases: " + getYears());
+	}
+
+	/**
+	 * Gets the single instance of the router, set up from the "sky.db.years" and "sky.db.fanOut" system properties.
+	 *
+	 * @return The DBRouter.
+	 */
+	public static synchronized DBRouter getInstance() {
+		if (instance == null) {
+			instance = new DBRouter(System.getProperty("sky.db.years", "2014"), Integer.getInteger("sky.db.sentinelYear"),
+					Integer.getInteger("sky.db.aheadDays", 92), Integer.getInteger("sky.db.fanOut", 4), Clock.systemDefaultZone());
+		}
+		return instance;
+	}
+
+	/**
+	 * @return The years that have a database, oldest first. If the years are open-ended,
+	 * this takes in the next year "sky.db.aheadDays" before it starts.
+	 */
+	public List<Integer> getYears() {
+		List<Integer> years = new ArrayList<Integer>(fixedYears);
+		if (openEnded) {
+			int lastYear = LocalDate.now(clock).plusDays(aheadDays).getYear();
+			for (int year = years.get(years.size() - 1) + 1; year <= lastYear; year++) {
+				years.add(year);
+			}
+		}
+		return years;
+	}
+
+	/**
+	 * @param dbName A database.
+	 * @return The names of all of its databases, oldest first (just the one if it isn't yearly).
+	 */
+	public List<String> getDatabases(DBName dbName) {
+		List<String> databases = new ArrayList<String>();
+		if (!dbName.isYearly()) {
+			databases.add(dbName.getValue());
+			return databases;
+		}
+		for (int year : getYears()) {
+			databases.add(dbName.getValue(year));
+		}
+		return databases;
+	}
+
+	/**
+	 * @param dbName A database.
+	 * @return The name of the newest of its databases, which is where anything not tied to a date goes.
+	 */
+	public String getCurrentDatabase(DBName dbName) {
+		List<String> databases = getDatabases(dbName);
+		return databases.get(databases.size() - 1);
+	}
+
+	/**
+	 * @param dbName A database.
+	 * @param date A ship date.
+	 * @return The name of the database that Jobs with that ship date belong in.
+	 * @throws IllegalArgumentException If the date is after the last year that has a database.
+	 */
+	public String getDatabase(DBName dbName, LocalDate date) {
+		if (!dbName.isYearly()) {
+			return dbName.getValue();
+		}
+		if (isSentinel(date)) {
+			return dbName.getValue(sentinelYear);
+		}
+		List<Integer> years = getYears();
+		int last = years.get(years.size() - 1);
+		if (date.getYear() > last && years.size() > 1) {
+			throw new IllegalArgumentException("There is no " + dbName.getValue(date.getYear()) + " database for " + date
+					+ " yet; add " + date.getYear() + " to sky.db.years once it's been made.");
+		}
+		int chosen = years.get(0);
+		for (int year : years) {
+			if (year <= date.getYear()) {
+				chosen = year;
+			}
+		}
+		return dbName.getValue(chosen);
+	}
+
+	/**
+	 * @return True for the "On Hold" and "Proofing" dates, and anything between them.
+	 * (This doesn't use DateManager, which is outside of the dbutil package.)
+	 */
+	private static boolean isSentinel(LocalDate date) {
+		return !date.isBefore(FIRST_SENTINEL) && !date.isAfter(LAST_SENTINEL);
+	}
+
+	/**
+	 * Splits a range of dates into the part that falls in each database.
+	 *
+	 * @param dbName A database.
+	 * @param startDate The first date of the range. (inclusive)
+	 * @param endDate The last date of the range. (inclusive)
+	 * @return The Slices, in date order. Empty if the range is.
+	 */
+	public List<Slice> split(DBName dbName, LocalDate startDate, LocalDate endDate) {
+
+		List<Slice> slices = new ArrayList<Slice>();
+		if (endDate.isBefore(startDate)) {
+			return slices;
+		}
+		if (!dbName.isYearly()) {
+			slices.add(new Slice(dbName.getValue(), startDate, endDate));
+			return slices;
+		}
+		List<Integer> years = getYears();
+		if (years.size() == 1) {
+			slices.add(new Slice(dbName.getValue(years.get(0)), startDate, endDate)); // Everything's in the one database.
+			return slices;
+		}
+		for (int i = 0; i < years.size(); i++) {
+			// Each database holds from the start of its year (or forever, for the first)
+			// to the end of the year before the next one (or the end of its own year, for the last).
+			LocalDate from = i == 0 ? LocalDate.MIN : LocalDate.of(years.get(i), 1, 1);
+			LocalDate to = i == years.size() - 1 ? LocalDate.of(years.get(i), 12, 31) : LocalDate.of(years.get(i + 1), 1, 1).minusDays(1);
+			addSlice(slices, dbName.getValue(years.get(i)), startDate, endDate, from, to);
+		}
+		// The "On Hold" and "Proofing" Jobs come last, from wherever they're pinned.
+		addSlice(slices, dbName.getValue(sentinelYear), startDate, endDate, FIRST_SENTINEL, LAST_SENTINEL);
+		return slices;
+	}
+
+	/**
+	 * Adds the part of a range that falls between two dates, if there is any.
+	 */
+	private static void addSlice(List<Slice> slices, String database, LocalDate startDate, LocalDate endDate, LocalDate from, LocalDate to) {
+		LocalDate sliceStart = startDate.isAfter(from) ? startDate : from;
+		LocalDate sliceEnd = endDate.isBefore(to) ? endDate : to;
+		if (!sliceEnd.isBefore(sliceStart)) {
+			slices.add(new Slice(database, sliceStart, sliceEnd));
+		}
+	}
+
+	/**
+	 * Gets one Slice for each of a database's databases, covering all dates (each database just once,
+	 * even the one that also holds the "On Hold" and "Proofing" Jobs). For queries that aren't by ship date.
+	 *
+	 * @param dbName A database.
+	 * @return The Slices, oldest first.
+	 */
+	public List<Slice> all(DBName dbName) {
+		List<Slice> slices = new ArrayList<Slice>();
+		for (String database : getDatabases(dbName)) {
+			slices.add(new Slice(database, LocalDate.MIN, LocalDate.MAX));
+		}
+		return slices;
+	}
+
+	/**
+	 * Runs a query against each of the Slices, all at the same time (or straight away on this thread,
+	 * if there's only one), and waits for them all.
+	 *
+	 * @param slices The Slices.
+	 * @param query The query.
+	 * @return The result of each Slice, in the same order as the Slices.
+	 * @throws SQLException If any of the queries failed.
+	 */
+	public <T> List<T> fanOut(List<Slice> slices, SliceQuery<T> query) throws SQLException {
+
+		List<T> results = new ArrayList<T>(slices.size());
+		if (slices.size() == 1) {
+			results.add(query.run(slices.get(0)));
+			return results;
+		}
+
+		List<Future<T>> futures = new ArrayList<Future<T>>(slices.size());
+		for (Slice slice : slices) {
+			futures.add(executor.submit(() -> query.run(slice)));
+		}
+		try {
+			for (Future<T> future : futures) {
+				results.add(future.get());
+			}
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while reading from the yearly databases.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof SQLException) {
+				throw (SQLException) e.getCause();
+			}
+			throw new SQLException("Exception when reading from the yearly databases.", e.getCause());
+		} finally {
+			for (Future<T> future : futures) {
+				future.cancel(true); // Only does anything if one of the others failed.
+			}
+		}
+	}
+
+	/**
+	 * @param jobId A job number.
+	 * @return The database the Job was last seen in, or null if it hasn't been seen lately.
+	 */
+	public synchronized String getHome(String jobId) {
+		return homes.get(jobId);
+	}
+
+	/**
+	 * Remembers which database a Job is in, so it doesn't have to be looked for next time.
+	 *
+	 * @param jobId A job number.
+	 * @param database The database it's in, or null to forget it.
+	 */
+	public synchronized void setHome(String jobId, String database) {
+		if (database == null) {
+			homes.remove(jobId);
+		} else {
+			homes.put(jobId, database);
+		}
+	}
+
+
+	/**
+	 * The part of a range of dates that falls in one database.
+	 */
+	public static final class Slice {
+
+		private final String database;
+		private final LocalDate startDate;
+		private final LocalDate endDate;
+
+		Slice(String database, LocalDate startDate, LocalDate endDate) {
+			this.database = database;
+			this.startDate = startDate;
+			this.endDate = endDate;
+		}
+
+		public String getDatabase() {
+			return database;
+		}
+
+		/**
+		 * @return The first date of the range in this database. (inclusive)
+		 */
+		public LocalDate getStartDate() {
+			return startDate;
+		}
+
+		/**
+		 * @return The last date of the range in this database. (inclusive)
+		 */
+		public LocalDate getEndDate() {
+			return endDate;
+		}
+
+		@Override
+		public String toString() {
+			return database + " " + startDate + " to " + endDate;
+		}
+	}
+
+	/**
+	 * A query that's run against one Slice.
+	 */
+	public interface SliceQuery<T> {
+		T run(Slice slice) throws SQLException;
+	}
+
+}
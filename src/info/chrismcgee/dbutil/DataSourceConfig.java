@@ -0,0 +1,314 @@
+package info.chrismcgee.dbutil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * @author Marketing
+ *
+ * The settings for connecting to the databases: which type of database, where it is, how big the connection pools are,
+ * the timeouts, the fetch sizes and the read replicas.
+ *
+ * They come from "datasource.properties" (on the classpath, or wherever the "sky.datasource" system property points;
+ * see that file for every setting). Each DataSourceConfig is a snapshot of the file when it was read,
+ * so a new one is loaded to pick up any changes.
+ *
+ * Where the database is and who to log in as have no defaults: without a connection string for the type of database,
+ * a username and a password, the settings aren't valid and no connections are made with them.
+ */
+public final class DataSourceConfig {
+
+	private final static Logger logger = Logger.getLogger(DataSourceConfig.class.getName()); // Logging!
+
+	private static final String CONFIG_RESOURCE = "/datasource.properties";
+
+	private final Properties config;
+	private final Path source; // The file it was read from; or null if it came from the classpath.
+	private final long lastModified; // When that file was last changed, when it was read.
+	private final String problem; // Why the settings can't be used; or null if they can.
+
+	private DataSourceConfig(Properties config, Path source, long lastModified, String problem) {
+		this.config = config;
+		this.source = source;
+		this.lastModified = lastModified;
+		this.problem = problem;
+	}
+
+	/**
+	 * Reads the settings.
+	 *
+	 * @return The settings. If they couldn't be read, or are missing where the database is or who to log in as,
+	 * isValid() is false.
+	 */
+	public static DataSourceConfig load() {
+
+		Properties config = new Properties();
+		String path = System.getProperty("sky.datasource");
+		Path source = path != null ? Paths.get(path) : null;
+		long lastModified = 0;
+		try (
+				InputStream in = source != null
+						? Files.newInputStream(source)
+						: DataSourceConfig.class.getResourceAsStream(CONFIG_RESOURCE);
+				){
+			if (source != null) {
+				lastModified = Files.getLastModifiedTime(source).toMillis();
+			}
+			if (in == null) {
+				return new DataSourceConfig(config, source, lastModified, "No datasource configuration was found.");
+			}
+			config.load(in);
+		} catch (IOException | IllegalArgumentException e) { // A malformed escape in the file is an IllegalArgumentException.
+			logger.log(Level.WARNING, "Could not read the datasource configuration.", e);
+			return new DataSourceConfig(new Properties(), source, lastModified, "The datasource configuration could not be read: " + e.getMessage());
+		}
+
+		DataSourceConfig loaded = new DataSourceConfig(config, source, lastModified, null);
+		List<String> missing = new ArrayList<String>();
+		for (String key : new String[] { loaded.getType().name() + ".url", "username", "password" }) {
+			if (config.getProperty(key) == null) {
+				missing.add(key);
+			}
+		}
+		if (!missing.isEmpty()) {
+			return new DataSourceConfig(config, source, lastModified, "The datasource configuration is missing " + String.join(", ", missing) + ".");
+		}
+		return loaded;
+	}
+
+	/**
+	 * @return True if the settings can be connected with.
+	 */
+	public boolean isValid() {
+		return problem == null;
+	}
+
+	/**
+	 * @return Why the settings can't be connected with; or null if they can.
+	 */
+	public String getProblem() {
+		return problem;
+	}
+
+	/**
+	 * Keeps these settings in place of ones that were read from the same file but can't be used,
+	 * so the file isn't taken to have changed again until it's changed once more.
+	 *
+	 * @param rejected The settings that can't be used.
+	 * @return These settings, as of when the rejected ones were read.
+	 */
+	public DataSourceConfig keptOver(DataSourceConfig rejected) {
+		return new DataSourceConfig(config, rejected.source, rejected.lastModified, problem);
+	}
+
+	/**
+	 * @return True if the settings came from a file that has changed since they were read.
+	 */
+	public boolean isStale() {
+
+		if (source == null) {
+			return false; // The classpath can't change without a redeploy.
+		}
+		try {
+			return Files.getLastModifiedTime(source).toMillis() != lastModified;
+		} catch (IOException e) {
+			return false; // Keep on with what there is until the file is back.
+		}
+	}
+
+	/**
+	 * @param other Other settings.
+	 * @return True if every setting is the same.
+	 */
+	public boolean sameAs(DataSourceConfig other) {
+		return config.equals(other.config);
+	}
+
+	/**
+	 * @return The type of database to connect to.
+	 */
+	public DBType getType() {
+
+		String type = config.getProperty("type", DBType.MSSQL.name()).trim();
+		try {
+			return DBType.valueOf(type.toUpperCase());
+		} catch (IllegalArgumentException e) {
+			logger.log(Level.WARNING, "Unknown database type " + type + "; using MSSQL.");
+			return DBType.MSSQL;
+		}
+	}
+
+	/**
+	 * @param type A type of database.
+	 * @return Its connection string, up to the database name; or null if there isn't one.
+	 */
+	public String getUrl(DBType type) {
+		return getString(type.name() + ".url", null);
+	}
+
+	/**
+	 * @param type A type of database.
+	 * @return The class name of its JDBC driver.
+	 */
+	public String getDriver(DBType type) {
+
+		switch (type) {
+		case MYSQL:
+			return getString("MYSQL.driver", "com.mysql.jdbc.Driver");
+		case HSQLDB:
+			return getString("HSQLDB.driver", "org.hsqldb.jdbc.JDBCDriver");
+		default:
+			return getString(type.name() + ".driver", "com.microsoft.sqlserver.jdbc.SQLServerDriver");
+		}
+	}
+
+	public String getUsername() {
+		return getString("username", null);
+	}
+
+	public String getPassword() {
+		return getString("password", null);
+	}
+
+	/**
+	 * @param database The name of a database.
+	 * @return The most connections to it at once.
+	 */
+	public int getPoolSize(String database) {
+		return getInt(database + ".pool.size", getInt("pool.size", 8));
+	}
+
+	/**
+	 * @return How long to wait for a connection when they're all in use, in milliseconds.
+	 */
+	public long getPoolTimeoutMillis() {
+		return getInt("pool.timeout", 30) * 1000L;
+	}
+
+	/**
+	 * @return How long a connection can sit idle before it's checked again before being handed out, in milliseconds.
+	 */
+	public long getValidateAfterMillis() {
+		return getInt("pool.validateAfter", 5) * 1000L;
+	}
+
+	/**
+	 * @return How long to wait for a connection to answer a check, in seconds.
+	 */
+	public int getValidateTimeoutSeconds() {
+		return getInt("pool.validateTimeout", 2);
+	}
+
+	/**
+	 * @return How long a connection can sit idle before the keepalive checks it, in milliseconds.
+	 */
+	public long getKeepaliveMillis() {
+		return getInt("pool.keepalive", 60) * 1000L;
+	}
+
+	/**
+	 * @return How many failures in a row it takes to stop trying a database.
+	 */
+	public int getBreakerFailures() {
+		return getInt("breaker.failures", 3);
+	}
+
+	/**
+	 * @return How long to wait before the first try at reconnecting to a database that can't be reached, in milliseconds.
+	 */
+	public long getBreakerRetryMillis() {
+		return getInt("breaker.retry", 1) * 1000L;
+	}
+
+	/**
+	 * @return The longest to ever wait between tries at reconnecting, in milliseconds.
+	 */
+	public long getBreakerMaxRetryMillis() {
+		return getInt("breaker.maxRetry", 60) * 1000L;
+	}
+
+	/**
+	 * @return How long to wait for a new connection to be made, in seconds.
+	 */
+	public int getLoginTimeoutSeconds() {
+		return getInt("login.timeout", 10);
+	}
+
+	/**
+	 * @return How many rows the driver reads at once for a range of dates.
+	 */
+	public int getRangeFetchSize() {
+		return getInt("fetch.range", 500);
+	}
+
+	/**
+	 * @return How many rows the driver reads at once for an export.
+	 */
+	public int getExportFetchSize() {
+		return getInt("fetch.export", 1000);
+	}
+
+	/**
+	 * @return The connection string of each read replica, up to the database name. Empty if there are none.
+	 */
+	public List<String> getReplicas() {
+
+		List<String> replicas = new ArrayList<String>();
+		for (String replica : getString("replicas", "").split(",")) {
+			if (!replica.trim().isEmpty()) {
+				replicas.add(replica.trim());
+			}
+		}
+		return replicas;
+	}
+
+	/**
+	 * @return The most a read replica can be behind and still be used, in milliseconds.
+	 */
+	public long getMaxLagMillis() {
+		return getInt("replica.maxLag", 30) * 1000L;
+	}
+
+	/**
+	 * @return How long to wait between checks of the read replicas, in milliseconds.
+	 */
+	public long getLagIntervalMillis() {
+		return getInt("replica.lagInterval", 5) * 1000L;
+	}
+
+	/**
+	 * @return How often to check the file for changes, in seconds; 0 to never check.
+	 */
+	public int getReloadSeconds() {
+		return getInt("reload", 30);
+	}
+
+	private String getString(String key, String defaultValue) {
+
+		String value = config.getProperty(key);
+		return value != null ? value.trim() : defaultValue;
+	}
+
+	private int getInt(String key, int defaultValue) {
+
+		String value = config.getProperty(key);
+		if (value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			logger.log(Level.WARNING, "The datasource setting " + key + " isn't a number: " + value);
+			return defaultValue;
+		}
+	}
+
+}
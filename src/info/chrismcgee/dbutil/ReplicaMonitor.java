@@ -0,0 +1,213 @@
+package info.chrismcgee.dbutil;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * @author Marketing
+ *
+ * Keeps track of how far behind the primary each read replica is, so the ConnectionManager
+ * only hands out replica connections that won't give stale results.
+ *
+ * Every few seconds the primary's "Heartbeat" row is stamped with the time, and then read back from each replica;
+ * the difference is how far behind that replica is. Each database that has to be watched needs the table:
+ * "CREATE TABLE Heartbeat (id INT PRIMARY KEY, beat DATETIME2)". Without it, everything is read from the primary.
+ *
+ * A replica is only used for a database when:
+ *   - it was checked recently,
+ *   - it was no more than the most lag allowed behind, and
+ *   - it's known to have caught up with the last write this server made to that database,
+ *     so anyone reading just after they've saved something always sees it.
+ */
+class ReplicaMonitor {
+
+	private final static Logger logger = Logger.getLogger(ReplicaMonitor.class.getName()); // Logging!
+
+	private final ConnectionManager manager;
+	private final List<String> replicas; // The connection string of each replica, up to the database name.
+	private final long maxLagMillis; // The most a replica can be behind and still be used.
+	private final long intervalMillis; // How long to wait between checks.
+	private final ScheduledExecutorService executor;
+
+	// The last check of each replica, by replica and then by database.
+	private final Map<String, Map<String, Status>> statuses = new ConcurrentHashMap<String, Map<String, Status>>();
+	// When this server last wrote to each database (by the clock of this server).
+	private final Map<String, Long> lastWrites = new ConcurrentHashMap<String, Long>();
+	// The databases that replica connections have been asked for, which are the only ones that are checked.
+	private final Set<String> watched = ConcurrentHashMap.newKeySet();
+	private final AtomicInteger next = new AtomicInteger(); // Takes turns between the replicas.
+
+	/**
+	 * @param manager Hands out the connections to the primary and the replicas.
+	 * @param replicas The connection string of each replica, up to the database name.
+	 * @param maxLagMillis The most a replica can be behind and still be used.
+	 * @param intervalMillis How long to wait between checks.
+	 */
+	ReplicaMonitor(ConnectionManager manager, List<String> replicas, long maxLagMillis, long intervalMillis) {
+
+		this.manager = manager;
+		this.replicas = new ArrayList<String>(replicas);
+		this.maxLagMillis = maxLagMillis;
+		this.intervalMillis = intervalMillis;
+		for (String replica : replicas) {
+			statuses.put(replica, new ConcurrentHashMap<String, Status>());
+		}
+
+		executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "replica-monitor");
+			thread.setDaemon(true); // Never keep the servlet container from shutting down.
+			return thread;
+		});
+		executor.scheduleWithFixedDelay(this::check, 0, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Picks a replica to read from.
+	 *
+	 * @param database The name of the database.
+	 * @return The connection string of a replica that's caught up, up to the database name; or null to use the primary.
+	 */
+	String choose(String database) {
+
+		watched.add(database); // Start checking it, if it isn't already.
+		long now = System.currentTimeMillis();
+		long lastWrite = lastWrites.getOrDefault(database, 0L);
+		int start = next.getAndIncrement();
+		for (int i = 0; i < replicas.size(); i++) {
+			String replica = replicas.get(Math.floorMod(start + i, replicas.size()));
+			Status status = statuses.get(replica).get(database);
+			if (status != null
+					&& now - status.checkedAt <= 3 * intervalMillis // Not checked lately means it might be down.
+					&& status.lagMillis <= maxLagMillis
+					&& status.checkedAt - status.lagMillis > lastWrite) { // It has everything up to after the last write.
+				return replica;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Notes that this server has (or is about to have) written to a database, so it's read from the primary
+	 * until the replicas are known to have caught up.
+	 *
+	 * @param database The name of the database.
+	 */
+	void markWritten(String database) {
+		lastWrites.put(database, System.currentTimeMillis());
+	}
+
+	/**
+	 * Stops using a replica for a database until it's next checked, such as when a connection to it couldn't be made.
+	 *
+	 * @param replica The connection string of the replica, up to the database name.
+	 * @param database The name of the database.
+	 */
+	void markDown(String replica, String database) {
+		statuses.get(replica).remove(database);
+	}
+
+	/**
+	 * Stops checking the replicas.
+	 */
+	void stop() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * One round of checks, of every replica for every database that's being watched.
+	 */
+	void check() {
+
+		for (String database : watched) {
+			long checkedAt = System.currentTimeMillis(); // Before the beat, so the replica is never thought to be newer than it is.
+			Timestamp primaryBeat;
+			try {
+				primaryBeat = beat(database);
+			} catch (SQLException e) {
+				logger.log(Level.WARNING, "Could not stamp the heartbeat of " + database + "; reading it from the primary only.", e);
+				continue; // The replicas' statuses go stale, which stops them being used.
+			} catch (RuntimeException e) {
+				// An exception would otherwise cancel every future round of the scheduled executor.
+				logger.log(Level.SEVERE, "Unexpected exception when checking the replicas of " + database, e);
+				continue;
+			}
+
+			for (String replica : replicas) {
+				try (
+						Connection conn = manager.getReplicaConnection(replica, database);
+						PreparedStatement stmt = conn.prepareStatement("SELECT beat FROM Heartbeat WHERE id = 1");
+						ResultSet rs = stmt.executeQuery();
+						){
+					if (rs.next()) {
+						long lag = Math.max(0, primaryBeat.getTime() - rs.getTimestamp("beat").getTime());
+						statuses.get(replica).put(database, new Status(lag, checkedAt));
+						if (lag > maxLagMillis) {
+							logger.log(Level.WARNING, replica + database + " is " + lag + " ms behind; reading from the primary instead.");
+						}
+					} else { // The first beat hasn't made it there yet.
+						statuses.get(replica).remove(database);
+					}
+				} catch (SQLException e) {
+					logger.log(Level.WARNING, "Could not check " + replica + database + "; reading from the primary instead.", e);
+					statuses.get(replica).remove(database);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stamps the primary's heartbeat with the time right now.
+	 *
+	 * @param database The name of the database.
+	 * @return The time it was stamped with, by the clock of the primary.
+	 * @throws SQLException
+	 */
+	private Timestamp beat(String database) throws SQLException {
+
+		try (
+				Connection conn = manager.getConnection(database);
+				PreparedStatement update = conn.prepareStatement("UPDATE Heartbeat SET beat = CURRENT_TIMESTAMP WHERE id = 1");
+				PreparedStatement select = conn.prepareStatement("SELECT beat FROM Heartbeat WHERE id = 1");
+				){
+			if (update.executeUpdate() == 0) { // The very first beat.
+				try (PreparedStatement insert = conn.prepareStatement("INSERT INTO Heartbeat (id, beat) VALUES (1, CURRENT_TIMESTAMP)")) {
+					insert.executeUpdate();
+				}
+			}
+			try (ResultSet rs = select.executeQuery()) {
+				rs.next();
+				return rs.getTimestamp("beat");
+			}
+		}
+	}
+
+
+	/**
+	 * What the last check of one replica for one database found.
+	 */
+	private static final class Status {
+
+		private final long lagMillis; // How far behind the primary it was.
+		private final long checkedAt; // When it was checked, by the clock of this server.
+
+		Status(long lagMillis, long checkedAt) {
+			this.lagMillis = lagMillis;
+			this.checkedAt = checkedAt;
+		}
+	}
+
+}
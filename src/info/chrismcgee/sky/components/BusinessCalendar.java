@@ -0,0 +1,466 @@
+package info.chrismcgee.sky.components;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.MonthDay;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalAdjusters;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import info.chrismcgee.sky.enums.PrintingCompany;
+
+/**
+ * @author Marketing
+ *
+ * Knows which days a plant actually works, so that ship dates and lead times can be counted
+ * in working days instead of calendar days.
+ *
+ * Each year is kept as a bitset (one bit per day of the year, set if it's a working day).
+ * Alongside the bits is a running count of working days before each 64-day word, and a list of
+ * every working day in order, so "how many working days between" and "add N working days"
+ * are both answered with a couple of array lookups, no matter how far apart the dates are.
+ * Only the years around the current one are kept; anything outside them is counted day by day.
+ *
+ * The working days come from "business-calendar.properties" (on the classpath, or wherever the
+ * "sky.calendar" system property points). Every plant starts with the shared settings and can add its own,
+ * by putting the PrintingCompany's name in front of the key:
+ *
+ *   workdays = MONDAY,TUESDAY,WEDNESDAY,THURSDAY,FRIDAY
+ *   holidays = 01-01,07-04,12-25,4th THURSDAY of NOVEMBER,4th THURSDAY of NOVEMBER + 1
+ *   closures = 2016-12-26..2016-12-30
+ *   AMERICAN_YACHT_SUPPLY.closures = 2016-07-05..2016-07-08
+ *
+ * Holidays written as "MM-dd" fall on that date every year. Ones written as "4th THURSDAY of NOVEMBER"
+ * (or "1st", "2nd", "3rd", "5th" or "last") are worked out for each year, and "+ 1" moves them a day later,
+ * so the holidays that move around don't have to be listed again every year.
+ *
+ * A calendar always has at least one working day of the week (an empty or unreadable list gets the default),
+ * and the special "On Hold" and "Proofing" dates can't be counted from or to.
+ */
+public class BusinessCalendar {
+
+	private final static Logger logger = Logger.getLogger(BusinessCalendar.class.getName()); // Logging!
+
+	private static final String CONFIG_RESOURCE = "/business-calendar.properties";
+	private static final int WORDS_PER_YEAR = 6; // 6 x 64 bits covers the 366 days of a leap year.
+	private static final int WINDOW_YEARS = 10; // How many years either side of the current one are kept.
+	private static final String RANGE_SEPARATOR = "..";
+	// A holiday that falls on a certain weekday of a month, such as "4th THURSDAY of NOVEMBER + 1".
+	private static final Pattern WEEKDAY_RULE = Pattern.compile(
+			"(?i)(1st|2nd|3rd|4th|5th|last)\\s+(\\w+)\\s+of\\s+(\\w+)(?:\\s*\\+\\s*(\\d+))?");
+
+	// The calendar of each plant, and the one used when the plant doesn't matter. Swapped out whole by reload().
+	private static volatile Map<PrintingCompany, BusinessCalendar> calendars = null;
+	private static volatile BusinessCalendar defaultCalendar = null;
+
+	private final String name;
+	private final Set<DayOfWeek> workdays;
+	private final int firstYear; // The first year that is kept.
+	private final long[] bits; // Every kept year's bitset, one after the other.
+	private final int[] rankByWord; // How many working days come before each word of bits.
+	private final long[] workingDays; // Every working day of the kept years, in order, as epoch days.
+
+	/**
+	 * @param name What the calendar is for, for logging.
+	 * @param workdays The days of the week that are normally worked.
+	 * @param config The properties to read the holidays and closures from.
+	 * @param prefix Put in front of every key, so a plant can have its own holidays; "" for the shared ones.
+	 * @param firstYear The first year to keep.
+	 * @param lastYear The last year to keep.
+	 */
+	private BusinessCalendar(String name, Set<DayOfWeek> workdays, Properties config, String prefix, int firstYear, int lastYear) {
+		this.name = name;
+		this.workdays = workdays;
+		this.firstYear = firstYear;
+		this.bits = new long[(lastYear - firstYear + 1) * WORDS_PER_YEAR];
+
+		// Start off with every normal working day set...
+		for (int year = firstYear; year <= lastYear; year++) {
+			for (LocalDate date = LocalDate.of(year, 1, 1); date.getYear() == year; date = date.plusDays(1)) {
+				if (workdays.contains(date.getDayOfWeek())) {
+					setBit(date, true);
+				}
+			}
+		}
+		// ...then take away the shared days off, and then the plant's own.
+		clearDaysOff(config, "");
+		if (!prefix.isEmpty()) {
+			clearDaysOff(config, prefix);
+		}
+
+		// Count up the working days, so they can be ranked and selected without counting them again.
+		rankByWord = new int[bits.length + 1];
+		for (int i = 0; i < bits.length; i++) {
+			rankByWord[i + 1] = rankByWord[i] + Long.bitCount(bits[i]);
+		}
+		workingDays = new long[rankByWord[bits.length]];
+		int next = 0;
+		for (int year = firstYear; year <= lastYear; year++) {
+			long yearStart = LocalDate.of(year, 1, 1).toEpochDay();
+			int wordStart = (year - firstYear) * WORDS_PER_YEAR;
+			for (int w = 0; w < WORDS_PER_YEAR; w++) {
+				long word = bits[wordStart + w];
+				while (word != 0) {
+					workingDays[next++] = yearStart + w * 64 + Long.numberOfTrailingZeros(word);
+					word &= word - 1; // Clear the lowest bit that was just used.
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the calendar that's used when the plant doesn't matter (or isn't known).
+	 *
+	 * @return The shared BusinessCalendar.
+	 */
+	public static BusinessCalendar getDefault() {
+		if (defaultCalendar == null) {
+			reload();
+		}
+		return defaultCalendar;
+	}
+
+	/**
+	 * Gets the calendar of a particular plant.
+	 *
+	 * @param company The PrintingCompany whose plant's calendar is wanted.
+	 * @return That plant's BusinessCalendar.
+	 */
+	public static BusinessCalendar forCompany(PrintingCompany company) {
+		if (calendars == null) {
+			reload();
+		}
+		return calendars.get(company);
+	}
+
+	/**
+	 * Reads the configuration again and rebuilds every calendar,
+	 * such as after a new holiday has been added.
+	 */
+	public static synchronized void reload() {
+
+		Properties config = loadConfig();
+		int thisYear = DateManager.getTodayDate().getYear();
+		int firstYear = thisYear - WINDOW_YEARS;
+		int lastYear = thisYear + WINDOW_YEARS;
+
+		Set<DayOfWeek> sharedWorkdays = parseWorkdays(config.getProperty("workdays"), EnumSet.range(DayOfWeek.MONDAY, DayOfWeek.FRIDAY));
+		BusinessCalendar shared = new BusinessCalendar("default", sharedWorkdays, config, "", firstYear, lastYear);
+
+		Map<PrintingCompany, BusinessCalendar> byCompany = new EnumMap<PrintingCompany, BusinessCalendar>(PrintingCompany.class);
+		for (PrintingCompany company : PrintingCompany.values()) {
+			String prefix = company.name() + ".";
+			Set<DayOfWeek> workdays = parseWorkdays(config.getProperty(prefix + "workdays"), sharedWorkdays);
+			byCompany.put(company, new BusinessCalendar(company.name(), workdays, config, prefix, firstYear, lastYear));
+		}
+
+		defaultCalendar = shared;
+		calendars = byCompany;
+		logger.log(Level.CONFIG, "Business calendars built for " + firstYear + " through " + lastYear);
+	}
+
+	private static Properties loadConfig() {
+
+		Properties config = new Properties();
+		String path = System.getProperty("sky.calendar");
+		try (
+				InputStream in = path != null
+						? Files.newInputStream(Paths.get(path))
+						: BusinessCalendar.class.getResourceAsStream(CONFIG_RESOURCE);
+				){
+			if (in != null) {
+				config.load(in);
+			} else {
+				logger.log(Level.INFO, "No business calendar configuration found; only weekends are days off.");
+			}
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Could not read the business calendar configuration; only weekends are days off.", e);
+		}
+		return config;
+	}
+
+	private static Set<DayOfWeek> parseWorkdays(String value, Set<DayOfWeek> defaults) {
+
+		if (value == null || value.trim().isEmpty()) {
+			return defaults;
+		}
+		Set<DayOfWeek> workdays = EnumSet.noneOf(DayOfWeek.class);
+		for (String day : value.split(",")) {
+			try {
+				workdays.add(DayOfWeek.valueOf(day.trim().toUpperCase()));
+			} catch (IllegalArgumentException e) {
+				logger.log(Level.WARNING, "Unknown day of the week in the business calendar: " + day);
+			}
+		}
+		if (workdays.isEmpty()) {
+			// Counting working days would never get anywhere.
+			logger.log(Level.WARNING, "No working days of the week in \"" + value + "\" of the business calendar; using " + defaults);
+			return defaults;
+		}
+		return workdays;
+	}
+
+	/**
+	 * Takes away the holidays and closures listed under a prefix.
+	 *
+	 * @param config The properties to read.
+	 * @param prefix Put in front of each key; "" for the shared ones.
+	 */
+	private void clearDaysOff(Properties config, String prefix) {
+
+		for (String key : new String[] {"holidays", "closures"}) {
+			String value = config.getProperty(prefix + key);
+			if (value == null) {
+				continue;
+			}
+			for (String entry : value.split(",")) {
+				entry = entry.trim();
+				if (entry.isEmpty()) {
+					continue;
+				}
+				try {
+					int range = entry.indexOf(RANGE_SEPARATOR);
+					if (range >= 0) { // A closure from one date to another. (inclusive)
+						LocalDate end = LocalDate.parse(entry.substring(range + RANGE_SEPARATOR.length()).trim());
+						for (LocalDate date = LocalDate.parse(entry.substring(0, range).trim()); !date.isAfter(end); date = date.plusDays(1)) {
+							clearDay(date);
+						}
+					} else if (entry.length() == 5) { // The same date every year.
+						MonthDay monthDay = MonthDay.parse("--" + entry);
+						for (int year = firstYear; year < firstYear + bits.length / WORDS_PER_YEAR; year++) {
+							if (monthDay.isValidYear(year)) {
+								clearDay(monthDay.atYear(year));
+							}
+						}
+					} else if (WEEKDAY_RULE.matcher(entry).matches()) { // The same weekday of the month every year.
+						for (int year = firstYear; year < firstYear + bits.length / WORDS_PER_YEAR; year++) {
+							LocalDate date = weekdayOfMonth(entry, year);
+							if (date != null) {
+								clearDay(date);
+							}
+						}
+					} else {
+						clearDay(LocalDate.parse(entry));
+					}
+				} catch (DateTimeParseException | IllegalArgumentException e) { // Including an unknown day or month name.
+					logger.log(Level.WARNING, "Could not understand \"" + entry + "\" in " + prefix + key + " of the business calendar.");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Works out which day of a year a holiday such as "4th THURSDAY of NOVEMBER + 1" falls on.
+	 *
+	 * @param rule The holiday, which must match WEEKDAY_RULE.
+	 * @param year The year.
+	 * @return The day, or null if the month doesn't have that many of the weekday that year (such as a "5th").
+	 * @throws IllegalArgumentException If the day of the week or the month isn't known.
+	 */
+	static LocalDate weekdayOfMonth(String rule, int year) {
+
+		Matcher matcher = WEEKDAY_RULE.matcher(rule.trim());
+		if (!matcher.matches()) {
+			throw new IllegalArgumentException("Not a weekday of a month: " + rule);
+		}
+		DayOfWeek dayOfWeek = DayOfWeek.valueOf(matcher.group(2).toUpperCase());
+		YearMonth month = YearMonth.of(year, Month.valueOf(matcher.group(3).toUpperCase()));
+		LocalDate date;
+		if ("last".equalsIgnoreCase(matcher.group(1))) {
+			date = month.atEndOfMonth().with(TemporalAdjusters.previousOrSame(dayOfWeek));
+		} else {
+			int ordinal = matcher.group(1).charAt(0) - '0';
+			date = month.atDay(1).with(TemporalAdjusters.dayOfWeekInMonth(ordinal, dayOfWeek));
+			if (!YearMonth.from(date).equals(month)) {
+				return null; // Ran into the next month.
+			}
+		}
+		return matcher.group(4) == null ? date : date.plusDays(Integer.parseInt(matcher.group(4)));
+	}
+
+	private void clearDay(LocalDate date) {
+		if (isKeptYear(date)) {
+			setBit(date, false);
+		}
+	}
+
+	private void setBit(LocalDate date, boolean working) {
+		int index = bitIndex(date);
+		if (working) {
+			bits[index >> 6] |= 1L << index; // Shifts only use the low 6 bits of the index, which is the bit within its word.
+		} else {
+			bits[index >> 6] &= ~(1L << index);
+		}
+	}
+
+	/**
+	 * Works out where a kept day's bit is.
+	 *
+	 * @param date The day.
+	 * @return The index of its bit in bits.
+	 */
+	private int bitIndex(LocalDate date) {
+		return (date.getYear() - firstYear) * WORDS_PER_YEAR * 64 + date.getDayOfYear() - 1;
+	}
+
+	/**
+	 * Counts the working days that come before a kept day.
+	 *
+	 * @param date The day.
+	 * @return The number of kept working days before it.
+	 */
+	private int rank(LocalDate date) {
+		int index = bitIndex(date);
+		return rankByWord[index >> 6] + Long.bitCount(bits[index >> 6] & ((1L << index) - 1));
+	}
+
+	private boolean isKeptYear(LocalDate date) {
+		int offset = date.getYear() - firstYear;
+		return offset >= 0 && offset < bits.length / WORDS_PER_YEAR;
+	}
+
+	/**
+	 * Checks to see if the plant works on a given day.
+	 * The special "On Hold" and "Proofing" dates are never working days.
+	 *
+	 * @param date The LocalDate object to check.
+	 * @return boolean: true if it's a working day; false if not.
+	 */
+	public boolean isWorkingDay(LocalDate date) {
+		if (isKeptYear(date)) {
+			int index = bitIndex(date);
+			return (bits[index >> 6] & (1L << index)) != 0;
+		}
+		// Outside of the kept years, only the days of the week are known.
+		return workdays.contains(date.getDayOfWeek()) && !DateManager.isSentinelDate(date);
+	}
+
+	/**
+	 * Makes sure a date is a real day, rather than one of the special "On Hold" or "Proofing" dates,
+	 * which are thousands of years past the kept ones and would take forever to count to.
+	 *
+	 * @throws IllegalArgumentException If it's one of the special dates.
+	 */
+	private static void requireRealDate(LocalDate date) {
+		if (DateManager.isSentinelDate(date)) {
+			throw new IllegalArgumentException("Can't count working days from or to the special date " + date);
+		}
+	}
+
+	/**
+	 * Counts the working days from one date up to (but not including) another,
+	 * such as the lead time between an order's proof date and its ship date.
+	 *
+	 * @param startDate The first day to count. (inclusive)
+	 * @param endDate The day to stop at. (exclusive)
+	 * @return The number of working days, or a negative number if the end date comes first.
+	 * @throws IllegalArgumentException If either date is one of the special "On Hold" or "Proofing" dates.
+	 */
+	public int workingDaysBetween(LocalDate startDate, LocalDate endDate) {
+		requireRealDate(startDate);
+		requireRealDate(endDate);
+		if (endDate.isBefore(startDate)) {
+			return -workingDaysBetween(endDate, startDate);
+		}
+		if (isKeptYear(startDate) && isKeptYear(endDate)) {
+			return rank(endDate) - rank(startDate);
+		}
+		int count = 0;
+		for (LocalDate date = startDate; date.isBefore(endDate); date = date.plusDays(1)) {
+			if (isWorkingDay(date)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Counts a number of working days forward (or backward) from a date.
+	 * For example, adding 1 to a Friday gives the next Monday (unless that's a holiday).
+	 *
+	 * @param date The date to count from.
+	 * @param workingDaysToAdd How many working days to count; negative to count backward.
+	 * 0 gives the date itself if it's a working day, or else the next one.
+	 * @return The working day that was counted to.
+	 * @throws IllegalArgumentException If the date is one of the special "On Hold" or "Proofing" dates.
+	 */
+	public LocalDate addWorkingDays(LocalDate date, int workingDaysToAdd) {
+		requireRealDate(date);
+		if (isKeptYear(date)) {
+			boolean working = isWorkingDay(date);
+			if (workingDaysToAdd == 0 && working) {
+				return date;
+			}
+			long position; // Where the answer is in workingDays.
+			if (workingDaysToAdd >= 0) {
+				// The first working day after the date comes right after the ones before it (and the date itself, if it's one).
+				long first = rank(date) + (working ? 1 : 0);
+				position = first + Math.max(workingDaysToAdd, 1) - 1;
+			} else {
+				position = rank(date) + workingDaysToAdd;
+			}
+			if (position >= 0 && position < workingDays.length) {
+				return LocalDate.ofEpochDay(workingDays[(int) position]);
+			}
+		}
+		// Outside of the kept years, count one day at a time.
+		int step = workingDaysToAdd < 0 ? -1 : 1;
+		int remaining = Math.abs(workingDaysToAdd);
+		LocalDate result = date;
+		if (remaining == 0) {
+			while (!isWorkingDay(result)) {
+				result = result.plusDays(1);
+			}
+			return result;
+		}
+		while (remaining > 0) {
+			result = result.plusDays(step);
+			if (isWorkingDay(result)) {
+				remaining--;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the next working day after a date.
+	 *
+	 * @param date The date to start from.
+	 * @return The next working day.
+	 * @throws IllegalArgumentException If the date is one of the special "On Hold" or "Proofing" dates.
+	 */
+	public LocalDate getNextWorkingDay(LocalDate date) {
+		return addWorkingDays(date, 1);
+	}
+
+	/**
+	 * Gets the last working day before a date.
+	 *
+	 * @param date The date to start from.
+	 * @return The previous working day.
+	 * @throws IllegalArgumentException If the date is one of the special "On Hold" or "Proofing" dates.
+	 */
+	public LocalDate getPreviousWorkingDay(LocalDate date) {
+		return addWorkingDays(date, -1);
+	}
+
+	@Override
+	public String toString() {
+		return "BusinessCalendar[" + name + ", " + workingDays.length + " working days from " + firstYear + "]";
+	}
+
+}
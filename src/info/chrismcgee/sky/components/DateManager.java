@@ -2,33 +2,100 @@ package info.chrismcgee.sky.components;
 
 import java.sql.Date;
 import java.time.LocalDate;
+import java.time.Month;
+import java.time.Year;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.TimeZone;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import info.chrismcgee.sky.tables.JobManager;
-
 public class DateManager {
 
 	// Set the constants; variables that never vary (change).
 	private static final java.util.Date[] EMPTY_DATE_ARRAY = new java.util.Date[0];
 	public static final LocalDate HOLD_DATE = LocalDate.of(9999, 12, 31);
 	public static final LocalDate PROOF_DATE = LocalDate.of(9999, 12, 30);
-	// Global variables for comparing dates.
-	private static LocalDate holdDateComparator = LocalDate.now();
-	private static LocalDate proofDateComparator = LocalDate.now();
-	private static LocalDate today = LocalDate.now();
-	// Formatters that are used in several methods.
-	private static DateTimeFormatter displayFmt = DateTimeFormatter.ofPattern("MM/dd/yy");
-	private static DateTimeFormatter sqlFmt = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+	private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+	// How many years either side of the current year get their display Strings worked out ahead of time.
+	private static final int WINDOW_YEARS = 10;
+	// The first day of the window of display Strings, as an epoch day, and the Strings themselves.
+	private static final long WINDOW_START = LocalDate.now().minusYears(WINDOW_YEARS).withDayOfYear(1).toEpochDay();
+	private static final String[] DISPLAY_DATES = buildDisplayDates(WINDOW_START,
+			LocalDate.now().plusYears(WINDOW_YEARS + 1).withDayOfYear(1).toEpochDay());
+	// Today's date, and when it stops being today. Worked out again the first time it's asked for after midnight.
+	private static volatile LocalDate today = LocalDate.now();
+	private static volatile long tomorrowMillis = startOfNextDay(today);
+	// Only used when a date String isn't in the usual "MM/dd/yy" form, so the error is the same as ever.
+	private static final DateTimeFormatter displayFmt = DateTimeFormatter.ofPattern("MM/dd/yy");
 	// Logging!
-	private final static Logger logger = Logger.getLogger(JobManager.class.getName());
+	private final static Logger logger = Logger.getLogger(DateManager.class.getName());
 
 	
+	/**
+	 * Works out the display String of every date in a window, so the dates that are actually used
+	 * never need to be formatted again.
+	 * 
+	 * @param startDay The first epoch day of the window. (inclusive)
+	 * @param endDay The last epoch day of the window. (exclusive)
+	 * @return An Array of display Strings, one for each day.
+	 */
+	private static String[] buildDisplayDates(long startDay, long endDay) {
+		String[] dates = new String[(int) (endDay - startDay)];
+		for (int i = 0; i < dates.length; i++) {
+			dates[i] = formatDisplayDate(LocalDate.ofEpochDay(startDay + i));
+		}
+		return dates;
+	}
+
+	/**
+	 * Formats a date as "MM/dd/yy" straight into a char Array, without a DateTimeFormatter.
+	 * 
+	 * @param date The LocalDate object to format.
+	 * @return Formatted String of the date.
+	 */
+	private static String formatDisplayDate(LocalDate date) {
+		int month = date.getMonthValue();
+		int day = date.getDayOfMonth();
+		int year = Math.floorMod(date.getYear(), 100);
+		return new String(new char[] {
+				(char) ('0' + month / 10), (char) ('0' + month % 10), '/',
+				(char) ('0' + day / 10), (char) ('0' + day % 10), '/',
+				(char) ('0' + year / 10), (char) ('0' + year % 10)});
+	}
+
+	/**
+	 * Works out when the day after a given date starts, in the system time zone.
+	 * 
+	 * @param date The LocalDate object of the current day.
+	 * @return The start of the next day, in milliseconds.
+	 */
+	private static long startOfNextDay(LocalDate date) {
+		return date.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+	}
+
+	/**
+	 * Gets today's date. Unlike a date that is worked out once and kept,
+	 * this moves on to the next day at midnight.
+	 * 
+	 * @return LocalDate object of today.
+	 */
+	public static LocalDate getTodayDate() {
+		if (System.currentTimeMillis() >= tomorrowMillis) {
+			synchronized (DateManager.class) {
+				if (System.currentTimeMillis() >= tomorrowMillis) {
+					LocalDate now = LocalDate.now();
+					today = now;
+					tomorrowMillis = startOfNextDay(now);
+				}
+			}
+		}
+		return today;
+	}
+
 	/**
 	 * Turns a date String into a LocalDate object.
 	 * 
@@ -39,9 +106,37 @@ public class DateManager {
 		// Three possibilities: "On Hold", "Proofs", and an actual date.
 		if (dateStr.equals("On Hold")) return HOLD_DATE;
 		if (dateStr.equals("Proofs")) return PROOF_DATE;
+		
+		// Read the usual "MM/dd/yy" form directly, without a formatter, as long as it's a day that exists.
+		// Anything else goes through the formatter, so it's read (or rejected with a DateTimeParseException) the same as ever;
+		// such as "02/30/16", which the formatter's SMART resolving takes to be the last day of February.
+		if (dateStr.length() == 8 && dateStr.charAt(2) == '/' && dateStr.charAt(5) == '/') {
+			int month = twoDigits(dateStr, 0);
+			int day = twoDigits(dateStr, 3);
+			int year = twoDigits(dateStr, 6);
+			if (month >= 1 && month <= 12 && day >= 1 && year >= 0 && day <= Month.of(month).length(Year.isLeap(2000 + year))) {
+				return LocalDate.of(2000 + year, month, day);
+			}
+		}
 		return LocalDate.parse(dateStr, displayFmt);
 	}
 
+	/**
+	 * Reads two decimal digits out of a String.
+	 * 
+	 * @param str The String to read from.
+	 * @param index Where the two digits start.
+	 * @return The number, or -1 if they weren't both digits.
+	 */
+	private static int twoDigits(String str, int index) {
+		int tens = str.charAt(index) - '0';
+		int ones = str.charAt(index + 1) - '0';
+		if (tens < 0 || tens > 9 || ones < 0 || ones > 9) {
+			return -1;
+		}
+		return tens * 10 + ones;
+	}
+
 	/**
 	 * Turns a date String into a SQL Date object.
 	 * 
@@ -49,8 +144,6 @@ public class DateManager {
 	 * @return the equivalent SQL Date object.
 	 */
 	public static Date getSqlDate(String dateStr) {
-		logger.log(Level.CONFIG, "getSqlDate (DateManager) with a Date String of " + dateStr);
-		
 		return Date.valueOf(dateStr);
 	}
 
@@ -61,8 +154,30 @@ public class DateManager {
 	 * @return the equivalent SQL Date object.
 	 */
 	public static Date localDateToSqlDate(LocalDate lDate) {
-		String sDate = getSqlFormattedDate(lDate);
-		return getSqlDate(sDate);
+		return Date.valueOf(lDate);
+	}
+
+	/**
+	 * Turns an epoch day (the number of days since 01/01/1970) into a SQL Date object.
+	 * 
+	 * @param epochDay The epoch day of a particular date.
+	 * @return the equivalent SQL Date object.
+	 */
+	public static Date epochDayToSqlDate(long epochDay) {
+		return Date.valueOf(LocalDate.ofEpochDay(epochDay));
+	}
+
+	/**
+	 * Turns a SQL Date object into an epoch day (the number of days since 01/01/1970),
+	 * straight from its milliseconds.
+	 * 
+	 * @param sqlDate The SQL Date object to convert.
+	 * @return The epoch day of that date.
+	 */
+	public static long sqlDateToEpochDay(Date sqlDate) {
+		long millis = sqlDate.getTime();
+		// A SQL Date is midnight in the system time zone, so shift it to UTC before counting the days.
+		return Math.floorDiv(millis + TimeZone.getDefault().getOffset(millis), MILLIS_PER_DAY);
 	}
 
 	/**
@@ -72,7 +187,22 @@ public class DateManager {
 	 * @return Formatted String of LocalDate object.
 	 */
 	public static String getDisplayDate(LocalDate convertDate) {
-		return convertDate.format(displayFmt);
+		return getDisplayDate(convertDate.toEpochDay());
+	}
+
+	/**
+	 * Takes an epoch day (the number of days since 01/01/1970) and converts it into a more human-readable String.
+	 * Dates within a few years of today come from a table that was filled in ahead of time.
+	 * 
+	 * @param epochDay The epoch day to convert.
+	 * @return Formatted String of the date.
+	 */
+	public static String getDisplayDate(long epochDay) {
+		long index = epochDay - WINDOW_START;
+		if (index >= 0 && index < DISPLAY_DATES.length) {
+			return DISPLAY_DATES[(int) index];
+		}
+		return formatDisplayDate(LocalDate.ofEpochDay(epochDay));
 	}
 
 	/**
@@ -82,7 +212,7 @@ public class DateManager {
 	 * @return Formatted String of LocalDate object.
 	 */
 	public static String getDisplayDate(Date convertDate) {
-		return getDisplayDate(convertDate.toLocalDate());
+		return getDisplayDate(sqlDateToEpochDay(convertDate));
 	}
 
 	/**
@@ -92,7 +222,7 @@ public class DateManager {
 	 * @return A SQL-formatted String of the date.
 	 */
 	public static String getSqlFormattedDate(LocalDate convertDate) {
-		return convertDate.format(sqlFmt);
+		return convertDate.toString(); // Already "yyyy-MM-dd" for any four-digit year.
 	}
 
 	/**
@@ -101,7 +231,7 @@ public class DateManager {
 	 * @return Today's date as a human-readable String.
 	 */
 	public static String getToday() {
-		return getDisplayDate(today);
+		return getDisplayDate(getTodayDate());
 	}
 
 	/**
@@ -252,8 +382,7 @@ public class DateManager {
 	 * @return boolean: true if the Date is the special "On Hold" date; false if not.
 	 */
 	public static boolean isOnHoldDate (Date sqlDate) {
-		holdDateComparator = sqlDate.toLocalDate();
-		return holdDateComparator.equals(HOLD_DATE);
+		return sqlDate.toLocalDate().equals(HOLD_DATE);
 	}
 
 	/**
@@ -263,8 +392,79 @@ public class DateManager {
 	 * @return boolean: true if the Date is the special "Proofing" date; false if not.
 	 */
 	public static boolean isProofingDate (Date sqlDate) {
-		proofDateComparator = sqlDate.toLocalDate();
-		return proofDateComparator.equals(PROOF_DATE);
+		return sqlDate.toLocalDate().equals(PROOF_DATE);
+	}
+
+	/**
+	 * Checks to see if a given date is one of the special dates ("On Hold" or "Proofing")
+	 * that stand for a queue of Jobs rather than a real ship date.
+	 * Safe to call from any thread.
+	 * 
+	 * @param date The LocalDate object to check.
+	 * @return boolean: true if the date is one of the special dates; false if not.
+	 */
+	public static boolean isSentinelDate (LocalDate date) {
+		return date.equals(HOLD_DATE) || date.equals(PROOF_DATE);
+	}
+
+	/**
+	 * Simply checks to see if a given Date is a working day; that is, a day the plant works
+	 * (according to the default BusinessCalendar) that is not one of the special "On Hold" or "Proofing" dates.
+	 * 
+	 * @param date The LocalDate object to check.
+	 * @return boolean: true if Jobs can ship on that date; false if not.
+	 */
+	public static boolean isWorkingDay (LocalDate date) {
+		return BusinessCalendar.getDefault().isWorkingDay(date);
+	}
+
+	/**
+	 * Takes a single date and returns the next working day after it,
+	 * skipping weekends, holidays and plant closures.
+	 * 
+	 * @param date The LocalDate object to start from.
+	 * @return The next working day, or null if there isn't one before the special dates.
+	 */
+	public static LocalDate getNextWorkingDay (LocalDate date) {
+		if (!date.isBefore(PROOF_DATE)) {
+			return null; // Nothing comes after the special dates.
+		}
+		LocalDate next = BusinessCalendar.getDefault().getNextWorkingDay(date);
+		return next.isBefore(PROOF_DATE) ? next : null; // Nothing comes after the special dates.
+	}
+
+	/**
+	 * Takes a single date and returns the previous working day before it,
+	 * skipping weekends, holidays and plant closures.
+	 * 
+	 * @param date The LocalDate object to start from.
+	 * @return The previous working day.
+	 */
+	public static LocalDate getPreviousWorkingDay (LocalDate date) {
+		return BusinessCalendar.getDefault().getPreviousWorkingDay(date);
+	}
+
+	/**
+	 * Counts a number of working days forward (or backward) from a date,
+	 * such as to work out a ship date from a lead time.
+	 * 
+	 * @param date The LocalDate object to start from.
+	 * @param workingDays How many working days to count; negative to count backward.
+	 * @return The working day that was counted to.
+	 */
+	public static LocalDate addWorkingDays (LocalDate date, int workingDays) {
+		return BusinessCalendar.getDefault().addWorkingDays(date, workingDays);
+	}
+
+	/**
+	 * Counts the working days from one date up to (but not including) another.
+	 * 
+	 * @param startDate The first day to count. (inclusive)
+	 * @param endDate The day to stop at. (exclusive)
+	 * @return The number of working days between them.
+	 */
+	public static int getWorkingDaysBetween (LocalDate startDate, LocalDate endDate) {
+		return BusinessCalendar.getDefault().workingDaysBetween(startDate, endDate);
 	}
 
 	/**
@@ -50,4 +50,21 @@ public enum PrintingCompany {
 		}
 	}
 
+	/**
+	 * Takes a readable String value of the printing company (or its number) and converts it to an enum.
+	 *
+	 * @param x The human-readable String value of the printing company, such as "American Accents".
+	 * @return The enum of that printing company, or null if it isn't one.
+	 */
+	public static PrintingCompany getPrintingCompany (String x)
+	{
+		switch (x)
+		{
+			case "0": case "American Accents": case "AMERICAN_ACCENTS": return AMERICAN_ACCENTS;
+			case "1": case "American Cabin Supply": case "AMERICAN_CABIN_SUPPLY": return AMERICAN_CABIN_SUPPLY;
+			case "2": case "American Yacht Supply": case "AMERICAN_YACHT_SUPPLY": return AMERICAN_YACHT_SUPPLY;
+			default: return null;
+		}
+	}
+
 }
@@ -0,0 +1,297 @@
+package info.chrismcgee.sky.event;
+
+import java.sql.Date;
+
+import info.chrismcgee.sky.scheduling.beans.Job;
+import info.chrismcgee.sky.scheduling.beans.OrderDetail;
+
+/**
+ * The lifecycle events of Jobs and their OrderDetail items.
+ * These are posted by the DAO layer to the _Server Scoped_ JobEventStream
+ * whenever something changes in the database, so that caches and open UIs
+ * can react to the change instead of polling the database.
+ *
+ * Each event only carries the identifiers that a subscriber needs to find what changed,
+ * so it can be written to (and read back from) the event log for replay.
+ *
+ * @author Marketing
+ *
+ */
+public abstract class JobEvent {
+
+	// Separates the fields of an event in a line of the event log.
+	private static final char FIELD_SEPARATOR = '\t';
+	// Stands in for a missing value in a line of the event log.
+	private static final String NO_VALUE = "-";
+
+	private long sequence; // Assigned by the JobEventStream once the event is published.
+	private final long timestamp; // When the change happened, in milliseconds.
+	private final String jobId; // The order number of the affected Job. May be null if it was unknown.
+	private final Date shipDate; // The ship date of the affected Job. May be null if it was unknown.
+
+	/**
+	 * @param jobId The order number of the affected Job.
+	 * @param shipDate The ship date of the affected Job, if known.
+	 * @param timestamp When the change happened, in milliseconds.
+	 */
+	protected JobEvent(final String jobId, final Date shipDate, final long timestamp) {
+		this.jobId = jobId;
+		this.shipDate = shipDate;
+		this.timestamp = timestamp;
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	void setSequence(long sequence) {
+		this.sequence = sequence;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public String getJobId() {
+		return jobId;
+	}
+
+	public Date getShipDate() {
+		return shipDate;
+	}
+
+	/**
+	 * The id (primary key) of the affected OrderDetail item.
+	 * Job events simply return 0.
+	 *
+	 * @return The OrderDetail item's id.
+	 */
+	public int getOrderDetailId() {
+		return 0;
+	}
+
+	/**
+	 * Whether or not the affected Job or OrderDetail item is now completed.
+	 * Only meaningful for the "completed" events; everything else simply returns false.
+	 *
+	 * @return boolean True if it is now completed.
+	 */
+	public boolean isCompleted() {
+		return false;
+	}
+
+
+	public static final class JobCreatedEvent extends JobEvent {
+
+		public JobCreatedEvent(final Job job) {
+			this(job.getJobId(), job.getShipDate(), System.currentTimeMillis());
+		}
+
+		JobCreatedEvent(final String jobId, final Date shipDate, final long timestamp) {
+			super(jobId, shipDate, timestamp);
+		}
+	}
+
+	public static final class JobUpdatedEvent extends JobEvent {
+
+		public JobUpdatedEvent(final Job job) {
+			this(job.getJobId(), job.getShipDate(), System.currentTimeMillis());
+		}
+
+		JobUpdatedEvent(final String jobId, final Date shipDate, final long timestamp) {
+			super(jobId, shipDate, timestamp);
+		}
+	}
+
+	public static final class JobCompletedEvent extends JobEvent {
+
+		private final boolean completed;
+
+		public JobCompletedEvent(final Job job) {
+			this(job.getJobId(), job.getShipDate(), System.currentTimeMillis(), job.getJobCompleted() != null);
+		}
+
+		JobCompletedEvent(final String jobId, final Date shipDate, final long timestamp, final boolean completed) {
+			super(jobId, shipDate, timestamp);
+			this.completed = completed;
+		}
+
+		@Override
+		public boolean isCompleted() {
+			return completed;
+		}
+	}
+
+	public static final class JobDeletedEvent extends JobEvent {
+
+		public JobDeletedEvent(final String jobId) {
+			this(jobId, null, System.currentTimeMillis());
+		}
+
+		JobDeletedEvent(final String jobId, final Date shipDate, final long timestamp) {
+			super(jobId, shipDate, timestamp);
+		}
+	}
+
+	public static final class OrderDetailCreatedEvent extends JobEvent {
+
+		private final int orderDetailId;
+
+		public OrderDetailCreatedEvent(final OrderDetail orderDetail) {
+			this(orderDetail.getOrderId(), null, System.currentTimeMillis(), orderDetail.getId());
+		}
+
+		OrderDetailCreatedEvent(final String jobId, final Date shipDate, final long timestamp, final int orderDetailId) {
+			super(jobId, shipDate, timestamp);
+			this.orderDetailId = orderDetailId;
+		}
+
+		@Override
+		public int getOrderDetailId() {
+			return orderDetailId;
+		}
+	}
+
+	public static final class OrderDetailUpdatedEvent extends JobEvent {
+
+		private final int orderDetailId;
+
+		public OrderDetailUpdatedEvent(final OrderDetail orderDetail) {
+			this(orderDetail.getOrderId(), null, System.currentTimeMillis(), orderDetail.getId());
+		}
+
+		OrderDetailUpdatedEvent(final String jobId, final Date shipDate, final long timestamp, final int orderDetailId) {
+			super(jobId, shipDate, timestamp);
+			this.orderDetailId = orderDetailId;
+		}
+
+		@Override
+		public int getOrderDetailId() {
+			return orderDetailId;
+		}
+	}
+
+	public static final class OrderDetailCompletedEvent extends JobEvent {
+
+		private final int orderDetailId;
+		private final boolean completed;
+
+		public OrderDetailCompletedEvent(final OrderDetail orderDetail) {
+			this(orderDetail.getOrderId(), null, System.currentTimeMillis(), orderDetail.getId(), orderDetail.getItemCompleted() != null);
+		}
+
+		OrderDetailCompletedEvent(final String jobId, final Date shipDate, final long timestamp, final int orderDetailId, final boolean completed) {
+			super(jobId, shipDate, timestamp);
+			this.orderDetailId = orderDetailId;
+			this.completed = completed;
+		}
+
+		@Override
+		public int getOrderDetailId() {
+			return orderDetailId;
+		}
+
+		@Override
+		public boolean isCompleted() {
+			return completed;
+		}
+	}
+
+	/**
+	 * Fired when one or more OrderDetail items are deleted.
+	 * When all of a Job's items are deleted at once, the OrderDetail id is 0.
+	 * When a single item is deleted by its id, the Job's order number is not known and is null.
+	 */
+	public static final class OrderDetailDeletedEvent extends JobEvent {
+
+		private final int orderDetailId;
+
+		public OrderDetailDeletedEvent(final String jobId, final int orderDetailId) {
+			this(jobId, null, System.currentTimeMillis(), orderDetailId);
+		}
+
+		OrderDetailDeletedEvent(final String jobId, final Date shipDate, final long timestamp, final int orderDetailId) {
+			super(jobId, shipDate, timestamp);
+			this.orderDetailId = orderDetailId;
+		}
+
+		@Override
+		public int getOrderDetailId() {
+			return orderDetailId;
+		}
+	}
+
+	/**
+	 * Fired by the JobEventStream itself when events had to be dropped because its ring buffer was full.
+	 * Nothing is known about what changed, so anything that keeps Jobs around has to throw all of them out.
+	 */
+	public static final class EventsDroppedEvent extends JobEvent {
+
+		public EventsDroppedEvent() {
+			this(null, null, System.currentTimeMillis());
+		}
+
+		EventsDroppedEvent(final String jobId, final Date shipDate, final long timestamp) {
+			super(jobId, shipDate, timestamp);
+		}
+	}
+
+
+	/**
+	 * Turns this event into a single line of text for the event log.
+	 *
+	 * @return The event as a tab-separated line (without the line break).
+	 */
+	String toLogLine() {
+		StringBuilder line = new StringBuilder(64);
+		line.append(sequence).append(FIELD_SEPARATOR)
+			.append(timestamp).append(FIELD_SEPARATOR)
+			.append(getClass().getSimpleName()).append(FIELD_SEPARATOR)
+			.append(jobId == null ? NO_VALUE : jobId).append(FIELD_SEPARATOR)
+			.append(shipDate == null ? NO_VALUE : shipDate.toString()).append(FIELD_SEPARATOR)
+			.append(getOrderDetailId()).append(FIELD_SEPARATOR)
+			.append(isCompleted() ? 1 : 0);
+		return line.toString();
+	}
+
+	/**
+	 * Reads an event back from a line of the event log.
+	 *
+	 * @param line A line that was written by toLogLine().
+	 * @return The event, or null if the line could not be understood.
+	 */
+	static JobEvent fromLogLine(String line) {
+		String[] fields = line.split(String.valueOf(FIELD_SEPARATOR));
+		if (fields.length != 7) {
+			return null; // Probably a partially-written line at the end of the log.
+		}
+
+		try {
+			long sequence = Long.parseLong(fields[0]);
+			long timestamp = Long.parseLong(fields[1]);
+			String jobId = NO_VALUE.equals(fields[3]) ? null : fields[3];
+			Date shipDate = NO_VALUE.equals(fields[4]) ? null : Date.valueOf(fields[4]);
+			int orderDetailId = Integer.parseInt(fields[5]);
+			boolean completed = "1".equals(fields[6]);
+
+			JobEvent event;
+			switch (fields[2]) {
+			case "JobCreatedEvent": event = new JobCreatedEvent(jobId, shipDate, timestamp); break;
+			case "JobUpdatedEvent": event = new JobUpdatedEvent(jobId, shipDate, timestamp); break;
+			case "JobCompletedEvent": event = new JobCompletedEvent(jobId, shipDate, timestamp, completed); break;
+			case "JobDeletedEvent": event = new JobDeletedEvent(jobId, shipDate, timestamp); break;
+			case "OrderDetailCreatedEvent": event = new OrderDetailCreatedEvent(jobId, shipDate, timestamp, orderDetailId); break;
+			case "OrderDetailUpdatedEvent": event = new OrderDetailUpdatedEvent(jobId, shipDate, timestamp, orderDetailId); break;
+			case "OrderDetailCompletedEvent": event = new OrderDetailCompletedEvent(jobId, shipDate, timestamp, orderDetailId, completed); break;
+			case "OrderDetailDeletedEvent": event = new OrderDetailDeletedEvent(jobId, shipDate, timestamp, orderDetailId); break;
+			case "EventsDroppedEvent": event = new EventsDroppedEvent(jobId, shipDate, timestamp); break;
+			default: return null;
+			}
+			event.setSequence(sequence);
+			return event;
+		} catch (IllegalArgumentException e) { // Covers NumberFormatException, too.
+			return null;
+		}
+	}
+
+}
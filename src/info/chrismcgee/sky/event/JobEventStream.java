@@ -0,0 +1,453 @@
+package info.chrismcgee.sky.event;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.gwt.thirdparty.guava.common.eventbus.EventBus;
+import com.google.gwt.thirdparty.guava.common.eventbus.SubscriberExceptionContext;
+import com.google.gwt.thirdparty.guava.common.eventbus.SubscriberExceptionHandler;
+
+/**
+ * The _Server Scoped_ stream of JobEvents.
+ * Unlike the UI Scoped SchedulingEventBus, there is only one of these for the whole application,
+ * so anything (caches, search indexes, push updates to other UIs) can subscribe to it.
+ *
+ * Publishing an event only puts it into a fixed-size ring buffer, so the DAO methods never wait on subscribers.
+ * A single dispatcher thread takes the events out of the ring buffer in order, appends them to a local
+ * append-only log (so they can be replayed later) and then posts them to the @Subscribe methods
+ * of the registered listeners.
+ *
+ * The log is split into segments named by the sequence number of their first event, such as "job-events.1025.log"
+ * beside the "data/job-events.log" it's set up as. Once a segment reaches about 16 MB (-Dsky.event.log.bytes)
+ * the next one is started, and only the newest 8 segments (-Dsky.event.log.segments) are kept,
+ * so the log can't grow without end and a replay only reads the segments it needs.
+ *
+ * Publishing never waits, either: if the dispatcher has fallen so far behind that the ring buffer is full,
+ * the event is dropped, and once the dispatcher catches up it posts (and logs) an EventsDroppedEvent in its place,
+ * so the subscribers know to throw out everything they have rather than miss a change.
+ *
+ * @author Marketing
+ *
+ */
+public class JobEventStream implements SubscriberExceptionHandler {
+
+	// For logging!
+	private final static Logger logger = Logger.getLogger(JobEventStream.class.getName());
+
+	// The number of events the ring buffer can hold before any more are dropped. Must be a power of 2.
+	static final int RING_SIZE = 1024;
+	private static final int RING_MASK = RING_SIZE - 1;
+	// Where the event log is kept, unless the "sky.event.log" system property says otherwise.
+	private static final String DEFAULT_LOG_PATH = "data/job-events.log";
+	// How much of the end of the log to read when looking for the last sequence number.
+	private static final int LOG_TAIL_BYTES = 4096;
+	// How big a segment of the log gets before the next one is started, and how many segments are kept.
+	private static final long DEFAULT_SEGMENT_BYTES = 16L << 20;
+	private static final int DEFAULT_SEGMENTS = 8;
+
+	// The single and only instance of the event stream; starts off as null.
+	private static JobEventStream instance = null;
+
+	private final EventBus eventBus = new EventBus(this);
+	private final File logFile; // Where the log is set up to be; its segments are named after it.
+	private final String segmentPrefix; // The start of a segment's name, such as "job-events."
+	private final String segmentSuffix; // The end of a segment's name, such as ".log"
+	private final long segmentBytes; // How big a segment gets before the next one is started.
+	private final int keptSegments; // How many segments are kept; the oldest are deleted.
+	// The segments of the log, by the sequence number of their first event. Only the dispatcher adds or removes any.
+	private final NavigableMap<Long, File> segments = new ConcurrentSkipListMap<Long, File>();
+
+	// The ring buffer itself, along with the sequence numbers of the next event to write and the next to dispatch.
+	private final JobEvent[] ring = new JobEvent[RING_SIZE];
+	private final Object ringLock = new Object();
+	private long writeSequence;
+	private long readSequence;
+	private long dropped; // How many events were dropped since the dispatcher last caught up.
+
+	private Thread dispatcher;
+	private volatile boolean running;
+	private Writer logWriter;
+	private FileOutputStream logStream;
+
+	/**
+	 * @param logFile Where the append-only log that all events are written to is kept, with the default segment sizes.
+	 */
+	JobEventStream(File logFile) {
+		this(logFile, DEFAULT_SEGMENT_BYTES, DEFAULT_SEGMENTS);
+	}
+
+	/**
+	 * @param logFile Where the append-only log that all events are written to is kept. Its segments go beside it.
+	 * @param segmentBytes How big a segment gets before the next one is started.
+	 * @param keptSegments How many segments are kept.
+	 */
+	JobEventStream(File logFile, long segmentBytes, int keptSegments) {
+		this.logFile = logFile.getAbsoluteFile();
+		String name = this.logFile.getName();
+		int dot = name.lastIndexOf('.');
+		segmentPrefix = (dot < 0 ? name : name.substring(0, dot)) + ".";
+		segmentSuffix = dot < 0 ? "" : name.substring(dot);
+		this.segmentBytes = segmentBytes;
+		this.keptSegments = Math.max(1, keptSegments);
+		findSegments();
+		// Carry on numbering from wherever the log left off.
+		writeSequence = readSequence = lastLoggedSequence() + 1;
+	}
+
+	/**
+	 * This static method gets a singleton instance of the JobEventStream,
+	 * starting its dispatcher thread the first time it's called.
+	 *
+	 * @return	JobEventStream
+	 */
+	public static synchronized JobEventStream getInstance() {
+
+		if (instance == null) {
+			instance = new JobEventStream(new File(System.getProperty("sky.event.log", DEFAULT_LOG_PATH)),
+					Long.getLong("sky.event.log.bytes", DEFAULT_SEGMENT_BYTES), Integer.getInteger("sky.event.log.segments", DEFAULT_SEGMENTS));
+			instance.start();
+		}
+		return instance;
+	}
+
+	public static void register(final Object listener) {
+		getInstance().eventBus.register(listener);
+	}
+
+	public static void unregister(final Object listener) {
+		getInstance().eventBus.unregister(listener);
+	}
+
+	public static void publish(final JobEvent event) {
+		getInstance().add(event);
+	}
+
+	/**
+	 * Stops the dispatcher thread once everything already published has been dispatched.
+	 * Meant to be called when the servlet is destroyed.
+	 */
+	public static synchronized void shutdown() {
+
+		if (instance != null) {
+			instance.stop();
+			instance = null;
+		}
+	}
+
+	/**
+	 * Puts an event into the ring buffer, without ever waiting. If the ring buffer is full,
+	 * the event is dropped, and an EventsDroppedEvent goes out once the dispatcher has caught up.
+	 *
+	 * @param event The event to publish.
+	 * @return True if the event was put into the ring buffer; false if it was dropped.
+	 */
+	boolean add(JobEvent event) {
+
+		synchronized (ringLock) {
+			if (writeSequence - readSequence >= RING_SIZE) { // The ring buffer is full.
+				if (dropped++ == 0) {
+					logger.log(Level.WARNING, "The job event dispatcher has fallen behind; dropping events until it catches up.");
+				}
+				return false;
+			}
+			event.setSequence(writeSequence);
+			ring[(int) (writeSequence & RING_MASK)] = event;
+			writeSequence++;
+			ringLock.notifyAll(); // Wake up the dispatcher.
+		}
+		return true;
+	}
+
+	void start() {
+
+		Map.Entry<Long, File> newest = segments.lastEntry();
+		synchronized (ringLock) {
+			openSegment(newest != null ? newest.getKey() : readSequence); // The first event that will be logged.
+		}
+
+		running = true;
+		dispatcher = new Thread(this::dispatchLoop, "job-event-dispatcher");
+		dispatcher.setDaemon(true);
+		dispatcher.start();
+	}
+
+	void stop() {
+
+		running = false;
+		synchronized (ringLock) {
+			ringLock.notifyAll();
+		}
+		try {
+			dispatcher.join(5000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (logWriter != null) {
+			try {
+				logWriter.close();
+			} catch (IOException e) {
+				logger.log(Level.WARNING, "Exception when trying to CLOSE the job event log.", e);
+			}
+		}
+	}
+
+	/**
+	 * The dispatcher thread's loop. Takes all available events out of the ring buffer at once,
+	 * logs them as one batch, then hands them to the subscribers in order.
+	 */
+	private void dispatchLoop() {
+
+		List<JobEvent> batch = new ArrayList<JobEvent>(RING_SIZE);
+
+		while (true) {
+			synchronized (ringLock) {
+				while (readSequence == writeSequence) { // Nothing to dispatch.
+					if (!running) {
+						return; // Only quit once everything has been dispatched.
+					}
+					try {
+						ringLock.wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				while (readSequence < writeSequence) {
+					int slot = (int) (readSequence & RING_MASK);
+					batch.add(ring[slot]);
+					ring[slot] = null; // Don't hang on to events that have been taken out.
+					readSequence++;
+				}
+				if (dropped > 0) {
+					// Goes after everything that made it in, since the dropped events came after those.
+					logger.log(Level.WARNING, "Dropped " + dropped + " job events; the subscribers will have to start afresh.");
+					JobEvent overflow = new JobEvent.EventsDroppedEvent();
+					overflow.setSequence(writeSequence++);
+					readSequence++;
+					batch.add(overflow);
+					dropped = 0;
+				}
+			}
+
+			appendToLog(batch);
+			for (JobEvent event : batch) {
+				eventBus.post(event);
+			}
+			batch.clear();
+		}
+	}
+
+	/**
+	 * Appends a batch of events to the log and forces them to disk.
+	 *
+	 * @param batch The events to append.
+	 */
+	private void appendToLog(List<JobEvent> batch) {
+
+		if (logWriter == null) {
+			return;
+		}
+		try {
+			if (logStream.getChannel().size() >= segmentBytes) {
+				roll(batch.get(0).getSequence());
+				if (logWriter == null) {
+					return;
+				}
+			}
+			for (JobEvent event : batch) {
+				logWriter.write(event.toLogLine());
+				logWriter.write('\n');
+			}
+			logWriter.flush();
+			logStream.getChannel().force(false);
+		} catch (IOException e) {
+			logger.log(Level.SEVERE, "Could not append " + batch.size() + " events to the job event log.", e);
+		}
+	}
+
+	/**
+	 * Opens a segment of the log to append to, making it if it isn't there yet.
+	 * If it can't be opened, events are still dispatched; they just can't be replayed.
+	 *
+	 * @param firstSequence The sequence number of the segment's first event.
+	 */
+	private void openSegment(long firstSequence) {
+
+		File segment = segments.getOrDefault(firstSequence, new File(logFile.getParentFile(), segmentPrefix + firstSequence + segmentSuffix));
+		try {
+			segment.getParentFile().mkdirs();
+			logStream = new FileOutputStream(segment, true);
+			logWriter = new OutputStreamWriter(logStream, StandardCharsets.UTF_8);
+			segments.put(firstSequence, segment);
+		} catch (IOException e) {
+			logStream = null;
+			logWriter = null;
+			logger.log(Level.SEVERE, "Could not open the job event log at " + segment, e);
+		}
+	}
+
+	/**
+	 * Closes the segment being written, starts the next one, and deletes the oldest segments past the ones that are kept.
+	 *
+	 * @param firstSequence The sequence number of the next segment's first event.
+	 */
+	private void roll(long firstSequence) {
+
+		try {
+			logWriter.close();
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Exception when trying to CLOSE a segment of the job event log.", e);
+		}
+		openSegment(firstSequence);
+		while (segments.size() > keptSegments) {
+			File oldest = segments.pollFirstEntry().getValue();
+			if (!oldest.delete()) {
+				logger.log(Level.WARNING, "Could not delete the old job event log segment " + oldest);
+			}
+		}
+	}
+
+	/**
+	 * Finds the segments that are already in the log's folder. A log from before the log was split into segments
+	 * becomes the first segment.
+	 */
+	private void findSegments() {
+
+		File[] files = logFile.getParentFile() == null ? null : logFile.getParentFile().listFiles();
+		for (File file : files == null ? new File[0] : files) {
+			String name = file.getName();
+			if (name.length() > segmentPrefix.length() + segmentSuffix.length()
+					&& name.startsWith(segmentPrefix) && name.endsWith(segmentSuffix)) {
+				String first = name.substring(segmentPrefix.length(), name.length() - segmentSuffix.length());
+				if (first.chars().allMatch(Character::isDigit)) {
+					segments.put(Long.parseLong(first), file);
+				}
+			}
+		}
+
+		if (logFile.isFile()) {
+			JobEvent first = null;
+			try (
+					BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(logFile), StandardCharsets.UTF_8));
+					){
+				String line;
+				while (first == null && (line = reader.readLine()) != null) {
+					first = JobEvent.fromLogLine(line);
+				}
+			} catch (IOException e) {
+				logger.log(Level.SEVERE, "Could not read the job event log " + logFile, e);
+				return;
+			}
+			File segment = new File(logFile.getParentFile(), segmentPrefix + (first == null ? 1 : first.getSequence()) + segmentSuffix);
+			if (first == null ? logFile.delete() : logFile.renameTo(segment)) {
+				if (first != null) {
+					segments.put(first.getSequence(), segment);
+				}
+			} else {
+				logger.log(Level.WARNING, "Could not turn the job event log " + logFile + " into a segment.");
+			}
+		}
+	}
+
+	/**
+	 * Reads events back out of the log, so a subscriber that missed them
+	 * (such as a cache that was just created) can catch up. Only the segment that the next event is in,
+	 * and the ones after it, are read.
+	 *
+	 * @param afterSequence Only events with a higher sequence number than this are returned.
+	 * @return A List of the logged events, in the order they were published. If some of the events that are wanted
+	 * were in segments that have since been deleted, the List starts with an EventsDroppedEvent in their place,
+	 * so the subscriber knows to start afresh.
+	 */
+	public List<JobEvent> replay(long afterSequence) {
+
+		List<JobEvent> events = new ArrayList<JobEvent>();
+		Map.Entry<Long, File> oldest = segments.firstEntry();
+		if (oldest == null) {
+			return events;
+		}
+		if (oldest.getKey() > afterSequence + 1) {
+			JobEvent lost = new JobEvent.EventsDroppedEvent();
+			lost.setSequence(oldest.getKey() - 1);
+			events.add(lost);
+		}
+
+		Long from = segments.floorKey(afterSequence + 1);
+		for (File segment : new ArrayList<File>((from == null ? segments : segments.tailMap(from, true)).values())) {
+			try (
+					BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(segment), StandardCharsets.UTF_8));
+					){
+				String line;
+				while ((line = reader.readLine()) != null) {
+					JobEvent event = JobEvent.fromLogLine(line);
+					if (event != null && event.getSequence() > afterSequence) {
+						events.add(event);
+					}
+				}
+			} catch (FileNotFoundException e) {
+				// Deleted since the replay started, so its events are gone; the ones after it are still wanted.
+				logger.log(Level.WARNING, "The job event log segment " + segment + " was deleted while it was being replayed.");
+			} catch (IOException e) {
+				logger.log(Level.SEVERE, "Could not read the job event log segment " + segment, e);
+			}
+		}
+		return events;
+	}
+
+	/**
+	 * Finds the sequence number of the last event in the log.
+	 *
+	 * @return The last logged sequence number, or 0 if there is no log yet.
+	 */
+	private long lastLoggedSequence() {
+
+		Map.Entry<Long, File> newest = segments.lastEntry();
+		if (newest == null) {
+			return 0;
+		}
+
+		// Only the tail end of the newest segment needs to be read, no matter how long the log has grown.
+		try (
+				RandomAccessFile file = new RandomAccessFile(newest.getValue(), "r");
+				){
+			long start = Math.max(0, file.length() - LOG_TAIL_BYTES);
+			byte[] tail = new byte[(int) (file.length() - start)];
+			file.seek(start);
+			file.readFully(tail);
+
+			String[] lines = new String(tail, StandardCharsets.UTF_8).split("\n");
+			for (int i = lines.length - 1; i >= 0; i--) {
+				JobEvent event = JobEvent.fromLogLine(lines[i]);
+				if (event != null) {
+					return event.getSequence();
+				}
+			}
+		} catch (IOException e) {
+			logger.log(Level.SEVERE, "Could not read the end of the job event log.", e);
+		}
+		return newest.getKey() - 1; // Nothing has been written to it yet.
+	}
+
+	@Override
+	public void handleException(final Throwable exception,
+			final SubscriberExceptionContext context) {
+
+		logger.log(Level.SEVERE, "Subscriber " + context.getSubscriber() + " failed to handle " + context.getEvent(), exception);
+	}
+
+}
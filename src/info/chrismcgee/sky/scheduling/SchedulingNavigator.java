@@ -13,12 +13,14 @@ import info.chrismcgee.sky.event.SchedulingEvent.CloseOpenWindowsEvent;
 import info.chrismcgee.sky.event.SchedulingEvent.PostViewChangeEvent;
 import info.chrismcgee.sky.event.SchedulingEventBus;
 import info.chrismcgee.sky.scheduling.ui.views.ViewType;
+import info.chrismcgee.sky.scheduling.util.SessionSizeReport;
 
 @SuppressWarnings("serial")
 public class SchedulingNavigator extends Navigator {
 	
 	private static final ViewType ERROR_VIEW = ViewType.HOMEVIEW;
 	private ViewProvider errorViewProvider;
+	private final ViewCache viewCache = new ViewCache(); // This UI's stateful views, kept between visits.
 
 	public SchedulingNavigator(final ComponentContainer container) {
 		
@@ -55,6 +57,10 @@ public class SchedulingNavigator extends Navigator {
 				SchedulingEventBus.post(new PostViewChangeEvent(view));
 				SchedulingEventBus.post(new BrowserResizeEvent());
 				SchedulingEventBus.post(new CloseOpenWindowsEvent());
+
+				if (SessionSizeReport.isEnabled()) {
+					SessionSizeReport.log(getUI().getSession()); // How big the session is now, for sizing the server.
+				}
 			}
 		});
 	}
@@ -65,20 +71,18 @@ public class SchedulingNavigator extends Navigator {
 			ViewProvider viewProvider = new ClassBasedViewProvider(
 					viewType.getViewName(), viewType.getViewClass()) {
 				
-				// This field caches an already initialized view instance if the
-				// view should be cached (stateful views).
-				private View cachedInstance;
-				
 				@Override
 				public View getView(final String viewName) {
 					View result = null;
 					if (viewType.getViewName().equals(viewName)) {
 						if (viewType.isStateful()) {
-							// Stateful views get lazily instantiated
-							if (cachedInstance == null) {
-								cachedInstance = super.getView(viewType.getViewName());
+							// Stateful views are lazily instantiated, and then kept
+							// for as long as the view cache's policy allows.
+							result = viewCache.get(viewName);
+							if (result == null) {
+								result = super.getView(viewType.getViewName());
+								viewCache.put(viewName, result);
 							}
-							result = cachedInstance;
 						} else {
 							// Non-stateful views get instantiated every time
 							// they're navigated to
@@ -3,6 +3,7 @@ package info.chrismcgee.sky.scheduling;
 import java.util.Locale;
 import java.util.logging.Logger;
 
+import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 
 import com.google.gwt.thirdparty.guava.common.eventbus.Subscribe;
@@ -17,14 +18,20 @@ import com.vaadin.server.VaadinSession;
 import com.vaadin.ui.UI;
 
 import info.chrismcgee.dbutil.ConnectionManager;
+import info.chrismcgee.sky.event.JobEventStream;
 import info.chrismcgee.sky.event.SchedulingEvent.BrowserResizeEvent;
 import info.chrismcgee.sky.event.SchedulingEventBus;
+import info.chrismcgee.sky.scheduling.export.ExportRequestHandler;
+import info.chrismcgee.sky.scheduling.thumbnail.ThumbnailRequestHandler;
 import info.chrismcgee.sky.scheduling.ui.views.login.LoginBox;
 import info.chrismcgee.sky.scheduling.ui.views.login.LoginEvent;
 import info.chrismcgee.sky.scheduling.util.CurrentUser;
 import info.chrismcgee.sky.scheduling.util.MyTheme;
 import info.chrismcgee.sky.scheduling.util.event.LogoutEvent;
 import info.chrismcgee.sky.scheduling.util.event.NavigationEvent;
+import info.chrismcgee.sky.tables.ChangePoller;
+import info.chrismcgee.sky.tables.JobArchive;
+import info.chrismcgee.sky.tables.OfflineSnapshot;
 
 @SuppressWarnings("serial")
 @Theme("scheduling")
@@ -69,7 +76,6 @@ public class SchedulingUI extends UI {
 	public void userLoggedIn(LoginEvent event) {
 		
 		CurrentUser.set(event.getUser());
-		ConnectionManager.getInstance().close();
 		setContent(new MainView());
 	}
 	
@@ -99,6 +105,34 @@ public class SchedulingUI extends UI {
 	@WebServlet(value = "/*", asyncSupported = true)
 	@VaadinServletConfiguration(productionMode = false, ui = SchedulingUI.class)
 	public static class Servlet extends VaadinServlet {
+
+		@Override
+		protected void servletInitialized() throws ServletException {
+			super.servletInitialized();
+			// One poller for the whole server picks up changes made outside of this program.
+			ChangePoller.start();
+			// Completed jobs are moved out to the archive once they're old enough, if an archive has been set up.
+			JobArchive.start();
+			// This week and next are kept on the local disk, in case the database can't be reached.
+			OfflineSnapshot.start();
+			// Exports and artwork are streamed straight to the browser, outside of any UI.
+			getService().addSessionInitListener(event -> {
+				event.getSession().addRequestHandler(new ExportRequestHandler());
+				event.getSession().addRequestHandler(new ThumbnailRequestHandler());
+			});
+		}
+
+		@Override
+		public void destroy() {
+			ChangePoller.stop();
+			JobArchive.stop();
+			OfflineSnapshot.stop();
+			// Make sure every published JobEvent makes it into the event log before shutting down.
+			JobEventStream.shutdown();
+			// Only now that nothing else will be reading or writing, close every pooled connection.
+			ConnectionManager.getInstance().close();
+			super.destroy();
+		}
 	}
 	
 }
\ No newline at end of file
@@ -0,0 +1,136 @@
+package info.chrismcgee.sky.scheduling;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vaadin.navigator.View;
+
+/**
+ * @author Marketing
+ *
+ * Keeps the stateful views of one UI around after the user navigates away from them,
+ * so going back to one (such as In Production) is instant and finds it the way it was left.
+ * Each view's enter() is still called every time it's shown, which is where it brings itself up to date.
+ *
+ * How many are kept is set with -Dsky.views.policy:
+ * <ul>
+ * <li>"none": nothing is kept; every view is made anew each time it's navigated to.</li>
+ * <li>"recent": only the -Dsky.views.keep (3, by default) most recently shown views are kept.</li>
+ * <li>"soft" (the default): the most recent ones are kept, and the ones pushed out are kept as well,
+ * but only for as long as the heap has room for them.</li>
+ * </ul>
+ * Views can only ever be shown in one UI at a time, so each UI (browser tab) has its own cache.
+ */
+public class ViewCache implements Serializable {
+
+	/**
+	 * Serialization!
+	 */
+	private static final long serialVersionUID = 3318870572206439217L;
+
+	private final static Logger logger = Logger.getLogger(ViewCache.class.getName()); // Logging!
+
+	/**
+	 * How the views are kept.
+	 */
+	public enum Policy {
+		NONE, RECENT, SOFT;
+	}
+
+	private final Policy policy;
+	private final int keep;
+	private final LinkedHashMap<String, View> recent; // The most recently shown views, by name; the least recent first.
+	// The views pushed out of the recent ones, which the garbage collector may take back. Never passivated.
+	private transient Map<String, SoftReference<View>> pushedOut = new HashMap<String, SoftReference<View>>();
+
+	/**
+	 * Makes a cache with the policy the server was started with.
+	 */
+	public ViewCache() {
+		this(getConfiguredPolicy(), Integer.getInteger("sky.views.keep", 3));
+	}
+
+	/**
+	 * @param policy How the views are kept.
+	 * @param keep How many of the most recently shown views are always kept (unless the policy is NONE).
+	 */
+	public ViewCache(Policy policy, int keep) {
+		this.policy = policy;
+		this.keep = Math.max(1, keep);
+		this.recent = new LinkedHashMap<String, View>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, View> eldest) {
+				if (size() <= ViewCache.this.keep) {
+					return false;
+				}
+				if (ViewCache.this.policy == Policy.SOFT) {
+					pushedOut.put(eldest.getKey(), new SoftReference<View>(eldest.getValue()));
+				}
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Reads the policy from -Dsky.views.policy, falling back to SOFT.
+	 */
+	private static Policy getConfiguredPolicy() {
+		String name = System.getProperty("sky.views.policy", Policy.SOFT.name());
+		try {
+			return Policy.valueOf(name.trim().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			logger.log(Level.WARNING, "Unknown view cache policy \"" + name + "\"; using " + Policy.SOFT + ".");
+			return Policy.SOFT;
+		}
+	}
+
+	/**
+	 * Gets a view that's been kept.
+	 *
+	 * @param viewName The name of the view.
+	 * @return The view, or null if it was never kept or has since been dropped.
+	 */
+	public synchronized View get(String viewName) {
+
+		View view = recent.get(viewName);
+		if (view == null) {
+			SoftReference<View> reference = pushedOut.remove(viewName);
+			view = reference == null ? null : reference.get();
+			if (view != null) {
+				recent.put(viewName, view); // It's the most recent one again.
+			}
+		}
+		return view;
+	}
+
+	/**
+	 * Keeps a view that was just made, if the policy keeps anything at all.
+	 *
+	 * @param viewName The name of the view.
+	 * @param view The view.
+	 */
+	public synchronized void put(String viewName, View view) {
+
+		if (policy == Policy.NONE) {
+			return;
+		}
+		pushedOut.remove(viewName);
+		recent.put(viewName, view);
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		pushedOut = new HashMap<String, SoftReference<View>>();
+	}
+
+}
@@ -0,0 +1,357 @@
+package info.chrismcgee.sky.scheduling.beans;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import info.chrismcgee.sky.enums.PrintType;
+import info.chrismcgee.sky.enums.PrintingCompany;
+
+/**
+ * @author Marketing
+ *
+ * A compact binary format for Job and OrderDetail beans, used by their writeExternal() and readExternal()
+ * (so Vaadin's session serialization gets it for free) and by anything that wants to cache them as bytes.
+ *
+ * It's a lot smaller and quicker than default Java serialization, which writes out the class description
+ * of every Timestamp, Date and enum along with the values:
+ *   - Numbers are varints (seven bits a byte), zig-zagged when they can be negative.
+ *   - The ship date is an epoch day, and every other Timestamp of a Job (and its items) is written
+ *     as how far it is from the ship date, which is usually only a few bytes.
+ *   - PrintType and PrintingCompany are written as their numbers from the enums' own dictionaries.
+ *   - Nulls and booleans are bits in a flags byte at the start of each bean.
+ *   - The text values that come up over and over (customer names, product ids and details) are written out
+ *     the first time, and only referred to by number after that.
+ *
+ * A BeanCodec remembers those texts, so use one codec for one stream, written and read in the same order.
+ */
+public final class BeanCodec {
+
+	public static final int VERSION = 1; // Written at the start of every writeJobs(), and every Externalized bean.
+
+	// The flags of a Job.
+	private static final int HAS_SHIP_DATE = 1;
+	private static final int HAS_PROOF_SPEC_DATE = 1 << 1;
+	private static final int HAS_JOB_COMPLETED = 1 << 2;
+	private static final int OVERRUNS = 1 << 3;
+	private static final int TREE_EXPANDED = 1 << 4;
+	private static final int HAS_ITEMS = 1 << 5;
+
+	// The flags of an OrderDetail.
+	private static final int SAME_ORDER_ID = 1; // Its orderId is its Job's jobId, so it isn't written again.
+	private static final int HAS_ITEM_COMPLETED = 1 << 1;
+	private static final int HAS_PROOF_DATE = 1 << 2;
+
+	// The texts that have been written (or read) so far, so each is only written out once.
+	private final Map<String, Integer> written = new HashMap<String, Integer>();
+	private final List<String> read = new ArrayList<String>();
+
+	/**
+	 * Writes a List of Jobs, along with all of their items.
+	 *
+	 * @param out Where to write them.
+	 * @param jobs The Jobs.
+	 * @throws IOException
+	 */
+	public void writeJobs(DataOutput out, List<Job> jobs) throws IOException {
+
+		out.writeByte(VERSION);
+		writeVarLong(out, jobs.size());
+		for (Job job : jobs) {
+			writeJob(out, job);
+		}
+	}
+
+	/**
+	 * Reads a List of Jobs that was written by writeJobs().
+	 *
+	 * @param in Where to read them from.
+	 * @return A new List of new Job beans.
+	 * @throws IOException If it isn't a List of Jobs, or it's from a newer version.
+	 */
+	public List<Job> readJobs(DataInput in) throws IOException {
+
+		checkVersion(in);
+		int count = (int) readVarLong(in);
+		List<Job> jobs = new ArrayList<Job>(count);
+		for (int i = 0; i < count; i++) {
+			Job job = new Job();
+			readJob(in, job);
+			jobs.add(job);
+		}
+		return jobs;
+	}
+
+	/**
+	 * Writes a Job, along with all of its items.
+	 *
+	 * @param out Where to write it.
+	 * @param job The Job.
+	 * @throws IOException
+	 */
+	public void writeJob(DataOutput out, Job job) throws IOException {
+
+		Date shipDate = job.getShipDate();
+		long base = shipDate == null ? 0 : shipDate.getTime(); // What the other Timestamps are written relative to.
+		List<OrderDetail> items = job.getOrderDetailList();
+
+		int flags = (shipDate != null ? HAS_SHIP_DATE : 0)
+				| (job.getProofSpecDate() != null ? HAS_PROOF_SPEC_DATE : 0)
+				| (job.getJobCompleted() != null ? HAS_JOB_COMPLETED : 0)
+				| (job.isOverruns() ? OVERRUNS : 0)
+				| (job.isTreeExpanded() ? TREE_EXPANDED : 0)
+				| (items != null ? HAS_ITEMS : 0);
+		out.writeByte(flags);
+		if (shipDate != null) {
+			writeVarLong(out, zigZag(shipDate.toLocalDate().toEpochDay()));
+		}
+		writeString(out, job.getJobId(), false);
+		writeString(out, job.getCustomerName(), true);
+		writeString(out, job.getCustomerPO(), false);
+		if (job.getProofSpecDate() != null) {
+			writeTimestamp(out, job.getProofSpecDate(), base);
+		}
+		if (job.getJobCompleted() != null) {
+			writeTimestamp(out, job.getJobCompleted(), base);
+		}
+		writeVarLong(out, job.getPrintingCompany() == null ? 0 : job.getPrintingCompany().getValue() + 1);
+		if (items != null) {
+			writeVarLong(out, items.size());
+			for (OrderDetail detail : items) {
+				writeOrderDetail(out, detail, job.getJobId(), base);
+			}
+		}
+	}
+
+	/**
+	 * Reads a Job that was written by writeJob() into a bean.
+	 *
+	 * @param in Where to read it from.
+	 * @param job The (usually new) Job bean to fill in.
+	 * @throws IOException
+	 */
+	public void readJob(DataInput in, Job job) throws IOException {
+
+		int flags = in.readUnsignedByte();
+		long base = 0;
+		if ((flags & HAS_SHIP_DATE) != 0) {
+			Date shipDate = Date.valueOf(LocalDate.ofEpochDay(unZigZag(readVarLong(in))));
+			job.setShipDate(shipDate);
+			base = shipDate.getTime();
+		} else {
+			job.setShipDate(null);
+		}
+		job.setJobId(readString(in, false));
+		job.setCustomerName(readString(in, true));
+		job.setCustomerPO(readString(in, false));
+		job.setProofSpecDate((flags & HAS_PROOF_SPEC_DATE) != 0 ? readTimestamp(in, base) : null);
+		job.setJobCompleted((flags & HAS_JOB_COMPLETED) != 0 ? readTimestamp(in, base) : null);
+		int company = (int) readVarLong(in);
+		job.setPrintingCompany(company == 0 ? null : PrintingCompany.getPrintingCompany(company - 1));
+		job.setOverruns((flags & OVERRUNS) != 0);
+		job.setTreeExpanded((flags & TREE_EXPANDED) != 0);
+		if ((flags & HAS_ITEMS) != 0) {
+			int count = (int) readVarLong(in);
+			List<OrderDetail> items = new ArrayList<OrderDetail>(count);
+			for (int i = 0; i < count; i++) {
+				OrderDetail detail = new OrderDetail();
+				readOrderDetail(in, detail, job.getJobId(), base);
+				items.add(detail);
+			}
+			job.setOrderDetailList(items);
+		} else {
+			job.setOrderDetailList(null);
+		}
+	}
+
+	/**
+	 * Writes an item on its own, away from its Job.
+	 *
+	 * @param out Where to write it.
+	 * @param detail The item.
+	 * @throws IOException
+	 */
+	public void writeOrderDetail(DataOutput out, OrderDetail detail) throws IOException {
+		writeOrderDetail(out, detail, null, 0);
+	}
+
+	/**
+	 * Reads an item that was written by writeOrderDetail() into a bean.
+	 *
+	 * @param in Where to read it from.
+	 * @param detail The (usually new) OrderDetail bean to fill in.
+	 * @throws IOException
+	 */
+	public void readOrderDetail(DataInput in, OrderDetail detail) throws IOException {
+		readOrderDetail(in, detail, null, 0);
+	}
+
+	/**
+	 * @param jobId The jobId of the item's Job, or null if it's being written on its own.
+	 * @param base What its Timestamps are written relative to.
+	 */
+	private void writeOrderDetail(DataOutput out, OrderDetail detail, String jobId, long base) throws IOException {
+
+		boolean sameOrderId = jobId != null && jobId.equals(detail.getOrderId());
+		int flags = (sameOrderId ? SAME_ORDER_ID : 0)
+				| (detail.getItemCompleted() != null ? HAS_ITEM_COMPLETED : 0)
+				| (detail.getProofDate() != null ? HAS_PROOF_DATE : 0);
+		out.writeByte(flags);
+		writeVarLong(out, zigZag(detail.getId()));
+		if (!sameOrderId) {
+			writeString(out, detail.getOrderId(), false);
+		}
+		writeString(out, detail.getProductId(), true);
+		writeString(out, detail.getProductDetail(), true);
+		writeVarLong(out, detail.getPrintType() == null ? 0 : PrintType.getIntValue(detail.getPrintType()) + 1);
+		writeVarLong(out, zigZag(detail.getNumColors()));
+		writeVarLong(out, zigZag(detail.getQuantity()));
+		if (detail.getItemCompleted() != null) {
+			writeTimestamp(out, detail.getItemCompleted(), base);
+		}
+		writeVarLong(out, zigZag(detail.getProofNum()));
+		if (detail.getProofDate() != null) {
+			writeTimestamp(out, detail.getProofDate(), base);
+		}
+		writeString(out, detail.getThumbnail(), false);
+	}
+
+	private void readOrderDetail(DataInput in, OrderDetail detail, String jobId, long base) throws IOException {
+
+		int flags = in.readUnsignedByte();
+		detail.setId((int) unZigZag(readVarLong(in)));
+		detail.setOrderId((flags & SAME_ORDER_ID) != 0 ? jobId : readString(in, false));
+		detail.setProductId(readString(in, true));
+		detail.setProductDetail(readString(in, true));
+		int printType = (int) readVarLong(in);
+		detail.setPrintType(printType == 0 ? null : PrintType.getPrintType(printType - 1));
+		detail.setNumColors(unZigZag(readVarLong(in)));
+		detail.setQuantity(unZigZag(readVarLong(in)));
+		detail.setItemCompleted((flags & HAS_ITEM_COMPLETED) != 0 ? readTimestamp(in, base) : null);
+		detail.setProofNum((int) unZigZag(readVarLong(in)));
+		detail.setProofDate((flags & HAS_PROOF_DATE) != 0 ? readTimestamp(in, base) : null);
+		detail.setThumbnail(readString(in, false));
+	}
+
+	/**
+	 * Reads the version byte, as written by writeJobs() and the beans' writeExternal().
+	 *
+	 * @throws IOException If it's from a newer version.
+	 */
+	static void checkVersion(DataInput in) throws IOException {
+		int version = in.readUnsignedByte();
+		if (version != VERSION) {
+			throw new InvalidObjectException("Can't read version " + version + " of the bean format.");
+		}
+	}
+
+	/**
+	 * Nulls are a 0. A text that has been written before is its number plus 2.
+	 * Anything else is a 1, then its length, then its UTF-8 bytes; if it's one of the texts that come up
+	 * over and over, it's given the next number.
+	 *
+	 * @param repeated True if the same text is likely to come up again in the same stream.
+	 */
+	private void writeString(DataOutput out, String value, boolean repeated) throws IOException {
+
+		if (value == null) {
+			writeVarLong(out, 0);
+			return;
+		}
+		if (repeated) {
+			Integer number = written.get(value);
+			if (number != null) {
+				writeVarLong(out, number + 2);
+				return;
+			}
+			written.put(value, written.size());
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeVarLong(out, 1);
+		writeVarLong(out, bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * @param repeated True if it was written with repeated = true, so it's remembered for next time as well.
+	 */
+	private String readString(DataInput in, boolean repeated) throws IOException {
+
+		long tag = readVarLong(in);
+		if (tag == 0) {
+			return null;
+		}
+		if (tag >= 2) {
+			if (tag - 2 >= read.size()) {
+				throw new InvalidObjectException("Unknown text number " + (tag - 2) + " in a bean.");
+			}
+			return read.get((int) (tag - 2));
+		}
+		byte[] bytes = new byte[(int) readVarLong(in)];
+		in.readFully(bytes);
+		String value = new String(bytes, StandardCharsets.UTF_8);
+		if (repeated) {
+			read.add(value);
+		}
+		return value;
+	}
+
+	/**
+	 * The distance from the base in milliseconds (zig-zagged, since it can be before it),
+	 * then whatever nanoseconds are left over past the millisecond, which is nearly always 0.
+	 */
+	private static void writeTimestamp(DataOutput out, Timestamp value, long base) throws IOException {
+		writeVarLong(out, zigZag(value.getTime() - base));
+		writeVarLong(out, value.getNanos() % 1000000);
+	}
+
+	private static Timestamp readTimestamp(DataInput in, long base) throws IOException {
+		Timestamp value = new Timestamp(unZigZag(readVarLong(in)) + base);
+		value.setNanos(value.getNanos() + (int) readVarLong(in));
+		return value;
+	}
+
+	/**
+	 * Seven bits at a time, lowest first, with the top bit set on every byte but the last.
+	 */
+	static void writeVarLong(DataOutput out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	static long readVarLong(DataInput in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = in.readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new InvalidObjectException("Malformed number in a bean.");
+	}
+
+	/**
+	 * Folds negative numbers in between the positive ones, so small numbers of either sign stay short.
+	 */
+	private static long zigZag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private static long unZigZag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+}
@@ -1,13 +1,16 @@
 package info.chrismcgee.sky.scheduling.beans;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.sql.Date;
 import java.sql.Timestamp;
 import java.util.List;
 
 import info.chrismcgee.sky.enums.PrintingCompany;
 
-public class Job implements Serializable {
+public class Job implements Externalizable {
 
 	/**
 	 * Serialization
@@ -88,6 +91,21 @@ public class Job implements Serializable {
 		this.treeExpanded = treeExpanded;
 	}
 	
+	/**
+	 * Writes the Job along with all of its items, in the compact BeanCodec format instead of the default serialization.
+	 */
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		out.writeByte(BeanCodec.VERSION);
+		new BeanCodec().writeJob(out, this);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException {
+		BeanCodec.checkVersion(in);
+		new BeanCodec().readJob(in, this);
+	}
+	
 	// Override the toString() method to always return the job's customer name.
 	@Override
 	public String toString() {
@@ -1,11 +1,14 @@
 package info.chrismcgee.sky.scheduling.beans;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.sql.Timestamp;
 
 import info.chrismcgee.sky.enums.PrintType;
 
-public class OrderDetail implements Serializable {
+public class OrderDetail implements Externalizable {
 
 	/**
 	 * Serialization
@@ -93,6 +96,21 @@ public class OrderDetail implements Serializable {
 		this.thumbnail = thumbnail;
 	}
 	
+	/**
+	 * Writes the OrderDetail in the compact BeanCodec format instead of the default serialization.
+	 */
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		out.writeByte(BeanCodec.VERSION);
+		new BeanCodec().writeOrderDetail(out, this);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException {
+		BeanCodec.checkVersion(in);
+		new BeanCodec().readOrderDetail(in, this);
+	}
+	
 	// Override the toString() method to always return the product's Id (N10, ST16, etc.).
 	@Override
 	public String toString() {
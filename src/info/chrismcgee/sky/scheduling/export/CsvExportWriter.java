@@ -0,0 +1,73 @@
+package info.chrismcgee.sky.scheduling.export;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes an export as comma-separated values, quoting only the cells that need it.
+ *
+ * @author Marketing
+ *
+ */
+public class CsvExportWriter implements ExportWriter {
+
+	public static final String CONTENT_TYPE = "text/csv; charset=UTF-8"; // The MIME type of the file.
+	private final Writer out;
+
+	/**
+	 * @param stream Where the CSV text goes. It is not closed by finish().
+	 */
+	public CsvExportWriter(OutputStream stream) {
+		out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+	}
+
+	@Override
+	public String getContentType() {
+		return CONTENT_TYPE;
+	}
+
+	@Override
+	public String getExtension() {
+		return "csv";
+	}
+
+	@Override
+	public void writeRow(Object[] cells) throws IOException {
+		for (int i = 0; i < cells.length; i++) {
+			if (i > 0) {
+				out.write(',');
+			}
+			if (cells[i] == null) {
+				continue;
+			}
+			String text = cells[i].toString();
+			if (text.indexOf(',') >= 0 || text.indexOf('"') >= 0 || text.indexOf('\n') >= 0 || text.indexOf('\r') >= 0) {
+				out.write('"');
+				out.write(text.replace("\"", "\"\""));
+				out.write('"');
+			} else {
+				out.write(text);
+			}
+		}
+		out.write("\r\n");
+	}
+
+	@Override
+	public void finish() throws IOException {
+		out.flush();
+	}
+
+	/**
+	 * A CSV file has no end marker, so the last row says that the rows above it aren't all of them.
+	 */
+	@Override
+	public void abort(String reason) throws IOException {
+		writeRow(new Object[] {"ERROR: " + reason + " This export is incomplete."});
+		out.flush();
+	}
+
+}
@@ -0,0 +1,144 @@
+package info.chrismcgee.sky.scheduling.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.http.HttpServletResponse;
+
+import com.vaadin.server.RequestHandler;
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.server.VaadinResponse;
+import com.vaadin.server.VaadinSession;
+
+import info.chrismcgee.sky.scheduling.util.CurrentUser;
+import info.chrismcgee.sky.tables.JobManager;
+
+/**
+ * Serves exports of every item that ships between two dates, as either CSV or Excel, at
+ * <code>export?from=yyyy-MM-dd&amp;to=yyyy-MM-dd&amp;format=csv|xlsx</code>.
+ *
+ * The rows are written to the response as they come off of the database cursor
+ * (see JobManager.streamJobsByDateRange()), so even a year's worth of jobs never sits in memory
+ * and the download starts right away. The session is only locked long enough to check who's logged in,
+ * so the user's screens stay usable while the file downloads.
+ *
+ * If the database fails partway through, the headers have long since gone out, so the file is ended
+ * in a way that can't pass for complete (see ExportWriter.abort()) and the response is aborted,
+ * so the browser reports the download as failed rather than saving a short file.
+ *
+ * @author Marketing
+ *
+ */
+public class ExportRequestHandler implements RequestHandler {
+
+	/**
+	 * Serialization!
+	 */
+	private static final long serialVersionUID = 4113508765201944357L;
+	private final static Logger logger = Logger.getLogger(ExportRequestHandler.class.getName()); // Logging!
+
+	public static final String PATH = "export"; // Where the exports are served, relative to the application.
+	private static final int MAX_DAYS = 366; // The longest range that can be exported at once.
+	// The columns of the export, in order.
+	private static final String[] COLUMNS = {"Ship Date", "Job #", "Customer", "Product", "Detail", "Print Type",
+			"Colors", "Quantity", "Total Imprints"};
+
+	/**
+	 * Builds the relative link to an export.
+	 *
+	 * @param from The first ship date. (inclusive)
+	 * @param to The last ship date. (inclusive)
+	 * @param format Either "csv" or "xlsx".
+	 * @return The link, relative to the application.
+	 */
+	public static String getLink(LocalDate from, LocalDate to, String format) {
+		return PATH + "?from=" + from + "&to=" + to + "&format=" + format;
+	}
+
+	@Override
+	public boolean handleRequest(VaadinSession session, VaadinRequest request, VaadinResponse response) throws IOException {
+
+		if (!("/" + PATH).equals(request.getPathInfo())) {
+			return false; // Not an export, so let Vaadin handle it.
+		}
+
+		boolean loggedIn;
+		session.lock();
+		try {
+			loggedIn = CurrentUser.isLoggedIn();
+		} finally {
+			session.unlock();
+		}
+		if (!loggedIn) {
+			response.sendError(HttpServletResponse.SC_FORBIDDEN, "Please log in first.");
+			return true;
+		}
+
+		LocalDate from;
+		LocalDate to;
+		try {
+			from = LocalDate.parse(request.getParameter("from"));
+			to = LocalDate.parse(request.getParameter("to"));
+		} catch (DateTimeParseException | NullPointerException e) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Both dates are needed, as yyyy-MM-dd.");
+			return true;
+		}
+		if (to.isBefore(from) || ChronoUnit.DAYS.between(from, to) >= MAX_DAYS) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "The range can be from 1 to " + MAX_DAYS + " days.");
+			return true;
+		}
+
+		String format = request.getParameter("format");
+		if (format == null) {
+			format = "csv";
+		}
+		if (!"csv".equals(format) && !"xlsx".equals(format)) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unknown format: " + format);
+			return true;
+		}
+		// The headers have to go out before the writer starts on the body.
+		response.setContentType("xlsx".equals(format) ? XlsxExportWriter.CONTENT_TYPE : CsvExportWriter.CONTENT_TYPE);
+		response.setHeader("Content-Disposition", "attachment; filename=\"jobs_" + from + "_" + to + "." + format + "\"");
+		response.setCacheTime(-1); // Never cache; the jobs change all day long.
+		OutputStream stream = response.getOutputStream();
+		ExportWriter writer = "xlsx".equals(format) ? new XlsxExportWriter(stream, from + " to " + to) : new CsvExportWriter(stream);
+
+		long start = System.currentTimeMillis();
+		writer.writeRow(COLUMNS);
+		Object[] cells = new Object[COLUMNS.length]; // Reused for every row.
+		boolean read = false;
+		try {
+			read = JobManager.streamJobsByDateRange(from, to, (job, detail) -> {
+				cells[0] = job.getShipDate() == null ? null : job.getShipDate().toLocalDate().toString();
+				cells[1] = job.getJobId();
+				cells[2] = job.getCustomerName();
+				cells[3] = detail.getProductId();
+				cells[4] = detail.getProductDetail();
+				cells[5] = detail.getPrintType() == null ? null : detail.getPrintType().getValue();
+				cells[6] = detail.getNumColors();
+				cells[7] = detail.getQuantity();
+				cells[8] = detail.getNumColors() * detail.getQuantity();
+				writer.writeRow(cells);
+			});
+		} catch (SQLException e) {
+			logger.log(Level.SEVERE, "Exception when trying to EXPORT the jobs from " + from + " to " + to, e);
+		}
+		if (!read) {
+			logger.log(Level.WARNING, "The export from " + from + " to " + to + " was cut short by a database error.");
+			writer.abort("The database could not be read.");
+			// Throwing once the body has started is the only way to abort the response, rather than end it normally.
+			throw new IOException("The export from " + from + " to " + to + " was cut short by a database error.");
+		}
+		writer.finish();
+		logger.log(Level.CONFIG, "Exported " + from + " to " + to + " as " + writer.getExtension()
+				+ " in " + (System.currentTimeMillis() - start) + " ms");
+		return true;
+	}
+
+}
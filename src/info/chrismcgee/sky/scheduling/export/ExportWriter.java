@@ -0,0 +1,49 @@
+package info.chrismcgee.sky.scheduling.export;
+
+import java.io.IOException;
+
+/**
+ * Writes rows of an export out to a stream as they are read from the database,
+ * so nothing has to hold the whole export in memory.
+ *
+ * @author Marketing
+ *
+ */
+public interface ExportWriter {
+
+	/**
+	 * @return The MIME type of the file this writer makes.
+	 */
+	String getContentType();
+
+	/**
+	 * @return The file name extension (without the dot) of the file this writer makes.
+	 */
+	String getExtension();
+
+	/**
+	 * Writes one row. The cells are either Strings or Numbers; null cells are left empty.
+	 *
+	 * @param cells The values of the row, in column order.
+	 * @throws IOException
+	 */
+	void writeRow(Object[] cells) throws IOException;
+
+	/**
+	 * Writes whatever the format needs after the last row and flushes everything out,
+	 * without closing the underlying stream.
+	 *
+	 * @throws IOException
+	 */
+	void finish() throws IOException;
+
+	/**
+	 * Ends an export that was cut short, so it can't be mistaken for a complete one,
+	 * and flushes out what there is, without closing the underlying stream.
+	 *
+	 * @param reason Why the export was cut short.
+	 * @throws IOException
+	 */
+	void abort(String reason) throws IOException;
+
+}
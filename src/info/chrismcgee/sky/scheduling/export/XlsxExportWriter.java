@@ -0,0 +1,154 @@
+package info.chrismcgee.sky.scheduling.export;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes an export as an Excel (.xlsx) workbook with a single sheet.
+ *
+ * An .xlsx file is just a zip of a few XML files, so rather than building the whole workbook in memory
+ * (as a spreadsheet library would), the small fixed parts are written up front and the sheet's rows
+ * are written straight into the zip as they arrive. Text is written inline in each cell,
+ * so there's no shared string table to hold on to either.
+ *
+ * @author Marketing
+ *
+ */
+public class XlsxExportWriter implements ExportWriter {
+
+	public static final String CONTENT_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"; // The MIME type of the file.
+	private static final String XML_HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+	private static final String MAIN_NS = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+	private static final String REL_NS = "http://schemas.openxmlformats.org/package/2006/relationships";
+	private static final String DOC_REL_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+
+	private final ZipOutputStream zip;
+	private final Writer out;
+
+	/**
+	 * @param stream Where the workbook goes. It is not closed by finish().
+	 * @param sheetName The name of the sheet.
+	 * @throws IOException
+	 */
+	public XlsxExportWriter(OutputStream stream, String sheetName) throws IOException {
+		zip = new ZipOutputStream(stream);
+		out = new BufferedWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8));
+
+		writeEntry("[Content_Types].xml", XML_HEADER
+				+ "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+				+ "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+				+ "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+				+ "<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>"
+				+ "<Override PartName=\"/xl/worksheets/sheet1.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>"
+				+ "</Types>");
+		writeEntry("_rels/.rels", XML_HEADER
+				+ "<Relationships xmlns=\"" + REL_NS + "\">"
+				+ "<Relationship Id=\"rId1\" Type=\"" + DOC_REL_NS + "/officeDocument\" Target=\"xl/workbook.xml\"/>"
+				+ "</Relationships>");
+		writeEntry("xl/workbook.xml", XML_HEADER
+				+ "<workbook xmlns=\"" + MAIN_NS + "\" xmlns:r=\"" + DOC_REL_NS + "\">"
+				+ "<sheets><sheet name=\"" + escape(sheetName) + "\" sheetId=\"1\" r:id=\"rId1\"/></sheets>"
+				+ "</workbook>");
+		writeEntry("xl/_rels/workbook.xml.rels", XML_HEADER
+				+ "<Relationships xmlns=\"" + REL_NS + "\">"
+				+ "<Relationship Id=\"rId1\" Type=\"" + DOC_REL_NS + "/worksheet\" Target=\"worksheets/sheet1.xml\"/>"
+				+ "</Relationships>");
+
+		// The sheet is left open for the rows.
+		zip.putNextEntry(new ZipEntry("xl/worksheets/sheet1.xml"));
+		out.write(XML_HEADER);
+		out.write("<worksheet xmlns=\"" + MAIN_NS + "\"><sheetData>");
+	}
+
+	private void writeEntry(String name, String content) throws IOException {
+		zip.putNextEntry(new ZipEntry(name));
+		out.write(content);
+		out.flush();
+		zip.closeEntry();
+	}
+
+	@Override
+	public String getContentType() {
+		return CONTENT_TYPE;
+	}
+
+	@Override
+	public String getExtension() {
+		return "xlsx";
+	}
+
+	@Override
+	public void writeRow(Object[] cells) throws IOException {
+		out.write("<row>");
+		for (Object cell : cells) {
+			if (cell == null) {
+				out.write("<c/>");
+			} else if (cell instanceof Number) {
+				out.write("<c><v>");
+				out.write(cell.toString());
+				out.write("</v></c>");
+			} else {
+				out.write("<c t=\"inlineStr\"><is><t>");
+				out.write(escape(cell.toString()));
+				out.write("</t></is></c>");
+			}
+		}
+		out.write("</row>");
+	}
+
+	@Override
+	public void finish() throws IOException {
+		out.write("</sheetData></worksheet>");
+		out.flush();
+		zip.closeEntry();
+		zip.finish(); // Writes the zip's directory without closing the response.
+		zip.flush();
+	}
+
+	/**
+	 * The sheet and the zip are left unfinished, so the file is refused as damaged rather than opened as complete.
+	 */
+	@Override
+	public void abort(String reason) throws IOException {
+		out.flush();
+		zip.flush();
+	}
+
+	/**
+	 * Escapes text for XML, dropping any control characters that XML can't hold at all.
+	 *
+	 * @param text The text to escape.
+	 * @return The escaped text.
+	 */
+	private static String escape(String text) {
+		StringBuilder escaped = null;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			String replacement = null;
+			switch (c) {
+			case '&': replacement = "&amp;"; break;
+			case '<': replacement = "&lt;"; break;
+			case '>': replacement = "&gt;"; break;
+			case '"': replacement = "&quot;"; break;
+			default:
+				if (c < 0x20 && c != '\t' && c != '\n' && c != '\r') {
+					replacement = "";
+				}
+			}
+			if (replacement != null && escaped == null) {
+				escaped = new StringBuilder(text.length() + 16).append(text, 0, i);
+			}
+			if (escaped != null) {
+				escaped.append(replacement != null ? replacement : String.valueOf(c));
+			}
+		}
+		return escaped == null ? text : escaped.toString();
+	}
+
+}
@@ -0,0 +1,48 @@
+package info.chrismcgee.sky.scheduling.importer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits comma-separated lines. Fields may be wrapped in double quotes (with doubled quotes inside them),
+ * but a field can't run over more than one line.
+ *
+ * @author Marketing
+ *
+ */
+public class CsvRecordFormat implements RecordFormat {
+
+	@Override
+	public String[] split(String line) {
+
+		List<String> fields = new ArrayList<String>(OrderImporter.COLUMNS);
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (quoted) {
+				if (c != '"') {
+					field.append(c);
+				} else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					field.append('"'); // A doubled quote is just a quote.
+					i++;
+				} else {
+					quoted = false;
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				fields.add(field.toString().trim());
+				field.setLength(0);
+			} else {
+				field.append(c);
+			}
+		}
+		if (quoted) {
+			throw new IllegalArgumentException("A quote is never closed.");
+		}
+		fields.add(field.toString().trim());
+		return fields.toArray(new String[fields.size()]);
+	}
+
+}
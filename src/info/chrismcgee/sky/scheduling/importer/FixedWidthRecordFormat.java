@@ -0,0 +1,41 @@
+package info.chrismcgee.sky.scheduling.importer;
+
+/**
+ * Splits lines whose fields are each a set number of characters wide,
+ * as printed by the order entry system's report writer.
+ *
+ * @author Marketing
+ *
+ */
+public class FixedWidthRecordFormat implements RecordFormat {
+
+	// The widths the order entry system uses, in OrderImporter's column order.
+	public static final int[] DEFAULT_WIDTHS = {10, 10, 40, 20, 19, 25, 1, 20, 60, 15, 3, 9};
+
+	private final int[] widths;
+
+	public FixedWidthRecordFormat() {
+		this(DEFAULT_WIDTHS);
+	}
+
+	/**
+	 * @param widths How many characters wide each column is, in OrderImporter's column order.
+	 */
+	public FixedWidthRecordFormat(int[] widths) {
+		this.widths = widths.clone();
+	}
+
+	@Override
+	public String[] split(String line) {
+
+		String[] fields = new String[widths.length];
+		int start = 0;
+		for (int i = 0; i < widths.length; i++) {
+			int end = Math.min(start + widths[i], line.length());
+			fields[i] = start < end ? line.substring(start, end).trim() : ""; // Short lines just leave the last fields blank.
+			start = end;
+		}
+		return fields;
+	}
+
+}
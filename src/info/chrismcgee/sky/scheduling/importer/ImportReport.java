@@ -0,0 +1,159 @@
+package info.chrismcgee.sky.scheduling.importer;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps track of how an import is going: how far it's gotten, what went in,
+ * and which lines were rejected (and why).
+ * It's filled in by the OrderImporter as it goes, and can be read from any thread at any time.
+ *
+ * @author Marketing
+ *
+ */
+public class ImportReport implements Serializable {
+
+	/**
+	 * Serialization!
+	 */
+	private static final long serialVersionUID = 7316641807340920554L;
+
+	public static final int MAX_REJECTS = 1000; // Only this many rejects are kept; the rest are just counted.
+
+	private final String source; // Where the orders came from, such as the file name.
+	private final long started = System.currentTimeMillis();
+	private volatile long finished; // Zero until the import is done.
+	private volatile long linesRead;
+	private volatile long jobsImported;
+	private volatile long itemsImported;
+	private volatile long jobsSkipped; // Jobs that were already in the database.
+	private volatile long linesRejected;
+	private final List<Reject> rejects = new ArrayList<Reject>();
+
+	/**
+	 * @param source Where the orders came from, such as the file name.
+	 */
+	public ImportReport(String source) {
+		this.source = source;
+	}
+
+	void addLinesRead(long lines) {
+		linesRead += lines;
+	}
+
+	void addImported(long jobs, long items) {
+		jobsImported += jobs;
+		itemsImported += items;
+	}
+
+	void addSkipped(long jobs) {
+		jobsSkipped += jobs;
+	}
+
+	synchronized void reject(long line, String jobId, String reason) {
+		linesRejected++;
+		if (rejects.size() < MAX_REJECTS) {
+			rejects.add(new Reject(line, jobId, reason));
+		}
+	}
+
+	void finish() {
+		finished = System.currentTimeMillis();
+	}
+
+	public String getSource() {
+		return source;
+	}
+
+	public boolean isFinished() {
+		return finished != 0;
+	}
+
+	/**
+	 * @return How long the import took (or has taken so far), in milliseconds.
+	 */
+	public long getElapsedMillis() {
+		return (isFinished() ? finished : System.currentTimeMillis()) - started;
+	}
+
+	public long getLinesRead() {
+		return linesRead;
+	}
+
+	public long getJobsImported() {
+		return jobsImported;
+	}
+
+	public long getItemsImported() {
+		return itemsImported;
+	}
+
+	public long getJobsSkipped() {
+		return jobsSkipped;
+	}
+
+	public long getLinesRejected() {
+		return linesRejected;
+	}
+
+	/**
+	 * @return The first MAX_REJECTS rejected lines, in the order they were found.
+	 */
+	public synchronized List<Reject> getRejects() {
+		return Collections.unmodifiableList(new ArrayList<Reject>(rejects));
+	}
+
+	@Override
+	public String toString() {
+		return source + ": " + linesRead + " lines read, " + jobsImported + " jobs (" + itemsImported + " items) imported, "
+				+ jobsSkipped + " jobs already existed, " + linesRejected + " lines rejected in " + getElapsedMillis() + " ms";
+	}
+
+
+	/**
+	 * One line that couldn't be imported.
+	 */
+	public static final class Reject implements Serializable {
+
+		/**
+		 * Serialization!
+		 */
+		private static final long serialVersionUID = -2297005468526785165L;
+
+		private final long line;
+		private final String jobId;
+		private final String reason;
+
+		private Reject(long line, String jobId, String reason) {
+			this.line = line;
+			this.jobId = jobId;
+			this.reason = reason;
+		}
+
+		/**
+		 * @return The line number in the file, starting from 1.
+		 */
+		public long getLine() {
+			return line;
+		}
+
+		/**
+		 * @return The job number on the line, if it could be read.
+		 */
+		public String getJobId() {
+			return jobId;
+		}
+
+		public String getReason() {
+			return reason;
+		}
+
+		@Override
+		public String toString() {
+			return "Line " + line + (jobId == null || jobId.isEmpty() ? "" : " (" + jobId + ")") + ": " + reason;
+		}
+	}
+
+}
@@ -0,0 +1,459 @@
+package info.chrismcgee.sky.scheduling.importer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.temporal.ChronoField;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import info.chrismcgee.sky.components.DateManager;
+import info.chrismcgee.sky.enums.PrintType;
+import info.chrismcgee.sky.enums.PrintingCompany;
+import info.chrismcgee.sky.scheduling.beans.Job;
+import info.chrismcgee.sky.scheduling.beans.OrderDetail;
+import info.chrismcgee.sky.tables.JobManager;
+
+/**
+ * @author Marketing
+ *
+ * Imports the new orders from the order entry system's files (CSV or fixed-width), one line per item,
+ * with the job's details repeated on each of its lines. The columns are, in order:
+ * job number, ship date, customer name, customer PO, proof/spec date, printing company, overruns,
+ * product, product detail, print type, number of colors and quantity.
+ *
+ * The file is read a chunk of lines at a time, and each chunk is split, parsed and checked on its own thread,
+ * while this thread puts the finished chunks (in file order) together into Jobs and saves them a batch at a time.
+ * Each batch is checked against the job numbers already in the database (those Jobs are skipped, so the same file
+ * can safely be imported twice) and then saved in one transaction. Lines that can't be used are rejected,
+ * with the reason, in the ImportReport, and so is every other line of the same Job, so a Job never goes in
+ * with some of its items missing; the rest of the file still goes in.
+ * All of a Job's lines have to be next to each other in the file.
+ */
+public class OrderImporter {
+
+	private final static Logger logger = Logger.getLogger(OrderImporter.class.getName()); // Logging!
+
+	public static final int COLUMNS = 12; // How many fields each line has.
+	private static final int CHUNK_LINES = 1000; // How many lines each parsing task gets.
+	private static final int BATCH_JOBS = 500; // How many Jobs are saved in each transaction.
+	// Dates and times are either ISO ("2016-03-01 14:30") or the usual "MM/dd/yy" for ship dates.
+	private static final DateTimeFormatter TIMESTAMP_FMT = new DateTimeFormatterBuilder()
+			.appendPattern("yyyy-MM-dd[ HH:mm[:ss]]")
+			.parseDefaulting(ChronoField.HOUR_OF_DAY, 0)
+			.toFormatter();
+
+	// The threads that parse the chunks, one per core. Shared by every OrderImporter.
+	private final static int THREADS = Runtime.getRuntime().availableProcessors();
+	private final static ExecutorService executor = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "order-importer-" + count.incrementAndGet());
+			thread.setDaemon(true); // Never keep the servlet container from shutting down.
+			return thread;
+		}
+	});
+
+	private final RecordFormat format;
+	private final boolean header;
+
+	/**
+	 * @param format How to split each line into its fields.
+	 * @param header True if the first line of the file is column names rather than an item.
+	 */
+	public OrderImporter(RecordFormat format, boolean header) {
+		this.format = format;
+		this.header = header;
+	}
+
+	/**
+	 * Imports an order file.
+	 *
+	 * @param file The file, in UTF-8.
+	 * @param progress Gets the report after every batch (on this thread), or null.
+	 * @return The finished report.
+	 * @throws IOException If the file could not be read. Any batches before that have still been saved.
+	 */
+	public ImportReport importOrders(Path file, Consumer<ImportReport> progress) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			return importOrders(reader, file.getFileName().toString(), progress);
+		}
+	}
+
+	/**
+	 * Imports orders from a stream of lines.
+	 *
+	 * @param reader The lines. It is read to the end but not closed.
+	 * @param source Where the lines came from, for the report.
+	 * @param progress Gets the report after every batch (on this thread), or null.
+	 * @return The finished report.
+	 * @throws IOException If the lines could not be read. Any batches before that have still been saved.
+	 */
+	public ImportReport importOrders(BufferedReader reader, String source, Consumer<ImportReport> progress) throws IOException {
+
+		ImportReport report = new ImportReport(source);
+		Loader loader = new Loader(report, progress);
+		// The chunks being parsed, in file order. Only a couple per thread are let ahead of the loader,
+		// so a huge file never piles up in memory when the database is the slow part.
+		Deque<CompletableFuture<Row[]>> parsing = new ArrayDeque<CompletableFuture<Row[]>>();
+
+		long lineNumber = 0;
+		if (header && reader.readLine() != null) {
+			lineNumber++;
+		}
+
+		List<String> chunk = new ArrayList<String>(CHUNK_LINES);
+		String line;
+		while ((line = reader.readLine()) != null) {
+			chunk.add(line);
+			if (chunk.size() == CHUNK_LINES) {
+				parsing.addLast(parseLater(chunk, lineNumber + 1));
+				lineNumber += chunk.size();
+				chunk = new ArrayList<String>(CHUNK_LINES);
+				while (parsing.size() > THREADS * 2) {
+					loader.load(parsing.removeFirst().join());
+				}
+			}
+		}
+		if (!chunk.isEmpty()) {
+			parsing.addLast(parseLater(chunk, lineNumber + 1));
+		}
+		while (!parsing.isEmpty()) {
+			loader.load(parsing.removeFirst().join());
+		}
+		loader.flush();
+
+		report.finish();
+		logger.log(Level.INFO, report.toString());
+		if (progress != null) {
+			progress.accept(report);
+		}
+		return report;
+	}
+
+	/**
+	 * Starts parsing a chunk of lines on one of the importer threads.
+	 *
+	 * @param lines The lines.
+	 * @param firstLine The line number of the first one.
+	 * @return The parsed rows, in the same order (null for blank lines).
+	 */
+	private CompletableFuture<Row[]> parseLater(List<String> lines, long firstLine) {
+		return CompletableFuture.supplyAsync(() -> {
+			Row[] rows = new Row[lines.size()];
+			for (int i = 0; i < rows.length; i++) {
+				rows[i] = parse(lines.get(i), firstLine + i);
+			}
+			return rows;
+		}, executor);
+	}
+
+	/**
+	 * Parses and checks one line.
+	 *
+	 * @param line The line.
+	 * @param number Its line number.
+	 * @return The Row (with the reason it's no good, if it isn't), or null if the line is blank.
+	 */
+	private Row parse(String line, long number) {
+
+		if (line.trim().isEmpty()) {
+			return null;
+		}
+
+		String[] fields;
+		try {
+			fields = format.split(line);
+		} catch (IllegalArgumentException e) {
+			return new Row(number, null, e.getMessage());
+		}
+		String jobId = fields.length > 0 ? fields[0] : "";
+		if (fields.length < COLUMNS) {
+			return new Row(number, jobId, "Only " + fields.length + " of the " + COLUMNS + " fields are there.");
+		}
+		if (jobId.isEmpty()) {
+			return new Row(number, jobId, "There's no job number.");
+		}
+
+		Job job = new Job();
+		job.setJobId(jobId);
+		try {
+			job.setShipDate(Date.valueOf(parseShipDate(fields[1])));
+		} catch (DateTimeException e) {
+			return new Row(number, jobId, "\"" + fields[1] + "\" isn't a ship date.");
+		}
+		if (fields[2].isEmpty()) {
+			return new Row(number, jobId, "There's no customer name.");
+		}
+		job.setCustomerName(fields[2]);
+		job.setCustomerPO(fields[3]);
+		if (!fields[4].isEmpty()) {
+			try {
+				job.setProofSpecDate(Timestamp.valueOf(LocalDateTime.parse(fields[4], TIMESTAMP_FMT)));
+			} catch (DateTimeException e) {
+				return new Row(number, jobId, "\"" + fields[4] + "\" isn't a proof/spec date.");
+			}
+		}
+		job.setPrintingCompany(fields[5].isEmpty() ? PrintingCompany.AMERICAN_ACCENTS : PrintingCompany.getPrintingCompany(fields[5]));
+		if (job.getPrintingCompany() == null) {
+			return new Row(number, jobId, "\"" + fields[5] + "\" isn't a printing company.");
+		}
+		switch (fields[6]) {
+			case "": case "N": case "n": case "0": case "false": job.setOverruns(false); break;
+			case "Y": case "y": case "1": case "true": job.setOverruns(true); break;
+			default: return new Row(number, jobId, "\"" + fields[6] + "\" isn't a yes or no for overruns.");
+		}
+
+		OrderDetail item = new OrderDetail();
+		item.setOrderId(jobId);
+		if (fields[7].isEmpty()) {
+			return new Row(number, jobId, "There's no product.");
+		}
+		item.setProductId(fields[7]);
+		item.setProductDetail(fields[8]);
+		item.setPrintType(PrintType.getPrintType(fields[9]));
+		if (item.getPrintType() == null) {
+			return new Row(number, jobId, "\"" + fields[9] + "\" isn't a print type.");
+		}
+		try {
+			item.setNumColors(Long.parseLong(fields[10]));
+			item.setQuantity(Long.parseLong(fields[11]));
+		} catch (NumberFormatException e) {
+			return new Row(number, jobId, "The colors and quantity have to be whole numbers.");
+		}
+		if (item.getNumColors() < 0 || item.getQuantity() <= 0) {
+			return new Row(number, jobId, "The colors can't be negative and the quantity has to be more than 0.");
+		}
+
+		return new Row(number, job, item);
+	}
+
+	/**
+	 * Reads a ship date, which may be ISO ("2016-03-01"), "MM/dd/yy", "On Hold" or "Proofs".
+	 */
+	private static LocalDate parseShipDate(String text) {
+		if (text.indexOf('-') > 0) {
+			return LocalDate.parse(text);
+		}
+		return DateManager.getLocalDate(text);
+	}
+
+
+	/**
+	 * Puts the parsed rows together into Jobs and saves them a batch at a time.
+	 * Only ever used by the importing thread.
+	 */
+	private static final class Loader {
+
+		private final ImportReport report;
+		private final Consumer<ImportReport> progress;
+		private final Map<String, Job> batch = new LinkedHashMap<String, Job>(); // The Jobs waiting to be saved.
+		private final Map<String, Long> firstLines = new HashMap<String, Long>(); // The line each waiting Job started on.
+		private final Set<String> done = new HashSet<String>(); // Every job number that has already been saved or skipped.
+		private Job current; // The Job whose lines are being read.
+		private final List<Long> currentLines = new ArrayList<Long>(); // The lines of the current Job so far.
+		private String failedJobId; // The last Job that had a line rejected, so the rest of its lines are too.
+
+		private Loader(ImportReport report, Consumer<ImportReport> progress) {
+			this.report = report;
+			this.progress = progress;
+		}
+
+		/**
+		 * Adds a chunk of parsed rows to the batch, saving the batch whenever it fills up.
+		 */
+		private void load(Row[] rows) {
+
+			report.addLinesRead(rows.length);
+			for (Row row : rows) {
+				if (row == null) {
+					continue; // A blank line.
+				}
+				if (row.error != null) {
+					rejectJob(row.line, row.jobId, row.error);
+					continue;
+				}
+				if (row.jobId.equals(failedJobId)) {
+					report.reject(row.line, row.jobId, "Another line of this job was rejected.");
+					continue;
+				}
+
+				if (current != null && current.getJobId().equals(row.jobId)) {
+					// Another item of the same Job; its details have to match the first line's.
+					if (!Objects.equals(current.getShipDate(), row.job.getShipDate())
+							|| !Objects.equals(current.getCustomerName(), row.job.getCustomerName())) {
+						rejectJob(row.line, row.jobId, "The ship date or customer doesn't match the job's first line.");
+					} else {
+						current.getOrderDetailList().add(row.item);
+						currentLines.add(row.line);
+					}
+					continue;
+				}
+
+				// A new Job; the one before it is complete, so this is a safe place to save the batch.
+				if (batch.size() >= BATCH_JOBS) {
+					flush();
+				}
+				if (batch.containsKey(row.jobId) || done.contains(row.jobId)) {
+					report.reject(row.line, row.jobId, "This job's lines aren't all together in the file.");
+					continue;
+				}
+				current = row.job;
+				current.setOrderDetailList(new ArrayList<OrderDetail>());
+				current.getOrderDetailList().add(row.item);
+				currentLines.clear();
+				currentLines.add(row.line);
+				batch.put(row.jobId, current);
+				firstLines.put(row.jobId, row.line);
+			}
+		}
+
+		/**
+		 * Rejects a line, and with it the rest of its Job: the lines of it that were already read
+		 * (taking it back out of the batch), and the lines of it that are still to come.
+		 *
+		 * @param line The line number.
+		 * @param jobId The job number on the line, if it could be read.
+		 * @param reason Why the line is no good.
+		 */
+		private void rejectJob(long line, String jobId, String reason) {
+
+			report.reject(line, jobId, reason);
+			if (jobId == null || jobId.isEmpty()) {
+				return; // There's no telling which Job it belonged to.
+			}
+			if (current != null && current.getJobId().equals(jobId)) {
+				batch.remove(jobId);
+				firstLines.remove(jobId);
+				for (Long earlier : currentLines) {
+					report.reject(earlier, jobId, "Line " + line + " of this job was rejected.");
+				}
+				current = null;
+				currentLines.clear();
+			}
+			failedJobId = jobId;
+			done.add(jobId); // So any more of its lines further on are turned down too.
+		}
+
+		/**
+		 * Saves the waiting Jobs (except any that are already in the database), one transaction per yearly database.
+		 * The ones that went in are counted as imported, and the rest are rejected.
+		 */
+		private void flush() {
+
+			if (batch.isEmpty()) {
+				return;
+			}
+			done.addAll(batch.keySet());
+
+			try {
+				Set<String> existing = JobManager.getExistingJobIds(batch.keySet());
+				if (existing == null) {
+					rejectBatch("Could not check the database for this job.");
+					return;
+				}
+				batch.keySet().removeAll(existing);
+				report.addSkipped(existing.size());
+
+				List<Job> jobs = new ArrayList<Job>(batch.values());
+				Set<String> saved = jobs.isEmpty() ? Collections.<String>emptySet() : JobManager.insertBatch(jobs);
+				long items = 0;
+				for (String jobId : saved) {
+					items += batch.get(jobId).getOrderDetailList().size();
+				}
+				report.addImported(saved.size(), items);
+				if (saved.size() < jobs.size()) { // Some (or all) of them didn't go in, so reject just those.
+					batch.keySet().removeAll(saved);
+					rejectBatch("Could not save this job to the database.");
+					return;
+				}
+			} catch (SQLException e) {
+				logger.log(Level.SEVERE, "Exception when trying to SAVE a batch of " + batch.size() + " imported Jobs.", e);
+				rejectBatch("Could not save this job to the database.");
+				return;
+			} finally {
+				batch.clear();
+				firstLines.clear();
+				current = null;
+				currentLines.clear();
+			}
+
+			if (progress != null) {
+				progress.accept(report);
+			}
+		}
+
+		/**
+		 * Rejects every Job in the batch (once each, on its first line).
+		 */
+		private void rejectBatch(String reason) {
+			for (Map.Entry<String, Long> job : firstLines.entrySet()) {
+				if (batch.containsKey(job.getKey())) {
+					report.reject(job.getValue(), job.getKey(), reason);
+				}
+			}
+			if (progress != null) {
+				progress.accept(report);
+			}
+		}
+	}
+
+
+	/**
+	 * One parsed line: either a Job's details and one of its items, or the reason the line is no good.
+	 */
+	private static final class Row {
+
+		private final long line;
+		private final String jobId;
+		private final Job job;
+		private final OrderDetail item;
+		private final String error;
+
+		private Row(long line, Job job, OrderDetail item) {
+			this.line = line;
+			this.jobId = job.getJobId();
+			this.job = job;
+			this.item = item;
+			this.error = null;
+		}
+
+		private Row(long line, String jobId, String error) {
+			this.line = line;
+			this.jobId = jobId;
+			this.job = null;
+			this.item = null;
+			this.error = error;
+		}
+	}
+
+}
@@ -0,0 +1,20 @@
+package info.chrismcgee.sky.scheduling.importer;
+
+/**
+ * Splits one line of an order file into its fields.
+ *
+ * @author Marketing
+ *
+ */
+public interface RecordFormat {
+
+	/**
+	 * Splits a line into its fields, with the spaces around each one trimmed off.
+	 *
+	 * @param line One line of the file, without its line break.
+	 * @return The fields, in column order. There may be fewer than expected if the line is short.
+	 * @throws IllegalArgumentException If the line can't be split, such as a quote that's never closed.
+	 */
+	String[] split(String line);
+
+}
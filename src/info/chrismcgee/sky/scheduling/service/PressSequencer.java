@@ -0,0 +1,241 @@
+package info.chrismcgee.sky.scheduling.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import info.chrismcgee.sky.enums.PrintType;
+import info.chrismcgee.sky.scheduling.beans.Job;
+import info.chrismcgee.sky.scheduling.beans.OrderDetail;
+
+/**
+ * @author Marketing
+ *
+ * Works out the order to run a day's items on each press line (PrintType) so that as little time
+ * as possible goes into changeovers between them. Going from one item to the next costs some time for
+ * every color that has to be added or taken off the press, plus a fixed amount when the product changes.
+ *
+ * Finding the very best order is far too slow, so each line starts from a greedy order
+ * (always going to the cheapest next item) and then improves it with 2-opt
+ * (reversing a stretch of the order whenever that makes it cheaper) until it can't find anything better
+ * or runs out of time. The lines don't depend on each other, so they're all worked out at once.
+ */
+public class PressSequencer {
+
+	private final static Logger logger = Logger.getLogger(PressSequencer.class.getName()); // Logging!
+
+	// The default changeover costs, in minutes.
+	public static final int DEFAULT_COLOR_MINUTES = 10;
+	public static final int DEFAULT_PRODUCT_MINUTES = 15;
+
+	// The threads that sequence the lines, one per core. Shared by every PressSequencer.
+	private final static ExecutorService executor = Executors.newFixedThreadPool(
+			Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "press-sequencer-" + count.incrementAndGet());
+					thread.setDaemon(true); // Never keep the servlet container from shutting down.
+					return thread;
+				}
+			});
+
+	private final int colorMinutes; // The time it takes to add or take off one color.
+	private final int productMinutes; // The time it takes to change over to a different product.
+
+	public PressSequencer() {
+		this(DEFAULT_COLOR_MINUTES, DEFAULT_PRODUCT_MINUTES);
+	}
+
+	/**
+	 * @param colorMinutes The time it takes to add or take off one color.
+	 * @param productMinutes The time it takes to change over to a different product.
+	 */
+	public PressSequencer(int colorMinutes, int productMinutes) {
+		this.colorMinutes = colorMinutes;
+		this.productMinutes = productMinutes;
+	}
+
+	/**
+	 * Gets the time it takes to change the press over from one item to the next.
+	 *
+	 * @param from The item that was just run.
+	 * @param to The item that runs next.
+	 * @return The changeover time, in minutes.
+	 */
+	public int getChangeover(OrderDetail from, OrderDetail to) {
+		int minutes = (int) Math.abs(from.getNumColors() - to.getNumColors()) * colorMinutes;
+		if (!Objects.equals(from.getProductId(), to.getProductId())) {
+			minutes += productMinutes;
+		}
+		return minutes;
+	}
+
+	/**
+	 * Adds up the changeovers of running items in a particular order.
+	 *
+	 * @param sequence The items, in the order they're run.
+	 * @return The total changeover time, in minutes.
+	 */
+	public int getTotalChangeover(List<OrderDetail> sequence) {
+		int total = 0;
+		for (int i = 1; i < sequence.size(); i++) {
+			total += getChangeover(sequence.get(i - 1), sequence.get(i));
+		}
+		return total;
+	}
+
+	/**
+	 * Sequences every line of a day at once, each on its own core.
+	 * Items that are already completed are left out.
+	 *
+	 * @param jobs The day's Jobs.
+	 * @param budgetMillis How long each line can spend improving its order.
+	 * @return The order to run each line's items in, by line (only the lines that have items).
+	 */
+	public Map<PrintType, List<OrderDetail>> sequenceDay(Collection<Job> jobs, long budgetMillis) {
+
+		// Split the items up by line.
+		Map<PrintType, List<OrderDetail>> itemsByLine = new EnumMap<PrintType, List<OrderDetail>>(PrintType.class);
+		for (Job job : jobs) {
+			if (job.getOrderDetailList() == null) {
+				continue;
+			}
+			for (OrderDetail od : job.getOrderDetailList()) {
+				if (od.getItemCompleted() == null && od.getPrintType() != null) {
+					itemsByLine.computeIfAbsent(od.getPrintType(), line -> new ArrayList<OrderDetail>()).add(od);
+				}
+			}
+		}
+
+		Map<PrintType, CompletableFuture<List<OrderDetail>>> futures = new EnumMap<PrintType, CompletableFuture<List<OrderDetail>>>(PrintType.class);
+		for (Map.Entry<PrintType, List<OrderDetail>> line : itemsByLine.entrySet()) {
+			futures.put(line.getKey(), CompletableFuture.supplyAsync(() -> sequence(line.getValue(), budgetMillis), executor));
+		}
+
+		Map<PrintType, List<OrderDetail>> sequences = new EnumMap<PrintType, List<OrderDetail>>(PrintType.class);
+		for (Map.Entry<PrintType, CompletableFuture<List<OrderDetail>>> future : futures.entrySet()) {
+			try {
+				sequences.put(future.getKey(), future.getValue().join());
+			} catch (RuntimeException e) { // Fall back to the original order rather than losing the line.
+				logger.log(Level.WARNING, "Exception when trying to SEQUENCE the " + future.getKey() + " line.", e);
+				sequences.put(future.getKey(), itemsByLine.get(future.getKey()));
+			}
+		}
+		return sequences;
+	}
+
+	/**
+	 * Works out a good order to run one line's items in.
+	 *
+	 * @param items The items, all on the same line.
+	 * @param budgetMillis How long to spend improving the order.
+	 * @return The items in the order to run them.
+	 */
+	public List<OrderDetail> sequence(List<OrderDetail> items, long budgetMillis) {
+
+		int n = items.size();
+		if (n < 3) {
+			return greedyOrder(items); // Nothing for 2-opt to improve.
+		}
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+		OrderDetail[] order = greedyOrder(items).toArray(new OrderDetail[n]);
+		int before = getTotalChangeover(items);
+		int greedy = getTotalChangeover(Arrays.asList(order));
+
+		boolean improved = true;
+		while (improved && System.nanoTime() < deadline) {
+			improved = false;
+			for (int i = 0; i < n - 1 && System.nanoTime() < deadline; i++) {
+				for (int j = i + 1; j < n; j++) {
+					// Reversing i..j only changes the edges going into i and out of j.
+					// (The order is a path, not a loop, so the first and last items only have one edge each.)
+					int removed = 0;
+					int added = 0;
+					if (i > 0) {
+						removed += getChangeover(order[i - 1], order[i]);
+						added += getChangeover(order[i - 1], order[j]);
+					}
+					if (j < n - 1) {
+						removed += getChangeover(order[j], order[j + 1]);
+						added += getChangeover(order[i], order[j + 1]);
+					}
+					if (added < removed) {
+						reverse(order, i, j);
+						improved = true;
+					}
+				}
+			}
+		}
+
+		List<OrderDetail> sequence = Arrays.asList(order);
+		logger.log(Level.CONFIG, "Sequenced " + n + " items: " + before + " minutes as listed, "
+				+ greedy + " greedy, " + getTotalChangeover(sequence) + " after 2-opt");
+		return new ArrayList<OrderDetail>(sequence);
+	}
+
+	/**
+	 * Orders the items by always going to the cheapest next item,
+	 * starting from the item with the fewest colors.
+	 *
+	 * @param items The items.
+	 * @return The items in greedy order.
+	 */
+	private List<OrderDetail> greedyOrder(List<OrderDetail> items) {
+
+		List<OrderDetail> remaining = new ArrayList<OrderDetail>(items);
+		List<OrderDetail> order = new ArrayList<OrderDetail>(items.size());
+		if (remaining.isEmpty()) {
+			return order;
+		}
+
+		int start = 0;
+		for (int i = 1; i < remaining.size(); i++) {
+			if (remaining.get(i).getNumColors() < remaining.get(start).getNumColors()) {
+				start = i;
+			}
+		}
+		OrderDetail current = remaining.remove(start);
+		order.add(current);
+
+		while (!remaining.isEmpty()) {
+			int best = 0;
+			int bestCost = Integer.MAX_VALUE;
+			for (int i = 0; i < remaining.size(); i++) {
+				int cost = getChangeover(current, remaining.get(i));
+				if (cost < bestCost) {
+					best = i;
+					bestCost = cost;
+				}
+			}
+			// Swap the last item into the gap instead of shifting everything down.
+			current = remaining.get(best);
+			remaining.set(best, remaining.get(remaining.size() - 1));
+			remaining.remove(remaining.size() - 1);
+			order.add(current);
+		}
+		return order;
+	}
+
+	private static void reverse(OrderDetail[] order, int from, int to) {
+		while (from < to) {
+			OrderDetail swap = order[from];
+			order[from++] = order[to];
+			order[to--] = swap;
+		}
+	}
+
+}
@@ -0,0 +1,415 @@
+package info.chrismcgee.sky.scheduling.service;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import info.chrismcgee.sky.components.BusinessCalendar;
+import info.chrismcgee.sky.enums.PrintType;
+import info.chrismcgee.sky.enums.PrintingCompany;
+import info.chrismcgee.sky.scheduling.beans.Job;
+import info.chrismcgee.sky.tables.JobCache;
+import info.chrismcgee.sky.tables.JobManager;
+
+/**
+ * @author Marketing
+ *
+ * An unchangeable picture of the schedule (which day each Job ships and how many imprints that puts
+ * on each PrintType line) for trying out "what if" moves before they're committed.
+ *
+ * Moving Jobs never changes a snapshot; it gives back a new one. The daily loads are kept in chunks of
+ * 32 days, and a new snapshot shares every chunk with the old one except for the few that the moved Jobs
+ * touch, which are copied first. The Jobs themselves are shared by every snapshot that comes from
+ * the same original, and the moves are kept as a chain of small deltas, each one holding only the Jobs
+ * moved by that fork and pointing back to the moves before it (the chain is folded into one map every
+ * so often, so looking a Job up never walks far).
+ * So forking the schedule for each drag only costs a handful of small arrays, no matter how big it is.
+ *
+ * Once the planner is happy, commit() writes every move (compared to the original schedule)
+ * to the database, as long as nobody else has moved those Jobs in the meantime.
+ */
+public final class ScheduleSnapshot {
+
+	private final static Logger logger = Logger.getLogger(ScheduleSnapshot.class.getName()); // Logging!
+
+	private static final int CHUNK_BITS = 5;
+	private static final int CHUNK_DAYS = 1 << CHUNK_BITS; // 32 days to a chunk.
+	private static final PrintType[] LINES = PrintType.values();
+	private static final int MAX_DEPTH = 16; // How long the chain of moves can get before it's folded into one map.
+
+	private final long firstEpochDay; // The first day of the schedule.
+	private final int horizonDays; // How many days the schedule covers.
+	private final long[][] chunks; // The loads: chunks[day / 32][(day % 32) * lines + line]. Shared; never changed once built.
+	private final Map<String, JobLoad> jobs; // Every Job of the original schedule. Shared; never changed once built.
+	private final Moves moves; // The epoch day of each Job that's been moved from the original. Shared with the forks.
+
+	private ScheduleSnapshot(long firstEpochDay, int horizonDays, long[][] chunks, Map<String, JobLoad> jobs, Moves moves) {
+		this.firstEpochDay = firstEpochDay;
+		this.horizonDays = horizonDays;
+		this.chunks = chunks;
+		this.jobs = jobs;
+		this.moves = moves;
+	}
+
+	/**
+	 * Takes a picture of the schedule from a collection of Jobs, as they are now.
+	 * Jobs that ship outside of the schedule's days are still known (so they can be moved in),
+	 * but don't count towards any day's load.
+	 *
+	 * @param jobs The Jobs.
+	 * @param firstDay The first day of the schedule.
+	 * @param horizonDays How many days the schedule covers.
+	 * @return The original ScheduleSnapshot.
+	 */
+	public static ScheduleSnapshot of(Collection<Job> jobs, LocalDate firstDay, int horizonDays) {
+
+		long firstEpochDay = firstDay.toEpochDay();
+		long[][] chunks = new long[(horizonDays + CHUNK_DAYS - 1) >> CHUNK_BITS][CHUNK_DAYS * LINES.length];
+		Map<String, JobLoad> loads = new HashMap<String, JobLoad>(jobs.size() * 2);
+
+		for (Job job : jobs) {
+			long[] imprints = new long[LINES.length];
+			if (job.getOrderDetailList() != null) {
+				job.getOrderDetailList().forEach(od -> {
+					long amount = SchedulingEngine.getImprints(od);
+					if (amount > 0) {
+						imprints[od.getPrintType().ordinal()] += amount;
+					}
+				});
+			}
+			long epochDay = job.getShipDate() == null ? Long.MIN_VALUE : job.getShipDate().toLocalDate().toEpochDay();
+			loads.put(job.getJobId(), new JobLoad(epochDay, imprints, job.getPrintingCompany()));
+
+			long day = epochDay - firstEpochDay;
+			if (day >= 0 && day < horizonDays) {
+				long[] chunk = chunks[(int) day >> CHUNK_BITS];
+				int offset = ((int) day & (CHUNK_DAYS - 1)) * LINES.length;
+				for (int l = 0; l < LINES.length; l++) {
+					chunk[offset + l] += imprints[l];
+				}
+			}
+		}
+		return new ScheduleSnapshot(firstEpochDay, horizonDays, chunks, Collections.unmodifiableMap(loads), null);
+	}
+
+	/**
+	 * Takes a picture of the schedule as it is in the database (through the JobCache).
+	 *
+	 * @param firstDay The first day of the schedule.
+	 * @param horizonDays How many days the schedule covers.
+	 * @return The original ScheduleSnapshot, or null if the Jobs could not be read from the database.
+	 */
+	public static ScheduleSnapshot load(LocalDate firstDay, int horizonDays) {
+
+		SortedMap<LocalDate, List<Job>> jobsByDate = null;
+		try {
+			jobsByDate = JobCache.getInstance().getJobsByDateRange(firstDay, firstDay.plusDays(horizonDays - 1));
+		} catch (SQLException e) {
+			logger.log(Level.WARNING, "Exception when trying to LOAD the schedule from " + firstDay, e);
+		}
+		if (jobsByDate == null) {
+			return null;
+		}
+
+		List<Job> jobs = new ArrayList<Job>();
+		for (List<Job> day : jobsByDate.values()) {
+			jobs.addAll(day);
+		}
+		return of(jobs, firstDay, horizonDays);
+	}
+
+	/**
+	 * Moves one Job to another ship date.
+	 *
+	 * @param jobId The job number.
+	 * @param shipDate Its new ship date.
+	 * @return A new ScheduleSnapshot with the Job moved; this one is left as it was.
+	 */
+	public ScheduleSnapshot move(String jobId, LocalDate shipDate) {
+		return move(Collections.singletonMap(jobId, shipDate));
+	}
+
+	/**
+	 * Moves a batch of Jobs to other ship dates.
+	 * Job numbers that aren't part of the schedule are skipped.
+	 *
+	 * @param shipDates The new ship date of each Job, by job number.
+	 * @return A new ScheduleSnapshot with the Jobs moved; this one is left as it was.
+	 */
+	public ScheduleSnapshot move(Map<String, LocalDate> shipDates) {
+
+		long[][] newChunks = chunks.clone(); // Only the references; the chunks themselves are copied as they're changed.
+		boolean[] copied = new boolean[chunks.length];
+		Map<String, Long> newMoves = new HashMap<String, Long>(); // Only the Jobs moved by this fork.
+
+		for (Map.Entry<String, LocalDate> entry : shipDates.entrySet()) {
+			JobLoad job = jobs.get(entry.getKey());
+			if (job == null) {
+				logger.log(Level.WARNING, "Job " + entry.getKey() + " is not part of the schedule, so it can't be moved.");
+				continue;
+			}
+			Long from = newMoves.get(entry.getKey());
+			long fromDay = from != null ? from : getEpochDay(entry.getKey(), job);
+			long toDay = entry.getValue().toEpochDay();
+			if (fromDay == toDay) {
+				continue;
+			}
+
+			addLoad(newChunks, copied, fromDay, job.imprints, -1);
+			addLoad(newChunks, copied, toDay, job.imprints, 1);
+			newMoves.put(entry.getKey(), toDay); // Even if it's back where it started, since an earlier fork may have moved it.
+		}
+		if (newMoves.isEmpty()) {
+			return new ScheduleSnapshot(firstEpochDay, horizonDays, newChunks, jobs, moves);
+		}
+		Moves next = new Moves(moves, newMoves);
+		if (next.depth > MAX_DEPTH) {
+			next = new Moves(null, next.fold(jobs));
+		}
+		return new ScheduleSnapshot(firstEpochDay, horizonDays, newChunks, jobs, next);
+	}
+
+	/**
+	 * Gets the epoch day a Job ships on in this snapshot, following the chain of moves back to the original.
+	 */
+	private long getEpochDay(String jobId, JobLoad job) {
+		for (Moves link = moves; link != null; link = link.parent) {
+			Long moved = link.delta.get(jobId);
+			if (moved != null) {
+				return moved;
+			}
+		}
+		return job.epochDay;
+	}
+
+	/**
+	 * Adds (or takes away) a Job's imprints to a day, copying the day's chunk first if it's still shared.
+	 */
+	private void addLoad(long[][] newChunks, boolean[] copied, long epochDay, long[] imprints, int sign) {
+		long day = epochDay - firstEpochDay;
+		if (day < 0 || day >= horizonDays) {
+			return; // Outside the schedule, so it doesn't count.
+		}
+		int index = (int) day >> CHUNK_BITS;
+		if (!copied[index]) {
+			newChunks[index] = newChunks[index].clone();
+			copied[index] = true;
+		}
+		int offset = ((int) day & (CHUNK_DAYS - 1)) * LINES.length;
+		for (int l = 0; l < LINES.length; l++) {
+			newChunks[index][offset + l] += sign * imprints[l];
+		}
+	}
+
+	/**
+	 * Gets the imprints scheduled on a line for a day.
+	 *
+	 * @param line The PrintType's line.
+	 * @param date The day.
+	 * @return The imprints, or 0 if the day is outside the schedule.
+	 */
+	public long getLoad(PrintType line, LocalDate date) {
+		long day = date.toEpochDay() - firstEpochDay;
+		if (day < 0 || day >= horizonDays) {
+			return 0;
+		}
+		return chunks[(int) day >> CHUNK_BITS][((int) day & (CHUNK_DAYS - 1)) * LINES.length + line.ordinal()];
+	}
+
+	/**
+	 * Gets the imprints scheduled on every line for a day.
+	 *
+	 * @param date The day.
+	 * @return The imprints, by line.
+	 */
+	public Map<PrintType, Long> getLoads(LocalDate date) {
+		Map<PrintType, Long> loads = new EnumMap<PrintType, Long>(PrintType.class);
+		for (PrintType line : LINES) {
+			loads.put(line, getLoad(line, date));
+		}
+		return loads;
+	}
+
+	/**
+	 * Finds every day on which a line has more imprints than it can print,
+	 * or has a Job from a plant that has the day off (see BusinessCalendar.forCompany()).
+	 *
+	 * @param capacities The imprints each line can print in a working day (see SchedulingEngine.loadCapacities()).
+	 * @param calendar Which days are worked; anything scheduled on a day off is an overload.
+	 * @return The overloaded days of every line that has any.
+	 */
+	public Map<PrintType, SortedSet<LocalDate>> getOverloadedDays(Map<PrintType, Long> capacities, BusinessCalendar calendar) {
+		return getOverloadedDays(capacities, calendar, BusinessCalendar::forCompany);
+	}
+
+	/**
+	 * Finds every day on which a line has more imprints than it can print, or has a Job from a plant that has the day off.
+	 *
+	 * @param capacities The imprints each line can print in a working day (see SchedulingEngine.loadCapacities()).
+	 * @param calendar Which days are worked; anything scheduled on a day off is an overload.
+	 * @param plants Gets the calendar of a Job's plant.
+	 * @return The overloaded days of every line that has any.
+	 */
+	public Map<PrintType, SortedSet<LocalDate>> getOverloadedDays(Map<PrintType, Long> capacities, BusinessCalendar calendar,
+			Function<PrintingCompany, BusinessCalendar> plants) {
+
+		Map<PrintType, SortedSet<LocalDate>> overloaded = new EnumMap<PrintType, SortedSet<LocalDate>>(PrintType.class);
+		for (int day = 0; day < horizonDays; day++) {
+			LocalDate date = LocalDate.ofEpochDay(firstEpochDay + day);
+			boolean working = calendar.isWorkingDay(date);
+			long[] chunk = chunks[day >> CHUNK_BITS];
+			int offset = (day & (CHUNK_DAYS - 1)) * LINES.length;
+			for (PrintType line : LINES) {
+				long load = chunk[offset + line.ordinal()];
+				Long capacity = capacities.get(line);
+				if (load > 0 && (!working || (capacity != null && load > capacity))) {
+					overloaded.computeIfAbsent(line, l -> new TreeSet<LocalDate>()).add(date);
+				}
+			}
+		}
+		// The loads are added up across plants, so a plant's own days off have to be checked Job by Job.
+		Map<PrintingCompany, BusinessCalendar> plantCalendars = new EnumMap<PrintingCompany, BusinessCalendar>(PrintingCompany.class);
+		for (Map.Entry<String, JobLoad> entry : jobs.entrySet()) {
+			JobLoad job = entry.getValue();
+			if (job.company == null) {
+				continue;
+			}
+			long day = getEpochDay(entry.getKey(), job) - firstEpochDay;
+			if (day < 0 || day >= horizonDays) {
+				continue;
+			}
+			LocalDate date = LocalDate.ofEpochDay(firstEpochDay + day);
+			BusinessCalendar plant = plantCalendars.computeIfAbsent(job.company, plants);
+			if (plant == null || plant.isWorkingDay(date)) {
+				continue;
+			}
+			for (PrintType line : LINES) {
+				if (job.imprints[line.ordinal()] > 0) {
+					overloaded.computeIfAbsent(line, l -> new TreeSet<LocalDate>()).add(date);
+				}
+			}
+		}
+		return overloaded;
+	}
+
+	/**
+	 * Gets the ship date of a Job in this snapshot.
+	 *
+	 * @param jobId The job number.
+	 * @return Its ship date, or null if it isn't part of the schedule.
+	 */
+	public LocalDate getShipDate(String jobId) {
+		JobLoad job = jobs.get(jobId);
+		if (job == null) {
+			return null;
+		}
+		long epochDay = getEpochDay(jobId, job);
+		return epochDay == Long.MIN_VALUE ? null : LocalDate.ofEpochDay(epochDay);
+	}
+
+	/**
+	 * Gets every Job that has been moved from the original schedule.
+	 *
+	 * @return The new ship date of each moved Job, by job number.
+	 */
+	public Map<String, LocalDate> getMoves() {
+		Map<String, LocalDate> shipDates = new TreeMap<String, LocalDate>();
+		if (moves != null) {
+			for (Map.Entry<String, Long> entry : moves.fold(jobs).entrySet()) {
+				shipDates.put(entry.getKey(), LocalDate.ofEpochDay(entry.getValue()));
+			}
+		}
+		return shipDates;
+	}
+
+	/**
+	 * Writes every move (compared to the original schedule) to the database. Each Job is only moved if it still
+	 * ships on the day it did when the schedule was loaded; one that someone else has moved (or deleted)
+	 * since then is left alone, along with the rest of the Jobs in its yearly database (see JobManager.updateShipDates()).
+	 * The snapshot doesn't change; take a new one with load() to carry on from the committed schedule.
+	 *
+	 * @return The job numbers of the moves that were written; all of them (as in getMoves()) if everything worked.
+	 */
+	public Set<String> commit() {
+		Map<String, LocalDate> shipDates = getMoves();
+		if (shipDates.isEmpty()) {
+			return Collections.emptySet();
+		}
+		Map<String, LocalDate> expectedDates = new HashMap<String, LocalDate>();
+		for (String jobId : shipDates.keySet()) {
+			long epochDay = jobs.get(jobId).epochDay;
+			if (epochDay != Long.MIN_VALUE) {
+				expectedDates.put(jobId, LocalDate.ofEpochDay(epochDay));
+			}
+		}
+		try {
+			return JobManager.updateShipDates(shipDates, expectedDates);
+		} catch (SQLException e) {
+			logger.log(Level.SEVERE, "Exception when trying to COMMIT " + shipDates.size() + " moves.", e);
+			return Collections.emptySet();
+		}
+	}
+
+
+	/**
+	 * The Jobs moved by one fork, linked to the moves of the snapshot it was forked from.
+	 * Never changed once built.
+	 */
+	private static final class Moves {
+
+		private final Moves parent; // The moves before these, or null.
+		private final Map<String, Long> delta; // The epoch day of each Job these moves moved.
+		private final int depth; // How many links there are, counting this one.
+
+		private Moves(Moves parent, Map<String, Long> delta) {
+			this.parent = parent;
+			this.delta = delta;
+			this.depth = parent == null ? 1 : parent.depth + 1;
+		}
+
+		/**
+		 * Folds the whole chain into one map, leaving out the Jobs that are back on their original day.
+		 */
+		private Map<String, Long> fold(Map<String, JobLoad> jobs) {
+			Map<String, Long> folded = new HashMap<String, Long>();
+			for (Moves link = this; link != null; link = link.parent) {
+				for (Map.Entry<String, Long> entry : link.delta.entrySet()) {
+					folded.putIfAbsent(entry.getKey(), entry.getValue()); // The later links come first, and win.
+				}
+			}
+			folded.entrySet().removeIf(entry -> entry.getValue() == jobs.get(entry.getKey()).epochDay);
+			return folded;
+		}
+	}
+
+	/**
+	 * A Job's original ship date and the imprints it puts on each line.
+	 */
+	private static final class JobLoad {
+
+		private final long epochDay;
+		private final long[] imprints;
+		private final PrintingCompany company; // Whose plant prints it; null if that isn't known.
+
+		private JobLoad(long epochDay, long[] imprints, PrintingCompany company) {
+			this.epochDay = epochDay;
+			this.imprints = imprints;
+			this.company = company;
+		}
+	}
+
+}
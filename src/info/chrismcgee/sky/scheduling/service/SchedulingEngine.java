@@ -0,0 +1,562 @@
+package info.chrismcgee.sky.scheduling.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import info.chrismcgee.sky.components.BusinessCalendar;
+import info.chrismcgee.sky.enums.PrintType;
+import info.chrismcgee.sky.enums.PrintingCompany;
+import info.chrismcgee.sky.scheduling.beans.Job;
+import info.chrismcgee.sky.scheduling.beans.OrderDetail;
+
+/**
+ * @author Marketing
+ *
+ * Works out ship dates from how much each press line (PrintType) can print in a day.
+ *
+ * An OrderDetail item's load is its number of imprints: numColors x quantity.
+ * Each line has a capacity of imprints per working day, read from "line-capacity.properties"
+ * (on the classpath, or wherever the "sky.capacity" system property points), such as:
+ *
+ *   SCREEN_CUPS = 250000
+ *   PAD = 80000
+ *
+ * A line that isn't listed has no limit.
+ *
+ * Each line's room (capacity minus load) for every day of the planning horizon is kept in a max segment tree,
+ * so finding the first day from some date that still has room for an item takes O(log days),
+ * and placing or removing a Job only touches the days it was on.
+ * A Job that has items on several lines goes on the first day that has room on all of them.
+ *
+ * Each plant can have its own days off (see BusinessCalendar.forCompany()), so a Job is only proposed
+ * for a day that both the presses and the Job's plant work, and a Job placed on one of its plant's days off
+ * overloads that day, just as anything placed on a day the presses are closed does.
+ *
+ * Placing Jobs on their existing ship dates can overload a day; those days are tracked for each line
+ * so they can be flagged. Items that are already completed don't count, since they've been printed.
+ *
+ * Not thread-safe; each planner works with their own engine.
+ */
+public class SchedulingEngine {
+
+	private final static Logger logger = Logger.getLogger(SchedulingEngine.class.getName()); // Logging!
+
+	private static final String CONFIG_RESOURCE = "/line-capacity.properties";
+	private static final PrintType[] LINES = PrintType.values();
+
+	// The earliest Jobs come first; ties go to the lower job number.
+	private static final Comparator<Job> PRIORITY = Comparator
+			.comparing(Job::getProofSpecDate, Comparator.nullsLast(Comparator.naturalOrder()))
+			.thenComparing(Job::getJobId);
+
+	private final BusinessCalendar calendar;
+	private final Function<PrintingCompany, BusinessCalendar> plants; // The calendar of each plant.
+	private final long firstEpochDay; // The first day of the planning horizon.
+	private final int horizonDays; // How many days the horizon covers.
+	private final Map<PrintType, Long> capacities;
+	private final LineSchedule[] lines = new LineSchedule[LINES.length];
+	// The day (within the horizon) and the imprints on each line of every placed Job, by job number.
+	private final Map<String, Placement> placements = new HashMap<String, Placement>();
+
+	/**
+	 * @param firstDay The first day that can be planned, usually today.
+	 * @param horizonDays How many days from the first day can be planned.
+	 * @param capacities The imprints each line can print in a working day. A missing line has no limit.
+	 * @param calendar Which days are worked; every other day has no capacity.
+	 */
+	public SchedulingEngine(LocalDate firstDay, int horizonDays, Map<PrintType, Long> capacities, BusinessCalendar calendar) {
+		this(firstDay, horizonDays, capacities, calendar, BusinessCalendar::forCompany);
+	}
+
+	/**
+	 * @param firstDay The first day that can be planned, usually today.
+	 * @param horizonDays How many days from the first day can be planned.
+	 * @param capacities The imprints each line can print in a working day. A missing line has no limit.
+	 * @param calendar Which days are worked; every other day has no capacity.
+	 * @param plants Gets the calendar of a Job's plant, whose days off the Job can't ship on.
+	 */
+	public SchedulingEngine(LocalDate firstDay, int horizonDays, Map<PrintType, Long> capacities, BusinessCalendar calendar,
+			Function<PrintingCompany, BusinessCalendar> plants) {
+		this.calendar = calendar;
+		this.plants = plants;
+		this.firstEpochDay = firstDay.toEpochDay();
+		this.horizonDays = horizonDays;
+		this.capacities = new EnumMap<PrintType, Long>(PrintType.class);
+		this.capacities.putAll(capacities);
+
+		for (PrintType line : LINES) {
+			long capacity = capacities.containsKey(line) ? capacities.get(line) : Long.MAX_VALUE / 2;
+			lines[line.ordinal()] = new LineSchedule(horizonDays, capacity);
+		}
+		for (int day = 0; day < horizonDays; day++) {
+			if (!calendar.isWorkingDay(LocalDate.ofEpochDay(firstEpochDay + day))) {
+				for (LineSchedule line : lines) {
+					line.closeDay(day);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the imprints each line can print in a working day.
+	 *
+	 * @return The capacity of every line that is listed in the configuration.
+	 */
+	public static Map<PrintType, Long> loadCapacities() {
+
+		Map<PrintType, Long> capacities = new EnumMap<PrintType, Long>(PrintType.class);
+		Properties config = new Properties();
+		String path = System.getProperty("sky.capacity");
+		try (
+				InputStream in = path != null
+						? Files.newInputStream(Paths.get(path))
+						: SchedulingEngine.class.getResourceAsStream(CONFIG_RESOURCE);
+				){
+			if (in != null) {
+				config.load(in);
+			}
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Could not read the line capacities; every line is unlimited.", e);
+		}
+
+		for (PrintType line : LINES) {
+			String value = config.getProperty(line.name());
+			if (value != null && !value.trim().isEmpty()) {
+				try {
+					capacities.put(line, Long.parseLong(value.trim()));
+				} catch (NumberFormatException e) {
+					logger.log(Level.WARNING, "Could not understand the capacity \"" + value + "\" of " + line);
+				}
+			}
+		}
+		return capacities;
+	}
+
+	/**
+	 * Gets the load an item puts on its line.
+	 *
+	 * @param od The OrderDetail item.
+	 * @return The item's imprints (numColors x quantity), or 0 if it has already been completed.
+	 */
+	public static long getImprints(OrderDetail od) {
+		if (od.getItemCompleted() != null || od.getPrintType() == null) {
+			return 0;
+		}
+		return od.getNumColors() * od.getQuantity();
+	}
+
+	/**
+	 * Adds up the imprints of a Job's items on each line.
+	 *
+	 * @param job The Job.
+	 * @return The imprints, indexed by the PrintType's ordinal.
+	 */
+	private static long[] getImprintsByLine(Job job) {
+		long[] imprints = new long[LINES.length];
+		if (job.getOrderDetailList() != null) {
+			for (OrderDetail od : job.getOrderDetailList()) {
+				long amount = getImprints(od);
+				if (amount > 0) {
+					imprints[od.getPrintType().ordinal()] += amount;
+				}
+			}
+		}
+		return imprints;
+	}
+
+	/**
+	 * Gets the calendar of a Job's plant.
+	 *
+	 * @param job The Job.
+	 * @return Its plant's BusinessCalendar, or null if the plant isn't known.
+	 */
+	private BusinessCalendar getPlantCalendar(Job job) {
+		return job.getPrintingCompany() == null ? null : plants.apply(job.getPrintingCompany());
+	}
+
+	/**
+	 * Places a Job on a particular day, whether or not there's room, such as when loading the existing schedule.
+	 * If the Job was already placed, it is moved.
+	 *
+	 * @param job The Job to place.
+	 * @param day The day to put it on.
+	 * @return true if it was placed; false if the day is outside of the planning horizon.
+	 */
+	public boolean place(Job job, LocalDate day) {
+		remove(job.getJobId());
+
+		int index = indexOf(day);
+		if (index < 0) {
+			return false;
+		}
+		BusinessCalendar plant = getPlantCalendar(job);
+		Placement placement = new Placement(index, getImprintsByLine(job), plant != null && !plant.isWorkingDay(day));
+		for (int l = 0; l < LINES.length; l++) {
+			if (placement.imprints[l] > 0) {
+				lines[l].addLoad(index, placement.imprints[l], placement.plantClosed);
+			}
+		}
+		placements.put(job.getJobId(), placement);
+		return true;
+	}
+
+	/**
+	 * Places every Job on its existing ship date. Jobs that ship outside of the horizon
+	 * (including the "On Hold" and "Proofs" queues) are left out.
+	 *
+	 * @param jobs The Jobs to place.
+	 * @return How many of them were placed.
+	 */
+	public int placeAll(Collection<Job> jobs) {
+		int placed = 0;
+		for (Job job : jobs) {
+			if (job.getShipDate() != null && place(job, job.getShipDate().toLocalDate())) {
+				placed++;
+			}
+		}
+		return placed;
+	}
+
+	/**
+	 * Takes a Job back off of the schedule, freeing up its days.
+	 *
+	 * @param jobId The job number.
+	 * @return true if it had been placed.
+	 */
+	public boolean remove(String jobId) {
+		Placement placement = placements.remove(jobId);
+		if (placement == null) {
+			return false;
+		}
+		for (int l = 0; l < LINES.length; l++) {
+			if (placement.imprints[l] > 0) {
+				lines[l].addLoad(placement.day, -placement.imprints[l], placement.plantClosed);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Finds the first day that has room for a Job on every line it needs, without placing it.
+	 * An item that is bigger than a whole day's capacity goes on the first day its line is empty.
+	 * Days that the Job's plant doesn't work are skipped.
+	 *
+	 * @param job The Job to find a day for.
+	 * @param earliest The earliest day it can ship.
+	 * @return The proposed ship date, or null if there's no room before the end of the horizon.
+	 */
+	public LocalDate propose(Job job, LocalDate earliest) {
+
+		int from = indexOf(earliest, true);
+		if (from < 0) {
+			return null; // It can't ship until after the horizon.
+		}
+		// A Job that's being moved shouldn't be in its own way.
+		Placement current = placements.get(job.getJobId());
+		if (current != null) {
+			remove(job.getJobId());
+		}
+		int index = findDay(getImprintsByLine(job), from, getPlantCalendar(job));
+		if (current != null) {
+			placements.put(job.getJobId(), current);
+			for (int l = 0; l < LINES.length; l++) {
+				if (current.imprints[l] > 0) {
+					lines[l].addLoad(current.day, current.imprints[l], current.plantClosed);
+				}
+			}
+		}
+		return index < 0 ? null : LocalDate.ofEpochDay(firstEpochDay + index);
+	}
+
+	/**
+	 * Finds the first day that has room for a Job (as in propose()) and places it there.
+	 *
+	 * @param job The Job to schedule.
+	 * @param earliest The earliest day it can ship.
+	 * @return The new ship date, or null if there's no room before the end of the horizon.
+	 */
+	public LocalDate schedule(Job job, LocalDate earliest) {
+		LocalDate day = propose(job, earliest);
+		if (day != null) {
+			place(job, day);
+		}
+		return day;
+	}
+
+	/**
+	 * Schedules a whole backlog of Jobs, highest priority (earliest proof/spec date) first.
+	 *
+	 * @param jobs The Jobs to schedule.
+	 * @param earliest The earliest day any of them can ship.
+	 * @return The new ship date of each Job (null if it didn't fit), by job number, in the order they were scheduled.
+	 */
+	public Map<String, LocalDate> scheduleAll(Collection<Job> jobs, LocalDate earliest) {
+
+		PriorityQueue<Job> queue = new PriorityQueue<Job>(Math.max(1, jobs.size()), PRIORITY);
+		queue.addAll(jobs);
+
+		Map<String, LocalDate> shipDates = new LinkedHashMap<String, LocalDate>();
+		while (!queue.isEmpty()) {
+			Job job = queue.poll();
+			shipDates.put(job.getJobId(), schedule(job, earliest));
+		}
+		return shipDates;
+	}
+
+	/**
+	 * Finds the first day from a starting point that has room on every line and that the plant works.
+	 * Each line's first fitting day can only push the answer later, so this keeps asking
+	 * each line in turn until they all agree, and starts over from the next day if the plant is closed then.
+	 *
+	 * @param imprints The imprints needed on each line.
+	 * @param from The first day to try.
+	 * @param plant The calendar of the Job's plant, or null if it isn't known.
+	 * @return The day, or -1 if there isn't one in the horizon.
+	 */
+	private int findDay(long[] imprints, int from, BusinessCalendar plant) {
+
+		for (int candidate = from; candidate < horizonDays; candidate++) {
+			boolean moved = true;
+			while (moved) {
+				moved = false;
+				for (int l = 0; l < LINES.length; l++) {
+					if (imprints[l] <= 0) {
+						continue;
+					}
+					int fit = lines[l].firstFit(candidate, Math.min(imprints[l], lines[l].capacity));
+					if (fit < 0) {
+						return -1;
+					}
+					if (fit != candidate) {
+						candidate = fit;
+						moved = true;
+					}
+				}
+			}
+			// The lines only skip the days the presses are closed; a Job with nothing left to print
+			// (or a plant with its own days off) still needs a day that's worked.
+			LocalDate date = LocalDate.ofEpochDay(firstEpochDay + candidate);
+			if (calendar.isWorkingDay(date) && (plant == null || plant.isWorkingDay(date))) {
+				return candidate;
+			}
+		}
+		return -1;
+	}
+
+	private int indexOf(LocalDate day) {
+		return indexOf(day, false);
+	}
+
+	/**
+	 * Works out where a day is in the horizon.
+	 *
+	 * @param day The day.
+	 * @param clamp Whether a day before the horizon counts as its first day.
+	 * @return The day's index, or -1 if it's outside the horizon.
+	 */
+	private int indexOf(LocalDate day, boolean clamp) {
+		long index = day.toEpochDay() - firstEpochDay;
+		if (index < 0 && clamp) {
+			return 0;
+		}
+		return index >= 0 && index < horizonDays ? (int) index : -1;
+	}
+
+	/**
+	 * Gets the ship date a Job has been placed on.
+	 *
+	 * @param jobId The job number.
+	 * @return Its ship date, or null if it isn't on the schedule.
+	 */
+	public LocalDate getScheduledDate(String jobId) {
+		Placement placement = placements.get(jobId);
+		return placement == null ? null : LocalDate.ofEpochDay(firstEpochDay + placement.day);
+	}
+
+	/**
+	 * Gets the imprints scheduled on a line for a day.
+	 *
+	 * @param line The PrintType's line.
+	 * @param day The day.
+	 * @return The imprints, or 0 if the day is outside the horizon.
+	 */
+	public long getLoad(PrintType line, LocalDate day) {
+		int index = indexOf(day);
+		return index < 0 ? 0 : lines[line.ordinal()].load[index];
+	}
+
+	/**
+	 * Gets the imprints a line can print on a day.
+	 *
+	 * @param line The PrintType's line.
+	 * @param day The day.
+	 * @return The capacity; 0 for a day off. Long.MAX_VALUE if the line has no limit.
+	 */
+	public long getCapacity(PrintType line, LocalDate day) {
+		if (!capacities.containsKey(line)) {
+			return Long.MAX_VALUE;
+		}
+		int index = indexOf(day);
+		return index < 0 || lines[line.ordinal()].closed[index] ? 0 : capacities.get(line);
+	}
+
+	/**
+	 * Gets the days on which a line has more imprints than it can print.
+	 *
+	 * @param line The PrintType's line.
+	 * @return The overloaded days, in order.
+	 */
+	public SortedSet<LocalDate> getOverloadedDays(PrintType line) {
+		SortedSet<LocalDate> days = new TreeSet<LocalDate>();
+		for (Integer index : lines[line.ordinal()].overloaded) {
+			days.add(LocalDate.ofEpochDay(firstEpochDay + index));
+		}
+		return Collections.unmodifiableSortedSet(days);
+	}
+
+	/**
+	 * Gets the overloaded days of every line that has any.
+	 *
+	 * @return The overloaded days, by line.
+	 */
+	public Map<PrintType, SortedSet<LocalDate>> getOverloadedDays() {
+		Map<PrintType, SortedSet<LocalDate>> overloaded = new EnumMap<PrintType, SortedSet<LocalDate>>(PrintType.class);
+		for (PrintType line : LINES) {
+			if (!lines[line.ordinal()].overloaded.isEmpty()) {
+				overloaded.put(line, getOverloadedDays(line));
+			}
+		}
+		return overloaded;
+	}
+
+
+	/**
+	 * Where a Job was placed and how much it put on each line, so it can be taken off again
+	 * without needing the Job itself.
+	 */
+	private static final class Placement {
+
+		private final int day;
+		private final long[] imprints;
+		private final boolean plantClosed; // Whether the Job's plant has the day off.
+
+		private Placement(int day, long[] imprints, boolean plantClosed) {
+			this.day = day;
+			this.imprints = imprints;
+			this.plantClosed = plantClosed;
+		}
+	}
+
+	/**
+	 * The load of one line over the horizon, with a max segment tree of each day's room.
+	 */
+	private static final class LineSchedule {
+
+		private final long capacity; // The imprints per working day.
+		private final long[] load; // The imprints placed on each day.
+		private final boolean[] closed; // The days that aren't worked.
+		private final int[] plantsClosed; // How many of the Jobs on each day are from a plant that has that day off.
+		private final long[] room; // The segment tree: each node holds the most room of any day under it.
+		private final int leaves; // The number of leaves in the tree (a power of 2 at least as big as the horizon).
+		private final TreeSet<Integer> overloaded = new TreeSet<Integer>();
+
+		private LineSchedule(int days, long capacity) {
+			this.capacity = capacity;
+			this.load = new long[days];
+			this.closed = new boolean[days];
+			this.plantsClosed = new int[days];
+			int size = 1;
+			while (size < days) {
+				size <<= 1;
+			}
+			this.leaves = size;
+			this.room = new long[size * 2];
+			// The leaves past the end of the horizon have no room at all.
+			for (int i = 0; i < size; i++) {
+				room[size + i] = i < days ? capacity : Long.MIN_VALUE;
+			}
+			for (int node = size - 1; node > 0; node--) {
+				room[node] = Math.max(room[node * 2], room[node * 2 + 1]);
+			}
+		}
+
+		private void closeDay(int day) {
+			closed[day] = true;
+			update(day);
+		}
+
+		/**
+		 * Adds (or takes away, if the imprints are negative) a Job's load on a day.
+		 *
+		 * @param day The day.
+		 * @param imprints The Job's imprints on this line.
+		 * @param plantClosed Whether the Job's plant has the day off.
+		 */
+		private void addLoad(int day, long imprints, boolean plantClosed) {
+			load[day] += imprints;
+			if (plantClosed) {
+				plantsClosed[day] += imprints > 0 ? 1 : -1;
+			}
+			update(day);
+		}
+
+		/**
+		 * Works out a day's room again, and then every node above it.
+		 */
+		private void update(int day) {
+			long dayRoom = (closed[day] ? 0 : capacity) - load[day];
+			// The other plants can still use a day that one plant has off, so that doesn't change the room.
+			if (dayRoom < 0 || ((closed[day] || plantsClosed[day] > 0) && load[day] > 0)) {
+				overloaded.add(day);
+			} else {
+				overloaded.remove(day);
+			}
+			int node = leaves + day;
+			room[node] = dayRoom;
+			for (node >>= 1; node > 0; node >>= 1) {
+				room[node] = Math.max(room[node * 2], room[node * 2 + 1]);
+			}
+		}
+
+		/**
+		 * Finds the first day, from a starting day, that has at least a certain amount of room.
+		 *
+		 * @param from The first day to look at.
+		 * @param needed The room that's needed.
+		 * @return The day, or -1 if there isn't one.
+		 */
+		private int firstFit(int from, long needed) {
+			return firstFit(1, 0, leaves - 1, from, needed);
+		}
+
+		private int firstFit(int node, int low, int high, int from, long needed) {
+			if (high < from || room[node] < needed) {
+				return -1; // Nothing under this node is late enough or has enough room.
+			}
+			if (low == high) {
+				return low;
+			}
+			int middle = (low + high) >>> 1;
+			int found = firstFit(node * 2, low, middle, from, needed);
+			return found >= 0 ? found : firstFit(node * 2 + 1, middle + 1, high, from, needed);
+		}
+	}
+
+}
@@ -0,0 +1,159 @@
+package info.chrismcgee.sky.scheduling.thumbnail;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.http.HttpServletResponse;
+
+import com.vaadin.server.RequestHandler;
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.server.VaadinResponse;
+import com.vaadin.server.VaadinSession;
+
+import info.chrismcgee.sky.scheduling.util.CurrentUser;
+
+/**
+ * Serves the artwork of the OrderDetail items from the ThumbnailStore, at
+ * <code>thumbnail/{width}/{name}</code>, where the width is one of ThumbnailStore.SIZES
+ * (or anything else for the original).
+ *
+ * Every response carries an ETag and a Last-Modified date, and the browser is allowed to keep the image
+ * for a day, so scrolling back over rows that have already been seen doesn't ask for anything,
+ * and asking again afterwards only gets a "304 Not Modified" unless the artwork has changed.
+ * Files are memory-mapped and handed to the response as they are, without being copied through a buffer.
+ *
+ * @author Marketing
+ *
+ */
+public class ThumbnailRequestHandler implements RequestHandler {
+
+	/**
+	 * Serialization!
+	 */
+	private static final long serialVersionUID = -6190773593408467207L;
+	private final static Logger logger = Logger.getLogger(ThumbnailRequestHandler.class.getName()); // Logging!
+
+	public static final String PATH = "thumbnail"; // Where the artwork is served, relative to the application.
+	private static final int MAX_AGE = 24 * 60 * 60; // How long (in seconds) the browser can keep an image without asking.
+
+	/**
+	 * Builds the relative link to a piece of artwork.
+	 *
+	 * @param name The name from the OrderDetail's thumbnail column.
+	 * @param width The width that's wanted, or 0 for the original.
+	 * @return The link, relative to the application.
+	 */
+	public static String getLink(String name, int width) {
+		StringBuilder link = new StringBuilder(PATH).append('/').append(width);
+		try {
+			for (String part : name.replace('\\', '/').split("/")) {
+				link.append('/').append(URLEncoder.encode(part, "UTF-8").replace("+", "%20"));
+			}
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e); // UTF-8 is always there.
+		}
+		return link.toString();
+	}
+
+	@Override
+	public boolean handleRequest(VaadinSession session, VaadinRequest request, VaadinResponse response) throws IOException {
+
+		String pathInfo = request.getPathInfo();
+		if (pathInfo == null || !pathInfo.startsWith("/" + PATH + "/")) {
+			return false; // Not artwork, so let Vaadin handle it.
+		}
+
+		boolean loggedIn;
+		session.lock();
+		try {
+			loggedIn = CurrentUser.isLoggedIn();
+		} finally {
+			session.unlock();
+		}
+		if (!loggedIn) {
+			response.sendError(HttpServletResponse.SC_FORBIDDEN, "Please log in first.");
+			return true;
+		}
+
+		// The rest of the path is the width and then the name.
+		String rest = pathInfo.substring(PATH.length() + 2);
+		int slash = rest.indexOf('/');
+		if (slash < 0) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND, "No such artwork.");
+			return true;
+		}
+		int width;
+		try {
+			width = Integer.parseInt(rest.substring(0, slash));
+		} catch (NumberFormatException e) {
+			width = 0; // The original.
+		}
+		String name = rest.substring(slash + 1);
+
+		ThumbnailStore store = ThumbnailStore.getInstance();
+		Path file;
+		try {
+			file = width > 0 ? store.getResized(name, width) : store.getOriginal(name);
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Exception when trying to RESIZE " + name + " to " + width, e);
+			file = store.getOriginal(name); // Better big than nothing.
+		}
+		if (file == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND, "No such artwork.");
+			return true;
+		}
+
+		long lastModified = Files.getLastModifiedTime(file).toMillis() / 1000 * 1000; // HTTP dates only go to the second.
+		long size = Files.size(file);
+		String etag = "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(size) + "\"";
+		response.setHeader("ETag", etag);
+		response.setDateHeader("Last-Modified", lastModified);
+		response.setHeader("Cache-Control", "private, max-age=" + MAX_AGE);
+
+		// If the browser already has this version, it doesn't need it again.
+		String ifNoneMatch = request.getHeader("If-None-Match");
+		if (ifNoneMatch != null ? ifNoneMatch.contains(etag) : request.getDateHeader("If-Modified-Since") >= lastModified) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return true;
+		}
+
+		response.setContentType(getContentType(file));
+		response.setHeader("Content-Length", Long.toString(size));
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+			while (buffer.hasRemaining()) {
+				out.write(buffer);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Works out the MIME type of an image from its file name.
+	 */
+	private static String getContentType(Path file) {
+		String fileName = file.getFileName().toString().toLowerCase();
+		if (fileName.endsWith(".png")) {
+			return "image/png";
+		} else if (fileName.endsWith(".jpg") || fileName.endsWith(".jpeg")) {
+			return "image/jpeg";
+		} else if (fileName.endsWith(".gif")) {
+			return "image/gif";
+		} else if (fileName.endsWith(".pdf")) {
+			return "application/pdf";
+		}
+		return "application/octet-stream";
+	}
+
+}
@@ -0,0 +1,229 @@
+package info.chrismcgee.sky.scheduling.thumbnail;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.imageio.ImageIO;
+
+/**
+ * @author Marketing
+ *
+ * Keeps the artwork files of the OrderDetail items on the local disk, under one folder
+ * (-Dsky.artwork, or "sky-artwork" in the user's home folder), by the name stored in their thumbnail column.
+ * Names are always relative to that folder, and any name that tries to get out of it is refused.
+ *
+ * Smaller copies of each image are made the first time they're asked for and kept in a ".resized" folder
+ * next to the originals, so each size of each image is only ever scaled once. Only a few widths are made
+ * (see SIZES), so the cache can't be filled up with every width someone thinks to ask for.
+ * A copy is made again whenever its original is newer than it is.
+ */
+public class ThumbnailStore {
+
+	private final static Logger logger = Logger.getLogger(ThumbnailStore.class.getName()); // Logging!
+
+	public static final int[] SIZES = {48, 200, 800}; // The widths of the resized copies, smallest first.
+	private static final String RESIZED_DIR = ".resized"; // Where the resized copies are kept, under the root.
+
+	// The single and only instance of the store; starts off as null.
+	private static ThumbnailStore instance = null;
+
+	private final Path root; // The folder that holds all of the artwork.
+	// One lock per resized copy, so two requests for the same copy don't both scale it.
+	private final ConcurrentMap<Path, Object> locks = new ConcurrentHashMap<Path, Object>();
+
+	/**
+	 * @param root The folder that holds all of the artwork. It's made if it isn't there yet.
+	 */
+	public ThumbnailStore(Path root) {
+		this.root = root.toAbsolutePath().normalize();
+		try {
+			Files.createDirectories(this.root);
+		} catch (IOException e) {
+			logger.log(Level.SEVERE, "Could not make the artwork folder " + this.root, e);
+		}
+	}
+
+	/**
+	 * Gets the single instance of the store, making it the first time.
+	 *
+	 * @return The ThumbnailStore.
+	 */
+	public static synchronized ThumbnailStore getInstance() {
+		if (instance == null) {
+			instance = new ThumbnailStore(Paths.get(System.getProperty("sky.artwork",
+					Paths.get(System.getProperty("user.home"), "sky-artwork").toString())));
+		}
+		return instance;
+	}
+
+	/**
+	 * Finds an original artwork file.
+	 *
+	 * @param name The name from the thumbnail column, such as "425001/N10.jpg".
+	 * @return The file, or null if the name is unsafe or there's no such file.
+	 */
+	public Path getOriginal(String name) {
+		Path path = toPath(name);
+		return path != null && Files.isRegularFile(path) ? path : null;
+	}
+
+	/**
+	 * Saves an artwork file, replacing any that's already there by that name.
+	 * The file is written beside its final place and then moved in,
+	 * so nobody ever gets served half of it.
+	 *
+	 * @param name The name to save it under, which is what goes in the thumbnail column.
+	 * @param in The contents of the file. It is read to the end but not closed.
+	 * @return boolean True if it was saved; false if the name is unsafe.
+	 * @throws IOException
+	 */
+	public boolean store(String name, InputStream in) throws IOException {
+		Path path = toPath(name);
+		if (path == null) {
+			return false;
+		}
+		Files.createDirectories(path.getParent());
+		Path temp = Files.createTempFile(path.getParent(), ".upload", ".tmp");
+		try {
+			Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+		return true;
+	}
+
+	/**
+	 * Gets a copy of an image that's no wider than one of the SIZES, making it if it hasn't been made yet.
+	 *
+	 * @param name The name from the thumbnail column.
+	 * @param width The width that's wanted. The smallest of the SIZES that's at least this wide is used.
+	 * @return The resized copy; the original if it's already narrow enough (or the width is bigger than
+	 * any of the SIZES); or null if there's no such image or it isn't one that can be read.
+	 * @throws IOException If the copy could not be written.
+	 */
+	public Path getResized(String name, int width) throws IOException {
+
+		Path original = getOriginal(name);
+		int size = snapWidth(width);
+		if (original == null || size == 0) {
+			return original;
+		}
+
+		Path resized = root.resolve(RESIZED_DIR).resolve(Integer.toString(size)).resolve(root.relativize(original) + ".png");
+		if (isCurrent(resized, original)) {
+			return resized; // The usual case, with no locking at all.
+		}
+
+		synchronized (locks.computeIfAbsent(resized, key -> new Object())) {
+			try {
+				if (isCurrent(resized, original)) {
+					return resized; // Someone else made it while we waited.
+				}
+				BufferedImage image = ImageIO.read(original.toFile());
+				if (image == null) {
+					return null; // Not an image that can be read, such as a PDF.
+				}
+				if (image.getWidth() <= size) {
+					return original; // Already small enough.
+				}
+
+				long start = System.nanoTime();
+				BufferedImage scaled = scale(image, size);
+				Files.createDirectories(resized.getParent());
+				Path temp = Files.createTempFile(resized.getParent(), ".resize", ".tmp");
+				try {
+					ImageIO.write(scaled, "png", temp.toFile());
+					Files.move(temp, resized, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				} finally {
+					Files.deleteIfExists(temp);
+				}
+				logger.log(Level.CONFIG, "Resized " + name + " to " + size + " wide in " + (System.nanoTime() - start) / 1000000 + " ms");
+				return resized;
+			} finally {
+				locks.remove(resized);
+			}
+		}
+	}
+
+	/**
+	 * Picks which of the SIZES to use for a width.
+	 *
+	 * @param width The width that's wanted.
+	 * @return The smallest of the SIZES that's at least that wide, or 0 if it's wider than all of them.
+	 */
+	public static int snapWidth(int width) {
+		for (int size : SIZES) {
+			if (width <= size) {
+				return size;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Turns a name from the thumbnail column into a path under the root.
+	 *
+	 * @param name The name.
+	 * @return The path, or null if the name is empty, absolute, or leads outside of the root (or into the resized copies).
+	 */
+	private Path toPath(String name) {
+		if (name == null || name.trim().isEmpty()) {
+			return null;
+		}
+		try {
+			Path relative = Paths.get(name.replace('\\', '/'));
+			if (relative.isAbsolute()) {
+				return null;
+			}
+			Path path = root.resolve(relative).normalize();
+			if (!path.startsWith(root) || path.equals(root) || path.startsWith(root.resolve(RESIZED_DIR))) {
+				logger.log(Level.WARNING, "Refused the artwork name \"" + name + "\"");
+				return null;
+			}
+			return path;
+		} catch (InvalidPathException e) {
+			return null;
+		}
+	}
+
+	private static boolean isCurrent(Path resized, Path original) throws IOException {
+		return Files.isRegularFile(resized)
+				&& Files.getLastModifiedTime(resized).compareTo(Files.getLastModifiedTime(original)) >= 0;
+	}
+
+	/**
+	 * Scales an image down to a width (keeping its shape), halving it a step at a time
+	 * so that big images still come out smooth.
+	 */
+	private static BufferedImage scale(BufferedImage image, int width) {
+		BufferedImage current = image;
+		int w = image.getWidth();
+		int h = image.getHeight();
+		do {
+			w = Math.max(width, w / 2);
+			h = Math.max(1, (int) Math.round((double) image.getHeight() * w / image.getWidth()));
+			BufferedImage step = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g = step.createGraphics();
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			g.drawImage(current, 0, 0, w, h, null);
+			g.dispose();
+			current = step;
+		} while (w > width);
+		return current;
+	}
+
+}
@@ -0,0 +1,127 @@
+package info.chrismcgee.sky.scheduling.ui.components;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.vaadin.ui.Alignment;
+import com.vaadin.ui.Button;
+import com.vaadin.ui.HorizontalLayout;
+import com.vaadin.ui.Label;
+
+import info.chrismcgee.sky.tables.Page;
+
+/**
+ * @author Marketing
+ *
+ * Previous and Next buttons for stepping through keyset-paginated results (see Page).
+ * Each page can only be asked for with the token from the page before it, so the token of every page
+ * that has been seen is kept, which is what lets Previous go back without starting over.
+ */
+public class PagerBar extends HorizontalLayout {
+
+	/**
+	 * Serialization!
+	 */
+	private static final long serialVersionUID = -2964380958853466129L;
+
+	private final PageLoader loader;
+	private final List<String> tokens = new ArrayList<String>(); // The token of each page seen so far (null for the first).
+	private int page = 0; // The page being shown, starting from 0.
+	private int pageCount = -1; // How many pages there are, if the caller knows; -1 if not.
+	private Label pageLabel = new Label();
+	private Button previousButton = new Button("Previous");
+	private Button nextButton = new Button("Next");
+
+	/**
+	 * @param loader Loads and shows a page.
+	 */
+	public PagerBar(PageLoader loader) {
+		this.loader = loader;
+		tokens.add(null);
+
+		previousButton.addClickListener(event -> show(page - 1));
+		nextButton.addClickListener(event -> show(page + 1));
+		addComponents(previousButton, pageLabel, nextButton);
+		setSpacing(true);
+		setComponentAlignment(pageLabel, Alignment.MIDDLE_CENTER);
+		previousButton.setEnabled(false);
+		nextButton.setEnabled(false);
+	}
+
+	/**
+	 * Starts over from the first page, such as when the search has changed.
+	 */
+	public void first() {
+		tokens.clear();
+		tokens.add(null);
+		show(0);
+	}
+
+	/**
+	 * Says how many pages there are, for the label. The pages are still found by their tokens, so this is only
+	 * for show; it's counted by the caller whenever the rows change, never on every page turn.
+	 *
+	 * @param pageCount How many pages there are, or -1 if it isn't known.
+	 */
+	public void setPageCount(int pageCount) {
+		this.pageCount = pageCount;
+		pageLabel.setValue(pageText());
+	}
+
+	private String pageText() {
+		return "Page " + (page + 1) + (pageCount > page ? " of " + pageCount : "");
+	}
+
+	/**
+	 * Loads the page being shown again, such as when its rows have changed.
+	 */
+	public void reload() {
+		show(page);
+	}
+
+	/**
+	 * Loads and shows a page. If it's come up empty (because rows were removed since it was last seen),
+	 * the page before it is shown instead.
+	 *
+	 * @param newPage The page, starting from 0. It can be at most one past the last page that's been seen.
+	 */
+	private void show(int newPage) {
+
+		Page<?> result = loader.load(tokens.get(newPage));
+		if (result == null) {
+			return; // Leave whatever was there before; the error has already been logged.
+		}
+		if (result.getItems().isEmpty() && newPage > 0) {
+			show(newPage - 1);
+			return;
+		}
+
+		page = newPage;
+		// Forget the pages after this one; they may not start in the same place anymore.
+		while (tokens.size() > page + 1) {
+			tokens.remove(tokens.size() - 1);
+		}
+		if (result.hasNext()) {
+			tokens.add(result.getNextToken());
+		}
+
+		pageLabel.setValue(pageText());
+		previousButton.setEnabled(page > 0);
+		nextButton.setEnabled(result.hasNext());
+	}
+
+
+	/**
+	 * Loads a page and shows it.
+	 */
+	public interface PageLoader extends Serializable {
+
+		/**
+		 * @param token The page's token, or null for the first page.
+		 * @return The page that was shown, or null if it couldn't be loaded.
+		 */
+		Page<?> load(String token);
+	}
+
+}
@@ -3,31 +3,59 @@
  */
 package info.chrismcgee.sky.scheduling.ui.components;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
 import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.google.gwt.thirdparty.guava.common.eventbus.Subscribe;
+import com.vaadin.data.Item;
+import com.vaadin.data.Property;
 import com.vaadin.data.util.HierarchicalContainer;
 import com.vaadin.data.util.filter.SimpleStringFilter;
-import com.vaadin.ui.CheckBox;
-import com.vaadin.ui.HorizontalLayout;
+import com.vaadin.server.ExternalResource;
 import com.vaadin.ui.Label;
+import com.vaadin.ui.Link;
 import com.vaadin.ui.Notification;
 import com.vaadin.ui.Notification.Type;
 import com.vaadin.ui.TreeTable;
 import com.vaadin.ui.UI;
 
+import info.chrismcgee.sky.components.DateManager;
 import info.chrismcgee.sky.scheduling.beans.Job;
 import info.chrismcgee.sky.scheduling.beans.OrderDetail;
+import info.chrismcgee.sky.scheduling.thumbnail.ThumbnailRequestHandler;
+import info.chrismcgee.sky.scheduling.thumbnail.ThumbnailStore;
 import info.chrismcgee.sky.scheduling.ui.views.TreeTableView;
-import info.chrismcgee.sky.tables.JobManager;
+import info.chrismcgee.sky.scheduling.util.MyTheme;
+import info.chrismcgee.sky.tables.CompletionJournal;
+import info.chrismcgee.sky.tables.JobCache;
+import info.chrismcgee.sky.tables.JobCache.DatesInvalidatedEvent;
+import info.chrismcgee.sky.tables.JobCache.JobsByDate;
 
 /**
  * @author Marketing
  *
+ * The table of Jobs (and their OrderDetail items) that the production floor works from.
+ *
+ * There can be a lot of these open at once, so each one holds as little as it can: its rows only refer to
+ * the Job and OrderDetail beans that the JobCache shares between every session, rather than copying them,
+ * and the checkbox of each row is only made when that row is about to be sent to the browser.
  */
 public class ProductionTreeTable extends TreeTable {
 
@@ -37,9 +65,24 @@ public class ProductionTreeTable extends TreeTable {
 	private static final long serialVersionUID = -8456241351283529486L;
 
 	private final static Logger logger = Logger.getLogger(ProductionTreeTable.class.getName()); // Logging!
+	// The columns of the table, in order.
+	private final static String[] COLUMNS = {"Name / Product", "Job # / Detail", "Print Type", "Colors", "Quantity", "Total"};
+	private final static String THUMBNAIL = "Thumbnail"; // The artwork's name; kept in the container but never shown.
+	private final static String BEAN = "Bean"; // The (shared) Job or OrderDetail of the row; never shown.
+	private final static String ARTWORK = "Artwork"; // The generated column that shows the artwork.
+	private final static int PLACEHOLDER_ROWS = 8; // How many blank rows to show while the Jobs are loading.
+	private final static Object[] VISIBLE_COLUMNS = {COLUMNS[0], ARTWORK, COLUMNS[1], COLUMNS[2], COLUMNS[3], COLUMNS[4], COLUMNS[5]};
 
 	private SimpleStringFilter filter = null;
 	private Filterable f = null;
+	private String searchText = ""; // The search text currently filtering the table.
+	private LocalDate currentStart = null; // The first and last days currently shown in the table.
+	private LocalDate currentEnd = null;
+	private boolean editable = true; // False while the days shown came from the stale cache.
+	private long loadCount = 0; // Bumped by every load, so only the latest one gets shown.
+	private boolean placeholder = false; // True while the placeholder rows are shown in place of the Jobs.
+	private Set<String> expandedJobs = null; // The job numbers of the only Jobs to expand, or null to expand them all.
+	private boolean showing = false; // True while a container is being swapped in, when expanding isn't the user's doing.
 	
 	
 	/**
@@ -49,12 +92,28 @@ public class ProductionTreeTable extends TreeTable {
 		super();
 		
 		// Set the columns.
-		addContainerProperty("Name / Product", TreeNode.class, "");
-		addContainerProperty("Job # / Detail", String.class, "");
-		addContainerProperty("Print Type", String.class, "");
-		addContainerProperty("Colors", Long.class, 0L);
-		addContainerProperty("Quantity", Long.class, 0L);
-		addContainerProperty("Total", Long.class, 0L);
+		setContainerDataSource(createContainer());
+		
+		// The table only generates cells for the rows it's about to send to the browser,
+		// so the artwork is only ever asked for (and scaled, the first time) for rows that are actually seen.
+		// A click opens the full-size artwork for proof review.
+		addGeneratedColumn(ARTWORK, (source, itemId, columnId) -> {
+			Object name = source.getContainerProperty(itemId, THUMBNAIL).getValue();
+			if (name == null || name.toString().isEmpty()) {
+				return null;
+			}
+			Link link = new Link(null, new ExternalResource(ThumbnailRequestHandler.getLink(name.toString(), 0)));
+			link.setIcon(new ExternalResource(ThumbnailRequestHandler.getLink(name.toString(), ThumbnailStore.SIZES[0])));
+			link.setTargetName("_blank");
+			return link;
+		});
+		// The same goes for the checkboxes: only the rows that are about to be seen get one.
+		addGeneratedColumn(COLUMNS[0], (source, itemId, columnId) -> createNode(
+				source.getContainerProperty(itemId, COLUMNS[0]).getValue(), source.getContainerProperty(itemId, BEAN).getValue()));
+		setVisibleColumns(VISIBLE_COLUMNS);
+		// Keep track of which Jobs the user has expanded, so they stay that way through reloads (and in the URI).
+		addExpandListener(event -> jobToggled(event.getItemId(), true));
+		addCollapseListener(event -> jobToggled(event.getItemId(), false));
 		/*		addGeneratedColumn("TotalGen", new Table.ColumnGenerator() {
 
 		  @Override
@@ -67,69 +126,422 @@ public class ProductionTreeTable extends TreeTable {
 		});*/
 
 	}
-	
 
-	HorizontalLayout createNode (String name, boolean isChecked) {
-		HorizontalLayout layout = new HorizontalLayout();
+	/**
+	 * Creates an empty container with all of the table's columns.
+	 * A fresh one is filled in for every load and only then handed to the table,
+	 * so the table isn't told about every single row as it's added.
+	 * 
+	 * @return An empty HierarchicalContainer.
+	 */
+	private static HierarchicalContainer createContainer() {
+		HierarchicalContainer container = new HierarchicalContainer();
 		
-		layout.addComponent(new CheckBox(null, isChecked));
-		layout.addComponent(new Label(name));
+		container.addContainerProperty(COLUMNS[0], String.class, ""); // Searched by the filter; shown by createNode().
+		container.addContainerProperty(COLUMNS[1], String.class, "");
+		container.addContainerProperty(COLUMNS[2], String.class, "");
+		container.addContainerProperty(COLUMNS[3], Long.class, 0L);
+		container.addContainerProperty(COLUMNS[4], Long.class, 0L);
+		container.addContainerProperty(COLUMNS[5], Long.class, 0L);
+		container.addContainerProperty(THUMBNAIL, String.class, null);
+		container.addContainerProperty(BEAN, Object.class, null);
+		container.setIncludeParentsWhenFiltering(true);
 		
-		return layout;
+		return container;
+	}
+	
+
+	/**
+	 * Makes the first cell of a row: the name, with a checkbox for a Job or an item.
+	 * Checking off an item saves it straight away (or to the CompletionJournal, while the database is down).
+	 * 
+	 * @param name The name shown in the cell.
+	 * @param bean The row's Job or OrderDetail, or null for a heading (such as a ship date).
+	 * @return The new TreeNode.
+	 */
+	private TreeNode createNode (Object name, Object bean) {
+		if (bean instanceof Job) {
+			TreeNode node = new TreeNode(String.valueOf(name), ((Job) bean).getJobCompleted() != null);
+			node.setReadOnly(!editable);
+			return node;
+		}
+		if (bean instanceof OrderDetail) {
+			final OrderDetail od = (OrderDetail) bean;
+			TreeNode node = new TreeNode(String.valueOf(name), od.getItemCompleted() != null);
+			node.addValueChangeListener(event -> completeItem(od, Boolean.TRUE.equals(event.getProperty().getValue())));
+			return node;
+		}
+		return new TreeNode(String.valueOf(name));
 	}
 	
 	public void changeDayTo (final Date date) {
-		// Get a list of jobs on a particular date.
-//		LocalDate tempDate = LocalDate.of(2016, 03, 01); // Remove this after we have the program get the current date.
-//		LocalDate tempDate = LocalDate.now();
-		filter = null; // Reset the filter.
-		List<Job> jobsList = null;
+		changeDayTo(date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate());
+	}
+
+	public void changeDayTo (final LocalDate day) {
+		changeRangeTo(day, day);
+	}
+
+	/**
+	 * Shows all of the Jobs that ship between two dates.
+	 * When the range is more than a single day, the Jobs are grouped under a row for each ship date,
+	 * which also holds that day's subtotals.
+	 * 
+	 * @param startDate The first ship date. (inclusive)
+	 * @param endDate The last ship date. (inclusive)
+	 */
+	public void changeRangeTo (final LocalDate startDate, final LocalDate endDate) {
+		currentStart = startDate;
+		currentEnd = endDate;
+		loadRange(startDate, endDate);
+		filterTable(""); // Reset the filter.
+	}
+
+	/**
+	 * Shows all of the Jobs that ship between two dates, like changeRangeTo(), but without holding up the request
+	 * while they're read from the database. Until they're there, blank placeholder rows are shown,
+	 * and then the Jobs are pushed to the browser. If they're already cached, they're shown straight away.
+	 * 
+	 * @param startDate The first ship date. (inclusive)
+	 * @param endDate The last ship date. (inclusive)
+	 * @param searchText The search text to filter the Jobs with, or "" for none.
+	 * @param whenShown Run (with the session locked) once the Jobs are shown, or couldn't be loaded. May be null.
+	 */
+	public void changeRangeToAsync (final LocalDate startDate, final LocalDate endDate, final String searchText,
+			final Runnable whenShown) {
+		currentStart = startDate;
+		currentEnd = endDate;
+		load(startDate, endDate, true, () -> {
+			applyFilter(searchText);
+			if (whenShown != null) {
+				whenShown.run();
+			}
+		});
+	}
+
+	/**
+	 * Reloads the days that are currently shown, keeping whatever search text was being used.
+	 * The rows that are there stay until the new ones have been loaded.
+	 */
+	public void refresh () {
+		if (currentStart != null) {
+			load(currentStart, currentEnd, false, () -> applyFilter(searchText));
+		}
+	}
+
+	/**
+	 * Loads a range of dates through the JobCache in the background, and shows it once it's there.
+	 * Only the latest load is ever shown, however the loads happen to finish.
+	 * 
+	 * @param startDate The first ship date. (inclusive)
+	 * @param endDate The last ship date. (inclusive)
+	 * @param showPlaceholder True to show the placeholder rows in the meantime.
+	 * @param whenShown Run (with the session locked) after the range is shown.
+	 */
+	private void load (final LocalDate startDate, final LocalDate endDate, boolean showPlaceholder, final Runnable whenShown) {
+		final long thisLoad = ++loadCount;
+		CompletableFuture<JobsByDate> future = JobCache.getInstance().loadJobsByDateRange(startDate, endDate);
+		final UI ui = getUI() != null ? getUI() : UI.getCurrent();
+		
+		if (future.isDone() || ui == null) {
+			// Already cached (or there's no UI to push to), so there's nothing to wait for.
+			showRange(startDate, endDate, getResult(future, startDate, endDate));
+			whenShown.run();
+			return;
+		}
+		
+		if (showPlaceholder) {
+			showPlaceholder();
+		}
+		future.whenComplete((jobsByDate, e) -> ui.access(() -> {
+			if (thisLoad != loadCount) {
+				return; // Another range was asked for since; that one gets shown instead.
+			}
+			showRange(startDate, endDate, getResult(future, startDate, endDate));
+			whenShown.run();
+		}));
+	}
+
+	/**
+	 * Waits for a load (if it isn't done yet) and gets its result.
+	 * 
+	 * @return The Jobs by date, or null if they couldn't be loaded (which has been logged).
+	 */
+	private static JobsByDate getResult (CompletableFuture<JobsByDate> future,
+			LocalDate startDate, LocalDate endDate) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			logger.log(Level.SEVERE, "Could not load the Jobs between " + startDate + " and " + endDate, e.getCause());
+		}
+		return null;
+	}
+
+	/**
+	 * Fills the table with blank rows, styled as placeholders, while the Jobs are loading.
+	 */
+	private void showPlaceholder () {
+		HierarchicalContainer container = createContainer();
+		for (int i = 0; i < PLACEHOLDER_ROWS; i++) {
+			container.setChildrenAllowed(addRow(container, null, null, new Object[] {"", "", "", null, null, null}), false);
+		}
+		showContainer(container);
+		addStyleName(MyTheme.PLACEHOLDER); // Only after showContainer(), which takes it away.
+		placeholder = true;
+	}
+
+	private void loadRange (final LocalDate startDate, final LocalDate endDate) {
+		// Get all of the jobs in the range, grouped by their ship date.
+		JobsByDate jobsByDate = null;
 		try {
-			jobsList = JobManager.getJobsByDate(date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate());
+			jobsByDate = JobCache.getInstance().getJobsByDateRange(startDate, endDate);
 		} catch (SQLException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
+		showRange(startDate, endDate, jobsByDate);
+	}
+
+	/**
+	 * Fills the table with the Jobs of a range of dates.
+	 * 
+	 * @param startDate The first ship date. (inclusive)
+	 * @param endDate The last ship date. (inclusive)
+	 * @param jobsByDate The Jobs by their ship date, or null if they couldn't be loaded.
+	 */
+	private void showRange (final LocalDate startDate, final LocalDate endDate, final JobsByDate jobsByDate) {
+		if (jobsByDate == null) {
+			if (placeholder) {
+				showContainer(createContainer()); // Don't leave the placeholders up as if it were still loading.
+				Notification.show("The schedule could not be loaded.", Type.ERROR_MESSAGE);
+			}
+			return; // Leave whatever was there before; the error has already been logged.
+		}
+		
+		// While the database can't be reached, the schedule is shown as it was last seen.
+		// Items can still be checked off (they're kept in the CompletionJournal), but nothing else can be changed.
+		editable = !jobsByDate.isStale();
+		if (!editable) {
+			Notification.show("The database can't be reached right now.",
+					"This is the schedule as it was last seen. Completed items are saved on this computer"
+					+ " and sent to the database once it's back; nothing else can be changed until then.",
+					Type.WARNING_MESSAGE);
+		}
 		
-		if (jobsList != null && jobsList.size() > 0) {
+		boolean grouped = !startDate.equals(endDate); // Only group the jobs by date when there's more than one date.
+		HierarchicalContainer container = createContainer();
+		int rows = 0;
+		
+		for (Map.Entry<LocalDate, List<Job>> day : jobsByDate.entrySet()) {
+			if (day.getValue().isEmpty()) {
+				continue;
+			}
 			
-			removeAllItems(); // Clear out the TreeTable first.
+			Object dayId = null;
+			long dayQuantity = 0;
+			long dayTotal = 0;
+			if (grouped) {
+				dayId = addRow(container, null, null, new Object[] {DateManager.getDisplayDate(day.getKey()),
+						day.getValue().size() + " jobs", "", null, null, null});
+			}
 			
-			for (final Job j : jobsList) {
-			    // Go through each item in the Jobs list and add it
-			    // (along with all of its OrderDetail items) to the TreeTable.
-//				boolean firstOrderCompleted = j.getOrderDetailList().get(0).getItemCompleted() != null; // The first OrderDetail's completion status.
-				final Object jobId = addItem(new Object[] {new TreeNode(j.getCustomerName(), j.getJobCompleted() != null), j.getJobId(),
-						"", null, null, null}, null);
+			for (final Job j : day.getValue()) {
+				rows += addJob(container, dayId, j);
 				for (final OrderDetail od : j.getOrderDetailList()) {
-					final Object odId = addItem(new Object[] {new TreeNode(od.getProductId(), od.getItemCompleted() != null), od.getProductDetail(),
-							od.getPrintType().getValue(), od.getNumColors(), od.getQuantity(), (od.getNumColors() * od.getQuantity())}, null);
-//					logger.log(Level.INFO, "jobId is: " + jobId.toString());
-//					logger.log(Level.INFO, "odId is: " + odId.toString());
-//					logger.log(Level.INFO, "job to string: " + getItem(jobId).toString());
-//					logger.log(Level.INFO, "job can have children?: " + areChildrenAllowed(jobId));
-					setParent(odId, jobId);
-//					logger.log(Level.INFO, "Set parent successfully?: " + parentSet);
-					setChildrenAllowed(odId, false);
-					setCollapsed(odId, false);
+					dayQuantity += od.getQuantity();
+					dayTotal += od.getNumColors() * od.getQuantity();
 				}
-				setCollapsed(jobId, false);
-//				logger.log(Level.INFO, "Property ID for 'Name / Product': " + getContainerDataSource().getContainerProperty(j, "Name / Product").toString());
 			}
-			HierarchicalContainer dataSource = (HierarchicalContainer)getContainerDataSource();
-			dataSource.setIncludeParentsWhenFiltering(true);
-			filterTable("");
-//			logger.log(Level.INFO, "Container Data Source: " + getContainerDataSource());
-//			logger.log(Level.INFO, "Container Data Source, Stringized: " + getContainerDataSource().toString());
-//			logger.log(Level.INFO, "Container Data Source, Size: " + getContainerDataSource().size());
-//			logger.log(Level.INFO, "Container Data Source, Class Name: " + getContainerDataSource().getClass().getName());
-			logger.log(Level.INFO, "Property ID 0's class: " + getContainerDataSource().getContainerPropertyIds().toArray()[0].getClass().getName());
-			logger.log(Level.INFO, "Property ID 0's name: " + getContainerDataSource().getContainerPropertyIds().toArray()[0].toString());
+			
+			if (grouped) {
+				// Now that the whole day has been added up, fill in its subtotals.
+				setCell(container.getItem(dayId), COLUMNS[4], dayQuantity);
+				setCell(container.getItem(dayId), COLUMNS[5], dayTotal);
+			}
 		}
+		
+		showContainer(container);
+		
+		logger.log(Level.INFO, "Loaded " + rows + " items between " + startDate + " and " + endDate);
+	}
+
+	/**
+	 * Shows a List of Jobs that were loaded by someone else, such as a page of the "On Hold" queue.
+	 * Since the table doesn't know how to reload them, it's up to the caller to do that when they change.
+	 * 
+	 * @param jobs The Jobs to show.
+	 */
+	public void showJobs (final List<Job> jobs) {
+		currentStart = null; // Not showing a range of dates anymore.
+		currentEnd = null;
+		editable = true;
+		
+		HierarchicalContainer container = createContainer();
+		int rows = 0;
+		for (final Job j : jobs) {
+			rows += addJob(container, null, j);
+		}
+		showContainer(container);
+		applyFilter(searchText);
+		
+		logger.log(Level.INFO, "Showing " + rows + " items of " + jobs.size() + " jobs");
+	}
+
+	/**
+	 * Swaps a freshly filled container into the table and expands everything,
+	 * without repainting the table for each and every row.
+	 * 
+	 * @param container The filled container.
+	 */
+	private void showContainer (HierarchicalContainer container) {
+		removeStyleName(MyTheme.PLACEHOLDER);
+		placeholder = false;
+		showing = true;
+		disableContentRefreshing();
+		setContainerDataSource(container, Arrays.asList(VISIBLE_COLUMNS));
+		for (Object itemId : container.getItemIds()) {
+			if (container.areChildrenAllowed(itemId)) {
+				Object bean = container.getContainerProperty(itemId, BEAN).getValue();
+				boolean expanded = expandedJobs == null || !(bean instanceof Job) || expandedJobs.contains(((Job) bean).getJobId());
+				setCollapsed(itemId, !expanded);
+			}
+		}
+		enableContentRefreshing(true);
+		showing = false;
+	}
+
+	/**
+	 * Sets which Jobs are shown expanded, from the next load on. The rest are collapsed.
+	 * 
+	 * @param jobIds The job numbers of the Jobs to expand, or null to expand every Job (which is how it starts).
+	 */
+	public void setExpandedJobs (Set<String> jobIds) {
+		expandedJobs = jobIds == null ? null : new HashSet<String>(jobIds);
+	}
+
+	/**
+	 * @return The job numbers of the Jobs that are expanded, in order, or null if they all are.
+	 */
+	public SortedSet<String> getExpandedJobs () {
+		return expandedJobs == null ? null : Collections.unmodifiableSortedSet(new TreeSet<String>(expandedJobs));
+	}
+
+	/**
+	 * Called when the user expands or collapses a row. Once the first Job is collapsed,
+	 * the Jobs that are expanded get listed one by one.
+	 */
+	private void jobToggled (Object itemId, boolean expanded) {
+		if (showing) {
+			return;
+		}
+		Object bean = getContainerProperty(itemId, BEAN).getValue();
+		if (!(bean instanceof Job)) {
+			return; // A ship date.
+		}
+		if (expandedJobs == null) {
+			if (expanded) {
+				return; // Already expanding all of them.
+			}
+			expandedJobs = new HashSet<String>();
+			for (Object id : getContainerDataSource().getItemIds()) {
+				Object other = getContainerProperty(id, BEAN).getValue();
+				if (other instanceof Job) {
+					expandedJobs.add(((Job) other).getJobId());
+				}
+			}
+		}
+		if (expanded) {
+			expandedJobs.add(((Job) bean).getJobId());
+		} else {
+			expandedJobs.remove(((Job) bean).getJobId());
+		}
+	}
+
+	/**
+	 * Adds a Job (along with all of its OrderDetail items) to the container.
+	 * The rows refer to the beans and their values; nothing is copied.
+	 * 
+	 * @param container The container to add to.
+	 * @param parentId The item id of the row the Job belongs under, or null for a top-level row.
+	 * @param j The Job to add.
+	 * @return The number of OrderDetail items that were added.
+	 */
+	private static int addJob (HierarchicalContainer container, Object parentId, Job j) {
+		final Object jobId = addRow(container, parentId, j, new Object[] {j.getCustomerName(), j.getJobId(),
+				"", null, null, null});
+		for (final OrderDetail od : j.getOrderDetailList()) {
+			final Object odId = addRow(container, jobId, od, new Object[] {od.getProductId(), od.getProductDetail(),
+					od.getPrintType().getValue(), od.getNumColors(), od.getQuantity(), (od.getNumColors() * od.getQuantity())});
+			setCell(container.getItem(odId), THUMBNAIL, od.getThumbnail());
+			container.setChildrenAllowed(odId, false);
+		}
+		return j.getOrderDetailList().size();
+	}
+
+	/**
+	 * Sets an item as completed (or not) when its checkbox is clicked. If the database can't be reached,
+	 * the click is kept in the CompletionJournal and sent once it's back.
+	 * The JobCache reloads the item's date once the change has been saved, so the item bean itself is left alone.
+	 * 
+	 * @param od The item that was clicked.
+	 * @param completed True if it was checked off; false if it was unchecked.
+	 */
+	private static void completeItem (OrderDetail od, boolean completed) {
+		OrderDetail bean = new OrderDetail();
+		bean.setId(od.getId());
+		bean.setOrderId(od.getOrderId());
+		bean.setItemCompleted(completed ? new Timestamp(System.currentTimeMillis()) : null);
+		
+		CompletionJournal journal = CompletionJournal.getInstance();
+		if (!journal.setItemCompleted(bean)) {
+			Notification.show("Could not save " + od.getProductId() + " as " + (completed ? "completed." : "not completed."),
+					Type.ERROR_MESSAGE);
+		} else if (journal.hasPending()) {
+			Notification.show("Saved on this computer until the database is back.", Type.TRAY_NOTIFICATION);
+		}
+	}
+
+	/**
+	 * Adds a single row to the container.
+	 * 
+	 * @param container The container to add to.
+	 * @param parentId The item id of the row this one belongs under, or null for a top-level row.
+	 * @param bean The row's Job or OrderDetail, or null for a heading.
+	 * @param cells The values of the row, in the same order as the columns.
+	 * @return The new row's item id.
+	 */
+	private static Object addRow (HierarchicalContainer container, Object parentId, Object bean, Object[] cells) {
+		Object itemId = container.addItem();
+		Item item = container.getItem(itemId);
+		setCell(item, BEAN, bean);
+		for (int i = 0; i < COLUMNS.length; i++) {
+			setCell(item, COLUMNS[i], cells[i]);
+		}
+		if (parentId != null) {
+			container.setParent(itemId, parentId);
+		}
+		return itemId;
+	}
+
+	/**
+	 * Sets one cell of a row. The container's properties are all Objects underneath,
+	 * whatever type each column was declared with.
+	 */
+	@SuppressWarnings("unchecked")
+	private static void setCell (Item item, Object propertyId, Object value) {
+		((Property<Object>) item.getItemProperty(propertyId)).setValue(value);
 	}
 
 	public void filterTable (String searchText) {
-		// TODO Auto-generated method stub
+		applyFilter(searchText);
+		
+		Notification.show("Results narrowed.", Type.TRAY_NOTIFICATION);
+	}
+
+	private void applyFilter (String searchText) {
+		this.searchText = searchText;
 		f = (Filterable) getContainerDataSource();
 		
 		// Remove old filter
@@ -140,8 +552,53 @@ public class ProductionTreeTable extends TreeTable {
 		// Set new filter for the "Name / Product" column
 		filter = new SimpleStringFilter("Name / Product", searchText, true, false);
 		f.addContainerFilter(filter);
-		
-		Notification.show("Results narrowed.", Type.TRAY_NOTIFICATION);
+	}
+
+	@Override
+	public void attach() {
+		super.attach();
+		// Find out when the shown day's Jobs are changed, by this session or any other.
+		JobCache.register(this);
+	}
+
+	@Override
+	public void detach() {
+		JobCache.unregister(this);
+		super.detach();
+	}
+
+	/**
+	 * The JobCache's listeners aren't part of the session, so sign up again when a session
+	 * that was passivated (or moved to another server) is read back in.
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		// The UI (and so whether this is attached) is only all there once the whole session has been read.
+		in.registerValidation(() -> {
+			if (isAttached()) {
+				JobCache.register(this);
+			}
+		}, 0);
+	}
+
+	/**
+	 * Called (from the JobCache's thread) whenever the Jobs of some dates have changed.
+	 * If any of the days that are shown are among them, they get reloaded and pushed to the browser.
+	 * 
+	 * @param event The dates that have changed.
+	 */
+	@Subscribe
+	public void datesInvalidated(final DatesInvalidatedEvent event) {
+		UI ui = getUI();
+		if (ui == null || currentStart == null) {
+			return;
+		}
+		for (LocalDate date : event.getDates()) {
+			if (!date.isBefore(currentStart) && !date.isAfter(currentEnd)) {
+				ui.access(this::refresh);
+				return;
+			}
+		}
 	}
 
 }
@@ -1,5 +1,6 @@
 package info.chrismcgee.sky.scheduling.ui.components;
 
+import com.vaadin.data.Property;
 import com.vaadin.ui.CheckBox;
 import com.vaadin.ui.HorizontalLayout;
 import com.vaadin.ui.Label;
@@ -30,7 +31,42 @@ public class TreeNode extends HorizontalLayout {
 		addComponent(checkbox);
 		addComponent(label);
 	}
-	
+
+	/**
+	 * A node that is only a heading (such as a ship date), so it has no checkbox.
+	 *
+	 * @param name
+	 */
+	public TreeNode(String name) {
+		super();
+
+		label = new Label(name);
+
+		addComponent(label);
+	}
+
+	/**
+	 * Listens for the checkbox being checked or unchecked.
+	 * 
+	 * @param listener The listener; the new value is a Boolean.
+	 */
+	public void addValueChangeListener(Property.ValueChangeListener listener) {
+		if (checkbox != null) {
+			checkbox.addValueChangeListener(listener);
+		}
+	}
+
+	/**
+	 * Also makes the checkbox read-only, such as while the schedule is being shown from the stale cache.
+	 */
+	@Override
+	public void setReadOnly(boolean readOnly) {
+		super.setReadOnly(readOnly);
+		if (checkbox != null) {
+			checkbox.setReadOnly(readOnly);
+		}
+	}
+
 	
 	@Override
 	public String toString() {
@@ -1,15 +1,17 @@
 package info.chrismcgee.sky.scheduling.ui.views;
 
-import java.sql.SQLException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import com.vaadin.annotations.DesignRoot;
 import com.vaadin.navigator.View;
 import com.vaadin.navigator.ViewChangeListener.ViewChangeEvent;
 import com.vaadin.ui.Label;
+import com.vaadin.ui.UI;
 
-import info.chrismcgee.sky.scheduling.beans.Job;
 import info.chrismcgee.sky.scheduling.ui.components.VerticalSpacedLayout;
 import info.chrismcgee.sky.scheduling.util.ViewConfig;
+import info.chrismcgee.sky.tables.AsyncLoader;
 import info.chrismcgee.sky.tables.JobManager;
 
 @ViewConfig(uri = "firstview", displayName = "First View")
@@ -22,26 +24,34 @@ public class FirstView extends VerticalSpacedLayout implements View {
 	private static final long serialVersionUID = -3850858652481769839L;
 	public static final String NAME = "firstView"; // Defines this view.
 
+	private final static Logger logger = Logger.getLogger(FirstView.class.getName()); // Logging!
+	private final static String JOB_ID = "425000";
+
 	Label text = new Label();
+	Label jobText = new Label("Loading job " + JOB_ID + "...");
 	
 	public FirstView() {
 		setMargin(true);
 
 		text.setValue("This is the FIRST view.");
 		addComponent(text);
-		
-		try {
-			Job job = JobManager.getRow("425000");
-		} catch (SQLException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
+		addComponent(jobText);
 	}
 
+	/**
+	 * Loads the Job in the background, so the view paints without waiting for the database,
+	 * and pushes it to the browser once it's there.
+	 */
 	@Override
 	public void enter(ViewChangeEvent event) {
-		// TODO Auto-generated method stub
-		
+		final UI ui = UI.getCurrent();
+		AsyncLoader.load("job:" + JOB_ID, () -> JobManager.getRow(JOB_ID)).whenComplete((job, e) -> ui.access(() -> {
+			if (e != null) {
+				logger.log(Level.SEVERE, "Could not load job " + JOB_ID, e);
+			}
+			jobText.setValue(job == null ? "Job " + JOB_ID + " could not be loaded."
+					: "Job " + job.getJobId() + ": " + job.getCustomerName());
+		}));
 	}
 
 }
@@ -0,0 +1,130 @@
+package info.chrismcgee.sky.scheduling.ui.views;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vaadin.navigator.View;
+import com.vaadin.navigator.ViewChangeListener.ViewChangeEvent;
+import com.vaadin.ui.Alignment;
+import com.vaadin.ui.CheckBox;
+import com.vaadin.ui.DateField;
+import com.vaadin.ui.HorizontalLayout;
+import com.vaadin.ui.Label;
+import com.vaadin.ui.TextField;
+import com.vaadin.ui.VerticalLayout;
+
+import info.chrismcgee.sky.components.DateManager;
+import info.chrismcgee.sky.scheduling.beans.Job;
+import info.chrismcgee.sky.scheduling.ui.components.PagerBar;
+import info.chrismcgee.sky.scheduling.ui.components.ProductionTreeTable;
+import info.chrismcgee.sky.scheduling.util.MyTheme;
+import info.chrismcgee.sky.scheduling.util.ViewConfig;
+import info.chrismcgee.sky.tables.JobManager;
+import info.chrismcgee.sky.tables.Page;
+
+/**
+ * Browses the Jobs of past years (just the completed ones, by default), optionally by customer,
+ * a page at a time. Every page is read by seeking from the last Job of the page before,
+ * so paging through years of history costs the same on the last page as on the first.
+ *
+ * @author Marketing
+ *
+ */
+@ViewConfig(uri = "history", displayName = "History")
+public class HistoryView extends VerticalLayout implements View {
+
+	/**
+	 * Serialization!
+	 */
+	private static final long serialVersionUID = 5026393000476291658L;
+	public static final String NAME = "history"; // Defines this view.
+
+	private final static Logger logger = Logger.getLogger(HistoryView.class.getName()); // Logging!
+	private final static int PAGE_SIZE = 50; // How many Jobs are shown on each page.
+	private final static int YEARS_BACK = 5; // How far back the history starts, unless another date is picked.
+
+	private DateField fromField = new DateField("From");
+	private DateField toField = new DateField("Through");
+	private CheckBox completedBox = new CheckBox("Completed jobs only", true);
+	private TextField customerField = new TextField("Customer");
+	private ProductionTreeTable treeTable = new ProductionTreeTable();
+	private PagerBar pager = new PagerBar(this::showPage);
+
+	public HistoryView() {
+
+		setMargin(true);
+		setSpacing(true);
+
+		Label caption = new Label("History");
+		caption.addStyleName(MyTheme.LABEL_HUGE);
+		addComponent(caption);
+
+		LocalDate today = DateManager.getTodayDate();
+		fromField.setValue(toDate(today.minusYears(YEARS_BACK)));
+		toField.setValue(toDate(today));
+		customerField.setInputPrompt("Name starts with...");
+
+		// Any change to the search starts over from the first page.
+		fromField.addValueChangeListener(event -> pager.first());
+		toField.addValueChangeListener(event -> pager.first());
+		completedBox.addValueChangeListener(event -> pager.first());
+		customerField.addTextChangeListener(event -> {
+			customerField.setValue(event.getText());
+			pager.first();
+		});
+
+		HorizontalLayout filters = new HorizontalLayout(fromField, toField, customerField, completedBox);
+		filters.setSpacing(true);
+		filters.setComponentAlignment(completedBox, Alignment.BOTTOM_LEFT);
+		addComponent(filters);
+
+		treeTable.setWidth(100.0f, Unit.PERCENTAGE);
+		addComponent(treeTable);
+		addComponent(pager);
+		setComponentAlignment(pager, Alignment.TOP_CENTER);
+	}
+
+	/**
+	 * Shows one page of the history.
+	 *
+	 * @param token The page's token, or null for the first page.
+	 * @return The page that was shown, or null if it couldn't be loaded.
+	 */
+	private Page<Job> showPage(String token) {
+
+		if (fromField.getValue() == null || toField.getValue() == null) {
+			return null;
+		}
+		String customer = customerField.getValue().trim();
+
+		Page<Job> jobs = null;
+		try {
+			jobs = JobManager.getJobPage(toLocalDate(fromField.getValue()), toLocalDate(toField.getValue()),
+					completedBox.getValue(), customer.isEmpty() ? null : customer, token, PAGE_SIZE);
+		} catch (SQLException e) {
+			logger.log(Level.WARNING, "Exception when trying to LOAD a page of the history.", e);
+		}
+		if (jobs != null) {
+			treeTable.showJobs(jobs.getItems());
+		}
+		return jobs;
+	}
+
+	private static Date toDate(LocalDate date) {
+		return Date.from(date.atStartOfDay(ZoneId.systemDefault()).toInstant());
+	}
+
+	private static LocalDate toLocalDate(Date date) {
+		return date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+	}
+
+	@Override
+	public void enter(ViewChangeEvent event) {
+		pager.reload();
+	}
+
+}
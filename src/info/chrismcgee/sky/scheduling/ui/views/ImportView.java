@@ -0,0 +1,288 @@
+package info.chrismcgee.sky.scheduling.ui.views;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vaadin.navigator.View;
+import com.vaadin.navigator.ViewChangeListener.ViewChangeEvent;
+import com.vaadin.ui.CheckBox;
+import com.vaadin.ui.HorizontalLayout;
+import com.vaadin.ui.Label;
+import com.vaadin.ui.Notification;
+import com.vaadin.ui.Notification.Type;
+import com.vaadin.ui.OptionGroup;
+import com.vaadin.ui.ProgressBar;
+import com.vaadin.ui.Table;
+import com.vaadin.ui.TextField;
+import com.vaadin.ui.UI;
+import com.vaadin.ui.Upload;
+import com.vaadin.ui.VerticalLayout;
+
+import info.chrismcgee.sky.scheduling.beans.OrderDetail;
+import info.chrismcgee.sky.scheduling.importer.CsvRecordFormat;
+import info.chrismcgee.sky.scheduling.importer.FixedWidthRecordFormat;
+import info.chrismcgee.sky.scheduling.importer.ImportReport;
+import info.chrismcgee.sky.scheduling.importer.OrderImporter;
+import info.chrismcgee.sky.scheduling.thumbnail.ThumbnailStore;
+import info.chrismcgee.sky.scheduling.util.MyTheme;
+import info.chrismcgee.sky.scheduling.util.ViewConfig;
+import info.chrismcgee.sky.tables.OrderDetailManager;
+
+/**
+ * Uploads a file of new orders from the order entry system and imports it with the OrderImporter,
+ * showing how far along it is and which lines were rejected.
+ *
+ * Artwork for a Job's items is uploaded here too: it's saved in the ThumbnailStore under the job number,
+ * and its name is put in the thumbnail column of the items it's for, so it shows up for proof review.
+ *
+ * @author Marketing
+ *
+ */
+@ViewConfig(uri = "import", displayName = "Import Orders")
+public class ImportView extends VerticalLayout implements View {
+
+	/**
+	 * Serialization!
+	 */
+	private static final long serialVersionUID = 2869101544326000913L;
+	public static final String NAME = "importOrders"; // Defines this view.
+
+	private final static Logger logger = Logger.getLogger(ImportView.class.getName()); // Logging!
+	private final static String FORMAT_CSV = "CSV";
+	private final static String FORMAT_FIXED = "Fixed width";
+
+	private OptionGroup formatGroup = new OptionGroup("Format");
+	private CheckBox headerBox = new CheckBox("The first line is column names", true);
+	private Upload upload;
+	private ProgressBar progressBar = new ProgressBar();
+	private Label status = new Label();
+	private Table rejects = new Table("Rejected lines");
+	private File uploaded; // Where the file is kept until it's been imported.
+
+	private TextField artworkJobField = new TextField("Job #");
+	private TextField artworkProductField = new TextField("Product");
+	private Upload artworkUpload;
+	private File artwork; // Where the artwork is kept until it's been stored.
+
+	public ImportView() {
+
+		setMargin(true);
+		setSpacing(true);
+
+		Label caption = new Label("Import Orders");
+		caption.addStyleName(MyTheme.LABEL_HUGE);
+		addComponent(caption);
+
+		formatGroup.addItems(FORMAT_CSV, FORMAT_FIXED);
+		formatGroup.setValue(FORMAT_CSV);
+		formatGroup.addStyleName(MyTheme.OPTIONGROUP_HORIZONTAL);
+
+		// The upload goes to a temporary file, which is then read through once by the importer.
+		upload = new Upload("Order file", this::receiveUpload);
+		upload.setButtonCaption("Import");
+		upload.addSucceededListener(event -> startImport(event.getFilename()));
+		upload.addFailedListener(event -> {
+			Notification.show("The file didn't finish uploading.", Type.ERROR_MESSAGE);
+			deleteUploaded();
+		});
+
+		HorizontalLayout options = new HorizontalLayout(formatGroup, headerBox);
+		options.setSpacing(true);
+		addComponents(options, upload);
+
+		progressBar.setIndeterminate(true);
+		progressBar.setVisible(false);
+		addComponents(progressBar, status);
+
+		rejects.addContainerProperty("Line", Long.class, 0L);
+		rejects.addContainerProperty("Job #", String.class, "");
+		rejects.addContainerProperty("Reason", String.class, "");
+		rejects.setWidth(100.0f, Unit.PERCENTAGE);
+		rejects.setPageLength(15);
+		rejects.setVisible(false);
+		addComponent(rejects);
+
+		Label artworkCaption = new Label("Upload Artwork");
+		artworkCaption.addStyleName(MyTheme.LABEL_H2);
+		artworkProductField.setInputPrompt("All of the job's items");
+		artworkUpload = new Upload("Artwork file", this::receiveArtwork);
+		artworkUpload.setButtonCaption("Upload");
+		artworkUpload.addSucceededListener(event -> storeArtwork(event.getFilename()));
+		artworkUpload.addFailedListener(event -> {
+			Notification.show("The artwork didn't finish uploading.", Type.ERROR_MESSAGE);
+			deleteArtwork();
+		});
+		HorizontalLayout artworkFields = new HorizontalLayout(artworkJobField, artworkProductField);
+		artworkFields.setSpacing(true);
+		addComponents(artworkCaption, artworkFields, artworkUpload);
+	}
+
+	/**
+	 * Gives the Upload somewhere to put the file.
+	 */
+	private OutputStream receiveUpload(String filename, String mimeType) {
+		try {
+			uploaded = File.createTempFile("orders", ".txt");
+			return new FileOutputStream(uploaded);
+		} catch (IOException e) {
+			logger.log(Level.SEVERE, "Could not make a temporary file for " + filename, e);
+			Notification.show("The file couldn't be uploaded.", Type.ERROR_MESSAGE);
+			return null;
+		}
+	}
+
+	/**
+	 * Imports the uploaded file on its own thread, pushing the progress to the browser as each batch is saved.
+	 */
+	private void startImport(String filename) {
+
+		File file = uploaded;
+		uploaded = null; // The import thread deletes it from here on.
+		OrderImporter importer = new OrderImporter(
+				FORMAT_FIXED.equals(formatGroup.getValue()) ? new FixedWidthRecordFormat() : new CsvRecordFormat(),
+				headerBox.getValue());
+		UI ui = UI.getCurrent();
+
+		upload.setEnabled(false);
+		progressBar.setVisible(true);
+		rejects.setVisible(false);
+		status.setValue("Importing " + filename + "...");
+
+		new Thread(() -> {
+			ImportReport report = null;
+			String failure = null; // Why the import didn't finish, if it didn't.
+			try {
+				report = importer.importOrders(file.toPath(),
+						progress -> ui.access(() -> status.setValue(progress.toString())));
+			} catch (IOException e) {
+				logger.log(Level.SEVERE, "Exception when trying to IMPORT " + filename, e);
+				failure = "The file couldn't be read.";
+			} catch (RuntimeException e) { // Such as a CompletionException from one of the parsing threads.
+				logger.log(Level.SEVERE, "Unexpected exception when trying to IMPORT " + filename, e);
+				failure = "The import stopped partway through. Any jobs saved before then are in.";
+			} finally {
+				try {
+					Files.deleteIfExists(file.toPath());
+				} catch (IOException e) {
+					logger.log(Level.WARNING, "Could not delete " + file, e);
+				}
+				// Whatever happened, the view has to be usable again.
+				final ImportReport finished = report;
+				final String reason = failure;
+				ui.access(() -> finishImport(finished, reason));
+			}
+		}, "order-import").start();
+	}
+
+	/**
+	 * Puts the view back the way it was before the import, showing how it went.
+	 *
+	 * @param report The finished report, or null if the import didn't finish.
+	 * @param failure Why it didn't finish.
+	 */
+	private void finishImport(ImportReport report, String failure) {
+
+		upload.setEnabled(true);
+		progressBar.setVisible(false);
+		if (report == null) {
+			status.setValue(failure == null ? "The import didn't finish." : failure);
+			return;
+		}
+		status.setValue(report.toString());
+		rejects.removeAllItems();
+		for (ImportReport.Reject reject : report.getRejects()) {
+			rejects.addItem(new Object[] {reject.getLine(), reject.getJobId(), reject.getReason()}, null);
+		}
+		rejects.setVisible(!report.getRejects().isEmpty());
+	}
+
+	/**
+	 * Gives the artwork Upload somewhere to put the file.
+	 */
+	private OutputStream receiveArtwork(String filename, String mimeType) {
+		try {
+			artwork = File.createTempFile("artwork", ".tmp");
+			return new FileOutputStream(artwork);
+		} catch (IOException e) {
+			logger.log(Level.SEVERE, "Could not make a temporary file for " + filename, e);
+			Notification.show("The artwork couldn't be uploaded.", Type.ERROR_MESSAGE);
+			return null;
+		}
+	}
+
+	/**
+	 * Saves the uploaded artwork in the ThumbnailStore as "job number/file name",
+	 * and points the Job's items (or just the ones of the product that was given) at it.
+	 */
+	private void storeArtwork(String filename) {
+
+		String jobId = artworkJobField.getValue() == null ? "" : artworkJobField.getValue().trim();
+		String productId = artworkProductField.getValue() == null ? "" : artworkProductField.getValue().trim();
+		try {
+			List<OrderDetail> items = jobId.isEmpty() ? new ArrayList<OrderDetail>() : OrderDetailManager.getRows(jobId);
+			List<OrderDetail> matching = new ArrayList<OrderDetail>();
+			for (OrderDetail item : items) {
+				if (productId.isEmpty() || productId.equalsIgnoreCase(item.getProductId())) {
+					matching.add(item);
+				}
+			}
+			if (matching.isEmpty()) {
+				Notification.show("Job " + jobId + " has no " + (productId.isEmpty() ? "items." : productId + " items."), Type.WARNING_MESSAGE);
+				return;
+			}
+
+			String name = jobId + "/" + Paths.get(filename.replace('\\', '/')).getFileName(); // Just the file's own name, not its folders.
+			boolean stored;
+			try (InputStream in = new FileInputStream(artwork)) {
+				stored = ThumbnailStore.getInstance().store(name, in);
+			}
+			if (!stored) {
+				Notification.show("\"" + name + "\" can't be used as the name of the artwork.", Type.WARNING_MESSAGE);
+				return;
+			}
+
+			int updated = 0;
+			for (OrderDetail item : matching) {
+				item.setThumbnail(name);
+				if (OrderDetailManager.update(item)) {
+					updated++;
+				}
+			}
+			Notification.show("The artwork is on " + updated + (updated == 1 ? " item" : " items") + " of job " + jobId + ".");
+		} catch (Exception e) { // OrderDetailManager.update() throws Exception.
+			logger.log(Level.SEVERE, "Exception when trying to STORE the artwork " + filename + " for job " + jobId, e);
+			Notification.show("The artwork couldn't be saved.", Type.ERROR_MESSAGE);
+		} finally {
+			deleteArtwork();
+		}
+	}
+
+	private void deleteArtwork() {
+		if (artwork != null && !artwork.delete()) {
+			logger.log(Level.WARNING, "Could not delete " + artwork);
+		}
+		artwork = null;
+	}
+
+	private void deleteUploaded() {
+		if (uploaded != null && !uploaded.delete()) {
+			logger.log(Level.WARNING, "Could not delete " + uploaded);
+		}
+		uploaded = null;
+	}
+
+	@Override
+	public void enter(ViewChangeEvent event) {
+	}
+
+}
@@ -0,0 +1,107 @@
+package info.chrismcgee.sky.scheduling.ui.views;
+
+import java.sql.SQLException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vaadin.navigator.View;
+import com.vaadin.navigator.ViewChangeListener.ViewChangeEvent;
+import com.vaadin.ui.Alignment;
+import com.vaadin.ui.Label;
+import com.vaadin.ui.Table;
+import com.vaadin.ui.TextField;
+import com.vaadin.ui.VerticalLayout;
+
+import info.chrismcgee.sky.scheduling.beans.OrderDetail;
+import info.chrismcgee.sky.scheduling.ui.components.PagerBar;
+import info.chrismcgee.sky.scheduling.util.MyTheme;
+import info.chrismcgee.sky.scheduling.util.ViewConfig;
+import info.chrismcgee.sky.tables.OrderDetailManager;
+import info.chrismcgee.sky.tables.Page;
+
+/**
+ * Finds every item of a product, across every order ever taken, a page at a time.
+ *
+ * @author Marketing
+ *
+ */
+@ViewConfig(uri = "search", displayName = "Item Search")
+public class ItemSearchView extends VerticalLayout implements View {
+
+	/**
+	 * Serialization!
+	 */
+	private static final long serialVersionUID = -4434706171305366071L;
+	public static final String NAME = "itemSearch"; // Defines this view.
+
+	private final static Logger logger = Logger.getLogger(ItemSearchView.class.getName()); // Logging!
+	private final static int PAGE_SIZE = 100; // How many items are shown on each page.
+	// The columns of the table, in order.
+	private final static String[] COLUMNS = {"Job #", "Product", "Detail", "Print Type", "Colors", "Quantity", "Completed"};
+
+	private TextField productField = new TextField("Product");
+	private Table table = new Table();
+	private PagerBar pager = new PagerBar(this::showPage);
+
+	public ItemSearchView() {
+
+		setMargin(true);
+		setSpacing(true);
+
+		Label caption = new Label("Item Search");
+		caption.addStyleName(MyTheme.LABEL_HUGE);
+		addComponent(caption);
+
+		productField.setInputPrompt("Product starts with...");
+		productField.addTextChangeListener(event -> {
+			productField.setValue(event.getText());
+			pager.first();
+		});
+		addComponent(productField);
+
+		table.addContainerProperty(COLUMNS[0], String.class, "");
+		table.addContainerProperty(COLUMNS[1], String.class, "");
+		table.addContainerProperty(COLUMNS[2], String.class, "");
+		table.addContainerProperty(COLUMNS[3], String.class, "");
+		table.addContainerProperty(COLUMNS[4], Long.class, 0L);
+		table.addContainerProperty(COLUMNS[5], Long.class, 0L);
+		table.addContainerProperty(COLUMNS[6], String.class, "");
+		table.setWidth(100.0f, Unit.PERCENTAGE);
+		table.setSortEnabled(false); // The pages are in order of job number.
+		addComponent(table);
+		addComponent(pager);
+		setComponentAlignment(pager, Alignment.TOP_CENTER);
+	}
+
+	/**
+	 * Shows one page of the items.
+	 *
+	 * @param token The page's token, or null for the first page.
+	 * @return The page that was shown, or null if it couldn't be loaded.
+	 */
+	private Page<OrderDetail> showPage(String token) {
+
+		String product = productField.getValue().trim();
+		Page<OrderDetail> items = null;
+		try {
+			items = OrderDetailManager.getItemPage(product.isEmpty() ? null : product, token, PAGE_SIZE);
+		} catch (SQLException e) {
+			logger.log(Level.WARNING, "Exception when trying to LOAD a page of items.", e);
+		}
+		if (items != null) {
+			table.removeAllItems();
+			for (OrderDetail od : items.getItems()) {
+				table.addItem(new Object[] {od.getOrderId(), od.getProductId(), od.getProductDetail(),
+						od.getPrintType().getValue(), od.getNumColors(), od.getQuantity(),
+						od.getItemCompleted() == null ? "" : od.getItemCompleted().toLocalDateTime().toLocalDate().toString()}, od.getId());
+			}
+		}
+		return items;
+	}
+
+	@Override
+	public void enter(ViewChangeEvent event) {
+		pager.reload();
+	}
+
+}
@@ -0,0 +1,19 @@
+package info.chrismcgee.sky.scheduling.ui.views;
+
+import info.chrismcgee.sky.components.DateManager;
+import info.chrismcgee.sky.scheduling.util.ViewConfig;
+
+@ViewConfig(uri = "onhold", displayName = "On Hold")
+public class OnHoldView extends QueueView {
+
+	/**
+	 * Serialization!
+	 */
+	private static final long serialVersionUID = 6065203497212867385L;
+	public static final String NAME = "onHold"; // Defines this view.
+
+	public OnHoldView() {
+		super(DateManager.HOLD_DATE, "On Hold");
+	}
+
+}
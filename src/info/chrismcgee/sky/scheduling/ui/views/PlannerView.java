@@ -0,0 +1,294 @@
+package info.chrismcgee.sky.scheduling.ui.views;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vaadin.navigator.View;
+import com.vaadin.navigator.ViewChangeListener.ViewChangeEvent;
+import com.vaadin.ui.Button;
+import com.vaadin.ui.DateField;
+import com.vaadin.ui.HorizontalLayout;
+import com.vaadin.ui.Label;
+import com.vaadin.ui.Notification;
+import com.vaadin.ui.Notification.Type;
+import com.vaadin.ui.Table;
+import com.vaadin.ui.TextField;
+import com.vaadin.ui.UI;
+import com.vaadin.ui.VerticalLayout;
+
+import info.chrismcgee.sky.components.BusinessCalendar;
+import info.chrismcgee.sky.components.DateManager;
+import info.chrismcgee.sky.enums.PrintType;
+import info.chrismcgee.sky.scheduling.beans.Job;
+import info.chrismcgee.sky.scheduling.service.ScheduleSnapshot;
+import info.chrismcgee.sky.scheduling.service.SchedulingEngine;
+import info.chrismcgee.sky.scheduling.util.MyTheme;
+import info.chrismcgee.sky.scheduling.util.ViewConfig;
+import info.chrismcgee.sky.tables.JobCache;
+import info.chrismcgee.sky.tables.JobCache.JobsByDate;
+
+/**
+ * Shows how many imprints each press line has on each of the coming days, with the days that are over
+ * the line's capacity (or that aren't worked at all) flagged, and lets the planner try out moves
+ * before any of them are saved.
+ *
+ * Each move that's tried forks the ScheduleSnapshot, so it can be undone one at a time, and none of them
+ * touch the database until they're saved. The SchedulingEngine proposes the first day with room for a Job,
+ * given the moves tried so far.
+ *
+ * How many days are planned is set with -Dsky.planner.days (28, by default).
+ *
+ * @author Marketing
+ *
+ */
+@ViewConfig(uri = "planner", displayName = "Capacity Planner")
+public class PlannerView extends VerticalLayout implements View {
+
+	/**
+	 * Serialization!
+	 */
+	private static final long serialVersionUID = 4471829346618734120L;
+	public static final String NAME = "planner"; // Defines this view.
+
+	private final static Logger logger = Logger.getLogger(PlannerView.class.getName()); // Logging!
+	private final static int HORIZON_DAYS = Integer.getInteger("sky.planner.days", 28);
+	private final static String DATE_COLUMN = "Date";
+
+	private Label summary = new Label("Loading...");
+	private TextField jobField = new TextField("Job #");
+	private DateField toField = new DateField("Move to");
+	private Button proposeButton = new Button("Propose a date", event -> propose());
+	private Button tryButton = new Button("Try it", event -> tryMove());
+	private Button undoButton = new Button("Undo", event -> undo());
+	private Button saveButton = new Button("Save moves", event -> save());
+	private Button discardButton = new Button("Discard", event -> reload());
+	private Table table = new Table();
+
+	// The schedule being planned. None of it is kept if the session is passivated; enter() loads it again.
+	private LocalDate firstDay;
+	private Map<PrintType, Long> capacities; // The imprints each line can print in a working day.
+	private transient Map<String, Job> jobs; // Every Job in the horizon, by job number.
+	private transient Deque<ScheduleSnapshot> history; // The snapshot after each tried move; the original is at the bottom.
+	private transient SchedulingEngine engine; // Matches the top of the history. Made when it's first needed.
+	private Map<PrintType, SortedSet<LocalDate>> overloaded = Collections.emptyMap(); // The overloaded days being flagged, by line.
+
+	public PlannerView() {
+
+		setMargin(true);
+		setSpacing(true);
+
+		Label caption = new Label("Capacity Planner");
+		caption.addStyleName(MyTheme.LABEL_HUGE);
+		addComponents(caption, summary);
+
+		HorizontalLayout controls = new HorizontalLayout(jobField, toField, proposeButton, tryButton, undoButton, saveButton, discardButton);
+		controls.setSpacing(true);
+		controls.setEnabled(false); // Until the schedule has been loaded.
+		addComponent(controls);
+
+		table.addContainerProperty(DATE_COLUMN, String.class, "");
+		for (PrintType line : PrintType.values()) {
+			table.addContainerProperty(line, Long.class, 0L, line.getValue(), null, Table.Align.RIGHT);
+		}
+		table.setCellStyleGenerator((source, itemId, propertyId) -> {
+			SortedSet<LocalDate> days = propertyId instanceof PrintType ? overloaded.get(propertyId) : null;
+			return days != null && days.contains(itemId) ? MyTheme.OVERLOADED : null;
+		});
+		table.setWidth(100.0f, Unit.PERCENTAGE);
+		table.setSortEnabled(false);
+		addComponent(table);
+	}
+
+	/**
+	 * Loads the coming days in the background and starts planning afresh, throwing away any moves that were tried.
+	 */
+	private void reload() {
+
+		final UI ui = UI.getCurrent();
+		final LocalDate first = DateManager.getTodayDate();
+		getControls().setEnabled(false);
+		summary.setValue("Loading...");
+
+		JobCache.getInstance().loadJobsByDateRange(first, first.plusDays(HORIZON_DAYS - 1)).whenComplete((jobsByDate, e) -> ui.access(() -> {
+			if (e != null || jobsByDate == null) {
+				logger.log(Level.WARNING, "Exception when trying to LOAD the schedule from " + first, e);
+				summary.setValue("The schedule could not be loaded.");
+				return;
+			}
+			start(first, jobsByDate);
+		}));
+	}
+
+	/**
+	 * Starts planning from the Jobs that were loaded.
+	 */
+	private void start(LocalDate first, JobsByDate jobsByDate) {
+
+		firstDay = first;
+		capacities = SchedulingEngine.loadCapacities();
+		jobs = new HashMap<String, Job>();
+		for (List<Job> day : jobsByDate.values()) {
+			for (Job job : day) {
+				jobs.put(job.getJobId(), job);
+			}
+		}
+		history = new ArrayDeque<ScheduleSnapshot>();
+		history.push(ScheduleSnapshot.of(jobs.values(), firstDay, HORIZON_DAYS));
+		engine = null;
+
+		getControls().setEnabled(true);
+		saveButton.setEnabled(!jobsByDate.isStale()); // Nothing can be saved while the database is away.
+		refresh();
+	}
+
+	/**
+	 * Shows the loads of the snapshot at the top of the history.
+	 */
+	private void refresh() {
+
+		ScheduleSnapshot snapshot = history.peek();
+		// Each Job is also checked against its own plant's days off.
+		overloaded = snapshot.getOverloadedDays(capacities, BusinessCalendar.getDefault(), BusinessCalendar::forCompany);
+
+		table.removeAllItems();
+		for (int day = 0; day < HORIZON_DAYS; day++) {
+			LocalDate date = firstDay.plusDays(day);
+			Object[] row = new Object[PrintType.values().length + 1];
+			row[0] = DateManager.getDisplayDate(date);
+			for (PrintType line : PrintType.values()) {
+				row[line.ordinal() + 1] = snapshot.getLoad(line, date);
+			}
+			table.addItem(row, date);
+		}
+
+		int overloadedDays = 0;
+		for (SortedSet<LocalDate> days : overloaded.values()) {
+			overloadedDays += days.size();
+		}
+		int moves = snapshot.getMoves().size();
+		summary.setValue(jobs.size() + " jobs over " + HORIZON_DAYS + " days, " + overloadedDays + " overloaded"
+				+ (moves == 0 ? "" : "; " + moves + (moves == 1 ? " move" : " moves") + " not saved yet"));
+		undoButton.setEnabled(history.size() > 1);
+	}
+
+	/**
+	 * Fills in the first day that has room for the Job, given the moves tried so far.
+	 */
+	private void propose() {
+
+		Job job = findJob();
+		if (job == null) {
+			return;
+		}
+		LocalDate proposed = getEngine().propose(job, firstDay);
+		if (proposed == null) {
+			Notification.show("There's no room for job " + job.getJobId() + " in the next " + HORIZON_DAYS + " days.", Type.WARNING_MESSAGE);
+			return;
+		}
+		toField.setValue(Date.from(proposed.atStartOfDay(ZoneId.systemDefault()).toInstant()));
+	}
+
+	/**
+	 * Moves the Job in a fork of the schedule, without saving anything.
+	 */
+	private void tryMove() {
+
+		Job job = findJob();
+		if (job == null || toField.getValue() == null) {
+			return;
+		}
+		LocalDate to = toField.getValue().toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+		history.push(history.peek().move(job.getJobId(), to));
+		engine = null;
+		refresh();
+	}
+
+	/**
+	 * Takes back the last move that was tried.
+	 */
+	private void undo() {
+
+		if (history != null && history.size() > 1) {
+			history.pop();
+			engine = null;
+			refresh();
+		}
+	}
+
+	/**
+	 * Saves every move that was tried, and starts again from what's in the database.
+	 */
+	private void save() {
+
+		if (history == null) { // Passivated since it was loaded.
+			reload();
+			return;
+		}
+		Map<String, LocalDate> moves = history.peek().getMoves();
+		Set<String> saved = history.peek().commit();
+		if (saved.size() == moves.size()) {
+			Notification.show("Saved " + saved.size() + (saved.size() == 1 ? " move." : " moves."));
+		} else {
+			Notification.show("Only " + saved.size() + " of the " + moves.size() + " moves could be saved.",
+					"The others had been changed by someone else in the meantime, so the schedule has been reloaded.",
+					Type.WARNING_MESSAGE);
+		}
+		reload();
+	}
+
+	/**
+	 * @return The Job whose number is in the job field, or null (after telling the user why) if it isn't in the horizon.
+	 */
+	private Job findJob() {
+
+		if (jobs == null) { // Passivated since it was loaded.
+			reload();
+			return null;
+		}
+		String jobId = jobField.getValue() == null ? "" : jobField.getValue().trim();
+		Job job = jobs.get(jobId);
+		if (job == null) {
+			Notification.show("Job " + jobId + " doesn't ship in the next " + HORIZON_DAYS + " days.", Type.WARNING_MESSAGE);
+		}
+		return job;
+	}
+
+	/**
+	 * @return The engine, with every Job placed where the snapshot at the top of the history has it.
+	 */
+	private SchedulingEngine getEngine() {
+
+		if (engine == null) {
+			ScheduleSnapshot snapshot = history.peek();
+			engine = new SchedulingEngine(firstDay, HORIZON_DAYS, capacities, BusinessCalendar.getDefault(), BusinessCalendar::forCompany);
+			for (Job job : jobs.values()) {
+				LocalDate shipDate = snapshot.getShipDate(job.getJobId());
+				if (shipDate != null) {
+					engine.place(job, shipDate);
+				}
+			}
+		}
+		return engine;
+	}
+
+	private HorizontalLayout getControls() {
+		return (HorizontalLayout) jobField.getParent();
+	}
+
+	@Override
+	public void enter(ViewChangeEvent event) {
+		reload();
+	}
+
+}
@@ -0,0 +1,19 @@
+package info.chrismcgee.sky.scheduling.ui.views;
+
+import info.chrismcgee.sky.components.DateManager;
+import info.chrismcgee.sky.scheduling.util.ViewConfig;
+
+@ViewConfig(uri = "proofs", displayName = "Proofs")
+public class ProofsView extends QueueView {
+
+	/**
+	 * Serialization!
+	 */
+	private static final long serialVersionUID = -5734448871093325521L;
+	public static final String NAME = "proofs"; // Defines this view.
+
+	public ProofsView() {
+		super(DateManager.PROOF_DATE, "Proofs");
+	}
+
+}
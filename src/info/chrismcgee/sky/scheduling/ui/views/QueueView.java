@@ -0,0 +1,155 @@
+package info.chrismcgee.sky.scheduling.ui.views;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.gwt.thirdparty.guava.common.eventbus.Subscribe;
+import com.vaadin.navigator.View;
+import com.vaadin.navigator.ViewChangeListener.ViewChangeEvent;
+import com.vaadin.ui.Alignment;
+import com.vaadin.ui.Label;
+import com.vaadin.ui.TextField;
+import com.vaadin.ui.UI;
+import com.vaadin.ui.VerticalLayout;
+
+import info.chrismcgee.sky.components.DateManager;
+import info.chrismcgee.sky.scheduling.beans.Job;
+import info.chrismcgee.sky.scheduling.ui.components.PagerBar;
+import info.chrismcgee.sky.scheduling.ui.components.ProductionTreeTable;
+import info.chrismcgee.sky.scheduling.util.MyTheme;
+import info.chrismcgee.sky.tables.JobCache;
+import info.chrismcgee.sky.tables.JobCache.DatesInvalidatedEvent;
+import info.chrismcgee.sky.tables.JobManager;
+import info.chrismcgee.sky.tables.Page;
+
+/**
+ * @author Marketing
+ *
+ * A view of one of the special queues of Jobs, such as "On Hold" or "Proofs",
+ * which are kept under a special ship date instead of a real one.
+ * These queues hold far more Jobs than any real day, so they are shown a page at a time
+ * (seeking from the last Job of the page before, so every page costs the same), along with a count of the whole queue.
+ */
+public abstract class QueueView extends VerticalLayout implements View {
+
+	/**
+	 * Serialization!
+	 */
+	private static final long serialVersionUID = -2291707456312870144L;
+
+	private final static Logger logger = Logger.getLogger(QueueView.class.getName()); // Logging!
+	private final static int PAGE_SIZE = 50; // How many Jobs are shown on each page.
+
+	private final LocalDate queueDate; // The queue's special ship date.
+	private final String queueName;
+	private ProductionTreeTable treeTable = new ProductionTreeTable();
+	private Label countLabel = new Label();
+	private PagerBar pager = new PagerBar(this::showPage);
+	private int numJobs = -1; // The Jobs in the whole queue, counted when it's entered and when it changes; -1 if unknown.
+
+	/**
+	 * @param queueDate The queue's special ship date, such as DateManager.HOLD_DATE.
+	 * @param queueName The name of the queue, as the user knows it.
+	 */
+	protected QueueView(final LocalDate queueDate, final String queueName) {
+		this.queueDate = queueDate;
+		this.queueName = queueName;
+
+		setMargin(true);
+		setSpacing(true);
+
+		Label caption = new Label(queueName);
+		caption.addStyleName(MyTheme.LABEL_HUGE);
+		addComponents(caption, countLabel);
+
+		TextField searchField = new TextField();
+		searchField.setWidth(50.0f, Unit.EM);
+		searchField.setInputPrompt("Search this page");
+		searchField.addTextChangeListener(event -> treeTable.filterTable(event.getText()));
+		addComponent(searchField);
+
+		treeTable.setWidth(100.0f, Unit.PERCENTAGE);
+		addComponent(treeTable);
+
+		/**
+		 * Paging controls.
+		 */
+		addComponent(pager);
+		setComponentAlignment(pager, Alignment.TOP_CENTER);
+	}
+
+	/**
+	 * Counts the whole queue. This reads every one of the queue's rows, so it's only done when the queue
+	 * is entered or has changed, and never when turning a page.
+	 */
+	private void count() {
+
+		try {
+			numJobs = JobManager.getNumJobs(DateManager.localDateToSqlDate(queueDate));
+			countLabel.setValue(numJobs + (numJobs == 1 ? " job" : " jobs"));
+		} catch (SQLException e) {
+			numJobs = -1;
+			logger.log(Level.WARNING, "Exception when trying to COUNT the " + queueName + " queue.", e);
+		}
+		pager.setPageCount(numJobs < 0 ? -1 : Math.max(1, (numJobs + PAGE_SIZE - 1) / PAGE_SIZE));
+	}
+
+	/**
+	 * Shows one page of the queue, which is a single seek from the last Job of the page before.
+	 *
+	 * @param token The page's token, or null for the first page.
+	 * @return The page that was shown, or null if it couldn't be loaded.
+	 */
+	private Page<Job> showPage(String token) {
+
+		Page<Job> jobs = null;
+		try {
+			jobs = JobManager.getJobPage(queueDate, queueDate, false, null, token, PAGE_SIZE);
+		} catch (SQLException e) {
+			logger.log(Level.WARNING, "Exception when trying to LOAD a page of the " + queueName + " queue.", e);
+		}
+		if (jobs != null) {
+			treeTable.showJobs(jobs.getItems());
+		}
+		return jobs;
+	}
+
+	@Override
+	public void attach() {
+		super.attach();
+		// Find out when the queue's Jobs are changed, by this session or any other.
+		JobCache.register(this);
+	}
+
+	@Override
+	public void detach() {
+		JobCache.unregister(this);
+		super.detach();
+	}
+
+	/**
+	 * Called (from the JobCache's thread) whenever the Jobs of some dates have changed.
+	 * If the queue is among them, it's counted again and the page being shown is reloaded and pushed to the browser.
+	 *
+	 * @param event The dates that have changed.
+	 */
+	@Subscribe
+	public void datesInvalidated(final DatesInvalidatedEvent event) {
+		UI ui = getUI();
+		if (ui != null && event.getDates().contains(queueDate)) {
+			ui.access(() -> {
+				count();
+				pager.reload();
+			});
+		}
+	}
+
+	@Override
+	public void enter(ViewChangeEvent event) {
+		count();
+		pager.reload();
+	}
+
+}
@@ -0,0 +1,205 @@
+package info.chrismcgee.sky.scheduling.ui.views;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vaadin.navigator.View;
+import com.vaadin.navigator.ViewChangeListener.ViewChangeEvent;
+import com.vaadin.server.FileDownloader;
+import com.vaadin.server.StreamResource;
+import com.vaadin.ui.Button;
+import com.vaadin.ui.DateField;
+import com.vaadin.ui.HorizontalLayout;
+import com.vaadin.ui.Label;
+import com.vaadin.ui.Table;
+import com.vaadin.ui.UI;
+import com.vaadin.ui.VerticalLayout;
+
+import info.chrismcgee.sky.components.DateManager;
+import info.chrismcgee.sky.enums.PrintType;
+import info.chrismcgee.sky.scheduling.beans.Job;
+import info.chrismcgee.sky.scheduling.beans.OrderDetail;
+import info.chrismcgee.sky.scheduling.service.PressSequencer;
+import info.chrismcgee.sky.scheduling.util.MyTheme;
+import info.chrismcgee.sky.scheduling.util.ViewConfig;
+import info.chrismcgee.sky.tables.AsyncLoader;
+import info.chrismcgee.sky.tables.JobCache;
+
+/**
+ * Shows the order to run a day's items on each press line, as worked out by the PressSequencer,
+ * and lets it be downloaded as a CSV file for the press operators.
+ * The day is read and sequenced in the background, and pushed to the table once it's done.
+ *
+ * @author Marketing
+ *
+ */
+@ViewConfig(uri = "sequence", displayName = "Press Sequence")
+public class SequenceView extends VerticalLayout implements View {
+
+	/**
+	 * Serialization!
+	 */
+	private static final long serialVersionUID = -1794016631585263315L;
+	public static final String NAME = "sequence"; // Defines this view. (The same as its @ViewConfig uri.)
+
+	private final static Logger logger = Logger.getLogger(SequenceView.class.getName()); // Logging!
+	private final static long BUDGET_MILLIS = 500; // How long each line can spend improving its order.
+	// The columns of the table, in order.
+	private final static String[] COLUMNS = {"Line", "#", "Job #", "Product", "Detail", "Colors", "Quantity", "Changeover"};
+
+	private DateField dayField = new DateField("Ship Date");
+	private Label summary = new Label();
+	private Table table = new Table();
+	private LocalDate day = DateManager.getTodayDate();
+
+	public SequenceView() {
+
+		setMargin(true);
+		setSpacing(true);
+
+		Label caption = new Label("Press Sequence");
+		caption.addStyleName(MyTheme.LABEL_HUGE);
+		addComponent(caption);
+
+		dayField.setValue(Date.from(day.atStartOfDay(ZoneId.systemDefault()).toInstant()));
+		dayField.addValueChangeListener(event -> {
+			if (dayField.getValue() != null) {
+				day = dayField.getValue().toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+				reload();
+			}
+		});
+
+		Button export = new Button("Download CSV");
+		// The file is made when it's clicked, so it always matches what's on the screen.
+		StreamResource csv = new StreamResource(() -> new ByteArrayInputStream(toCsv().getBytes(StandardCharsets.UTF_8)), "sequence.csv");
+		csv.setMIMEType("text/csv");
+		new FileDownloader(csv).extend(export);
+
+		HorizontalLayout controls = new HorizontalLayout(dayField, export);
+		controls.setSpacing(true);
+		addComponents(controls, summary);
+
+		table.addContainerProperty(COLUMNS[0], String.class, "");
+		table.addContainerProperty(COLUMNS[1], Integer.class, 0);
+		table.addContainerProperty(COLUMNS[2], String.class, "");
+		table.addContainerProperty(COLUMNS[3], String.class, "");
+		table.addContainerProperty(COLUMNS[4], String.class, "");
+		table.addContainerProperty(COLUMNS[5], Long.class, 0L);
+		table.addContainerProperty(COLUMNS[6], Long.class, 0L);
+		table.addContainerProperty(COLUMNS[7], Integer.class, 0);
+		table.setWidth(100.0f, Unit.PERCENTAGE);
+		table.setSortEnabled(false); // The order is the whole point.
+		addComponent(table);
+	}
+
+	/**
+	 * Sequences the chosen day's items in the background, and shows them once they're done.
+	 */
+	private void reload() {
+
+		final UI ui = UI.getCurrent();
+		final LocalDate wanted = day;
+		summary.setValue("Sequencing " + DateManager.getDisplayDate(wanted) + "...");
+
+		AsyncLoader.load("sequence:" + wanted, () -> sequence(wanted)).whenComplete((rows, e) -> ui.access(() -> {
+			if (!wanted.equals(day)) {
+				return; // Another day was picked in the meantime, and is on its way.
+			}
+			if (e != null || rows == null) {
+				logger.log(Level.WARNING, "Exception when trying to LOAD the jobs for " + wanted, e);
+				summary.setValue("The jobs for " + DateManager.getDisplayDate(wanted) + " could not be loaded.");
+				return;
+			}
+			show(rows);
+		}));
+	}
+
+	/**
+	 * Reads a day's Jobs and sequences their items. Runs on one of the AsyncLoader's threads.
+	 *
+	 * @param day The ship date.
+	 * @return The rows of the table, in order; or null if the Jobs could not be read.
+	 * @throws SQLException
+	 */
+	private static List<Object[]> sequence(LocalDate day) throws SQLException {
+
+		List<Job> jobs = JobCache.getInstance().getJobsByDate(day);
+		if (jobs == null) {
+			return null;
+		}
+
+		PressSequencer sequencer = new PressSequencer();
+		Map<PrintType, List<OrderDetail>> sequences = sequencer.sequenceDay(jobs, BUDGET_MILLIS);
+
+		List<Object[]> rows = new ArrayList<Object[]>();
+		for (Map.Entry<PrintType, List<OrderDetail>> line : sequences.entrySet()) {
+			OrderDetail previous = null;
+			int position = 0;
+			for (OrderDetail od : line.getValue()) {
+				int changeover = previous == null ? 0 : sequencer.getChangeover(previous, od);
+				rows.add(new Object[] {line.getKey().getValue(), ++position, od.getOrderId(), od.getProductId(),
+						od.getProductDetail(), od.getNumColors(), od.getQuantity(), changeover});
+				previous = od;
+			}
+		}
+		return rows;
+	}
+
+	/**
+	 * Puts the rows in the table.
+	 * Only the table keeps the sequence (and the CSV is made from the table), so the session doesn't hold a second copy.
+	 */
+	private void show(List<Object[]> rows) {
+
+		table.removeAllItems();
+		Set<Object> lines = new HashSet<Object>();
+		int totalChangeover = 0;
+		int row = 0;
+		for (Object[] cells : rows) {
+			table.addItem(cells, row++);
+			lines.add(cells[0]);
+			totalChangeover += (Integer) cells[7];
+		}
+		summary.setValue(row + " items on " + lines.size() + " lines, " + totalChangeover + " minutes of changeovers");
+	}
+
+	/**
+	 * Writes the sequence out as CSV, one row per item.
+	 *
+	 * @return The CSV text.
+	 */
+	private String toCsv() {
+
+		StringBuilder csv = new StringBuilder();
+		csv.append(String.join(",", COLUMNS)).append("\r\n");
+		for (Object itemId : table.getItemIds()) {
+			for (int i = 0; i < COLUMNS.length; i++) {
+				if (i > 0) {
+					csv.append(',');
+				}
+				Object value = table.getContainerProperty(itemId, COLUMNS[i]).getValue();
+				String text = value == null ? "" : value.toString();
+				csv.append('"').append(text.replace("\"", "\"\"")).append('"');
+			}
+			csv.append("\r\n");
+		}
+		return csv.toString();
+	}
+
+	@Override
+	public void enter(ViewChangeEvent event) {
+		reload();
+	}
+
+}
@@ -1,23 +1,42 @@
 package info.chrismcgee.sky.scheduling.ui.views;
 
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.vaadin.data.Property.ValueChangeEvent;
 import com.vaadin.navigator.View;
 import com.vaadin.navigator.ViewChangeListener.ViewChangeEvent;
+import com.vaadin.server.ExternalResource;
+import com.vaadin.server.FontAwesome;
 import com.vaadin.server.Responsive;
 import com.vaadin.ui.Alignment;
 import com.vaadin.ui.CssLayout;
+import com.vaadin.ui.DateField;
+import com.vaadin.ui.HorizontalLayout;
 import com.vaadin.ui.InlineDateField;
+import com.vaadin.ui.Link;
+import com.vaadin.ui.OptionGroup;
 import com.vaadin.ui.ProgressBar;
 import com.vaadin.ui.TextField;
 import com.vaadin.ui.UI;
 import com.vaadin.ui.VerticalLayout;
 
+import info.chrismcgee.sky.components.DateManager;
+import info.chrismcgee.sky.scheduling.export.ExportRequestHandler;
 import info.chrismcgee.sky.scheduling.ui.components.ProductionTreeTable;
+import info.chrismcgee.sky.scheduling.util.MyTheme;
 import info.chrismcgee.sky.scheduling.util.ViewConfig;
+import info.chrismcgee.sky.scheduling.util.ViewParameters;
+import info.chrismcgee.sky.tables.JobPrefetcher;
 
 @ViewConfig(uri = "inproduction", displayName = "In Production")
 public class TreeTableView extends CssLayout implements View {
@@ -31,10 +50,33 @@ public class TreeTableView extends CssLayout implements View {
 	private final static Logger logger = Logger.getLogger(TreeTableView.class.getName());
 	private final static int ROW_HEIGHT = 38;
 	private final static int DEFAULT_MARGIN = 37;
+	// The range modes.
+	private final static String RANGE_DAY = "Day";
+	private final static String RANGE_WEEK = "Week";
+	private final static String RANGE_CUSTOM = "Custom";
+	// The parameters of the view's URI, such as "#!inProduction/date=2016-03-01&range=week&filter=N10".
+	private final static String PARAM_DATE = "date"; // The selected date; today, if it isn't given.
+	private final static String PARAM_RANGE = "range"; // "day" (the default), "week" or "custom".
+	private final static String PARAM_TO = "to"; // The other end of a custom range.
+	private final static String PARAM_FILTER = "filter"; // The search text.
+	private final static String PARAM_EXPANDED = "expanded"; // The job numbers of the only Jobs to expand, separated by commas.
 
 	private ProductionTreeTable treeTable;
 	private ProgressBar progressBar = new ProgressBar();
 	private Date selectedDate;
+	private OptionGroup rangeMode = new OptionGroup();
+	private DateField rangeEnd = new DateField("Through");
+	private LocalDate rangeStart; // The range of dates being loaded.
+	private LocalDate rangeFinish;
+	private JobPrefetcher prefetcher = new JobPrefetcher(); // Warms up the days on either side of the one being shown.
+	private Link csvLink = new Link("Export CSV", null); // Downloads of the range being shown.
+	private Link xlsxLink = new Link("Export Excel", null);
+	private HorizontalLayout exportLayout = new HorizontalLayout(csvLink, xlsxLink);
+	private InlineDateField cal = new InlineDateField();
+	private TextField searchField = new TextField();
+	private String searchText = ""; // What's being searched for.
+	private boolean datePinned = false; // True once a date is picked (or given in the URI); until then, it's always today.
+	private boolean applying = false; // True while the URI's parameters are put in the fields, so their listeners keep still.
 
 	public TreeTableView() {
 		
@@ -86,12 +128,17 @@ public class TreeTableView extends CssLayout implements View {
 		 * Search field
 		 */
 		
-		TextField searchField = new TextField();
 		searchField.setWidth(50.0f, Unit.EM);
 		searchField.setInputPrompt("Search");
 		searchField.addTextChangeListener(event -> {
 			logger.log(Level.INFO, "Text changed to: " + event.getText());
-			treeTable.filterTable(event.getText());
+			searchText = event.getText();
+			treeTable.filterTable(searchText);
+		});
+		// The URI only follows a finished search (on Enter, or leaving the field), not every key, so the browser's history isn't filled with half-typed words.
+		searchField.addValueChangeListener(event -> {
+			searchText = searchField.getValue() == null ? "" : searchField.getValue();
+			showParameters();
 		});
 		mainLayout.addComponent(searchField);
 		mainLayout.setComponentAlignment(searchField, Alignment.TOP_CENTER);
@@ -108,19 +155,18 @@ public class TreeTableView extends CssLayout implements View {
 		 */
 
 		treeTable = new ProductionTreeTable();
-		treeTable.changeDayTo(new Date());
+		selectedDate = new Date(); // Loaded by enter(), so the view paints before the database is asked anything.
 		treeTable.setWidth(treeTableWidth, Unit.PIXELS);
 		
 
 		boolean partiallyCompleted = false; // To help set the Job's checkbox to the "indeterminate" style if only some of its OrderDetails are done.
 
-		logger.log(Level.INFO, "Size of the Data Source: " + treeTable.getContainerDataSource().size());
-
-
 		// Limit the size of the table.
 //		treeTable.setPageLength(treeTable.getContainerDataSource().size());
 //		treeTable.setPageLength((int)getHeight() / ROW_HEIGHT);
 		treeTable.setHeight(100.0f, Unit.PERCENTAGE);
+		treeTable.addExpandListener(event -> showParameters());
+		treeTable.addCollapseListener(event -> showParameters());
 
 
 		mainLayout.addComponent(treeTable);
@@ -146,13 +192,47 @@ public class TreeTableView extends CssLayout implements View {
 		/**
 		 * Calendar.
 		 */
-		InlineDateField cal = new InlineDateField();
+		cal.setValue(selectedDate);
 		cal.addValueChangeListener(this::changeDay);
 		
 		calLayout.addComponent(cal);
 //		calLayout.setWidth(100.0f, Unit.PERCENTAGE);
 		calLayout.setComponentAlignment(cal, Alignment.MIDDLE_CENTER);
 		
+		/**
+		 * Range mode: a single day, the whole week of the selected day, or a custom range.
+		 */
+		rangeMode.addItems(RANGE_DAY, RANGE_WEEK, RANGE_CUSTOM);
+		rangeMode.setValue(RANGE_DAY);
+		rangeMode.addStyleName(MyTheme.OPTIONGROUP_HORIZONTAL);
+		rangeMode.addValueChangeListener(event -> {
+			rangeEnd.setVisible(RANGE_CUSTOM.equals(rangeMode.getValue()));
+			if (!applying) {
+				reload();
+			}
+		});
+		calLayout.addComponent(rangeMode);
+		calLayout.setComponentAlignment(rangeMode, Alignment.MIDDLE_CENTER);
+		
+		rangeEnd.setVisible(false);
+		rangeEnd.addValueChangeListener(event -> {
+			if (!applying) {
+				reload();
+			}
+		});
+		calLayout.addComponent(rangeEnd);
+		calLayout.setComponentAlignment(rangeEnd, Alignment.MIDDLE_CENTER);
+		
+		/**
+		 * Exports of the range being shown, streamed straight from the database.
+		 */
+		csvLink.setIcon(FontAwesome.FILE_TEXT_O);
+		xlsxLink.setIcon(FontAwesome.FILE_EXCEL_O);
+		exportLayout.setSpacing(true);
+		exportLayout.setEnabled(false); // Until a date has been picked.
+		calLayout.addComponent(exportLayout);
+		calLayout.setComponentAlignment(exportLayout, Alignment.MIDDLE_CENTER);
+		
 		innerLayout.addComponent(calLayout);
 		outerLayout.addComponent(innerLayout);
 		outerLayout.setComponentAlignment(innerLayout, Alignment.MIDDLE_CENTER);
@@ -162,31 +242,179 @@ public class TreeTableView extends CssLayout implements View {
 	
 	private void changeDay (ValueChangeEvent event) {
 		
+		if (applying) {
+			return;
+		}
 		selectedDate = (Date) event.getProperty().getValue();
+		datePinned = true;
 		logger.log(Level.INFO, "Calendar Value changed. New value: " + selectedDate.toString());
 		
+		reload();
+	}
+	
+	/**
+	 * Works out the range of dates to show from the selected date and the range mode,
+	 * then loads them.
+	 */
+	private void reload() {
+		
+		if (selectedDate == null) {
+			return; // Nothing has been picked in the calendar yet.
+		}
+		
+		LocalDate startDate = toLocalDate(selectedDate);
+		LocalDate endDate = startDate;
+		
+		if (RANGE_WEEK.equals(rangeMode.getValue())) {
+			LocalDate[] week = DateManager.getFullWeek(startDate);
+			startDate = week[0];
+			endDate = week[week.length - 1];
+		} else if (RANGE_CUSTOM.equals(rangeMode.getValue()) && rangeEnd.getValue() != null) {
+			endDate = toLocalDate(rangeEnd.getValue());
+			if (endDate.isBefore(startDate)) { // Let the range be picked in either order.
+				LocalDate swap = startDate;
+				startDate = endDate;
+				endDate = swap;
+			}
+		}
+		
+		rangeStart = startDate;
+		rangeFinish = endDate;
+		
+		csvLink.setResource(new ExternalResource(ExportRequestHandler.getLink(startDate, endDate, "csv")));
+		xlsxLink.setResource(new ExternalResource(ExportRequestHandler.getLink(startDate, endDate, "xlsx")));
+		exportLayout.setEnabled(true);
+		
 		progressBar.setVisible(true); // Give the user some visual hint about loading taking place
 		
-		// Perform the data load in a separate thread
-		loadDataInNewThread();
+		// The Jobs are loaded in the background and pushed to the browser once they're there.
+		final LocalDate start = startDate;
+		final LocalDate finish = endDate;
+		treeTable.changeRangeToAsync(start, finish, searchText, () -> {
+			progressBar.setVisible(false);
+			if (start.equals(finish)) {
+				prefetcher.prefetchAround(start); // Single days are usually stepped through one at a time.
+			} else {
+				prefetcher.cancel();
+			}
+		});
+		showParameters();
 	}
 	
-	private void loadDataInNewThread() {
-		new Thread(() -> {
+	/**
+	 * Puts the view's parameters into its fields, without loading anything.
+	 * Whatever isn't given goes back to how a fresh view starts out: today, a single day, no search, and every Job expanded.
+	 * 
+	 * @param parameters The parameters, by their names.
+	 */
+	private void applyParameters(Map<String, String> parameters) {
+		
+		applying = true;
+		try {
+			LocalDate date = parseDate(parameters.get(PARAM_DATE));
+			datePinned = date != null;
+			selectedDate = toDate(datePinned ? date : DateManager.getTodayDate());
+			cal.setValue(selectedDate);
 			
-			// This is needed because we are modifying the UI from a different thread:
-			UI.getCurrent().access(() -> {
-				treeTable.changeDayTo(selectedDate);
-				progressBar.setVisible(false);
-			});
+			LocalDate to = parseDate(parameters.get(PARAM_TO));
+			String range = RANGE_DAY;
+			if (RANGE_WEEK.equalsIgnoreCase(parameters.get(PARAM_RANGE))) {
+				range = RANGE_WEEK;
+			} else if (RANGE_CUSTOM.equalsIgnoreCase(parameters.get(PARAM_RANGE)) || to != null) {
+				range = RANGE_CUSTOM;
+			}
+			rangeMode.setValue(range);
+			rangeEnd.setValue(to == null ? null : toDate(to));
 			
-		}).start();
+			searchText = parameters.getOrDefault(PARAM_FILTER, "");
+			searchField.setValue(searchText);
+			
+			String expanded = parameters.get(PARAM_EXPANDED);
+			Set<String> jobIds = null;
+			if (expanded != null) {
+				jobIds = new HashSet<String>();
+				for (String jobId : expanded.split(",")) {
+					if (!jobId.trim().isEmpty()) {
+						jobIds.add(jobId.trim());
+					}
+				}
+			}
+			treeTable.setExpandedJobs(jobIds);
+		} finally {
+			applying = false;
+		}
+	}
+	
+	/**
+	 * Puts what the view is showing into the URI, so that reloading the page or sharing the link shows the same.
+	 * The date is only put in once one has been picked, so a link to today stays a link to today.
+	 */
+	private void showParameters() {
+		
+		UI ui = getUI() != null ? getUI() : UI.getCurrent();
+		if (ui == null || applying) {
+			return;
+		}
+		Map<String, String> parameters = new LinkedHashMap<String, String>();
+		parameters.put(PARAM_DATE, datePinned ? toLocalDate(selectedDate).toString() : null);
+		parameters.put(PARAM_RANGE, RANGE_DAY.equals(rangeMode.getValue()) ? null : rangeMode.getValue().toString().toLowerCase());
+		parameters.put(PARAM_TO, RANGE_CUSTOM.equals(rangeMode.getValue()) && rangeEnd.getValue() != null
+				? toLocalDate(rangeEnd.getValue()).toString() : null);
+		parameters.put(PARAM_FILTER, searchText.isEmpty() ? null : searchText);
+		SortedSet<String> expanded = treeTable.getExpandedJobs();
+		parameters.put(PARAM_EXPANDED, expanded == null ? null : String.join(",", expanded));
+		ViewParameters.show(ui, NAME, parameters);
+	}
+	
+	/**
+	 * @return The date, or null if there isn't one (or it isn't a date, such as "2016-02-30").
+	 */
+	private static LocalDate parseDate(String text) {
+		if (text == null || text.isEmpty()) {
+			return null;
+		}
+		try {
+			return LocalDate.parse(text);
+		} catch (DateTimeParseException e) {
+			logger.log(Level.WARNING, "Ignoring the date \"" + text + "\" in the URI.");
+			return null;
+		}
+	}
+	
+	private static Date toDate(LocalDate date) {
+		return Date.from(date.atStartOfDay(ZoneId.systemDefault()).toInstant());
+	}
+	
+	private static LocalDate toLocalDate(Date date) {
+		return date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
 	}
 
+	@Override
+	public void detach() {
+		prefetcher.cancel(); // The user has moved on, so the neighbouring days are no longer needed.
+		super.detach();
+	}
+
+	/**
+	 * Shows whatever the URI's parameters ask for (see PARAM_DATE and the rest), loaded in the background
+	 * behind placeholder rows. Since identical ranges come from the JobCache (and are only ever loaded once at a time),
+	 * any number of terminals and wall displays can keep the same link open, or reload it, for next to nothing.
+	 * 
+	 * This view is kept by the navigator's ViewCache, so coming back to it without any parameters
+	 * finds the same days, range and search. The table stops hearing about changes while it's not shown, though,
+	 * so it's brought up to date here (which the JobCache can usually do without going to the database).
+	 */
 	@Override
 	public void enter(ViewChangeEvent event) {
-		// Unused currently?
-		
+		Map<String, String> parameters = ViewParameters.parse(event.getParameters());
+		boolean stillToday = datePinned || toLocalDate(selectedDate).equals(DateManager.getTodayDate());
+		if (parameters.isEmpty() && rangeStart != null && stillToday) {
+			treeTable.refresh();
+			showParameters();
+		} else {
+			applyParameters(parameters);
+			reload();
+		}
 	}
 	
 }
@@ -9,7 +9,14 @@ public enum ViewType {
 	HOMEVIEW(HomeView.NAME, HomeView.class, FontAwesome.HOME, false),
 	FIRSTVIEW(FirstView.NAME, FirstView.class, FontAwesome.BAR_CHART_O, false),
 	SECONDVIEW(SecondView.NAME, SecondView.class, FontAwesome.TREE, false),
-	TREETABLEVIEW(TreeTableView.NAME, TreeTableView.class, FontAwesome.TABLE, false);
+	TREETABLEVIEW(TreeTableView.NAME, TreeTableView.class, FontAwesome.TABLE, true),
+	ONHOLDVIEW(OnHoldView.NAME, OnHoldView.class, FontAwesome.PAUSE, false),
+	PROOFSVIEW(ProofsView.NAME, ProofsView.class, FontAwesome.PENCIL_SQUARE_O, false),
+	SEQUENCEVIEW(SequenceView.NAME, SequenceView.class, FontAwesome.SORT_AMOUNT_ASC, false),
+	PLANNERVIEW(PlannerView.NAME, PlannerView.class, FontAwesome.CALENDAR, false),
+	IMPORTVIEW(ImportView.NAME, ImportView.class, FontAwesome.UPLOAD, false),
+	HISTORYVIEW(HistoryView.NAME, HistoryView.class, FontAwesome.HISTORY, false),
+	ITEMSEARCHVIEW(ItemSearchView.NAME, ItemSearchView.class, FontAwesome.SEARCH, false);
 	
 	private final String viewName;
 	private final Class<? extends View> viewClass;
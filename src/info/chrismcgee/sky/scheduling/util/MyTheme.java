@@ -25,5 +25,7 @@ public class MyTheme extends ValoTheme {
 	public static final String ORDER_TOTAL = "order-total";
 
 	public static final String LAYOUT_VIEW = "layout-view";
+	public static final String PLACEHOLDER = "placeholder";
+	public static final String OVERLOADED = "overloaded";
 
 }
@@ -0,0 +1,139 @@
+package info.chrismcgee.sky.scheduling.util;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vaadin.server.VaadinSession;
+import com.vaadin.server.WrappedSession;
+import com.vaadin.ui.UI;
+
+/**
+ * @author Marketing
+ *
+ * Reports how much room a session takes up once it's serialized, in all and for each of its UIs (browser tabs),
+ * which is about what it costs to keep it in the heap, and exactly what it costs to passivate it to the disk.
+ * A session that can't be serialized at all is reported too, along with the class that's in the way.
+ *
+ * The report is logged after every view change when the server is started with -Dsky.session.report=true.
+ * It serializes the whole session, so it's not something to leave on.
+ */
+public class SessionSizeReport {
+
+	private final static Logger logger = Logger.getLogger(SessionSizeReport.class.getName()); // Logging!
+
+	/**
+	 * @return True if the server was started with -Dsky.session.report=true.
+	 */
+	public static boolean isEnabled() {
+		return Boolean.getBoolean("sky.session.report");
+	}
+
+	/**
+	 * Logs the report of the given session. The session must be locked by the caller,
+	 * as it is in anything that runs as part of a request (such as a view change listener).
+	 *
+	 * @param session The session to report on.
+	 */
+	public static void log(VaadinSession session) {
+		logger.log(Level.INFO, report(session));
+	}
+
+	/**
+	 * Makes the report of the given session, such as:
+	 * <pre>
+	 * Session 1A2B3C: 312 KB
+	 *   UI 0 (inProduction): 180 KB
+	 *   UI 3 (history): 96 KB
+	 * </pre>
+	 * Each UI is measured without the session and the other UIs, so the UIs add up to a bit less
+	 * than the session (which also holds the attributes, such as the CurrentUser).
+	 *
+	 * @param session The session to report on; it must be locked by the caller.
+	 * @return The report, one line for the session and one for each UI.
+	 */
+	public static String report(VaadinSession session) {
+
+		StringBuilder report = new StringBuilder("Session ");
+		WrappedSession wrapped = session.getSession();
+		report.append(wrapped == null ? "?" : wrapped.getId()).append(": ")
+			.append(sizeOf(session, Collections.emptySet()));
+
+		for (UI ui : session.getUIs()) {
+			// Everything in a UI leads back to the session (and through it, to the other UIs), so leave those out.
+			Set<Object> others = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+			others.add(session);
+			others.addAll(session.getUIs());
+			others.remove(ui);
+			String state = ui.getNavigator() == null ? "" : ui.getNavigator().getState();
+			report.append("\n  UI ").append(ui.getUIId()).append(" (").append(state).append("): ")
+				.append(sizeOf(ui, others));
+		}
+		return report.toString();
+	}
+
+	/**
+	 * Serializes an object into nothing, counting the bytes.
+	 *
+	 * @param root The object to measure.
+	 * @param left Anything that's to be left out (written as null), if reached from the root.
+	 * @return The size, as "312 KB", or why it couldn't be serialized.
+	 */
+	private static String sizeOf(Object root, Set<Object> left) {
+
+		CountingStream counter = new CountingStream();
+		try (ObjectOutputStream out = new LeavingOut(counter, left)) {
+			out.writeObject(root);
+		} catch (NotSerializableException e) {
+			return "can't be passivated, " + e.getMessage() + " isn't serializable";
+		} catch (IOException e) {
+			return "can't be measured (" + e + ")";
+		}
+		return ((counter.count + 1023) / 1024) + " KB";
+	}
+
+
+	/**
+	 * An output stream that throws everything away, but counts it first.
+	 */
+	private static final class CountingStream extends OutputStream {
+
+		private long count = 0;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+
+	/**
+	 * An object output stream that writes null in place of certain objects.
+	 */
+	private static final class LeavingOut extends ObjectOutputStream {
+
+		private final Set<Object> left;
+
+		LeavingOut(OutputStream out, Set<Object> left) throws IOException {
+			super(out);
+			this.left = left;
+			enableReplaceObject(!left.isEmpty());
+		}
+
+		@Override
+		protected Object replaceObject(Object obj) {
+			return left.contains(obj) ? null : obj;
+		}
+	}
+
+}
@@ -0,0 +1,100 @@
+package info.chrismcgee.sky.scheduling.util;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.vaadin.ui.UI;
+
+/**
+ * @author Marketing
+ *
+ * Helper for the parameters of a view's URI, such as "#!inProduction/date=2016-03-01&range=week",
+ * so a view can be bookmarked, shared, or reloaded just as it was.
+ * The parameters are written like a query string: name=value pairs separated by "&", with the values URL encoded.
+ */
+public class ViewParameters {
+
+	private static final String UTF_8 = "UTF-8";
+
+	/**
+	 * Reads the parameters that a view was navigated to with.
+	 *
+	 * @param parameters The parameters, from ViewChangeEvent.getParameters(). May be null or empty.
+	 * @return The values by their names, in the order they were given. Names without a value get an empty value.
+	 */
+	public static Map<String, String> parse(String parameters) {
+
+		Map<String, String> values = new LinkedHashMap<String, String>();
+		if (parameters == null || parameters.isEmpty()) {
+			return values;
+		}
+		for (String pair : parameters.split("&")) {
+			if (pair.isEmpty()) {
+				continue;
+			}
+			int equals = pair.indexOf('=');
+			String name = equals < 0 ? pair : pair.substring(0, equals);
+			String value = equals < 0 ? "" : pair.substring(equals + 1);
+			values.put(decode(name), decode(value));
+		}
+		return values;
+	}
+
+	/**
+	 * Writes parameters the way parse() reads them.
+	 *
+	 * @param values The values by their names. The null ones are left out.
+	 * @return The parameters, such as "date=2016-03-01&filter=N10".
+	 */
+	public static String format(Map<String, String> values) {
+
+		StringBuilder parameters = new StringBuilder();
+		for (Map.Entry<String, String> value : values.entrySet()) {
+			if (value.getValue() == null) {
+				continue;
+			}
+			if (parameters.length() > 0) {
+				parameters.append('&');
+			}
+			parameters.append(encode(value.getKey())).append('=').append(encode(value.getValue()));
+		}
+		return parameters.toString();
+	}
+
+	/**
+	 * Puts a view's current parameters in the browser's address bar (and its history), without navigating,
+	 * so that reloading the page or sharing the link comes back to the view as it is now.
+	 *
+	 * @param ui The UI the view is in.
+	 * @param viewName The name of the view.
+	 * @param values The view's parameters by their names. The null ones are left out.
+	 */
+	public static void show(UI ui, String viewName, Map<String, String> values) {
+
+		String parameters = format(values);
+		String fragment = "!" + viewName + (parameters.isEmpty() ? "" : "/" + parameters);
+		if (!fragment.equals(ui.getPage().getUriFragment())) {
+			ui.getPage().setUriFragment(fragment, false); // False, since the view is already there.
+		}
+	}
+
+	private static String decode(String text) {
+		try {
+			return URLDecoder.decode(text, UTF_8);
+		} catch (UnsupportedEncodingException | IllegalArgumentException e) {
+			return text; // Not encoded (or badly), so take it as it is.
+		}
+	}
+
+	private static String encode(String text) {
+		try {
+			return URLEncoder.encode(text, UTF_8).replace("+", "%20").replace("%2C", ","); // Lists read better with plain commas.
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e); // Every JVM has UTF-8.
+		}
+	}
+
+}
@@ -0,0 +1,70 @@
+package info.chrismcgee.sky.tables;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * @author Marketing
+ *
+ * Runs the loads that views would otherwise wait on while they're being shown, on a small pool of
+ * background threads shared by the whole server, so a view can paint straight away and fill itself in
+ * (through push) once its data is there.
+ *
+ * Loads are deduplicated by a key: while a load is in flight, anyone asking for the same key
+ * (such as all of the terminals opening today's schedule at the start of a shift) gets the same future
+ * rather than a query of their own. Once it's done, the key is forgotten; caching the result is up to the caller.
+ */
+public class AsyncLoader {
+
+	private final static Logger logger = Logger.getLogger(AsyncLoader.class.getName()); // Logging!
+
+	private static final AtomicInteger threadCount = new AtomicInteger();
+
+	// The threads that run the loads. -Dsky.loader.threads sets how many (4, by default).
+	private final static ExecutorService executor = Executors.newFixedThreadPool(Integer.getInteger("sky.loader.threads", 4), runnable -> {
+		Thread thread = new Thread(runnable, "async-loader-" + threadCount.incrementAndGet());
+		thread.setDaemon(true); // Never keep the servlet container from shutting down.
+		return thread;
+	});
+
+	// The loads that haven't finished yet, by their key.
+	private final static ConcurrentHashMap<String, CompletableFuture<?>> inFlight = new ConcurrentHashMap<String, CompletableFuture<?>>();
+
+	/**
+	 * Starts a load in the background, unless the same one is already in flight, in which case
+	 * that one's future is handed back instead.
+	 *
+	 * @param key What's being loaded, such as "jobs:2016-03-01..2016-03-05". Loads with the same key
+	 * must load the same thing.
+	 * @param loader Does the loading, on a background thread. Whatever it throws completes the future exceptionally.
+	 * @return The future result of the load.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> CompletableFuture<T> load(final String key, final Callable<T> loader) {
+
+		CompletableFuture<T> created = new CompletableFuture<T>();
+		CompletableFuture<T> existing = (CompletableFuture<T>) inFlight.putIfAbsent(key, created);
+		if (existing != null) {
+			logger.log(Level.FINE, "Joining the load of " + key + " that's already in flight.");
+			return existing;
+		}
+
+		executor.execute(() -> {
+			try {
+				created.complete(loader.call());
+			} catch (Throwable e) {
+				created.completeExceptionally(e);
+			} finally {
+				inFlight.remove(key, created); // Anyone asking from now on starts a fresh load.
+			}
+		});
+		return created;
+	}
+
+}
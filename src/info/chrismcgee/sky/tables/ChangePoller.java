@@ -0,0 +1,535 @@
+package info.chrismcgee.sky.tables;
+
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import info.chrismcgee.dbutil.ConnectionManager;
+import info.chrismcgee.dbutil.DBName;
+import info.chrismcgee.dbutil.DBRouter;
+import info.chrismcgee.sky.event.JobEvent;
+import info.chrismcgee.sky.event.JobEvent.JobCompletedEvent;
+import info.chrismcgee.sky.event.JobEvent.JobDeletedEvent;
+import info.chrismcgee.sky.event.JobEvent.JobUpdatedEvent;
+import info.chrismcgee.sky.event.JobEvent.OrderDetailCompletedEvent;
+import info.chrismcgee.sky.event.JobEvent.OrderDetailDeletedEvent;
+import info.chrismcgee.sky.event.JobEvent.OrderDetailUpdatedEvent;
+import info.chrismcgee.sky.event.JobEventStream;
+import info.chrismcgee.sky.scheduling.beans.Job;
+import info.chrismcgee.sky.scheduling.beans.OrderDetail;
+
+/**
+ * @author Marketing
+ *
+ * Detects changes made to the "Job" and "OrderDetail" tables from outside of this program
+ * (such as the ERP import) and publishes them to the JobEventStream, just as if the DAO methods had made them.
+ * That way, the JobCache and any open UIs find out about the changes without a full reload.
+ *
+ * There is only one polling thread for the whole server, no matter how many sessions are open.
+ * Each of the yearly job order databases has its own poller, since each has its own rows and row versions,
+ * and a new year's database is picked up as soon as the DBRouter starts using it.
+ * Each poller remembers a high-water mark for each table (a SQL Server rowversion column by default,
+ * or a "last modified" timestamp column) and only ever asks for the rows past that mark, a batch at a time.
+ * It never reads past MIN_ACTIVE_ROWVERSION() (or, for timestamps, the last few seconds), so a row
+ * written by a transaction that hasn't committed yet can't be skipped over once it does.
+ *
+ * Deleted rows leave nothing behind to be found past a mark, so every so often (-Dsky.cdc.deleteCheck rounds,
+ * 20 by default) each poller reads every key of both tables and compares them with the keys it read last time.
+ *
+ * Polling is off unless the high-water mark column is named with -Dsky.cdc.column, since the tables
+ * don't have one out of the box; -Dsky.cdc.mode says which kind it is (ROWVERSION or TIMESTAMP).
+ */
+public class ChangePoller {
+
+	private final static Logger logger = Logger.getLogger(ChangePoller.class.getName()); // Logging!
+
+	/**
+	 * The kind of column that the high-water mark is kept on.
+	 */
+	public enum Mode {
+		ROWVERSION, // An 8-byte SQL Server rowversion column; unique, so no tie-breaking is needed.
+		TIMESTAMP // A "last modified" timestamp column; ties are broken with the table's key.
+	}
+
+	private static final int SETTLE_SECONDS = Integer.getInteger("sky.cdc.settle", 5); // How old a timestamp must be to be read.
+	private static final int REMEMBER = Integer.getInteger("sky.cdc.remember", 10000); // How many rows' last states are kept.
+
+	// The one thread that runs every poller; null while stopped.
+	private static ScheduledExecutorService executor = null;
+	// The poller for each database, by database name. Only ever touched from the polling thread.
+	private static final Map<String, ChangePoller> pollers = new HashMap<String, ChangePoller>();
+
+	private final String database; // The name of the database being polled.
+	private final Mode mode;
+	private final String versionColumn; // The name of the high-water mark column, which must exist in both tables.
+	private final int batchSize; // The most rows to read from a table in one query.
+	private final int deleteCheckRounds; // How many rounds go by between looking for deleted rows.
+	private int rounds = 0;
+
+	// The high-water marks. Only ever touched from the poller's own thread.
+	private Object jobMark;
+	private String jobMarkKey = "";
+	private Object detailMark;
+	private int detailMarkKey;
+
+	// The last state of the most recently changed rows that the poller has seen, so a change can be told apart from a completion.
+	private final Map<String, JobState> knownJobs = lastSeen();
+	private final Map<Integer, Boolean> knownDetails = lastSeen();
+
+	// Every key that was in the tables the last time they were checked for deletes, sorted; null until the first check.
+	private String[] jobKeys;
+	private int[] detailKeys;
+	private String[] detailJobKeys; // The job number of each item in detailKeys.
+
+	/**
+	 * @param database The name of the database to poll.
+	 * @param mode The kind of high-water mark column.
+	 * @param versionColumn The name of the high-water mark column.
+	 * @param batchSize The most rows to read from a table in one query.
+	 * @param deleteCheckRounds How many rounds go by between looking for deleted rows.
+	 */
+	ChangePoller(String database, Mode mode, String versionColumn, int batchSize, int deleteCheckRounds) {
+		this.database = database;
+		this.mode = mode;
+		this.versionColumn = versionColumn;
+		this.batchSize = batchSize;
+		this.deleteCheckRounds = Math.max(1, deleteCheckRounds);
+	}
+
+	/**
+	 * A map of the last state of the most recently seen rows, which forgets the least recently seen ones.
+	 */
+	private static <K, V> Map<K, V> lastSeen() {
+		return new LinkedHashMap<K, V>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+				return size() > REMEMBER;
+			}
+		};
+	}
+
+	/**
+	 * Starts polling every job order database, set up from the "sky.cdc.*" system properties.
+	 * Does nothing if -Dsky.cdc.column isn't set, or if the pollers are already running.
+	 */
+	public static synchronized void start() {
+
+		if (System.getProperty("sky.cdc.column") == null) {
+			logger.log(Level.INFO, "Not polling for outside changes, since -Dsky.cdc.column doesn't name a version column.");
+			return;
+		}
+		if (executor == null) {
+			executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "change-poller");
+				thread.setDaemon(true);
+				return thread;
+			});
+			executor.scheduleWithFixedDelay(ChangePoller::pollAll, 0, Long.getLong("sky.cdc.interval", 15L), TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * Stops the pollers. Meant to be called when the servlet is destroyed.
+	 */
+	public static synchronized void stop() {
+
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	/**
+	 * One round of polling for every job order database, each with its own poller (made the first time its database is seen).
+	 */
+	private static void pollAll() {
+
+		for (String database : DBRouter.getInstance().getDatabases(DBName.JOB_ORDERS)) {
+			pollers.computeIfAbsent(database, name -> new ChangePoller(name,
+					Mode.valueOf(System.getProperty("sky.cdc.mode", Mode.ROWVERSION.name())),
+					System.getProperty("sky.cdc.column"),
+					Integer.getInteger("sky.cdc.batch", 500),
+					Integer.getInteger("sky.cdc.deleteCheck", 20)))
+				.poll();
+		}
+	}
+
+	/**
+	 * One round of polling. The first round only finds the current high-water marks,
+	 * since everything before then is already in the database when the caches load it.
+	 */
+	void poll() {
+
+		try {
+			if (jobMark == null || detailMark == null) {
+				findStartingMarks();
+				logger.log(Level.INFO, "Change poller for " + database + " started at Job mark " + describeMark(jobMark)
+						+ ", OrderDetail mark " + describeMark(detailMark));
+				return;
+			}
+
+			// Keep going until a batch comes back short, so a big import is caught up on in one round.
+			int rows;
+			do {
+				rows = pollJobs();
+			} while (rows == batchSize);
+			do {
+				rows = pollDetails();
+			} while (rows == batchSize);
+
+			if (++rounds % deleteCheckRounds == 0 || jobKeys == null) {
+				findDeletes();
+			}
+		} catch (SQLException e) {
+			logger.log(Level.WARNING, "Change poller could not read from " + database + "; will try again next round.", e);
+		} catch (RuntimeException e) {
+			// An exception would otherwise cancel every future round of the scheduled executor.
+			logger.log(Level.SEVERE, "Unexpected exception in the change poller.", e);
+		}
+	}
+
+	/**
+	 * Reads the next batch of changed Jobs and publishes the differences.
+	 *
+	 * @return The number of rows read.
+	 * @throws SQLException
+	 */
+	private int pollJobs() throws SQLException {
+
+		// The SQL statement that will be run on the DBMS.
+		String sql = "SELECT TOP " + batchSize + " job_id, ship_date, job_completed, " + versionColumn + " AS version "
+				+ "FROM Job "
+				+ "WHERE " + pastMark("job_id")
+				+ "ORDER BY " + versionColumn + ", job_id";
+
+		int rows = 0;
+		try ( // Try with resources block (requires Java 7+) for the connection and a prepared statement.
+				Connection conn = ConnectionManager.getInstance().getConnection(database); // The connection to the database, which goes back to its pool afterwards.
+				PreparedStatement stmt = conn.prepareStatement(sql);
+				){
+
+			setMark(stmt, jobMark);
+			if (mode == Mode.TIMESTAMP) {
+				stmt.setString(3, jobMarkKey);
+			}
+
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					rows++;
+					String jobId = rs.getString("job_id");
+					JobState state = new JobState(rs.getDate("ship_date"), rs.getTimestamp("job_completed") != null);
+					jobMark = readMark(rs);
+					jobMarkKey = jobId;
+
+					JobState oldState = knownJobs.put(jobId, state);
+
+					Job job = new Job(); // Only what the events need.
+					job.setJobId(jobId);
+					job.setShipDate(state.shipDate);
+					job.setJobCompleted(rs.getTimestamp("job_completed"));
+
+					JobEvent event;
+					if (oldState != null && Objects.equals(oldState.shipDate, state.shipDate) && oldState.completed != state.completed) {
+						event = new JobCompletedEvent(job); // The job was marked as done (or un-done) on the same date.
+					} else {
+						event = new JobUpdatedEvent(job);
+					}
+					JobEventStream.publish(event);
+				}
+			}
+		}
+
+		if (rows > 0) {
+			logger.log(Level.CONFIG, "Change poller read " + rows + " changed jobs.");
+			// Anyone refreshing because of these changes should read them from the primary until the replicas have them too.
+			ConnectionManager.getInstance().markWritten(database);
+		}
+		return rows;
+	}
+
+	/**
+	 * Reads the next batch of changed OrderDetail items and publishes the differences.
+	 *
+	 * @return The number of rows read.
+	 * @throws SQLException
+	 */
+	private int pollDetails() throws SQLException {
+
+		// The SQL statement that will be run on the DBMS.
+		String sql = "SELECT TOP " + batchSize + " id, order_id, item_completed, " + versionColumn + " AS version "
+				+ "FROM OrderDetail "
+				+ "WHERE " + pastMark("id")
+				+ "ORDER BY " + versionColumn + ", id";
+
+		int rows = 0;
+		try ( // Try with resources block (requires Java 7+) for the connection and a prepared statement.
+				Connection conn = ConnectionManager.getInstance().getConnection(database); // The connection to the database, which goes back to its pool afterwards.
+				PreparedStatement stmt = conn.prepareStatement(sql);
+				){
+
+			setMark(stmt, detailMark);
+			if (mode == Mode.TIMESTAMP) {
+				stmt.setInt(3, detailMarkKey);
+			}
+
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					rows++;
+					OrderDetail orderDetail = new OrderDetail(); // Only what the events need.
+					orderDetail.setId(rs.getInt("id"));
+					orderDetail.setOrderId(rs.getString("order_id"));
+					orderDetail.setItemCompleted(rs.getTimestamp("item_completed"));
+					detailMark = readMark(rs);
+					detailMarkKey = orderDetail.getId();
+
+					boolean completed = orderDetail.getItemCompleted() != null;
+					Boolean oldCompleted = knownDetails.put(orderDetail.getId(), completed);
+					if (oldCompleted != null && oldCompleted != completed) {
+						JobEventStream.publish(new OrderDetailCompletedEvent(orderDetail));
+					} else {
+						JobEventStream.publish(new OrderDetailUpdatedEvent(orderDetail));
+					}
+				}
+			}
+		}
+
+		if (rows > 0) {
+			logger.log(Level.CONFIG, "Change poller read " + rows + " changed order details.");
+			// Anyone refreshing because of these changes should read them from the primary until the replicas have them too.
+			ConnectionManager.getInstance().markWritten(database);
+		}
+		return rows;
+	}
+
+	/**
+	 * Builds the WHERE condition for the rows past the high-water mark.
+	 *
+	 * @param keyColumn The table's key, used for breaking ties between equal timestamps.
+	 * @return The condition, with a trailing space.
+	 */
+	private String pastMark(String keyColumn) {
+
+		if (mode == Mode.ROWVERSION) {
+			return versionColumn + " > ? AND " + settled();
+		}
+		return "(" + versionColumn + " > ? OR (" + versionColumn + " = ? AND " + keyColumn + " > ?)) AND " + settled();
+	}
+
+	/**
+	 * Builds the WHERE condition for the rows that no open transaction can still slip in under.
+	 * Rowversions are handed out when a row is written, not when it's committed, so a row with a lower one
+	 * can still turn up after the mark has passed it, unless the marks stop short of the oldest one still in use.
+	 *
+	 * @return The condition, with a trailing space.
+	 */
+	private String settled() {
+
+		if (mode == Mode.ROWVERSION) {
+			return versionColumn + " < MIN_ACTIVE_ROWVERSION() ";
+		}
+		return versionColumn + " < DATEADD(SECOND, -" + SETTLE_SECONDS + ", CURRENT_TIMESTAMP) ";
+	}
+
+	/**
+	 * Finds the current high-water marks of both tables, so polling starts from where the tables are now.
+	 *
+	 * @throws SQLException
+	 */
+	private void findStartingMarks() throws SQLException {
+
+		try (
+				Connection conn = ConnectionManager.getInstance().getConnection(database); // The connection to the database, which goes back to its pool afterwards.
+				PreparedStatement stmt = conn.prepareStatement("SELECT TOP 1 " + versionColumn + " AS version, job_id FROM Job "
+						+ "WHERE " + settled()
+						+ "ORDER BY " + versionColumn + " DESC, job_id DESC");
+				ResultSet rs = stmt.executeQuery();
+				){
+			if (rs.next()) {
+				jobMark = readMark(rs);
+				jobMarkKey = rs.getString("job_id");
+			} else { // An empty table, so start from the very beginning.
+				jobMark = emptyMark();
+			}
+		}
+
+		try (
+				Connection conn = ConnectionManager.getInstance().getConnection(database); // The connection to the database, which goes back to its pool afterwards.
+				PreparedStatement stmt = conn.prepareStatement("SELECT TOP 1 " + versionColumn + " AS version, id FROM OrderDetail "
+						+ "WHERE " + settled()
+						+ "ORDER BY " + versionColumn + " DESC, id DESC");
+				ResultSet rs = stmt.executeQuery();
+				){
+			if (rs.next()) {
+				detailMark = readMark(rs);
+				detailMarkKey = rs.getInt("id");
+			} else { // An empty table, so start from the very beginning.
+				detailMark = emptyMark();
+			}
+		}
+	}
+
+	/**
+	 * Reads every key of both tables and publishes a delete for each one that was there last time and isn't now.
+	 * The first time, it only reads the keys.
+	 *
+	 * @throws SQLException
+	 */
+	private void findDeletes() throws SQLException {
+
+		List<String> jobs = new ArrayList<String>();
+		try (
+				Connection conn = ConnectionManager.getInstance().getConnection(database); // The connection to the database, which goes back to its pool afterwards.
+				PreparedStatement stmt = conn.prepareStatement("SELECT job_id FROM Job ORDER BY job_id");
+				ResultSet rs = stmt.executeQuery();
+				){
+			while (rs.next()) {
+				jobs.add(rs.getString("job_id"));
+			}
+		}
+
+		List<Integer> details = new ArrayList<Integer>();
+		List<String> detailJobs = new ArrayList<String>();
+		try (
+				Connection conn = ConnectionManager.getInstance().getConnection(database); // The connection to the database, which goes back to its pool afterwards.
+				PreparedStatement stmt = conn.prepareStatement("SELECT id, order_id FROM OrderDetail ORDER BY id");
+				ResultSet rs = stmt.executeQuery();
+				){
+			while (rs.next()) {
+				details.add(rs.getInt("id"));
+				detailJobs.add(rs.getString("order_id"));
+			}
+		}
+
+		String[] newJobKeys = jobs.toArray(new String[jobs.size()]);
+		int[] newDetailKeys = details.stream().mapToInt(Integer::intValue).toArray();
+		Arrays.sort(newJobKeys); // The database's collation may not sort them the way Java does.
+
+		if (jobKeys != null) {
+			int deleted = 0;
+			for (int i : missing(jobKeys, newJobKeys)) {
+				knownJobs.remove(jobKeys[i]);
+				JobEventStream.publish(new JobDeletedEvent(jobKeys[i]));
+				deleted++;
+			}
+			for (int i : missing(detailKeys, newDetailKeys)) {
+				knownDetails.remove(detailKeys[i]);
+				JobEventStream.publish(new OrderDetailDeletedEvent(detailJobKeys[i], detailKeys[i]));
+				deleted++;
+			}
+			if (deleted > 0) {
+				logger.log(Level.CONFIG, "Change poller found " + deleted + " deleted rows in " + database);
+				ConnectionManager.getInstance().markWritten(database);
+			}
+		}
+		jobKeys = newJobKeys;
+		detailKeys = newDetailKeys;
+		detailJobKeys = detailJobs.toArray(new String[detailJobs.size()]);
+	}
+
+	/**
+	 * Finds the keys that were in one sorted array of keys but aren't in another.
+	 *
+	 * @param before The keys as they were, sorted.
+	 * @param after The keys as they are, sorted.
+	 * @return The indexes in before of the keys that are gone.
+	 */
+	static <T extends Comparable<T>> List<Integer> missing(T[] before, T[] after) {
+
+		List<Integer> gone = new ArrayList<Integer>();
+		int j = 0;
+		for (int i = 0; i < before.length; i++) {
+			while (j < after.length && after[j].compareTo(before[i]) < 0) {
+				j++;
+			}
+			if (j == after.length || after[j].compareTo(before[i]) != 0) {
+				gone.add(i);
+			}
+		}
+		return gone;
+	}
+
+	/**
+	 * Finds the keys that were in one sorted array of keys but aren't in another.
+	 *
+	 * @param before The keys as they were, sorted.
+	 * @param after The keys as they are, sorted.
+	 * @return The indexes in before of the keys that are gone.
+	 */
+	static List<Integer> missing(int[] before, int[] after) {
+
+		List<Integer> gone = new ArrayList<Integer>();
+		int j = 0;
+		for (int i = 0; i < before.length; i++) {
+			while (j < after.length && after[j] < before[i]) {
+				j++;
+			}
+			if (j == after.length || after[j] != before[i]) {
+				gone.add(i);
+			}
+		}
+		return gone;
+	}
+
+	private Object emptyMark() {
+		return mode == Mode.ROWVERSION ? new byte[8] : new Timestamp(0);
+	}
+
+	private Object readMark(ResultSet rs) throws SQLException {
+		return mode == Mode.ROWVERSION ? rs.getBytes("version") : rs.getTimestamp("version");
+	}
+
+	private void setMark(PreparedStatement stmt, Object mark) throws SQLException {
+
+		if (mode == Mode.ROWVERSION) {
+			stmt.setBytes(1, (byte[]) mark);
+		} else {
+			stmt.setTimestamp(1, (Timestamp) mark);
+			stmt.setTimestamp(2, (Timestamp) mark);
+		}
+	}
+
+	/**
+	 * Turns a high-water mark into something readable for the log.
+	 *
+	 * @param mark The high-water mark.
+	 * @return A rowversion as a number, or a timestamp as it is.
+	 */
+	private static String describeMark(Object mark) {
+		return mark instanceof byte[] ? String.valueOf(ByteBuffer.wrap((byte[]) mark).getLong()) : String.valueOf(mark);
+	}
+
+
+	/**
+	 * What the caches care about in a Job row.
+	 */
+	private static final class JobState {
+
+		private final Date shipDate;
+		private final boolean completed;
+
+		JobState(Date shipDate, boolean completed) {
+			this.shipDate = shipDate;
+			this.completed = completed;
+		}
+	}
+
+}
@@ -0,0 +1,320 @@
+package info.chrismcgee.sky.tables;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import info.chrismcgee.dbutil.ConnectionManager;
+import info.chrismcgee.sky.scheduling.beans.OrderDetail;
+
+/**
+ * @author Marketing
+ *
+ * A durable, local journal of the items that were checked off (or unchecked) while the database couldn't be reached.
+ * Each click is appended to the journal file and forced out to the disk before it's acknowledged,
+ * so nothing is lost even if the server goes down before the database comes back.
+ * Once the database is back, the journal is replayed, in order, through OrderDetailManager.setItemCompleted().
+ *
+ * The journal lives beside the OfflineSnapshot, as "completions.journal", one line per click:
+ * the job number, the item's id, and when it was completed in milliseconds (or nothing, if it was unchecked),
+ * separated by tabs.
+ */
+public class CompletionJournal {
+
+	private final static Logger logger = Logger.getLogger(CompletionJournal.class.getName()); // Logging!
+
+	private static final String FILE_NAME = "completions.journal";
+
+	// The single and only instance of the journal; starts off as null.
+	private static CompletionJournal instance = null;
+
+	private final Path file;
+	private final Saver saver; // Saves a click to the database.
+	private final BooleanSupplier databaseDown; // Whether the database can't be reached right now.
+	private final Object replaying = new Object(); // Held while replaying, so there's only ever one replay at a time.
+	private final List<Entry> pending = new ArrayList<Entry>(); // What's in the journal, oldest first.
+
+	/**
+	 * @param root The folder the journal is kept in. It's made if it isn't there yet.
+	 */
+	public CompletionJournal(Path root) {
+		this(root, OrderDetailManager::setItemCompleted, () -> ConnectionManager.getInstance().isDown());
+	}
+
+	/**
+	 * @param root The folder the journal is kept in. It's made if it isn't there yet.
+	 * @param saver Saves a click to the database.
+	 * @param databaseDown Whether the database can't be reached right now.
+	 */
+	CompletionJournal(Path root, Saver saver, BooleanSupplier databaseDown) {
+		this.file = root.toAbsolutePath().normalize().resolve(FILE_NAME);
+		this.saver = saver;
+		this.databaseDown = databaseDown;
+		try {
+			Files.createDirectories(this.file.getParent());
+			pending.addAll(read());
+		} catch (IOException e) {
+			logger.log(Level.SEVERE, "Could not read the completion journal " + this.file, e);
+		}
+		if (!pending.isEmpty()) {
+			logger.log(Level.INFO, pending.size() + " completed items are waiting in the journal for the database.");
+		}
+	}
+
+	/**
+	 * Gets the single instance of the journal, making it the first time.
+	 * It's replayed every time the database comes back.
+	 *
+	 * @return The CompletionJournal.
+	 */
+	public static synchronized CompletionJournal getInstance() {
+		if (instance == null) {
+			instance = new CompletionJournal(OfflineSnapshot.getRoot());
+			final CompletionJournal journal = instance;
+			ConnectionManager.getInstance().addRecoveryListener(journal::replay);
+		}
+		return instance;
+	}
+
+	/**
+	 * Sets an item as completed (or not), straight in the database if it can be reached,
+	 * or in the journal if it can't. Anything already waiting in the journal goes first,
+	 * so the clicks always reach the database in the order they were made.
+	 *
+	 * @param bean The item, with its id, its job number and when it was completed (or null, if it wasn't).
+	 * @return True if it was saved to the database or to the journal; false if it couldn't be saved at all.
+	 */
+	public boolean setItemCompleted(OrderDetail bean) {
+
+		if (hasPending() && !databaseDown.getAsBoolean()) {
+			replay(); // Catch up first, if the database looks to be back.
+		}
+		if (!hasPending()) {
+			try {
+				if (saver.save(bean)) {
+					return true;
+				}
+			} catch (Exception e) {
+				logger.log(Level.WARNING, "Could not set item " + bean.getId() + " of " + bean.getOrderId() + " as completed.", e);
+			}
+			if (!databaseDown.getAsBoolean()) {
+				return false; // The database is there; it just didn't take it (such as an item that's been deleted).
+			}
+		}
+		return append(new Entry(bean.getOrderId(), bean.getId(), bean.getItemCompleted()));
+	}
+
+	/**
+	 * @return True if there are clicks in the journal still waiting for the database.
+	 */
+	public synchronized boolean hasPending() {
+		return !pending.isEmpty();
+	}
+
+	/**
+	 * Gets the last thing that was journaled for each item, so the OfflineSnapshot can show the clicks
+	 * that haven't made it to the database yet.
+	 *
+	 * @return When each item was completed (or null, if it was unchecked), by its job number and id (as "425000/12").
+	 */
+	public synchronized Map<String, Timestamp> getPending() {
+
+		Map<String, Timestamp> completed = new HashMap<String, Timestamp>();
+		for (Entry entry : pending) {
+			completed.put(key(entry.orderId, entry.id), entry.completed);
+		}
+		return completed;
+	}
+
+	/**
+	 * @return The key of an item in getPending().
+	 */
+	static String key(String orderId, int id) {
+		return orderId + "/" + id;
+	}
+
+	/**
+	 * Sends everything in the journal to the database, in order. It stops at the first click that fails
+	 * because the database can't be reached, and keeps that one and the rest for the next replay.
+	 * A click the database turns down for any other reason (such as an item that's been deleted) is dropped.
+	 *
+	 * @return The number of clicks that were sent.
+	 */
+	public int replay() {
+
+		synchronized (replaying) {
+			List<Entry> entries;
+			synchronized (this) {
+				entries = new ArrayList<Entry>(pending);
+			}
+			int sent = 0;
+			for (Entry entry : entries) {
+				OrderDetail bean = new OrderDetail();
+				bean.setId(entry.id);
+				bean.setOrderId(entry.orderId);
+				bean.setItemCompleted(entry.completed);
+				boolean saved;
+				try {
+					saved = saver.save(bean);
+				} catch (Exception e) {
+					logger.log(Level.WARNING, "Could not replay item " + entry.id + " of " + entry.orderId, e);
+					saved = false;
+				}
+				if (!saved && databaseDown.getAsBoolean()) {
+					break; // Try again the next time it's back.
+				}
+				if (!saved) {
+					logger.log(Level.WARNING, "The database turned down item " + entry.id + " of " + entry.orderId + "; dropping it from the journal.");
+				}
+				sent++;
+			}
+			if (sent > 0) {
+				remove(sent);
+				logger.log(Level.INFO, "Replayed " + sent + " completed items from the journal.");
+			}
+			return sent;
+		}
+	}
+
+	/**
+	 * Appends a click to the journal file, and waits for it to be on the disk.
+	 */
+	private synchronized boolean append(Entry entry) {
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+			ByteBuffer line = ByteBuffer.wrap((entry.toLine() + "\n").getBytes(StandardCharsets.UTF_8));
+			while (line.hasRemaining()) {
+				channel.write(line);
+			}
+			channel.force(false); // Only acknowledge the click once it's safely on the disk.
+		} catch (IOException e) {
+			logger.log(Level.SEVERE, "Could not write item " + entry.id + " of " + entry.orderId + " to the completion journal.", e);
+			return false;
+		}
+		pending.add(entry);
+		logger.log(Level.INFO, "Journaled item " + entry.id + " of " + entry.orderId + " until the database is back.");
+		return true;
+	}
+
+	/**
+	 * Takes the first few clicks out of the journal, rewriting the file with whatever's left
+	 * (including anything appended during the replay). It's written beside the journal and then moved in,
+	 * so it's never found half-written.
+	 */
+	private synchronized void remove(int count) {
+
+		List<Entry> left = new ArrayList<Entry>(pending.subList(count, pending.size()));
+		try {
+			Path temp = Files.createTempFile(file.getParent(), ".journal", ".tmp");
+			try {
+				try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+					for (Entry entry : left) {
+						out.write(entry.toLine());
+						out.newLine();
+					}
+				}
+				try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+					channel.force(false);
+				}
+				Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+			pending.clear();
+			pending.addAll(left);
+		} catch (IOException e) {
+			// The clicks that were sent stay in the journal and are sent again next time,
+			// which does no harm since each one only sets when an item was completed.
+			logger.log(Level.SEVERE, "Could not rewrite the completion journal " + file, e);
+		}
+	}
+
+	/**
+	 * Reads the journal file. A line that can't be read (such as the last one, if the server went down
+	 * in the middle of writing it) is skipped.
+	 */
+	private List<Entry> read() throws IOException {
+
+		List<Entry> entries = new ArrayList<Entry>();
+		try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				Entry entry = Entry.parse(line);
+				if (entry != null) {
+					entries.add(entry);
+				} else if (!line.isEmpty()) {
+					logger.log(Level.WARNING, "Skipping a broken line in the completion journal: " + line);
+				}
+			}
+		} catch (NoSuchFileException e) {
+			// Nothing has ever been journaled.
+		}
+		return entries;
+	}
+
+
+	/**
+	 * Saves a click to the database, such as OrderDetailManager.setItemCompleted().
+	 */
+	interface Saver {
+		/**
+		 * @param bean The item, with its id, its job number and when it was completed (or null, if it wasn't).
+		 * @return True if it was saved.
+		 * @throws Exception If it couldn't be.
+		 */
+		boolean save(OrderDetail bean) throws Exception;
+	}
+
+	/**
+	 * One click: an item being checked off (or unchecked).
+	 */
+	private static final class Entry {
+
+		private final String orderId;
+		private final int id;
+		private final Timestamp completed; // Null if it was unchecked.
+
+		Entry(String orderId, int id, Timestamp completed) {
+			this.orderId = orderId;
+			this.id = id;
+			this.completed = completed == null ? null : new Timestamp(completed.getTime());
+		}
+
+		String toLine() {
+			return orderId + "\t" + id + "\t" + (completed == null ? "" : Long.toString(completed.getTime()));
+		}
+
+		/**
+		 * @return The click, or null if the line is broken.
+		 */
+		static Entry parse(String line) {
+			String[] fields = line.split("\t", -1);
+			if (fields.length != 3 || fields[0].isEmpty()) {
+				return null;
+			}
+			try {
+				return new Entry(fields[0], Integer.parseInt(fields[1]),
+						fields[2].isEmpty() ? null : new Timestamp(Long.parseLong(fields[2])));
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,894 @@
+package info.chrismcgee.sky.tables;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import info.chrismcgee.sky.components.DateManager;
+import info.chrismcgee.sky.enums.PrintType;
+import info.chrismcgee.sky.enums.PrintingCompany;
+import info.chrismcgee.sky.scheduling.beans.Job;
+import info.chrismcgee.sky.scheduling.beans.OrderDetail;
+
+/**
+ * @author Marketing
+ *
+ * The archive tier of the Job and OrderDetail tables. Completed Jobs that shipped before a cutoff
+ * are moved out of the database and into compressed files on the local disk, one file per month of ship dates,
+ * so the hot tables only ever hold the last few years no matter how many years go by.
+ *
+ * Archiving deletes rows from the database, so it only happens when it's asked for: -Dsky.archive has to name
+ * the folder for the files, and -Dsky.archive.months how many months of completed Jobs stay in the database.
+ * Without a folder, the archive is empty and nothing is ever moved into it.
+ *
+ * Each month's file is columnar: every ship date, then every job number, then every customer name, and so on,
+ * with the numbers delta- and varint-encoded, and the whole thing gzipped. Putting the like values together
+ * is what lets gzip squeeze them down, since the same few customers, products and dates come up over and over.
+ * Files are decoded whole and a few of the most recently used months are kept in memory.
+ *
+ * The JobManager asks the archive for any dates before the end of the last archived month,
+ * and merges what it gets with what's still in the database, so nobody has to know which tier a Job is in.
+ * Jobs that haven't been completed are never archived, however old they are.
+ */
+public class JobArchive {
+
+	private final static Logger logger = Logger.getLogger(JobArchive.class.getName()); // Logging!
+
+	private static final int MAGIC = 0x534B5941; // "SKYA", at the start of every segment file.
+	private static final int VERSION = 1;
+	private static final String PREFIX = "jobs-"; // Segment files are named like "jobs-2014-03.seg.gz".
+	private static final String SUFFIX = ".seg.gz";
+	private static final int CACHED_SEGMENTS = 12; // How many decoded months are kept in memory.
+	private static final ZoneId ZONE = ZoneId.systemDefault(); // The zone the database's timestamps are in.
+
+	/**
+	 * The order that the JobManager lists Jobs in: by ship date, then proof/spec date (with no date first),
+	 * then job number.
+	 */
+	public static final Comparator<Job> ORDER = Comparator.comparing(Job::getShipDate)
+			.thenComparing(Job::getProofSpecDate, Comparator.nullsFirst(Comparator.naturalOrder()))
+			.thenComparing(Job::getJobId);
+
+	// The single and only instance of the archive; starts off as null.
+	private static JobArchive instance = null;
+	// Runs the archiving once a day, when it's been started.
+	private static ScheduledExecutorService executor = null;
+
+	private final Path root; // The folder that holds the segment files, or null if there's no archive.
+	private final Object archiving = new Object(); // Held while archiving, so the readers are only held up for a moment.
+	private final NavigableSet<YearMonth> months = new TreeSet<YearMonth>(); // The months that have a segment file.
+	// The most recently used decoded segments, oldest use first.
+	private final Map<YearMonth, Segment> cache = new LinkedHashMap<YearMonth, Segment>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<YearMonth, Segment> eldest) {
+			return size() > CACHED_SEGMENTS;
+		}
+	};
+
+	/**
+	 * @param root The folder that holds the segment files. It's made if it isn't there yet.
+	 * If it's null, the archive is always empty and can't be archived into.
+	 */
+	public JobArchive(Path root) {
+		if (root == null) {
+			this.root = null;
+			return;
+		}
+		this.root = root.toAbsolutePath().normalize();
+		try {
+			Files.createDirectories(this.root);
+			try (DirectoryStream<Path> files = Files.newDirectoryStream(this.root, PREFIX + "*" + SUFFIX)) {
+				for (Path file : files) {
+					String name = file.getFileName().toString();
+					months.add(YearMonth.parse(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			logger.log(Level.SEVERE, "Could not read the archive folder " + this.root, e);
+		}
+		logger.log(Level.CONFIG, "Archive at " + this.root + " holds " + months.size() + " months.");
+	}
+
+	/**
+	 * Gets the single instance of the archive, making it the first time.
+	 *
+	 * @return The JobArchive.
+	 */
+	public static synchronized JobArchive getInstance() {
+		if (instance == null) {
+			String path = System.getProperty("sky.archive");
+			instance = new JobArchive(path == null || path.trim().isEmpty() ? null : Paths.get(path.trim()));
+		}
+		return instance;
+	}
+
+	/**
+	 * Starts archiving once a day, moving the completed Jobs that shipped more than
+	 * "sky.archive.months" months ago out of the database and into the "sky.archive" folder.
+	 * Does nothing unless both are set (and the months are more than 0), or if it's already running.
+	 */
+	public static synchronized void start() {
+
+		int keepMonths = Integer.getInteger("sky.archive.months", 0);
+		if (executor != null) {
+			return;
+		}
+		if (keepMonths <= 0 || getInstance().root == null) {
+			logger.log(Level.INFO, "Not archiving old jobs; set both -Dsky.archive and -Dsky.archive.months to turn it on.");
+			return;
+		}
+		executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "job-archiver");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		});
+		executor.scheduleWithFixedDelay(() -> {
+			try {
+				getInstance().archiveBefore(DateManager.getTodayDate().minusMonths(keepMonths));
+			} catch (SQLException | IOException e) {
+				logger.log(Level.WARNING, "Could not archive old jobs; will try again tomorrow.", e);
+			} catch (RuntimeException e) {
+				// An exception would otherwise cancel every future run of the scheduled executor.
+				logger.log(Level.SEVERE, "Unexpected exception in the job archiver.", e);
+			}
+		}, 5, 24 * 60, TimeUnit.MINUTES);
+	}
+
+	/**
+	 * Stops the daily archiving. Meant to be called when the servlet is destroyed.
+	 */
+	public static synchronized void stop() {
+
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	/**
+	 * Finds out whether any of a range of dates could be in the archive.
+	 *
+	 * @param startDate The first date of the range.
+	 * @return True if the range starts on or before the end of the last archived month.
+	 */
+	public synchronized boolean covers(LocalDate startDate) {
+		return !months.isEmpty() && !startDate.isAfter(months.last().atEndOfMonth());
+	}
+
+	/**
+	 * Moves every completed Job that shipped before a cutoff (and all of its items) from the database
+	 * into the archive, a month at a time. Each month's file is written (merged with whatever
+	 * was archived for that month before) before the rows are deleted, so a crash in between
+	 * leaves a Job in both tiers rather than in neither; the JobManager always prefers the database's copy.
+	 *
+	 * @param cutoff Jobs that ship before this date are archived. Only whole months are archived,
+	 * so it's really the first of the cutoff's month.
+	 * @return The number of Jobs that were archived.
+	 * @throws SQLException
+	 * @throws IOException If a segment file could not be written. Nothing from that month is deleted.
+	 */
+	public int archiveBefore(LocalDate cutoff) throws SQLException, IOException {
+
+		if (root == null) {
+			throw new IllegalStateException("There's no archive folder to archive into; set -Dsky.archive.");
+		}
+		synchronized (archiving) {
+			YearMonth endMonth = YearMonth.from(cutoff); // The first month that's kept in the database.
+			LocalDate oldest = JobManager.getOldestCompletedShipDate(endMonth.atDay(1));
+			if (oldest == null) {
+				return 0; // Nothing to archive, or the database couldn't be read.
+			}
+
+			int archived = 0;
+			for (YearMonth month = YearMonth.from(oldest); month.isBefore(endMonth); month = month.plusMonths(1)) {
+				List<Job> jobs = JobManager.getCompletedJobsByDateRange(month.atDay(1), month.atEndOfMonth());
+				if (jobs == null) {
+					break; // The error has been logged; try again next time.
+				}
+				if (jobs.isEmpty()) {
+					continue;
+				}
+
+				long start = System.nanoTime();
+				List<String> jobIds = new ArrayList<String>(jobs.size());
+				for (Job job : jobs) {
+					jobIds.add(job.getJobId());
+				}
+				// Anything already archived for this month stays, unless the database has a newer copy of it.
+				Segment old = getSegment(month);
+				if (old != null) {
+					Set<String> replaced = new HashSet<String>(jobIds);
+					for (Job job : old.getJobs(Long.MIN_VALUE, Long.MAX_VALUE, i -> true, Integer.MAX_VALUE)) {
+						if (!replaced.contains(job.getJobId())) {
+							jobs.add(job);
+						}
+					}
+				}
+				put(month, jobs);
+
+				if (!JobManager.deleteArchived(month.atDay(1), jobIds)) {
+					break; // They're safely in both tiers for now; try again next time.
+				}
+				archived += jobIds.size();
+				logger.log(Level.INFO, "Archived " + jobIds.size() + " jobs that shipped in " + month
+						+ " in " + (System.nanoTime() - start) / 1000000 + " ms");
+			}
+			return archived;
+		}
+	}
+
+	/**
+	 * Writes a month's segment, in place of whatever was archived for that month before.
+	 *
+	 * @param month The month they ship in.
+	 * @param jobs Every Job of the month, each with its List of items. (This List is sorted into ORDER.)
+	 * @throws IOException If the segment file could not be written.
+	 */
+	void put(YearMonth month, List<Job> jobs) throws IOException {
+
+		jobs.sort(ORDER);
+		Segment segment = Segment.of(month, jobs);
+		write(month, segment);
+		synchronized (this) {
+			months.add(month);
+			cache.put(month, segment);
+		}
+	}
+
+	/**
+	 * Gets all of the archived jobs (along with all of their OrderDetail items) that ship between two dates.
+	 *
+	 * @param startDate LocalDate object of the first ship date. (inclusive)
+	 * @param endDate LocalDate object of the last ship date. (inclusive)
+	 * @return List of the archived Jobs, in the same ORDER as the JobManager's.
+	 * The beans are new every time, so they can be changed freely.
+	 * @throws IOException If a segment file could not be read.
+	 */
+	public List<Job> getJobsByDateRange(LocalDate startDate, LocalDate endDate) throws IOException {
+
+		List<Job> jobList = new ArrayList<Job>();
+		for (YearMonth month : getMonths(startDate, endDate)) {
+			jobList.addAll(getSegment(month).getJobs(startDate.toEpochDay(), endDate.toEpochDay(), i -> true, Integer.MAX_VALUE));
+		}
+		return jobList;
+	}
+
+	/**
+	 * Starts reading the archived jobs that ship between two dates, one month's segment at a time,
+	 * for JobManager.streamJobsByDateRange(). Only the month being read is ever turned into beans,
+	 * so an export of years of history holds no more of the archive than a month of it.
+	 *
+	 * @param startDate LocalDate object of the first ship date. (inclusive)
+	 * @param endDate LocalDate object of the last ship date. (inclusive)
+	 * @return The reader, which hands the Jobs over in ORDER.
+	 */
+	Reader read(LocalDate startDate, LocalDate endDate) {
+		return new Reader(getMonths(startDate, endDate), startDate.toEpochDay(), endDate.toEpochDay());
+	}
+
+	/**
+	 * Hands over the archived jobs of a range, in ORDER, reading the next month's segment only once
+	 * the one before it has all been handed over.
+	 */
+	final class Reader {
+
+		private final Iterator<YearMonth> months; // The months that haven't been read yet.
+		private final long fromDay;
+		private final long toDay;
+		private List<Job> jobList = new ArrayList<Job>(); // The month being handed over.
+		private int next; // The next Job of it to hand over.
+
+		private Reader(List<YearMonth> months, long fromDay, long toDay) {
+			this.months = months.iterator();
+			this.fromDay = fromDay;
+			this.toDay = toDay;
+		}
+
+		/**
+		 * @return The next Job, without handing it over, or null if there are no more.
+		 * @throws IOException If a segment file could not be read.
+		 */
+		Job peek() throws IOException {
+			while (next >= jobList.size() && months.hasNext()) {
+				Segment segment = getSegment(months.next());
+				jobList = segment == null ? new ArrayList<Job>() : segment.getJobs(fromDay, toDay, i -> true, Integer.MAX_VALUE);
+				next = 0;
+			}
+			return next < jobList.size() ? jobList.get(next) : null;
+		}
+
+		/**
+		 * @return The next Job, or null if there are no more.
+		 * @throws IOException If a segment file could not be read.
+		 */
+		Job next() throws IOException {
+			Job job = peek();
+			if (job != null) {
+				jobList.set(next++, null); // Let it go once it's been handed over.
+			}
+			return job;
+		}
+	}
+
+	/**
+	 * Gets the first of the archived jobs that ship between two dates and come after the last Job of a page,
+	 * for JobManager.getJobPage(). Only the Jobs that are wanted are turned into beans.
+	 *
+	 * @param startDate LocalDate object of the first ship date. (inclusive)
+	 * @param endDate LocalDate object of the last ship date. (inclusive)
+	 * @param customerPrefix Only Jobs whose customer name starts with this (ignoring case), or null for all.
+	 * @param after The last Job of the page before, or null for the first page.
+	 * @param limit The most Jobs to get.
+	 * @return List of the archived Jobs, in ORDER.
+	 * @throws IOException If a segment file could not be read.
+	 */
+	List<Job> getJobPage(LocalDate startDate, LocalDate endDate, String customerPrefix, PageToken after, int limit) throws IOException {
+
+		List<Job> jobList = new ArrayList<Job>();
+		for (YearMonth month : getMonths(startDate, endDate)) {
+			if (jobList.size() >= limit) {
+				break;
+			}
+			Segment segment = getSegment(month);
+			jobList.addAll(segment.getJobs(startDate.toEpochDay(), endDate.toEpochDay(),
+					i -> (customerPrefix == null || startsWithIgnoreCase(segment.customerNames[i], customerPrefix))
+							&& (after == null || segment.compareTo(i, after) > 0),
+					limit - jobList.size()));
+		}
+		return jobList;
+	}
+
+	private static boolean startsWithIgnoreCase(String value, String prefix) {
+		return value != null && value.regionMatches(true, 0, prefix, 0, prefix.length());
+	}
+
+	/**
+	 * Counts the archived jobs that ship between two dates. Every archived Job has been completed.
+	 *
+	 * @param startDate LocalDate object of the first ship date. (inclusive)
+	 * @param endDate LocalDate object of the last ship date. (inclusive)
+	 * @return The number of Jobs, or 0 if the archive could not be read.
+	 */
+	public int countJobs(LocalDate startDate, LocalDate endDate) {
+
+		int count = 0;
+		try {
+			for (YearMonth month : getMonths(startDate, endDate)) {
+				count += getSegment(month).count(startDate.toEpochDay(), endDate.toEpochDay());
+			}
+		} catch (IOException e) {
+			logger.log(Level.SEVERE, "Error attempting to count the archived jobs between " + startDate + " and " + endDate, e);
+		}
+		return count;
+	}
+
+	/**
+	 * Merges the Jobs from the database with the archived Jobs of the same range.
+	 * If a Job is in both (because its rows couldn't be deleted after it was archived),
+	 * the database's copy is kept.
+	 *
+	 * @param hot The Jobs from the database, in ORDER. (This List is changed and returned.)
+	 * @param archived The Jobs from the archive, in ORDER.
+	 * @return The merged List, in ORDER.
+	 */
+	static List<Job> merge(List<Job> hot, List<Job> archived) {
+
+		if (archived.isEmpty()) {
+			return hot;
+		}
+		Set<String> hotIds = new HashSet<String>();
+		for (Job job : hot) {
+			hotIds.add(job.getJobId());
+		}
+		for (Job job : archived) {
+			if (!hotIds.contains(job.getJobId())) {
+				hot.add(job);
+			}
+		}
+		hot.sort(ORDER);
+		return hot;
+	}
+
+	/**
+	 * @return The archived months that overlap a range of dates, oldest first.
+	 */
+	private synchronized List<YearMonth> getMonths(LocalDate startDate, LocalDate endDate) {
+		if (endDate.isBefore(startDate)) {
+			return new ArrayList<YearMonth>();
+		}
+		return new ArrayList<YearMonth>(months.subSet(YearMonth.from(startDate), true, YearMonth.from(endDate), true));
+	}
+
+	/**
+	 * Gets a month's decoded segment, reading it from its file if it isn't in memory.
+	 *
+	 * @return The segment, or null if the month hasn't been archived.
+	 * @throws IOException
+	 */
+	private synchronized Segment getSegment(YearMonth month) throws IOException {
+
+		Segment segment = cache.get(month);
+		if (segment == null && months.contains(month)) {
+			long start = System.nanoTime();
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+					new GZIPInputStream(Files.newInputStream(getFile(month)), 1 << 16)))) {
+				segment = Segment.read(in);
+			}
+			cache.put(month, segment);
+			logger.log(Level.CONFIG, "Read the archive of " + month + " (" + segment.jobIds.length + " jobs) in "
+					+ (System.nanoTime() - start) / 1000000 + " ms");
+		}
+		return segment;
+	}
+
+	/**
+	 * Writes a month's segment file. It's written beside its final place and then moved in,
+	 * so it's never found half-written.
+	 */
+	private void write(YearMonth month, Segment segment) throws IOException {
+
+		Path file = getFile(month);
+		Path temp = Files.createTempFile(root, ".archive", ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+					new GZIPOutputStream(Files.newOutputStream(temp), 1 << 16)))) {
+				segment.write(out);
+			}
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private Path getFile(YearMonth month) {
+		return root.resolve(PREFIX + month + SUFFIX);
+	}
+
+
+	/**
+	 * One month of archived Jobs and their items, held column by column.
+	 * The Jobs are in ORDER, and each Job's items follow on from the items of the Job before it.
+	 */
+	private static final class Segment {
+
+		private final long monthStart; // The first moment of the month, which the timestamps are stored relative to.
+
+		// The Job columns.
+		private final long[] shipDays;
+		private final String[] jobIds;
+		private final String[] customerNames;
+		private final String[] customerPOs;
+		private final Timestamp[] proofSpecDates;
+		private final Timestamp[] jobsCompleted;
+		private final PrintingCompany[] printingCompanies;
+		private final boolean[] overruns;
+		private final int[] firstItems; // Where each Job's items start; one extra at the end.
+
+		// The OrderDetail columns.
+		private final int[] ids;
+		private final String[] productIds;
+		private final String[] productDetails;
+		private final PrintType[] printTypes;
+		private final long[] numColors;
+		private final long[] quantities;
+		private final Timestamp[] itemsCompleted;
+		private final int[] proofNums;
+		private final Timestamp[] proofDates;
+		private final String[] thumbnails;
+
+		private Segment(long monthStart, int jobCount, int itemCount) {
+			this.monthStart = monthStart;
+			shipDays = new long[jobCount];
+			jobIds = new String[jobCount];
+			customerNames = new String[jobCount];
+			customerPOs = new String[jobCount];
+			proofSpecDates = new Timestamp[jobCount];
+			jobsCompleted = new Timestamp[jobCount];
+			printingCompanies = new PrintingCompany[jobCount];
+			overruns = new boolean[jobCount];
+			firstItems = new int[jobCount + 1];
+			ids = new int[itemCount];
+			productIds = new String[itemCount];
+			productDetails = new String[itemCount];
+			printTypes = new PrintType[itemCount];
+			numColors = new long[itemCount];
+			quantities = new long[itemCount];
+			itemsCompleted = new Timestamp[itemCount];
+			proofNums = new int[itemCount];
+			proofDates = new Timestamp[itemCount];
+			thumbnails = new String[itemCount];
+		}
+
+		/**
+		 * Splits a month of Jobs into columns.
+		 *
+		 * @param month The month they ship in.
+		 * @param jobs The Jobs, in ORDER, each with its List of items.
+		 */
+		static Segment of(YearMonth month, List<Job> jobs) {
+
+			int itemCount = 0;
+			for (Job job : jobs) {
+				itemCount += job.getOrderDetailList().size();
+			}
+			Segment segment = new Segment(month.atDay(1).atStartOfDay(ZONE).toInstant().toEpochMilli(), jobs.size(), itemCount);
+
+			int item = 0;
+			for (int i = 0; i < jobs.size(); i++) {
+				Job job = jobs.get(i);
+				segment.shipDays[i] = job.getShipDate().toLocalDate().toEpochDay();
+				segment.jobIds[i] = job.getJobId();
+				segment.customerNames[i] = job.getCustomerName();
+				segment.customerPOs[i] = job.getCustomerPO();
+				segment.proofSpecDates[i] = copy(job.getProofSpecDate());
+				segment.jobsCompleted[i] = copy(job.getJobCompleted());
+				segment.printingCompanies[i] = job.getPrintingCompany();
+				segment.overruns[i] = job.isOverruns();
+				segment.firstItems[i] = item;
+				for (OrderDetail detail : job.getOrderDetailList()) {
+					segment.ids[item] = detail.getId();
+					segment.productIds[item] = detail.getProductId();
+					segment.productDetails[item] = detail.getProductDetail();
+					segment.printTypes[item] = detail.getPrintType();
+					segment.numColors[item] = detail.getNumColors();
+					segment.quantities[item] = detail.getQuantity();
+					segment.itemsCompleted[item] = copy(detail.getItemCompleted());
+					segment.proofNums[item] = detail.getProofNum();
+					segment.proofDates[item] = copy(detail.getProofDate());
+					segment.thumbnails[item] = detail.getThumbnail();
+					item++;
+				}
+			}
+			segment.firstItems[jobs.size()] = item;
+			return segment;
+		}
+
+		/**
+		 * Turns the Jobs that ship between two days back into beans.
+		 *
+		 * @param fromDay The first ship date, as an epoch day. (inclusive)
+		 * @param toDay The last ship date, as an epoch day. (inclusive)
+		 * @param filter Picks which Jobs (by their index in the columns) are wanted.
+		 * @param limit The most Jobs to get.
+		 * @return List of new Job beans, each with a new List of items, in ORDER.
+		 */
+		List<Job> getJobs(long fromDay, long toDay, IntPredicate filter, int limit) {
+
+			List<Job> jobList = new ArrayList<Job>();
+			for (int i = firstJob(fromDay); i < shipDays.length && shipDays[i] <= toDay && jobList.size() < limit; i++) {
+				if (!filter.test(i)) {
+					continue;
+				}
+				Job job = new Job();
+				job.setShipDate(DateManager.epochDayToSqlDate(shipDays[i]));
+				job.setJobId(jobIds[i]);
+				job.setCustomerName(customerNames[i]);
+				job.setCustomerPO(customerPOs[i]);
+				job.setProofSpecDate(copy(proofSpecDates[i]));
+				job.setJobCompleted(copy(jobsCompleted[i]));
+				job.setPrintingCompany(printingCompanies[i]);
+				job.setOverruns(overruns[i]);
+
+				List<OrderDetail> detailList = new ArrayList<OrderDetail>(firstItems[i + 1] - firstItems[i]);
+				for (int item = firstItems[i]; item < firstItems[i + 1]; item++) {
+					OrderDetail detail = new OrderDetail();
+					detail.setId(ids[item]);
+					detail.setOrderId(jobIds[i]);
+					detail.setProductId(productIds[item]);
+					detail.setProductDetail(productDetails[item]);
+					detail.setPrintType(printTypes[item]);
+					detail.setNumColors(numColors[item]);
+					detail.setQuantity(quantities[item]);
+					detail.setItemCompleted(copy(itemsCompleted[item]));
+					detail.setProofNum(proofNums[item]);
+					detail.setProofDate(copy(proofDates[item]));
+					detail.setThumbnail(thumbnails[item]);
+					detailList.add(detail);
+				}
+				job.setOrderDetailList(detailList);
+				jobList.add(job);
+			}
+			return jobList;
+		}
+
+		/**
+		 * Compares a Job with the last Job of a page, in the same ORDER that the Jobs are kept in.
+		 *
+		 * @param i The Job's index in the columns.
+		 * @param key The last Job of a page.
+		 * @return Less than 0, 0, or more than 0 if the Job comes before, is, or comes after that Job.
+		 */
+		int compareTo(int i, PageToken key) {
+			int result = Long.compare(shipDays[i], key.shipDay);
+			if (result == 0) {
+				result = Comparator.nullsFirst(Comparator.<Timestamp>naturalOrder()).compare(proofSpecDates[i], key.proofSpecDate);
+			}
+			if (result == 0) {
+				result = jobIds[i].compareTo(key.id);
+			}
+			return result;
+		}
+
+		/**
+		 * @return The number of Jobs that ship between two epoch days. (inclusive)
+		 */
+		int count(long fromDay, long toDay) {
+			int count = 0;
+			for (int i = firstJob(fromDay); i < shipDays.length && shipDays[i] <= toDay; i++) {
+				count++;
+			}
+			return count;
+		}
+
+		/**
+		 * @return The first Job that ships on or after a day. The ship dates are in order, so it's a binary search.
+		 */
+		private int firstJob(long fromDay) {
+			int low = 0;
+			int high = shipDays.length;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (shipDays[middle] < fromDay) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+
+		void write(DataOutput out) throws IOException {
+
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			out.writeLong(monthStart);
+			writeVarLong(out, jobIds.length);
+			writeVarLong(out, ids.length);
+
+			// The Job columns.
+			long lastDay = 0;
+			for (long shipDay : shipDays) {
+				writeVarLong(out, shipDay - lastDay); // Always 0 or more, since they're in order.
+				lastDay = shipDay;
+			}
+			for (String jobId : jobIds) {
+				writeString(out, jobId);
+			}
+			for (String customerName : customerNames) {
+				writeString(out, customerName);
+			}
+			for (String customerPO : customerPOs) {
+				writeString(out, customerPO);
+			}
+			for (Timestamp proofSpecDate : proofSpecDates) {
+				writeTimestamp(out, proofSpecDate);
+			}
+			for (Timestamp jobCompleted : jobsCompleted) {
+				writeTimestamp(out, jobCompleted);
+			}
+			for (PrintingCompany printingCompany : printingCompanies) {
+				out.writeByte(printingCompany == null ? -1 : printingCompany.getValue());
+			}
+			for (boolean overrun : overruns) {
+				out.writeBoolean(overrun);
+			}
+			for (int i = 0; i < jobIds.length; i++) {
+				writeVarLong(out, firstItems[i + 1] - firstItems[i]);
+			}
+
+			// The OrderDetail columns.
+			int lastId = 0;
+			for (int id : ids) {
+				writeVarLong(out, zigZag(id - lastId)); // Mostly small steps up, since they were added in order.
+				lastId = id;
+			}
+			for (String productId : productIds) {
+				writeString(out, productId);
+			}
+			for (String productDetail : productDetails) {
+				writeString(out, productDetail);
+			}
+			for (PrintType printType : printTypes) {
+				out.writeByte(printType == null ? -1 : PrintType.getIntValue(printType));
+			}
+			for (long colors : numColors) {
+				writeVarLong(out, zigZag(colors));
+			}
+			for (long quantity : quantities) {
+				writeVarLong(out, zigZag(quantity));
+			}
+			for (Timestamp itemCompleted : itemsCompleted) {
+				writeTimestamp(out, itemCompleted);
+			}
+			for (int proofNum : proofNums) {
+				writeVarLong(out, zigZag(proofNum));
+			}
+			for (Timestamp proofDate : proofDates) {
+				writeTimestamp(out, proofDate);
+			}
+			for (String thumbnail : thumbnails) {
+				writeString(out, thumbnail);
+			}
+		}
+
+		static Segment read(DataInput in) throws IOException {
+
+			if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+				throw new IOException("Not an archive segment, or one from a newer version.");
+			}
+			long monthStart = in.readLong();
+			Segment segment = new Segment(monthStart, (int) readVarLong(in), (int) readVarLong(in));
+			Map<String, String> strings = new HashMap<String, String>(); // So repeated values share one String.
+
+			// The Job columns.
+			long lastDay = 0;
+			for (int i = 0; i < segment.shipDays.length; i++) {
+				lastDay += readVarLong(in);
+				segment.shipDays[i] = lastDay;
+			}
+			readStrings(in, segment.jobIds, null);
+			readStrings(in, segment.customerNames, strings);
+			readStrings(in, segment.customerPOs, strings);
+			readTimestamps(in, segment.proofSpecDates, monthStart);
+			readTimestamps(in, segment.jobsCompleted, monthStart);
+			for (int i = 0; i < segment.printingCompanies.length; i++) {
+				byte value = in.readByte();
+				segment.printingCompanies[i] = value < 0 ? null : PrintingCompany.getPrintingCompany(value);
+			}
+			for (int i = 0; i < segment.overruns.length; i++) {
+				segment.overruns[i] = in.readBoolean();
+			}
+			for (int i = 0; i < segment.jobIds.length; i++) {
+				segment.firstItems[i + 1] = segment.firstItems[i] + (int) readVarLong(in);
+			}
+
+			// The OrderDetail columns.
+			int lastId = 0;
+			for (int i = 0; i < segment.ids.length; i++) {
+				lastId += (int) unZigZag(readVarLong(in));
+				segment.ids[i] = lastId;
+			}
+			readStrings(in, segment.productIds, strings);
+			readStrings(in, segment.productDetails, strings);
+			for (int i = 0; i < segment.printTypes.length; i++) {
+				byte value = in.readByte();
+				segment.printTypes[i] = value < 0 ? null : PrintType.getPrintType(value);
+			}
+			for (int i = 0; i < segment.numColors.length; i++) {
+				segment.numColors[i] = unZigZag(readVarLong(in));
+			}
+			for (int i = 0; i < segment.quantities.length; i++) {
+				segment.quantities[i] = unZigZag(readVarLong(in));
+			}
+			readTimestamps(in, segment.itemsCompleted, monthStart);
+			for (int i = 0; i < segment.proofNums.length; i++) {
+				segment.proofNums[i] = (int) unZigZag(readVarLong(in));
+			}
+			readTimestamps(in, segment.proofDates, monthStart);
+			readStrings(in, segment.thumbnails, strings);
+			return segment;
+		}
+
+		/**
+		 * Nulls are a 0, and anything else is its length plus one followed by its UTF-8 bytes.
+		 */
+		private static void writeString(DataOutput out, String value) throws IOException {
+			if (value == null) {
+				writeVarLong(out, 0);
+				return;
+			}
+			byte[] bytes = value.getBytes("UTF-8");
+			writeVarLong(out, bytes.length + 1);
+			out.write(bytes);
+		}
+
+		private static void readStrings(DataInput in, String[] column, Map<String, String> strings) throws IOException {
+			for (int i = 0; i < column.length; i++) {
+				int length = (int) readVarLong(in);
+				if (length == 0) {
+					continue; // A null.
+				}
+				byte[] bytes = new byte[length - 1];
+				in.readFully(bytes);
+				String value = new String(bytes, "UTF-8");
+				column[i] = strings == null ? value : strings.computeIfAbsent(value, key -> key);
+			}
+		}
+
+		/**
+		 * Nulls are a 0, and anything else is its distance from the start of the month in milliseconds
+		 * (zig-zagged, since it can be before it) plus one.
+		 */
+		private void writeTimestamp(DataOutput out, Timestamp value) throws IOException {
+			writeVarLong(out, value == null ? 0 : zigZag(value.getTime() - monthStart) + 1);
+		}
+
+		private static void readTimestamps(DataInput in, Timestamp[] column, long monthStart) throws IOException {
+			for (int i = 0; i < column.length; i++) {
+				long value = readVarLong(in);
+				column[i] = value == 0 ? null : new Timestamp(unZigZag(value - 1) + monthStart);
+			}
+		}
+
+		/**
+		 * Timestamps can be changed, so every bean (and every segment) gets its own.
+		 * Only whole milliseconds are kept, just as in the segment files, so a Job's proof/spec date is the same
+		 * whether its month was just archived or read back from its file, and a PageToken made from it
+		 * finds the Job it came from; a fraction of a millisecond more would have it on the next page again, forever.
+		 */
+		private static Timestamp copy(Timestamp value) {
+			return value == null ? null : new Timestamp(value.getTime());
+		}
+
+		/**
+		 * Seven bits at a time, lowest first, with the top bit set on every byte but the last.
+		 */
+		private static void writeVarLong(DataOutput out, long value) throws IOException {
+			while ((value & ~0x7FL) != 0) {
+				out.writeByte((int) (value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			out.writeByte((int) value);
+		}
+
+		private static long readVarLong(DataInput in) throws IOException {
+			long value = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				byte b = in.readByte();
+				value |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+			}
+			throw new IOException("Malformed number in an archive segment.");
+		}
+
+		/**
+		 * Folds negative numbers in between the positive ones, so small numbers of either sign stay short.
+		 */
+		private static long zigZag(long value) {
+			return (value << 1) ^ (value >> 63);
+		}
+
+		private static long unZigZag(long value) {
+			return (value >>> 1) ^ -(value & 1);
+		}
+	}
+
+}
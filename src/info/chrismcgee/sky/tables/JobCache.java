@@ -0,0 +1,391 @@
+package info.chrismcgee.sky.tables;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.gwt.thirdparty.guava.common.eventbus.EventBus;
+import com.google.gwt.thirdparty.guava.common.eventbus.Subscribe;
+import com.google.gwt.thirdparty.guava.common.eventbus.SubscriberExceptionContext;
+import com.google.gwt.thirdparty.guava.common.eventbus.SubscriberExceptionHandler;
+
+import info.chrismcgee.dbutil.ConnectionManager;
+import info.chrismcgee.sky.components.DateManager;
+import info.chrismcgee.sky.event.JobEvent;
+import info.chrismcgee.sky.event.JobEventStream;
+import info.chrismcgee.sky.scheduling.beans.Job;
+
+/**
+ * @author Marketing
+ *
+ * A _Server Scoped_ read-through cache of the Jobs that ship on each date, shared by every session.
+ * It subscribes to the JobEventStream, so whenever a Job or one of its OrderDetail items changes
+ * (whether through the DAO methods or through the ChangePoller), the affected dates are thrown out
+ * of the cache and a DatesInvalidatedEvent is posted so open UIs can reload them.
+ *
+ * While the database can't be reached, the schedule is shown from the OfflineSnapshot on the local disk
+ * (for this week and next), or else from the last copy of each date that was thrown out, which is kept aside.
+ * Once the database is back, those dates are invalidated again so the open UIs reload them.
+ *
+ * Only so many dates are kept (-Dsky.cache.dates, 120 by default), along with as many last copies;
+ * once there are more, the dates furthest from today are dropped first, since they're the least likely to be asked for.
+ */
+public class JobCache implements SubscriberExceptionHandler {
+
+	private final static Logger logger = Logger.getLogger(JobCache.class.getName()); // Logging!
+	private final static int MAX_DATES = Math.max(1, Integer.getInteger("sky.cache.dates", 120)); // The most dates kept in each map.
+
+	// The single and only instance of the cache; starts off as null.
+	private static JobCache instance = null;
+
+	// The cached Jobs, by their ship date.
+	private final Map<LocalDate, List<Job>> jobsByDate = new ConcurrentHashMap<LocalDate, List<Job>>();
+	// The last copy of each date that was thrown out of the cache, served only while the database can't be reached.
+	private final Map<LocalDate, List<Job>> staleByDate = new ConcurrentHashMap<LocalDate, List<Job>>();
+	// The dates that were last served from the OfflineSnapshot, to be reloaded once the database is back.
+	private final Set<LocalDate> offlineDates = ConcurrentHashMap.newKeySet();
+	// Which ship date each cached Job is under, so OrderDetail events can be traced back to a date.
+	private final Map<String, LocalDate> dateByJobId = new ConcurrentHashMap<String, LocalDate>();
+	// Bumped on every invalidation, so a load that raced with a change doesn't put stale Jobs back in the cache.
+	private final AtomicLong generation = new AtomicLong();
+	// Tells the listeners (usually open UIs) which dates have changed.
+	private final EventBus eventBus = new EventBus(this);
+	// Reads the Jobs from the database, and from the OfflineSnapshot when it can't be reached.
+	private final Loader loader;
+	private final BiFunction<LocalDate, LocalDate, SortedMap<LocalDate, List<Job>>> offline;
+
+	private JobCache() {
+		this(JobManager::getJobsByDateRange, (startDate, endDate) -> OfflineSnapshot.getInstance().getJobsByDateRange(startDate, endDate));
+	}
+
+	/**
+	 * @param loader Reads the Jobs that ship between two dates from the database.
+	 * @param offline Reads them from the OfflineSnapshot instead; null for the dates it doesn't cover.
+	 */
+	JobCache(Loader loader, BiFunction<LocalDate, LocalDate, SortedMap<LocalDate, List<Job>>> offline) {
+		this.loader = loader;
+		this.offline = offline;
+	}
+
+	/**
+	 * This static method gets a singleton instance of the JobCache,
+	 * subscribing it to the JobEventStream (and to the databases coming back) the first time it's called.
+	 *
+	 * @return	JobCache
+	 */
+	public static synchronized JobCache getInstance() {
+
+		if (instance == null) {
+			instance = new JobCache();
+			JobEventStream.register(instance);
+			final JobCache cache = instance;
+			ConnectionManager.getInstance().addRecoveryListener(() -> {
+				logger.log(Level.INFO, "The database is back; reloading the dates that were shown from the stale cache.");
+				Set<LocalDate> dates = new HashSet<LocalDate>(cache.staleByDate.keySet());
+				dates.addAll(cache.offlineDates);
+				cache.offlineDates.removeAll(dates);
+				cache.invalidate(dates);
+			});
+		}
+		return instance;
+	}
+
+	public static void register(final Object listener) {
+		getInstance().eventBus.register(listener);
+	}
+
+	public static void unregister(final Object listener) {
+		getInstance().eventBus.unregister(listener);
+	}
+
+	/**
+	 * Gets all jobs that ship on a specified date, from the cache if possible
+	 * or from the database (through JobManager) if not.
+	 *
+	 * @param theDate LocalDate object of the ship date.
+	 * @return An unmodifiable List of all Jobs, or null if they could not be read from the database.
+	 * @throws SQLException
+	 */
+	public List<Job> getJobsByDate(LocalDate theDate) throws SQLException {
+
+		List<Job> jobList = jobsByDate.get(theDate);
+		if (jobList != null) {
+			return jobList;
+		}
+
+		SortedMap<LocalDate, List<Job>> loaded = getJobsByDateRange(theDate, theDate);
+		return loaded == null ? null : loaded.get(theDate);
+	}
+
+	/**
+	 * Gets all jobs that ship between two dates, grouped by their ship date.
+	 * Whichever dates aren't cached yet are read from the database in a single ranged query
+	 * (through JobManager) and then cached one date at a time.
+	 * If the database can't be reached, those dates come from the OfflineSnapshot if it covers them,
+	 * or else from the last copy of each, if there is one; the result's isStale() tells whether that happened.
+	 *
+	 * @param startDate LocalDate object of the first ship date. (inclusive)
+	 * @param endDate LocalDate object of the last ship date. (inclusive)
+	 * @return An unmodifiable List of Jobs for every date in the range (empty if nothing ships that day),
+	 * in date order, or null if they could not be read from the database.
+	 * @throws SQLException
+	 */
+	public JobsByDate getJobsByDateRange(LocalDate startDate, LocalDate endDate) throws SQLException {
+
+		JobsByDate result = new JobsByDate();
+		LocalDate firstMissing = null; // The first and last dates that aren't in the cache.
+		LocalDate lastMissing = null;
+
+		for (LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
+			List<Job> jobList = jobsByDate.get(date);
+			if (jobList != null) {
+				result.put(date, jobList);
+			} else {
+				if (firstMissing == null) {
+					firstMissing = date;
+				}
+				lastMissing = date;
+			}
+		}
+
+		if (firstMissing == null) {
+			return result; // Everything was already cached.
+		}
+
+		long loadedGeneration = generation.get();
+		List<Job> loaded = loader.load(firstMissing, lastMissing);
+		if (loaded == null) {
+			// Failures are not cached, so the next call tries the database again.
+			// In the meantime, show what was last seen of those dates (if anything), rather than nothing at all.
+			SortedMap<LocalDate, List<Job>> snapshot = offline.apply(firstMissing, lastMissing);
+			for (LocalDate date = firstMissing; !date.isAfter(lastMissing); date = date.plusDays(1)) {
+				if (!result.containsKey(date)) {
+					List<Job> stale = snapshot != null ? Collections.unmodifiableList(snapshot.get(date)) : staleByDate.get(date);
+					if (snapshot != null) {
+						offlineDates.add(date);
+					}
+					if (stale == null) {
+						return null;
+					}
+					result.put(date, stale);
+				}
+			}
+			logger.log(Level.WARNING, "Showing the last copy of " + firstMissing + " to " + lastMissing + " while the database can't be reached.");
+			result.stale = true;
+			return result;
+		}
+
+		// Split the loaded Jobs up by their ship date. The dates in between that happened to be cached already
+		// were loaded again anyway, so just use the fresh copy of those.
+		Map<LocalDate, List<Job>> loadedByDate = new HashMap<LocalDate, List<Job>>();
+		for (LocalDate date = firstMissing; !date.isAfter(lastMissing); date = date.plusDays(1)) {
+			loadedByDate.put(date, new ArrayList<Job>());
+		}
+		for (Job job : loaded) {
+			loadedByDate.get(job.getShipDate().toLocalDate()).add(job);
+		}
+
+		// Checked and cached under the same lock as invalidate(), so a change can't slip in between the check
+		// and the puts and leave Jobs from before it in the cache (with nothing left to throw them out again).
+		synchronized (this) {
+			boolean unchanged = generation.get() == loadedGeneration; // Nothing changed while the Jobs were loading.
+			for (Map.Entry<LocalDate, List<Job>> entry : loadedByDate.entrySet()) {
+				List<Job> jobList = Collections.unmodifiableList(entry.getValue()); // The same List is handed to every session.
+				if (unchanged) {
+					for (Job job : jobList) {
+						dateByJobId.put(job.getJobId(), entry.getKey());
+					}
+					jobsByDate.put(entry.getKey(), jobList);
+					staleByDate.remove(entry.getKey()); // It's up to date again.
+				}
+				result.put(entry.getKey(), jobList);
+			}
+			if (unchanged) {
+				trim(jobsByDate);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Drops the dates furthest from today out of a map of dates, until it's down to MAX_DATES.
+	 * No event is posted, since nothing about those dates has changed; they'll just be read again if they're wanted.
+	 *
+	 * @param byDate jobsByDate or staleByDate.
+	 */
+	private synchronized void trim(Map<LocalDate, List<Job>> byDate) {
+
+		int excess = byDate.size() - MAX_DATES;
+		if (excess <= 0) {
+			return;
+		}
+		long today = DateManager.getTodayDate().toEpochDay();
+		List<LocalDate> dates = new ArrayList<LocalDate>(byDate.keySet());
+		dates.sort(Comparator.comparingLong((LocalDate date) -> Math.abs(date.toEpochDay() - today)).reversed());
+		for (LocalDate date : dates.subList(0, Math.min(excess, dates.size()))) {
+			List<Job> removed = byDate.remove(date);
+			if (removed != null && byDate == jobsByDate) {
+				for (Job job : removed) {
+					dateByJobId.remove(job.getJobId(), date);
+				}
+			}
+		}
+		logger.log(Level.FINE, "Dropped " + excess + " dates from the job cache.");
+	}
+
+	/**
+	 * Gets all jobs that ship between two dates, like getJobsByDateRange(), but without waiting for the database.
+	 * If every date is cached, the future is already done; if not, they're loaded by the AsyncLoader,
+	 * so any number of sessions asking for the same range at once only cause a single query.
+	 *
+	 * @param startDate LocalDate object of the first ship date. (inclusive)
+	 * @param endDate LocalDate object of the last ship date. (inclusive)
+	 * @return The future result of getJobsByDateRange(): the Jobs by date, or null if they could not be read.
+	 */
+	public CompletableFuture<JobsByDate> loadJobsByDateRange(final LocalDate startDate, final LocalDate endDate) {
+
+		boolean cached = true;
+		for (LocalDate date = startDate; cached && !date.isAfter(endDate); date = date.plusDays(1)) {
+			cached = jobsByDate.containsKey(date);
+		}
+		if (cached) {
+			try {
+				return CompletableFuture.completedFuture(getJobsByDateRange(startDate, endDate));
+			} catch (SQLException e) {
+				// Only if one was thrown out in the meantime; load it like any other.
+			}
+		}
+		return AsyncLoader.load("jobs:" + startDate + ".." + endDate, () -> getJobsByDateRange(startDate, endDate));
+	}
+
+	/**
+	 * Throws out whichever dates are affected by a change to a Job or one of its OrderDetail items.
+	 *
+	 * @param event The JobEvent from the JobEventStream.
+	 */
+	@Subscribe
+	public void jobChanged(final JobEvent event) {
+
+		Set<LocalDate> dates = new HashSet<LocalDate>(2);
+
+		// The date the Job used to be under (it may have been moved to another date).
+		if (event.getJobId() != null) {
+			LocalDate oldDate = dateByJobId.remove(event.getJobId());
+			if (oldDate != null) {
+				dates.add(oldDate);
+			}
+		}
+		// The date the Job is under now.
+		if (event.getShipDate() != null) {
+			dates.add(event.getShipDate().toLocalDate());
+		}
+
+		if (event.getJobId() == null && event.getShipDate() == null) {
+			// Nothing is known about where the change belongs (such as an item deleted by its id alone,
+			// or events that the JobEventStream had to drop), so play it safe and throw everything out.
+			logger.log(Level.CONFIG, "Clearing the whole job cache for " + event.getClass().getSimpleName());
+			dates.addAll(jobsByDate.keySet());
+		}
+
+		invalidate(dates);
+	}
+
+	/**
+	 * Throws out the cached Jobs of the given dates (keeping them aside in case the database can't be reached)
+	 * and lets the listeners know.
+	 *
+	 * @param dates The dates to throw out.
+	 */
+	public void invalidate(Set<LocalDate> dates) {
+
+		if (dates.isEmpty()) {
+			return;
+		}
+		synchronized (this) {
+			generation.incrementAndGet();
+			for (LocalDate date : dates) {
+				List<Job> removed = jobsByDate.remove(date);
+				if (removed != null) {
+					staleByDate.put(date, removed);
+					for (Job job : removed) {
+						dateByJobId.remove(job.getJobId(), date);
+					}
+				}
+			}
+			trim(staleByDate);
+		}
+		eventBus.post(new DatesInvalidatedEvent(dates));
+	}
+
+
+	/**
+	 * Reads the Jobs that ship between two dates from the database, such as JobManager.getJobsByDateRange().
+	 */
+	interface Loader {
+		/**
+		 * @return List of the Jobs, or null if they could not be read.
+		 */
+		List<Job> load(LocalDate startDate, LocalDate endDate) throws SQLException;
+	}
+
+	/**
+	 * The Jobs of a range of dates, by their ship date, as getJobsByDateRange() found them.
+	 * A load that raced with a change is still fresh (it just isn't cached), so only isStale() says
+	 * whether any of it came from the stale copies or the OfflineSnapshot, rather than the database.
+	 */
+	public static final class JobsByDate extends TreeMap<LocalDate, List<Job>> {
+
+		/**
+		 * Serialization!
+		 */
+		private static final long serialVersionUID = -6230583719430625712L;
+
+		private boolean stale = false;
+
+		/**
+		 * @return True if any of the dates was served as last seen, because the database couldn't be reached.
+		 */
+		public boolean isStale() {
+			return stale;
+		}
+	}
+
+	/**
+	 * Posted to the cache's listeners whenever the Jobs of one or more dates have changed.
+	 */
+	public static final class DatesInvalidatedEvent {
+
+		private final Set<LocalDate> dates;
+
+		public DatesInvalidatedEvent(final Set<LocalDate> dates) {
+			this.dates = Collections.unmodifiableSet(dates);
+		}
+
+		public Set<LocalDate> getDates() {
+			return dates;
+		}
+	}
+
+	@Override
+	public void handleException(final Throwable exception,
+			final SubscriberExceptionContext context) {
+
+		logger.log(Level.SEVERE, "Listener " + context.getSubscriber() + " failed to handle " + context.getEvent(), exception);
+	}
+
+}
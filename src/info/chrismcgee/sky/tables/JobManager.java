@@ -1,5 +1,6 @@
 package info.chrismcgee.sky.tables;
 
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.Date;
 import java.sql.PreparedStatement;
@@ -9,7 +10,14 @@ import java.sql.Statement;
 import java.sql.Timestamp;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -18,9 +26,17 @@ import com.vaadin.ui.CheckBox;
 import com.vaadin.ui.TreeTable;
 
 import info.chrismcgee.dbutil.ConnectionManager;
+import info.chrismcgee.dbutil.DBAccess;
 import info.chrismcgee.dbutil.DBName;
+import info.chrismcgee.dbutil.DBRouter;
 import info.chrismcgee.sky.components.DateManager;
+import info.chrismcgee.sky.enums.PrintType;
 import info.chrismcgee.sky.enums.PrintingCompany;
+import info.chrismcgee.sky.event.JobEvent.JobCompletedEvent;
+import info.chrismcgee.sky.event.JobEvent.JobCreatedEvent;
+import info.chrismcgee.sky.event.JobEvent.JobDeletedEvent;
+import info.chrismcgee.sky.event.JobEvent.JobUpdatedEvent;
+import info.chrismcgee.sky.event.JobEventStream;
 import info.chrismcgee.sky.scheduling.beans.Job;
 import info.chrismcgee.sky.scheduling.beans.OrderDetail;
 
@@ -29,11 +45,45 @@ import info.chrismcgee.sky.scheduling.beans.OrderDetail;
  *
  * This class is a set of static methods that interface with the database table "Job".
  * It is mostly all CRUD methods.
+ * 
+ * Writes ask for DBAccess.READ_WRITE connections. The reads for showing and reporting ask for DBAccess.READ_ONLY,
+ * so they can come from a read replica; the reads that a write depends on (such as getRow) use the primary.
  */
 public class JobManager {
 
-	private static ResultSet rs = null; // The result set from a successful SQL query.
 	private final static Logger logger = Logger.getLogger(JobManager.class.getName());
+	// Every Job (with all of its OrderDetail items), before the WHERE clause.
+	private final static String RANGE_SELECT = "SELECT ship_date, "
+			+ "job_id, "
+			+ "customer_name, "
+			+ "customer_po, "
+			+ "proof_spec_date, "
+			+ "job_completed, "
+			+ "printing_company, "
+			+ "overruns, "
+			+ "o.id, "
+			+ "product_id, "
+			+ "product_detail, "
+			+ "print_type, "
+			+ "num_colors, "
+			+ "quantity, "
+			+ "item_completed, "
+			+ "proof_num, "
+			+ "proof_date, "
+			+ "thumbnail "
+			+ ""
+			+ "FROM Job AS j "
+			+ "JOIN OrderDetail AS o "
+			+ "ON j.job_id = o.order_id ";
+	// Every Job (with all of its OrderDetail items) that ships between two dates, with each Job's items together.
+	private final static String RANGE_SQL = RANGE_SELECT
+			+ "WHERE ship_date BETWEEN ? AND ? "
+			+ "ORDER BY ship_date, proof_spec_date, job_id, o.id";
+	// The same, but only the completed Jobs, which are the ones that can be archived.
+	private final static String COMPLETED_RANGE_SQL = RANGE_SELECT
+			+ "WHERE ship_date BETWEEN ? AND ? "
+			+ "AND job_completed IS NOT NULL "
+			+ "ORDER BY ship_date, proof_spec_date, job_id, o.id";
 
 	/**
 	 * Standard retrieval method that gets a single Job from the database along with its OrderDetails.
@@ -47,47 +97,103 @@ public class JobManager {
 		// The SQL statement that will be run on the DBMS.
 		String sql = "SELECT * FROM Job WHERE job_id = ?";
 		
-		Connection conn = ConnectionManager.getInstance().getConnection(DBName.JOB_ORDERS); // The connection to the database.
-
-		logger.log(Level.INFO, "Catalog: " + conn.getCatalog());
+		Job bean = null; // The Job, once it's been found.
 		
-		try ( // Try with resources block (requires Java 7+) for a prepared statement.
-				PreparedStatement stmt = conn.prepareStatement(sql);
-				){
-			
-			// Put just the order number into the PreparedStatement object,
-			// which will be combined with the SQL statement.
-			stmt.setString(1, jobId);
-			// Execute the SQL statement and store the results in a ResultSet.
-			rs = stmt.executeQuery();
+		try {
+			String database = findDatabase(jobId); // Which of the yearly databases the job is in.
 			
-			
-			// If there was a result returned from the query, create a Job bean from it.
-			if (rs.next()) {
-				Job bean = new Job();
-				List<OrderDetail> detailList = OrderDetailManager.getRows(jobId);
-				bean.setShipDate(rs.getDate("ship_date"));
-				bean.setJobId(jobId);
-				bean.setCustomerName(rs.getString("customer_name"));
-				bean.setCustomerPO(rs.getString("customer_po"));
-				bean.setProofSpecDate(rs.getTimestamp("proof_spec_date"));
-				bean.setJobCompleted(rs.getTimestamp("job_completed"));
-				bean.setPrintingCompany(PrintingCompany.getPrintingCompany(rs.getInt("printing_company")));
-				bean.setOverruns(rs.getBoolean("overruns"));
-				bean.setOrderDetailList(detailList);
-				return bean;
-			} else { // No results returned from the query.
-				return null; // Just return null, which indicates a failure.
+			try ( // Try with resources block (requires Java 7+) for the connection and a prepared statement.
+					Connection conn = ConnectionManager.getInstance().getConnection(database); // The connection to the database.
+					PreparedStatement stmt = conn.prepareStatement(sql);
+					){
+				
+				logger.log(Level.INFO, "Catalog: " + conn.getCatalog());
+				
+				// Put just the order number into the PreparedStatement object,
+				// which will be combined with the SQL statement.
+				stmt.setString(1, jobId);
+				// Execute the SQL statement and store the results in a ResultSet.
+				try (ResultSet rs = stmt.executeQuery()) {
+					
+					// If there was a result returned from the query, create a Job bean from it.
+					if (!rs.next()) {
+						return null; // No results returned from the query, which indicates a failure.
+					}
+					bean = new Job();
+					bean.setShipDate(rs.getDate("ship_date"));
+					bean.setJobId(jobId);
+					bean.setCustomerName(rs.getString("customer_name"));
+					bean.setCustomerPO(rs.getString("customer_po"));
+					bean.setProofSpecDate(rs.getTimestamp("proof_spec_date"));
+					bean.setJobCompleted(rs.getTimestamp("job_completed"));
+					bean.setPrintingCompany(PrintingCompany.getPrintingCompany(rs.getInt("printing_company")));
+					bean.setOverruns(rs.getBoolean("overruns"));
+				}
 			}
 			
+			// The items are read once the connection has gone back to its pool, so only one is held at a time.
+			bean.setOrderDetailList(OrderDetailManager.getRows(jobId));
+			return bean;
+			
 		} catch (SQLException e) { // If there was an error trying to read from the database table.
 			logger.log(Level.SEVERE, "Error trying to read from the database table.", e);
 			return null; // Again, just return null, which indicates a failure.
-		} finally {
-			if (rs != null) {
-				rs.close(); // Make sure to close the ResultSet in case it isn't null, no matter if an error occurred or not.
+		}
+	}
+
+	/**
+	 * Finds which of the yearly databases a Job is in. If there's only one database, that's the one;
+	 * otherwise the newest databases are looked in first, since those are the Jobs that are worked on the most.
+	 * The answer is remembered by the DBRouter, so most Jobs are only ever looked for once.
+	 * 
+	 * @param jobId The order number.
+	 * @return The name of the database; or the newest one if it isn't in any of them,
+	 * where anything looking for it will simply find nothing, the same as if there were only one database.
+	 * @throws SQLException
+	 */
+	static String findDatabase(String jobId) throws SQLException {
+		
+		DBRouter router = DBRouter.getInstance();
+		List<String> databases = router.getDatabases(DBName.JOB_ORDERS);
+		if (databases.size() == 1) {
+			return databases.get(0);
+		}
+		String home = router.getHome(jobId);
+		if (home != null) {
+			return home;
+		}
+		
+		for (int i = databases.size() - 1; i >= 0; i--) {
+			try ( // Try with resources block (requires Java 7+) for the connection and a prepared statement.
+					Connection conn = ConnectionManager.getInstance().getConnection(databases.get(i)); // The connection to the database.
+					PreparedStatement stmt = conn.prepareStatement("SELECT job_id FROM Job WHERE job_id = ?");
+					){
+				stmt.setString(1, jobId);
+				try (ResultSet rs = stmt.executeQuery()) {
+					if (rs.next()) {
+						router.setHome(jobId, databases.get(i));
+						return databases.get(i);
+					}
+				}
 			}
 		}
+		return databases.get(databases.size() - 1);
+	}
+
+	/**
+	 * @param bean A Job.
+	 * @return The name of the database that the Job belongs in, by its ship date.
+	 */
+	private static String getDatabase(Job bean) {
+		return getDatabase(bean.getShipDate().toLocalDate());
+	}
+
+	/**
+	 * @param shipDate A ship date.
+	 * @return The name of the database that Jobs with that ship date belong in.
+	 */
+	private static String getDatabase(LocalDate shipDate) {
+		return DBRouter.getInstance().getDatabase(DBName.JOB_ORDERS, shipDate);
 	}
 
 	/**
@@ -99,7 +205,7 @@ public class JobManager {
 	 */
 	public static boolean insert(Job bean) throws Exception {
 		
-		Connection conn = ConnectionManager.getInstance().getConnection(DBName.JOB_ORDERS); // The connection to the database.
+		String database = getDatabase(bean); // Which of the yearly databases the job belongs in.
 		
 		// The SQL statement that will be run on the DBMS.
 		String sql = "INSERT INTO Job ("
@@ -113,7 +219,8 @@ public class JobManager {
 				+ "overruns) "
 				+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
 
-		try ( // Try with resources block (requires Java 7+) for a prepared statement.
+		try ( // Try with resources block (requires Java 7+) for the connection and a prepared statement.
+				Connection conn = ConnectionManager.getInstance().getConnection(database, DBAccess.READ_WRITE); // The connection to the database, which goes back to its pool afterwards.
 				PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
 				){
 			
@@ -132,12 +239,15 @@ public class JobManager {
 			logger.log(Level.SEVERE, "Error trying to update the database table.", e);
 			return false;
 		}
+		DBRouter.getInstance().setHome(bean.getJobId(), database); // So the items go into the same database.
 		
 		// Insert all of the Job's OrderDetail items into its table.
 		for (OrderDetail od : bean.getOrderDetailList()) {
 			OrderDetailManager.insert(od);
 		}
 		
+		JobEventStream.publish(new JobCreatedEvent(bean)); // Let any subscribers know about the new job.
+		
 		return true; // If everything worked fine, then return true, indicating success!
 	}
 
@@ -150,8 +260,6 @@ public class JobManager {
 	 */
 	public static boolean update(Job bean) throws Exception {
 		
-		Connection conn = ConnectionManager.getInstance().getConnection(DBName.JOB_ORDERS); // The connection to the database.
-
 		// The SQL statement that will be run on the DBMS.
 		String sql =
 				"UPDATE Job SET "
@@ -164,22 +272,36 @@ public class JobManager {
 				+ "overruns = ? "
 				+ "WHERE job_id = ?";
 		
-		try ( // Try with resources block (requires Java 7+) for a prepared statement.
-				PreparedStatement stmt = conn.prepareStatement(sql);
-				){
-			
-			// Put all of the bean's details into the PreparedStatement object,
-			// which will be combined with the SQL statement.
-			stmt.setDate(1, bean.getShipDate());
-			stmt.setString(2, bean.getCustomerName());
-			stmt.setString(3, bean.getCustomerPO());
-			stmt.setTimestamp(4, bean.getProofSpecDate());
-			stmt.setTimestamp(5, bean.getJobCompleted());
-			stmt.setInt(6, bean.getPrintingCompany().getValue());
-			stmt.setBoolean(7, bean.isOverruns());
-			stmt.setString(8, bean.getJobId());
+		try {
+			String database = findDatabase(bean.getJobId()); // Which of the yearly databases the job is in now.
+			if (!database.equals(getDatabase(bean))) {
+				// Its new ship date is in another year, so it has to go to that year's database.
+				if (!move(bean, database, getDatabase(bean))) {
+					return false;
+				}
+				JobEventStream.publish(new JobUpdatedEvent(bean)); // Let any subscribers know about the change.
+				return true;
+			}
 			
-			int affected = stmt.executeUpdate(); // Store how many lines were affected by this query.
+			int affected; // Store how many lines were affected by this query.
+			try ( // Try with resources block (requires Java 7+) for the connection and a prepared statement.
+					Connection conn = ConnectionManager.getInstance().getConnection(database, DBAccess.READ_WRITE); // The connection to the database, which goes back to its pool afterwards.
+					PreparedStatement stmt = conn.prepareStatement(sql);
+					){
+				
+				// Put all of the bean's details into the PreparedStatement object,
+				// which will be combined with the SQL statement.
+				stmt.setDate(1, bean.getShipDate());
+				stmt.setString(2, bean.getCustomerName());
+				stmt.setString(3, bean.getCustomerPO());
+				stmt.setTimestamp(4, bean.getProofSpecDate());
+				stmt.setTimestamp(5, bean.getJobCompleted());
+				stmt.setInt(6, bean.getPrintingCompany().getValue());
+				stmt.setBoolean(7, bean.isOverruns());
+				stmt.setString(8, bean.getJobId());
+				
+				affected = stmt.executeUpdate();
+			}
 
 			// Now also update the Job's OrderDetail items in its table.
 			for (OrderDetail od : bean.getOrderDetailList()) {
@@ -187,6 +309,7 @@ public class JobManager {
 			}
 
 			if (affected == 1) { // Hopefully, only 1 line was updated.
+				JobEventStream.publish(new JobUpdatedEvent(bean)); // Let any subscribers know about the change.
 				return true; // If everything worked fine, then return true, indicating success!
 			} else {
 				return false; // In case there was a problem and no items were updated in the database table.
@@ -199,6 +322,351 @@ public class JobManager {
 		
 	}
 
+	/**
+	 * Moves a Job (and all of its OrderDetail items) from one of the yearly databases to another,
+	 * when its ship date has been changed to another year. It's added to the new database before it's
+	 * deleted from the old one, so if anything goes wrong in between it's left in both rather than in neither.
+	 * The items get new ids in the new database. No events are published; that's up to the caller.
+	 * 
+	 * @param bean The Job, as it should be in the new database, with its List of items.
+	 * @param from The database it's in now.
+	 * @param to The database it's going to.
+	 * @return boolean True if it was moved; false if not.
+	 * @throws SQLException
+	 */
+	private static boolean move(Job bean, String from, String to) throws SQLException {
+		
+		List<Job> beans = new ArrayList<Job>(1);
+		beans.add(bean);
+		if (!insertBatch(to, beans)) {
+			return false;
+		}
+		DBRouter.getInstance().setHome(bean.getJobId(), to);
+		
+		try ( // Try with resources block (requires Java 7+) for the connection and the prepared statements.
+				Connection conn = ConnectionManager.getInstance().getConnection(from, DBAccess.READ_WRITE); // The connection to the database, which goes back to its pool afterwards.
+				PreparedStatement detailStmt = conn.prepareStatement("DELETE FROM OrderDetail WHERE order_id = ?");
+				PreparedStatement jobStmt = conn.prepareStatement("DELETE FROM Job WHERE job_id = ?");
+				){
+			
+			conn.setAutoCommit(false);
+			detailStmt.setString(1, bean.getJobId());
+			detailStmt.executeUpdate();
+			jobStmt.setString(1, bean.getJobId());
+			jobStmt.executeUpdate();
+			conn.commit();
+			
+		} catch (SQLException e) { // The Job is in both databases now, which is better than neither.
+			logger.log(Level.SEVERE, "Job " + bean.getJobId() + " was copied to " + to + " but could not be deleted from " + from, e);
+			return false;
+		}
+		
+		logger.log(Level.INFO, "Moved job " + bean.getJobId() + " from " + from + " to " + to);
+		return true;
+	}
+
+	/**
+	 * Moves a batch of Jobs to new ship dates. The Jobs in each of the yearly databases are moved in one transaction,
+	 * so either all of that database's Jobs are moved or none of them are; but the databases can't share a transaction,
+	 * and neither can a Job whose new ship date is in another year (which is moved into that year's database).
+	 * So if one of them fails, the ones before it stay moved, and the rest aren't tried. Events are published
+	 * for every Job that was moved, as soon as it's been committed, whatever happens after.
+	 * 
+	 * A Job can be checked against the ship date it's expected to have: if it's been moved by someone else
+	 * in the meantime (or deleted), it counts as a failure, and it (and the rest of its database's Jobs) is left alone.
+	 * 
+	 * @param shipDates The new ship date of each Job, by order number.
+	 * @param expectedDates The ship date each Job should have now, by order number, or null to not check.
+	 * Jobs that aren't in it aren't checked.
+	 * @return The order numbers of the Jobs that were moved; all of them, if everything worked.
+	 * @throws SQLException
+	 */
+	public static Set<String> updateShipDates(Map<String, LocalDate> shipDates, Map<String, LocalDate> expectedDates) throws SQLException {
+		
+		Set<String> moved = new LinkedHashSet<String>(); // The Jobs that have been moved so far.
+		
+		try {
+			// Sort the Jobs out by the database they're in, and set aside the ones that have to change databases.
+			Map<String, Map<String, LocalDate>> byDatabase = new LinkedHashMap<String, Map<String, LocalDate>>();
+			Map<String, LocalDate> changingDatabase = new LinkedHashMap<String, LocalDate>();
+			for (Map.Entry<String, LocalDate> entry : shipDates.entrySet()) {
+				String database = findDatabase(entry.getKey());
+				if (database.equals(getDatabase(entry.getValue()))) {
+					byDatabase.computeIfAbsent(database, key -> new LinkedHashMap<String, LocalDate>()).put(entry.getKey(), entry.getValue());
+				} else {
+					changingDatabase.put(entry.getKey(), entry.getValue());
+				}
+			}
+			
+			for (Map.Entry<String, Map<String, LocalDate>> group : byDatabase.entrySet()) {
+				if (!updateShipDates(group.getKey(), group.getValue(), expectedDates)) {
+					return moved;
+				}
+				moved.addAll(group.getValue().keySet());
+				publishShipDates(group.getValue());
+			}
+			
+			for (Map.Entry<String, LocalDate> entry : changingDatabase.entrySet()) {
+				Job bean = getRow(entry.getKey());
+				LocalDate expected = expectedDates == null ? null : expectedDates.get(entry.getKey());
+				if (bean == null) {
+					logger.log(Level.WARNING, "Job " + entry.getKey() + " was missing, so its ship date was not changed.");
+					return moved;
+				}
+				if (expected != null && !expected.equals(bean.getShipDate().toLocalDate())) {
+					logger.log(Level.WARNING, "Job " + entry.getKey() + " was moved to " + bean.getShipDate()
+							+ " by someone else, so it was not moved to " + entry.getValue());
+					return moved;
+				}
+				String from = findDatabase(entry.getKey());
+				bean.setShipDate(DateManager.localDateToSqlDate(entry.getValue()));
+				if (!move(bean, from, getDatabase(bean))) {
+					return moved;
+				}
+				moved.add(entry.getKey());
+				publishShipDates(Collections.singletonMap(entry.getKey(), entry.getValue()));
+			}
+			
+		} catch (SQLException e) { // If there was an error trying to update the database table.
+			logger.log(Level.SEVERE, "Error trying to update the database table.", e);
+		}
+		
+		return moved;
+	}
+
+	/**
+	 * Moves the Jobs of one database to new ship dates, all in one transaction.
+	 * No events are published.
+	 * 
+	 * @param database The name of the database.
+	 * @param shipDates The new ship date of each Job, by order number.
+	 * @param expectedDates The ship date each Job should have now, by order number, or null to not check.
+	 * @return boolean True if every Job was moved; false if none were.
+	 * @throws SQLException
+	 */
+	private static boolean updateShipDates(String database, Map<String, LocalDate> shipDates, Map<String, LocalDate> expectedDates) throws SQLException {
+		
+		// The SQL statements that will be run on the DBMS; the second only moves the Job if it's still where it was.
+		String sql =
+				"UPDATE Job "
+				+ "SET ship_date = ? "
+				+ "WHERE job_id = ?";
+		String checkedSql = sql + " AND ship_date = ?";
+		
+		try ( // Try with resources block (requires Java 7+) for the connection and the prepared statements.
+				Connection conn = ConnectionManager.getInstance().getConnection(database, DBAccess.READ_WRITE); // The connection to the database, which goes back to its pool afterwards.
+				PreparedStatement stmt = conn.prepareStatement(sql);
+				PreparedStatement checkedStmt = conn.prepareStatement(checkedSql);
+				){
+			
+			conn.setAutoCommit(false); // The pool puts it back the way it was.
+			
+			for (Map.Entry<String, LocalDate> entry : shipDates.entrySet()) {
+				LocalDate expected = expectedDates == null ? null : expectedDates.get(entry.getKey());
+				PreparedStatement update = expected == null ? stmt : checkedStmt;
+				update.setDate(1, DateManager.localDateToSqlDate(entry.getValue()));
+				update.setString(2, entry.getKey());
+				if (expected != null) {
+					update.setDate(3, DateManager.localDateToSqlDate(expected));
+				}
+				if (update.executeUpdate() == 0) { // Missing, or moved by someone else, so don't move any of them.
+					conn.rollback();
+					logger.log(Level.WARNING, "Job " + entry.getKey() + " was missing or had been moved, so none of the "
+							+ shipDates.size() + " ship dates in " + database + " were changed.");
+					return false;
+				}
+			}
+			conn.commit();
+			return true;
+		}
+	}
+
+	/**
+	 * Lets any subscribers know that some Jobs have new ship dates.
+	 * 
+	 * @param shipDates The new ship date of each Job, by order number.
+	 */
+	private static void publishShipDates(Map<String, LocalDate> shipDates) {
+		for (Map.Entry<String, LocalDate> entry : shipDates.entrySet()) {
+			Job moved = new Job();
+			moved.setJobId(entry.getKey());
+			moved.setShipDate(DateManager.localDateToSqlDate(entry.getValue()));
+			JobEventStream.publish(new JobUpdatedEvent(moved));
+		}
+	}
+
+	/**
+	 * Adds a batch of new Jobs (and all of their OrderDetail items) to the database. The Jobs that go in
+	 * each of the yearly databases are added in one transaction, so either all of that database's Jobs go in
+	 * or none of them do; but the databases can't share a transaction, so if one of them fails, the ones before it
+	 * stay in, and the rest aren't tried. Events are published for every Job that went in.
+	 * This is for bulk imports; a single Job should still be added with insert().
+	 * 
+	 * @param beans The new Jobs, each with its List of items.
+	 * @return The order numbers of the Jobs that were added; all of them, if everything worked.
+	 * @throws SQLException
+	 */
+	public static Set<String> insertBatch(List<Job> beans) throws SQLException {
+		
+		Set<String> added = new LinkedHashSet<String>(); // The Jobs that have been added so far.
+		
+		// Sort the Jobs out by the database they go in.
+		Map<String, List<Job>> byDatabase = new LinkedHashMap<String, List<Job>>();
+		for (Job bean : beans) {
+			byDatabase.computeIfAbsent(getDatabase(bean), key -> new ArrayList<Job>()).add(bean);
+		}
+		
+		for (Map.Entry<String, List<Job>> group : byDatabase.entrySet()) {
+			if (!insertBatch(group.getKey(), group.getValue())) {
+				break;
+			}
+			// Let any subscribers know about the new jobs, as soon as they're in.
+			for (Job bean : group.getValue()) {
+				DBRouter.getInstance().setHome(bean.getJobId(), group.getKey());
+				added.add(bean.getJobId());
+				JobEventStream.publish(new JobCreatedEvent(bean));
+			}
+		}
+		
+		return added;
+	}
+
+	/**
+	 * Adds a batch of new Jobs (and all of their OrderDetail items) to one database, all in one transaction.
+	 * No events are published.
+	 * 
+	 * @param database The name of the database.
+	 * @param beans The new Jobs, each with its List of items.
+	 * @return boolean True if every Job was added; false if not.
+	 * @throws SQLException
+	 */
+	private static boolean insertBatch(String database, List<Job> beans) throws SQLException {
+		
+		// The SQL statements that will be run on the DBMS.
+		String jobSql = "INSERT INTO Job ("
+				+ "ship_date, "
+				+ "job_id, "
+				+ "customer_name, "
+				+ "customer_po, "
+				+ "proof_spec_date, "
+				+ "job_completed, "
+				+ "printing_company, "
+				+ "overruns) "
+				+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+		String detailSql = "INSERT INTO OrderDetail ("
+				+ "order_id, "
+				+ "product_id, "
+				+ "product_detail, "
+				+ "print_type, "
+				+ "num_colors, "
+				+ "quantity, "
+				+ "item_completed, "
+				+ "proof_num, "
+				+ "proof_date, "
+				+ "thumbnail) "
+				+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+		
+		try ( // Try with resources block (requires Java 7+) for the connection and the prepared statements.
+				Connection conn = ConnectionManager.getInstance().getConnection(database, DBAccess.READ_WRITE); // The connection to the database, which goes back to its pool afterwards.
+				PreparedStatement jobStmt = conn.prepareStatement(jobSql);
+				PreparedStatement detailStmt = conn.prepareStatement(detailSql);
+				){
+			
+			conn.setAutoCommit(false); // The pool rolls back anything that isn't committed, and puts it back the way it was.
+			
+			for (Job bean : beans) {
+				jobStmt.setDate(1, bean.getShipDate());
+				jobStmt.setString(2, bean.getJobId());
+				jobStmt.setString(3, bean.getCustomerName());
+				jobStmt.setString(4, bean.getCustomerPO());
+				jobStmt.setTimestamp(5, bean.getProofSpecDate());
+				jobStmt.setTimestamp(6, bean.getJobCompleted());
+				jobStmt.setInt(7, bean.getPrintingCompany().getValue());
+				jobStmt.setBoolean(8, bean.isOverruns());
+				jobStmt.addBatch();
+				
+				for (OrderDetail od : bean.getOrderDetailList()) {
+					detailStmt.setString(1, od.getOrderId());
+					detailStmt.setString(2, od.getProductId());
+					detailStmt.setString(3, od.getProductDetail());
+					detailStmt.setInt(4, PrintType.getIntValue(od.getPrintType()));
+					detailStmt.setLong(5, od.getNumColors());
+					detailStmt.setLong(6, od.getQuantity());
+					detailStmt.setTimestamp(7, od.getItemCompleted());
+					detailStmt.setInt(8, od.getProofNum());
+					detailStmt.setTimestamp(9, od.getProofDate());
+					detailStmt.setString(10, od.getThumbnail());
+					detailStmt.addBatch();
+				}
+			}
+			
+			// The Jobs have to go in before their items.
+			jobStmt.executeBatch();
+			detailStmt.executeBatch();
+			conn.commit();
+			return true;
+			
+		} catch (SQLException e) { // If there was an error trying to update the database table.
+			logger.log(Level.SEVERE, "Error trying to add a batch of " + beans.size() + " Jobs to " + database, e);
+			return false;
+		}
+	}
+
+	/**
+	 * Finds out which of a set of job numbers are already in the Job table.
+	 * 
+	 * @param jobIds The job numbers to look for. (At most a few hundred at a time.)
+	 * @return Set of the job numbers that already exist, or null if there was an error.
+	 * @throws SQLException
+	 */
+	public static Set<String> getExistingJobIds(Collection<String> jobIds) throws SQLException {
+		
+		Set<String> existing = new HashSet<String>(); // The job numbers that were found.
+		if (jobIds.isEmpty()) {
+			return existing;
+		}
+		
+		// The SQL statement that will be run on the DBMS, with one parameter for each job number.
+		StringBuilder sql = new StringBuilder("SELECT job_id FROM Job WHERE job_id IN (?");
+		for (int i = 1; i < jobIds.size(); i++) {
+			sql.append(", ?");
+		}
+		sql.append(')');
+		
+		try {
+			// A job number can't be used again in any year, so look in every one of the yearly databases at once.
+			DBRouter router = DBRouter.getInstance();
+			for (Set<String> found : router.fanOut(router.all(DBName.JOB_ORDERS), slice -> {
+				Set<String> inDatabase = new HashSet<String>();
+				try ( // Try with resources block (requires Java 7+) for the connection and a prepared statement.
+						Connection conn = ConnectionManager.getInstance().getConnection(slice.getDatabase()); // The connection to the database, which goes back to its pool afterwards.
+						PreparedStatement stmt = conn.prepareStatement(sql.toString());
+						){
+					
+					int index = 1;
+					for (String jobId : jobIds) {
+						stmt.setString(index++, jobId);
+					}
+					
+					try (ResultSet rs = stmt.executeQuery()) {
+						while (rs.next()) {
+							inDatabase.add(rs.getString("job_id"));
+						}
+					}
+				}
+				return inDatabase;
+			})) {
+				existing.addAll(found);
+			}
+			
+			return existing;
+			
+		} catch (SQLException err) { // If there was an error trying to read from the database table.
+			logger.log(Level.SEVERE, "Error attempting to look up " + jobIds.size() + " job numbers.", err);
+			return null; // Just return null, which indicates a failure.
+		}
+	}
+
 	/**
 	 * Set a Job as being completed.
 	 * 
@@ -208,15 +676,14 @@ public class JobManager {
 	 */
 	public static boolean setCompleted(Job bean) throws SQLException {
 		
-		Connection conn = ConnectionManager.getInstance().getConnection(DBName.JOB_ORDERS); // The connection to the database.
-
 		// The SQL statement that will be run on the DBMS.
 		String sql =
 				"UPDATE Job "
 				+ "SET job_completed = ? "
 				+ "WHERE job_id = ?";
 		
-		try ( // Try with resources block (requires Java 7+) for a prepared statement.
+		try ( // Try with resources block (requires Java 7+) for the connection and a prepared statement.
+				Connection conn = ConnectionManager.getInstance().getConnection(findDatabase(bean.getJobId()), DBAccess.READ_WRITE); // The connection to the database, which goes back to its pool afterwards.
 				PreparedStatement stmt = conn.prepareStatement(sql);
 				){
 			
@@ -228,6 +695,7 @@ public class JobManager {
 			int affected = stmt.executeUpdate(); // Store how many lines were affected by this query.
 			
 			if (affected == 1) { // Hopefully, only 1 line was updated.
+				JobEventStream.publish(new JobCompletedEvent(bean)); // Let any subscribers know about the change.
 				return true; // If everything worked fine, then return true, indicating success!
 			} else {
 				return false; // In case there was a problem and the item was not updated in the database table.
@@ -250,19 +718,23 @@ public class JobManager {
 	 */
 	public static boolean delete(String jobId) throws Exception {
 		
-		Connection conn = ConnectionManager.getInstance().getConnection(DBName.JOB_ORDERS); // The connection to the database.
-
 		// The SQL statement that will be run on the DBMS.
 		String sql = "DELETE FROM Job WHERE job_id = ?";
 		
-		try ( // Try with resources block (requires Java 7+) for a prepared statement.
-				PreparedStatement stmt = conn.prepareStatement(sql);
-				){
+		try {
+			String database = findDatabase(jobId); // Which of the yearly databases the job is in.
 			
 			// First, delete all of the job's associated items and, if successful,
 			// continue deleting the job itself.
-			if (OrderDetailManager.delete(jobId))
-			{
+			if (!OrderDetailManager.delete(jobId)) {
+				return false; // In case there was a problem and the items were not removed from the database table.
+			}
+			
+			try ( // Try with resources block (requires Java 7+) for the connection and a prepared statement.
+					Connection conn = ConnectionManager.getInstance().getConnection(database, DBAccess.READ_WRITE); // The connection to the database, which goes back to its pool afterwards.
+					PreparedStatement stmt = conn.prepareStatement(sql);
+					){
+				
 				// Put just the order number, which is the primary key (id) of the job, into the PreparedStatement object,
 				// which will be combined with the SQL statement.
 				stmt.setString(1, jobId);
@@ -270,6 +742,8 @@ public class JobManager {
 				int affected = stmt.executeUpdate(); // Store how many lines were affected by this query.
 				
 				if (affected == 1) { // Hopefully, only 1 line was deleted.
+					DBRouter.getInstance().setHome(jobId, null);
+					JobEventStream.publish(new JobDeletedEvent(jobId)); // Let any subscribers know it's gone.
 					return true; // If everything worked fine, then return true, indicating success!
 				}
 			}
@@ -282,6 +756,91 @@ public class JobManager {
 		
 	}
 
+	/**
+	 * Deletes Jobs (and all of their OrderDetail items) that have just been copied into the JobArchive,
+	 * all in one transaction. A Job is only deleted if it's still completed, so one that was un-done
+	 * while it was being archived stays in the database (which is the copy that's read from then on).
+	 * No JobDeletedEvent is published, since the Jobs haven't gone anywhere as far as anyone reading them can tell.
+	 * 
+	 * @param shipDate The ship date of any one of the Jobs, which all have to be in the same one of the yearly databases.
+	 * @param jobIds The job numbers that were archived.
+	 * @return boolean True if the procedure was successful; false if not.
+	 * @throws SQLException
+	 */
+	public static boolean deleteArchived(LocalDate shipDate, Collection<String> jobIds) throws SQLException {
+		
+		// The SQL statements that will be run on the DBMS. The items have to go before their Jobs.
+		String detailSql = "DELETE FROM OrderDetail WHERE order_id IN "
+				+ "(SELECT job_id FROM Job WHERE job_id = ? AND job_completed IS NOT NULL)";
+		String jobSql = "DELETE FROM Job WHERE job_id = ? AND job_completed IS NOT NULL";
+		
+		try ( // Try with resources block (requires Java 7+) for the connection and the prepared statements.
+				Connection conn = ConnectionManager.getInstance().getConnection(getDatabase(shipDate), DBAccess.READ_WRITE); // The connection to the database, which goes back to its pool afterwards.
+				PreparedStatement detailStmt = conn.prepareStatement(detailSql);
+				PreparedStatement jobStmt = conn.prepareStatement(jobSql);
+				){
+			
+			conn.setAutoCommit(false); // The pool rolls back anything that isn't committed, and puts it back the way it was.
+			for (String jobId : jobIds) {
+				detailStmt.setString(1, jobId);
+				detailStmt.addBatch();
+				jobStmt.setString(1, jobId);
+				jobStmt.addBatch();
+			}
+			
+			detailStmt.executeBatch();
+			jobStmt.executeBatch();
+			conn.commit();
+			
+			return true; // If everything worked fine, then return true, indicating success!
+			
+		} catch (SQLException e) { // If there was an error trying to delete from the database table.
+			logger.log(Level.SEVERE, "Error trying to delete " + jobIds.size() + " archived Jobs from the database table.", e);
+			return false;
+		}
+	}
+
+	/**
+	 * Finds the earliest ship date of the completed Jobs still in the database table, for the JobArchive.
+	 * 
+	 * @param before Only look at Jobs that ship before this date.
+	 * @return The earliest ship date; or null if there aren't any such Jobs or there was an error.
+	 * @throws SQLException
+	 */
+	public static LocalDate getOldestCompletedShipDate(LocalDate before) throws SQLException {
+		
+		// The SQL statement that will be run on the DBMS.
+		String sql = "SELECT MIN(ship_date) AS oldest "
+				+ "FROM Job "
+				+ "WHERE ship_date < ? "
+				+ "AND job_completed IS NOT NULL";
+		
+		try {
+			// Look through the yearly databases from the oldest, stopping at the first one that has any.
+			for (DBRouter.Slice slice : DBRouter.getInstance().split(DBName.JOB_ORDERS, LocalDate.MIN, before.minusDays(1))) {
+				try ( // Try with resources block (requires Java 7+) for the connection and a prepared statement.
+						Connection conn = ConnectionManager.getInstance().getConnection(slice.getDatabase()); // The connection to the database, which goes back to its pool afterwards.
+						PreparedStatement stmt = conn.prepareStatement(sql);
+						){
+					
+					stmt.setDate(1, DateManager.localDateToSqlDate(before));
+					
+					try (ResultSet rs = stmt.executeQuery()) {
+						Date oldest = rs.next() ? rs.getDate("oldest") : null;
+						if (oldest != null) {
+							return oldest.toLocalDate();
+						}
+					}
+				}
+			}
+			return null;
+			
+		} catch (SQLException err) { // If there was an error trying to read from the database table.
+			logger.log(Level.SEVERE, "Error attempting to find the oldest completed job.", err);
+			return null; // Just return null, which indicates a failure.
+		}
+	}
+
 	/**
 	 * Gets all jobs from the database table that ship on a specified date.
 	 * 
@@ -292,7 +851,7 @@ public class JobManager {
 	 */
 	public static List<List<Job>> getAllJobsByDate(LocalDate theDate) throws SQLException {
 		
-		Connection conn = ConnectionManager.getInstance().getConnection(DBName.JOB_ORDERS); // The connection to the database.
+		ResultSet rs = null; // The result set from a successful SQL query.
 
 		// The SQL statement that will be run on the DBMS.
 		String sql = "SELECT ship_date, "
@@ -313,13 +872,14 @@ public class JobManager {
 				+ "ORDER BY proof_spec_date";
 		
 		// Convert the LocalDate object to a SQL Date.
-		java.sql.Date sqlDate = java.sql.Date.valueOf(DateManager.getSqlFormattedDate(theDate));
+		java.sql.Date sqlDate = DateManager.localDateToSqlDate(theDate);
 		List<Job> jobList = new ArrayList<Job>(); // Prepare a List for all of the Jobs.
 		List<Job> incompletedJobsList = new ArrayList<Job>(); // Prepare a List for only the incomplete Jobs.
 		List<List<Job>> jobArray = new ArrayList<List<Job>>(2); // Prepare a two-item List to hold the previous two.
 		String lastJob = ""; // Start with an empty variable so the if statement will fire at least once.
 		
-		try ( // Try with resources block (requires Java 7+) for a prepared statement.
+		try ( // Try with resources block (requires Java 7+) for the connection and a prepared statement.
+				Connection conn = ConnectionManager.getInstance().getConnection(getDatabase(theDate), DBAccess.READ_ONLY); // The connection to the database, which goes back to its pool afterwards.
 				PreparedStatement stmt = conn.prepareStatement(sql);
 				){
 			
@@ -389,81 +949,423 @@ public class JobManager {
 	 */
 	public static List<Job> getJobsByDate(LocalDate theDate) throws SQLException {
 		
-		Connection conn = ConnectionManager.getInstance().getConnection(DBName.JOB_ORDERS); // The connection to the database.
-		
 		logger.log(Level.INFO, "Getting Jobs by Date: " + theDate.toString());
+		
+		// A single day is just a range that starts and ends on the same date.
+		return getJobsByDateRange(theDate, theDate);
+	}
 
-		// The SQL statement that will be run on the DBMS.
-		String sql = "SELECT ship_date, "
-				+ "job_id, "
-				+ "customer_name, "
-				+ "proof_spec_date, "
-				+ "job_completed, "
+	/**
+	 * Gets all jobs (along with all of their OrderDetail items) from the database tables
+	 * that ship between two dates, in a single query.
+	 * The rows are read in one forward-only pass and turned into beans as they arrive,
+	 * rather than running a separate query for each Job's items.
+	 * Any of the dates that are old enough to have been archived are read from the JobArchive as well.
+	 * 
+	 * @param startDate LocalDate object of the first ship date. (inclusive)
+	 * @param endDate LocalDate object of the last ship date. (inclusive)
+	 * @return List of all Jobs, ordered by ship date and then by proof/spec date.
+	 * @throws SQLException
+	 */
+	public static List<Job> getJobsByDateRange(LocalDate startDate, LocalDate endDate) throws SQLException {
+		
+		try {
+			List<Job> jobList = queryRange(RANGE_SQL, startDate, endDate, DBAccess.READ_ONLY); // The List of all of the Jobs.
+			
+			JobArchive archive = JobArchive.getInstance();
+			if (archive.covers(startDate)) {
+				jobList = JobArchive.merge(jobList, archive.getJobsByDateRange(startDate, endDate));
+			}
+			
+			logger.log(Level.CONFIG, "Jobs between " + startDate + " and " + endDate + ": " + jobList.size());
+			
+			return jobList;
+			
+		} catch (SQLException err) { // If there was an error trying to read from the database table(s).
+			logger.log(Level.SEVERE, "SQL Exception occurred when retreiving data from database.", err);
+			return null; // Just return null, which indicates a failure.
+		} catch (IOException err) { // If there was an error trying to read from the archive.
+			logger.log(Level.SEVERE, "IO Exception occurred when retreiving data from the archive.", err);
+			return null;
+		}
+	}
+
+	/**
+	 * Gets the completed jobs (along with all of their OrderDetail items) that ship between two dates
+	 * from the database tables alone, for the JobArchive to archive.
+	 * 
+	 * @param startDate LocalDate object of the first ship date. (inclusive)
+	 * @param endDate LocalDate object of the last ship date. (inclusive)
+	 * @return List of the completed Jobs, ordered by ship date and then by proof/spec date;
+	 * or null if there was an error reading from the database.
+	 * @throws SQLException
+	 */
+	public static List<Job> getCompletedJobsByDateRange(LocalDate startDate, LocalDate endDate) throws SQLException {
+		
+		try {
+			// Straight from the primary, since whatever's read here is what gets kept once the Jobs are deleted.
+			return queryRange(COMPLETED_RANGE_SQL, startDate, endDate, DBAccess.READ_WRITE);
+		} catch (SQLException err) { // If there was an error trying to read from the database table(s).
+			logger.log(Level.SEVERE, "SQL Exception occurred when retreiving completed jobs between " + startDate + " and " + endDate, err);
+			return null; // Just return null, which indicates a failure.
+		}
+	}
+
+	/**
+	 * Runs one of the range queries against the database tables.
+	 * 
+	 * @param sql RANGE_SQL or COMPLETED_RANGE_SQL.
+	 * @param startDate LocalDate object of the first ship date. (inclusive)
+	 * @param endDate LocalDate object of the last ship date. (inclusive)
+	 * @param access READ_ONLY to allow reading from a replica, or READ_WRITE to read from the primary.
+	 * @return List of the Jobs, in the same order as the rows.
+	 * @throws SQLException
+	 */
+	private static List<Job> queryRange(String sql, LocalDate startDate, LocalDate endDate, DBAccess access) throws SQLException {
+		
+		DBRouter router = DBRouter.getInstance();
+		List<Job> jobList = new ArrayList<Job>();
+		
+		// Each of the yearly databases holds its own stretch of dates, so the ranges are read at the same time
+		// and simply put one after the other to keep them in order.
+		for (List<Job> part : router.fanOut(router.split(DBName.JOB_ORDERS, startDate, endDate), slice -> {
+			try ( // Try with resources block (requires Java 7+) for the connection and a prepared statement.
+					Connection conn = ConnectionManager.getInstance().getConnection(slice.getDatabase(), access); // The connection to the database, which goes back to its pool afterwards.
+					PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+					){
+	
+				// We need two dates, so put them into the PreparedStatement object,
+				// which will be combined with the SQL statement.
+				stmt.setDate(1, DateManager.localDateToSqlDate(slice.getStartDate()));
+				stmt.setDate(2, DateManager.localDateToSqlDate(slice.getEndDate()));
+				stmt.setFetchSize(ConnectionManager.getInstance().getConfig().getRangeFetchSize()); // Read a big range in chunks instead of row by row.
+	
+				// Execute the SQL statement and turn the rows into Job beans.
+				try (ResultSet rs = stmt.executeQuery()) {
+					return readJobsWithDetails(rs);
+				}
+			}
+		})) {
+			jobList.addAll(part);
+		}
+		return jobList;
+	}
+
+	/**
+	 * Streams every item (along with its Job) that ships between two dates to a handler,
+	 * straight off of the database cursor, for exports that are too big to hold in memory.
+	 * Only the current row's beans are kept; the items are NOT added to their Job's List.
+	 * Any archived Jobs in the range are read from the JobArchive a month at a time and slotted in between the rows in order.
+	 * 
+	 * @param startDate LocalDate object of the first ship date. (inclusive)
+	 * @param endDate LocalDate object of the last ship date. (inclusive)
+	 * @param handler Gets each row, ordered by ship date and then by proof/spec date.
+	 * The same Job bean is passed along with each of that Job's items.
+	 * @return boolean True if every row was read; false if there was an error reading from the database.
+	 * @throws SQLException
+	 * @throws IOException If the handler could not write a row out, or the archive could not be read.
+	 */
+	public static boolean streamJobsByDateRange(LocalDate startDate, LocalDate endDate, RowHandler handler) throws SQLException, IOException {
+		
+		// The archived Jobs of the range, if there are any, read a month at a time. A month of them is small next to a year of rows.
+		JobArchive archive = JobArchive.getInstance();
+		JobArchive.Reader archived = archive.read(startDate, archive.covers(startDate) ? endDate : startDate.minusDays(1));
+		int rows = 0; // How many items were handed over.
+		
+		try {
+			// The yearly databases are read one after the other, in date order, so the rows stay in order.
+			for (DBRouter.Slice slice : DBRouter.getInstance().split(DBName.JOB_ORDERS, startDate, endDate)) {
+				try ( // Try with resources block (requires Java 7+) for the connection and a prepared statement.
+						Connection conn = ConnectionManager.getInstance().getConnection(slice.getDatabase(), DBAccess.READ_ONLY); // The connection to the database, which goes back to its pool afterwards.
+						PreparedStatement stmt = conn.prepareStatement(RANGE_SQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+						){
+		
+					stmt.setDate(1, DateManager.localDateToSqlDate(slice.getStartDate()));
+					stmt.setDate(2, DateManager.localDateToSqlDate(slice.getEndDate()));
+					stmt.setFetchSize(ConnectionManager.getInstance().getConfig().getExportFetchSize());
+		
+					try (ResultSet rs = stmt.executeQuery()) {
+						Job bean = null; // The Job whose items are currently being read.
+						while (rs.next()) {
+							String jobId = rs.getString("job_id");
+							if (bean == null || !jobId.equals(bean.getJobId())) {
+								bean = readJob(rs);
+								// Hand over the archived Jobs that come before this one, skipping its own archived copy if it has one.
+								while (archived.peek() != null && JobArchive.ORDER.compare(archived.peek(), bean) <= 0) {
+									Job archivedJob = archived.next();
+									if (!archivedJob.getJobId().equals(jobId)) {
+										rows += handleAll(archivedJob, handler);
+									}
+								}
+							}
+							handler.handle(bean, readOrderDetail(rs, jobId));
+							rows++;
+						}
+					}
+				}
+			}
+			for (Job archivedJob = archived.next(); archivedJob != null; archivedJob = archived.next()) {
+				rows += handleAll(archivedJob, handler);
+			}
+			
+			logger.log(Level.CONFIG, "Items streamed between " + startDate + " and " + endDate + ": " + rows);
+			
+			return true;
+			
+		} catch (SQLException err) { // If there was an error trying to read from the database table(s).
+			logger.log(Level.SEVERE, "SQL Exception occurred when streaming data from database.", err);
+			return false; // Just return false, which indicates a failure.
+		}
+	}
+
+	/**
+	 * Hands each of a Job's items to a handler, the same way streamJobsByDateRange() hands over its rows.
+	 * 
+	 * @return The number of items.
+	 */
+	private static int handleAll(Job job, RowHandler handler) throws IOException {
+		List<OrderDetail> detailList = job.getOrderDetailList();
+		job.setOrderDetailList(null); // Just like the rows from the database.
+		for (OrderDetail detail : detailList) {
+			handler.handle(job, detail);
+		}
+		return detailList.size();
+	}
+
+	/**
+	 * Takes the rows of streamJobsByDateRange(), one at a time.
+	 */
+	public interface RowHandler {
+
+		/**
+		 * @param job The item's Job. (Its List of OrderDetail items is not filled in.)
+		 * @param detail The item.
+		 * @throws IOException
+		 */
+		void handle(Job job, OrderDetail detail) throws IOException;
+	}
+
+	/**
+	 * Gets one page of the jobs (along with all of their OrderDetail items) that ship between two dates,
+	 * ordered by ship date, proof/spec date and job number. This is how the special queues (such as "On Hold"),
+	 * the job history and searches are read, since any of them can hold far more Jobs than anyone wants at once.
+	 * 
+	 * Rather than skipping a number of rows (which makes the database count its way past all of them,
+	 * so the pages get slower the further in they are), each page seeks straight past the last Job of the page
+	 * before it, on the (ship_date, proof_spec_date, job_id) index, so every page costs the same.
+	 * The page is picked out of the Job table alone before the items are joined in,
+	 * so a page is always a whole number of Jobs. Archived Jobs are merged in from the JobArchive the same way.
+	 * 
+	 * @param startDate LocalDate object of the first ship date. (inclusive)
+	 * @param endDate LocalDate object of the last ship date. (inclusive)
+	 * @param completedOnly True for just the Jobs that have been completed.
+	 * @param customerPrefix Only Jobs whose customer name starts with this (ignoring case, on most databases), or null for all.
+	 * @param token The token from the page before, or null for the first page.
+	 * @param pageSize The most Jobs on the page.
+	 * @return The Page of Jobs; or null if there was an error reading from the database.
+	 * @throws SQLException
+	 * @throws IllegalArgumentException If the token isn't one that came from this method.
+	 */
+	public static Page<Job> getJobPage(LocalDate startDate, LocalDate endDate, boolean completedOnly,
+			String customerPrefix, String token, int pageSize) throws SQLException {
+		
+		PageToken after = token == null ? null : PageToken.readJob(token); // The last Job of the page before.
+		
+		// The SQL statement that will be run on the DBMS. The filters are only added when they're used.
+		StringBuilder sql = new StringBuilder("SELECT j.ship_date, "
+				+ "j.job_id, "
+				+ "j.customer_name, "
+				+ "j.customer_po, "
+				+ "j.proof_spec_date, "
+				+ "j.job_completed, "
+				+ "j.printing_company, "
+				+ "j.overruns, "
+				+ "o.id, "
 				+ "product_id, "
 				+ "product_detail, "
+				+ "print_type, "
 				+ "num_colors, "
 				+ "quantity, "
-				+ "item_completed "
+				+ "item_completed, "
+				+ "proof_num, "
+				+ "proof_date, "
+				+ "thumbnail "
 				+ ""
-				+ "FROM Job AS j "
+				+ "FROM (SELECT job_id, ship_date, proof_spec_date "
+				+ "FROM Job "
+				+ "WHERE ship_date BETWEEN ? AND ? ");
+		if (completedOnly) {
+			sql.append("AND job_completed IS NOT NULL ");
+		}
+		if (customerPrefix != null) {
+			sql.append("AND customer_name LIKE ? ESCAPE '!' ");
+		}
+		if (after != null) {
+			// Everything after the last Job. A null proof/spec date sorts before all of the others.
+			sql.append("AND (ship_date > ? OR (ship_date = ? AND ");
+			if (after.proofSpecDate != null) {
+				sql.append("(proof_spec_date > ? OR (proof_spec_date = ? AND job_id > ?)))) ");
+			} else {
+				sql.append("(proof_spec_date IS NOT NULL OR job_id > ?))) ");
+			}
+		}
+		sql.append("ORDER BY ship_date, proof_spec_date, job_id "
+				+ "OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY) AS p "
+				+ "JOIN Job AS j "
+				+ "ON j.job_id = p.job_id "
 				+ "JOIN OrderDetail AS o "
 				+ "ON j.job_id = o.order_id "
-				+ "WHERE ship_date = ? "
-				+ "ORDER BY proof_spec_date";
-		
-		// Convert the LocalDate object to a SQL Date.
-		java.sql.Date sqlDate = java.sql.Date.valueOf(DateManager.getSqlFormattedDate(theDate));
-		List<Job> jobList = new ArrayList<Job>(); // Prepare a List for all of the Jobs.
-		String lastJob = ""; // Start with an empty variable so the if statement will fire at least once.
+				+ "ORDER BY p.ship_date, p.proof_spec_date, p.job_id, o.id");
 		
-		try ( // Try with resources block (requires Java 7+) for a prepared statement.
-				PreparedStatement stmt = conn.prepareStatement(sql);
-				){
-
-			// All we need is the date, so put that into the PreparedStatement object,
-			// which will be combined with the SQL statement.
-			stmt.setDate(1, sqlDate);
-
-			// Execute the SQL statement and store the results in a ResultSet.
-			rs = stmt.executeQuery();
+		try {
+			// Each of the yearly databases that's past the last Job is asked for a whole page at the same time.
+			// They each hold their own stretch of dates, so their pages just go one after the other.
+			DBRouter router = DBRouter.getInstance();
+			List<DBRouter.Slice> slices = new ArrayList<DBRouter.Slice>();
+			for (DBRouter.Slice slice : router.split(DBName.JOB_ORDERS, startDate, endDate)) {
+				if (after == null || slice.getEndDate().toEpochDay() >= after.shipDay) {
+					slices.add(slice);
+				}
+			}
+			List<Job> jobList = new ArrayList<Job>();
+			for (List<Job> part : router.fanOut(slices, slice -> {
+				try ( // Try with resources block (requires Java 7+) for the connection and a prepared statement.
+						Connection conn = ConnectionManager.getInstance().getConnection(slice.getDatabase(), DBAccess.READ_ONLY); // The connection to the database, which goes back to its pool afterwards.
+						PreparedStatement stmt = conn.prepareStatement(sql.toString(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+						){
+	
+					// Put the range, the filters and the last Job into the PreparedStatement object,
+					// in the same order they were added to the SQL statement.
+					int index = 1;
+					stmt.setDate(index++, DateManager.localDateToSqlDate(slice.getStartDate()));
+					stmt.setDate(index++, DateManager.localDateToSqlDate(slice.getEndDate()));
+					if (customerPrefix != null) {
+						stmt.setString(index++, customerPrefix.replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%");
+					}
+					if (after != null) {
+						Date shipDate = DateManager.epochDayToSqlDate(after.shipDay);
+						stmt.setDate(index++, shipDate);
+						stmt.setDate(index++, shipDate);
+						if (after.proofSpecDate != null) {
+							stmt.setTimestamp(index++, after.proofSpecDate);
+							stmt.setTimestamp(index++, after.proofSpecDate);
+						}
+						stmt.setString(index++, after.id);
+					}
+					stmt.setInt(index++, pageSize + 1); // One extra, just to find out if there's another page.
+	
+					// Execute the SQL statement and turn the rows into Job beans.
+					try (ResultSet rs = stmt.executeQuery()) {
+						return readJobsWithDetails(rs);
+					}
+				}
+			})) {
+				jobList.addAll(part);
+			}
+			while (jobList.size() > pageSize + 1) {
+				jobList.remove(jobList.size() - 1);
+			}
 			
-			// Go through each result in the ResultSet (row) and create a Job bean from it,
-			// then add each bean to the bean List.
-			while (rs.next()) {
-				// If the next item in the result set has the same job number as the last one,
-				// skip it and move on to the next one.
-				String jobId = rs.getString("job_id");
-				if (!jobId.equals(lastJob)) {
-					// If this is a new job, then reset the "lastJob" tracker
-					// for the next item once this iteration in the loop is done.
-					lastJob = jobId;
-					// Get all of the OrderDetail items for this Job so it can be added
-					// to the Job bean a little further down.
-					List<OrderDetail> detailList = OrderDetailManager.getRows(jobId);
-					Job bean = new Job(); // Prime the Job bean.
-					
-					bean.setShipDate(rs.getDate("ship_date"));
-					bean.setJobId(jobId);
-					bean.setCustomerName(rs.getString("customer_name"));
-					bean.setProofSpecDate(rs.getTimestamp("proof_spec_date"));
-					bean.setJobCompleted(rs.getTimestamp("job_completed"));
-					bean.setOrderDetailList(detailList);
-					jobList.add(bean); // Add this Job bean to the main List of all jobs for the day.
+			// Old enough dates may have archived Jobs as well (every one of them completed), which go in amongst the rest.
+			JobArchive archive = JobArchive.getInstance();
+			if (archive.covers(startDate)) {
+				jobList = JobArchive.merge(jobList, archive.getJobPage(startDate, endDate, customerPrefix, after, pageSize + 1));
+				while (jobList.size() > pageSize + 1) {
+					jobList.remove(jobList.size() - 1);
 				}
 			}
 			
-			logger.log(Level.INFO, "Job list's first hit: " + jobList.get(0).getCustomerName());
+			String nextToken = null;
+			if (jobList.size() > pageSize) {
+				jobList.remove(pageSize);
+				nextToken = PageToken.after(jobList.get(pageSize - 1));
+			}
 			
-			return jobList;
+			logger.log(Level.CONFIG, "Page of jobs between " + startDate + " and " + endDate + ": " + jobList.size());
+			
+			return new Page<Job>(jobList, nextToken);
 			
 		} catch (SQLException err) { // If there was an error trying to read from the database table(s).
-			logger.log(Level.SEVERE, "SQL Exception occurred when retreiving data from database.", err);
+			logger.log(Level.SEVERE, "SQL Exception occurred when retreiving a page of jobs between " + startDate + " and " + endDate, err);
 			return null; // Just return null, which indicates a failure.
-		} finally {
-			if (rs != null) {
-				rs.close(); // Make sure to close the ResultSet in case it isn't null, no matter if an error occurred or not.
+		} catch (IOException err) { // If there was an error trying to read from the archive.
+			logger.log(Level.SEVERE, "IO Exception occurred when retreiving a page of archived jobs between " + startDate + " and " + endDate, err);
+			return null;
+		}
+	}
+
+	/**
+	 * Turns the rows of a query that joins Job to OrderDetail into Job beans, each with its List of items.
+	 * The rows must be ordered so that all of a Job's items come together.
+	 * 
+	 * @param rs The ResultSet of the query, which is read to the end but not closed.
+	 * @return List of all Jobs, in the same order as the rows.
+	 * @throws SQLException
+	 */
+	private static List<Job> readJobsWithDetails(ResultSet rs) throws SQLException {
+		
+		List<Job> jobList = new ArrayList<Job>(); // Prepare a List for all of the Jobs.
+		Job bean = null; // The Job whose items are currently being read.
+		
+		while (rs.next()) {
+			String jobId = rs.getString("job_id");
+			if (bean == null || !jobId.equals(bean.getJobId())) {
+				// The rows are ordered by job, so a new job number means the last Job is done
+				// and a new Job bean needs to be primed.
+				bean = readJob(rs);
+				bean.setOrderDetailList(new ArrayList<OrderDetail>());
+				jobList.add(bean); // Add this Job bean to the main List of all jobs.
 			}
+			
+			// Every row is one of the current Job's OrderDetail items.
+			bean.getOrderDetailList().add(readOrderDetail(rs, jobId));
 		}
+		
+		return jobList;
+	}
+
+	/**
+	 * Reads the Job columns of the current row of a query that joins Job to OrderDetail.
+	 * 
+	 * @param rs The ResultSet, positioned on the row.
+	 * @return A Job bean, without any OrderDetail items.
+	 * @throws SQLException
+	 */
+	private static Job readJob(ResultSet rs) throws SQLException {
+		Job bean = new Job();
+		bean.setShipDate(rs.getDate("ship_date"));
+		bean.setJobId(rs.getString("job_id"));
+		bean.setCustomerName(rs.getString("customer_name"));
+		bean.setCustomerPO(rs.getString("customer_po"));
+		bean.setProofSpecDate(rs.getTimestamp("proof_spec_date"));
+		bean.setJobCompleted(rs.getTimestamp("job_completed"));
+		bean.setPrintingCompany(PrintingCompany.getPrintingCompany(rs.getInt("printing_company")));
+		bean.setOverruns(rs.getBoolean("overruns"));
+		return bean;
+	}
+
+	/**
+	 * Reads the OrderDetail columns of the current row of a query that joins Job to OrderDetail.
+	 * 
+	 * @param rs The ResultSet, positioned on the row.
+	 * @param jobId The job number the item belongs to.
+	 * @return An OrderDetail bean.
+	 * @throws SQLException
+	 */
+	private static OrderDetail readOrderDetail(ResultSet rs, String jobId) throws SQLException {
+		OrderDetail detail = new OrderDetail();
+		detail.setId(rs.getInt("id"));
+		detail.setOrderId(jobId);
+		detail.setProductId(rs.getString("product_id"));
+		detail.setProductDetail(rs.getString("product_detail"));
+		detail.setPrintType(PrintType.getPrintType(rs.getInt("print_type")));
+		detail.setNumColors(rs.getLong("num_colors"));
+		detail.setQuantity(rs.getLong("quantity"));
+		detail.setItemCompleted(rs.getTimestamp("item_completed"));
+		detail.setProofNum(rs.getInt("proof_num"));
+		detail.setProofDate(rs.getTimestamp("proof_date"));
+		detail.setThumbnail(rs.getString("thumbnail"));
+		return detail;
 	}
 
 	/**
@@ -475,7 +1377,7 @@ public class JobManager {
 	 */
 	public static boolean jobsExist (LocalDate date) throws SQLException {
 		
-		Connection conn = ConnectionManager.getInstance().getConnection(DBName.JOB_ORDERS); // The connection to the database.
+		ResultSet rs = null; // The result set from a successful SQL query.
 
 		// The SQL statement that will be run on the DBMS.
 		String sql = "SELECT TOP 1 job_id "
@@ -483,9 +1385,10 @@ public class JobManager {
 				+ "WHERE ship_date = ?";
 
 		// Convert the LocalDate object to a SQL Date.
-		java.sql.Date sqlDate = java.sql.Date.valueOf(DateManager.getSqlFormattedDate(date));
+		java.sql.Date sqlDate = DateManager.localDateToSqlDate(date);
 		
-		try ( // Try with resources block (requires Java 7+) for a prepared statement.
+		try ( // Try with resources block (requires Java 7+) for the connection and a prepared statement.
+				Connection conn = ConnectionManager.getInstance().getConnection(getDatabase(date), DBAccess.READ_ONLY); // The connection to the database, which goes back to its pool afterwards.
 				PreparedStatement stmt = conn.prepareStatement(sql);
 				){
 
@@ -501,8 +1404,8 @@ public class JobManager {
 				return true;
 			}
 			
-			// Otherwise, return a boolean false, indicating there are NO jobs on that date.
-			return false;
+			// Otherwise, see if any archived Jobs ship that day.
+			return countArchived(date, date) > 0;
 			
 		} catch (SQLException err) { // If there was an error trying to read from the database table.
 			logger.log(Level.SEVERE, "Error attempting to retrieve TOP 1 job_id from database.", err);
@@ -522,14 +1425,15 @@ public class JobManager {
 	 */
 	public static int getNumJobs (Date date) throws SQLException {
 		
-		Connection conn = ConnectionManager.getInstance().getConnection(DBName.JOB_ORDERS); // The connection to the database.
+		ResultSet rs = null; // The result set from a successful SQL query.
 
 		// The SQL statement that will be run on the DBMS.
-		String sql = "SELECT COUNT(*) AS 'num_jobs' "
+		String sql = "SELECT COUNT(*) AS num_jobs "
 				+ "FROM Job "
 				+ "WHERE ship_date = ?";
 		
-		try ( // Try with resources block (requires Java 7+) for a prepared statement.
+		try ( // Try with resources block (requires Java 7+) for the connection and a prepared statement.
+				Connection conn = ConnectionManager.getInstance().getConnection(getDatabase(date.toLocalDate()), DBAccess.READ_ONLY); // The connection to the database, which goes back to its pool afterwards.
 				PreparedStatement stmt = conn.prepareStatement(sql);
 				){
 
@@ -540,16 +1444,15 @@ public class JobManager {
 			// Execute the SQL statement and store the results in a ResultSet.
 			rs = stmt.executeQuery();
 
-			int numJobs = 0; // Assume that there are no results to start with.
+			int numJobs = countArchived(date.toLocalDate(), date.toLocalDate()); // Start with any that have been archived.
 
 			if (rs.next()) {
-				// If a result was returned, then get that number of Jobs and return it.
-				numJobs = rs.getInt("num_jobs");
+				// If a result was returned, then add that number of Jobs and return it.
+				numJobs += rs.getInt("num_jobs");
 				logger.log(Level.CONFIG, "Number of Jobs for the day: " + numJobs);
-				return numJobs;
 			}
 			
-			return 0; // If there were no results, then assume 0 Jobs ship on that date.
+			return numJobs; // If there were no results, then assume only the archived Jobs ship on that date.
 			
 		} catch (SQLException err) { // If there was an error trying to read from the database table.
 			logger.log(Level.SEVERE, "Error attempting to get the total number of jobs for a given day.", err);
@@ -569,15 +1472,16 @@ public class JobManager {
 	 */
 	public static int getCompletedJobs (Date date) throws SQLException {
 		
-		Connection conn = ConnectionManager.getInstance().getConnection(DBName.JOB_ORDERS); // The connection to the database.
+		ResultSet rs = null; // The result set from a successful SQL query.
 
 		// The SQL statement that will be run on the DBMS.
-		String sql = "SELECT COUNT(*) AS 'completed_jobs' "
+		String sql = "SELECT COUNT(*) AS completed_jobs "
 				+ "FROM Job "
 				+ "WHERE ship_date = ? "
 				+ "AND job_completed IS NOT NULL";
 		
-		try ( // Try with resources block (requires Java 7+) for a prepared statement.
+		try ( // Try with resources block (requires Java 7+) for the connection and a prepared statement.
+				Connection conn = ConnectionManager.getInstance().getConnection(getDatabase(date.toLocalDate()), DBAccess.READ_ONLY); // The connection to the database, which goes back to its pool afterwards.
 				PreparedStatement stmt = conn.prepareStatement(sql);
 				){
 
@@ -588,12 +1492,15 @@ public class JobManager {
 			// Execute the SQL statement and store the results in a ResultSet.
 			rs = stmt.executeQuery();
 			
+			// Every archived Job has been completed.
+			int completedJobs = countArchived(date.toLocalDate(), date.toLocalDate());
+			
 			if (rs.next()) {
-				// If a result was returned, then get that number of completed Jobs and return it.
-				return rs.getInt("completed_jobs");
+				// If a result was returned, then add that number of completed Jobs and return it.
+				return completedJobs + rs.getInt("completed_jobs");
 			}
 			
-			return 0; // If there were no results, then assume 0 completed Jobs ship on that date.
+			return completedJobs; // If there were no results, then assume only the archived Jobs ship on that date.
 
 		} catch (SQLException err) { // If there was an error trying to read from the database table.
 			logger.log(Level.SEVERE, "Error attempting to get the total number of completed jobs for a given day.", err);
@@ -613,38 +1520,42 @@ public class JobManager {
 	 */
 	public static int weeklyNumJobs(LocalDate[] weekDates) throws SQLException {
 		
-		Connection conn = ConnectionManager.getInstance().getConnection(DBName.JOB_ORDERS); // The connection to the database.
-
 		// The SQL statement that will be run on the DBMS.
-		String sql = "SELECT COUNT(*) AS 'weekly_num_jobs' "
+		String sql = "SELECT COUNT(*) AS weekly_num_jobs "
 				+ "FROM Job "
 				+ "WHERE ship_date BETWEEN ? AND ?";
 		
-		try ( // Try with resources block (requires Java 7+) for a prepared statement.
-				PreparedStatement stmt = conn.prepareStatement(sql);
-				){
-
-			// We need two dates, so put them from the given Array into the PreparedStatement object,
-			// which will be combined with the SQL statement.
-			stmt.setDate(1, DateManager.localDateToSqlDate(weekDates[0]));
-			stmt.setDate(2, DateManager.localDateToSqlDate(weekDates[1]));
-
-			// Execute the SQL statement and store the results in a ResultSet.
-			rs = stmt.executeQuery();
+		try {
+			// Start with any that have been archived.
+			int total = countArchived(weekDates[0], weekDates[1]);
 			
-			if (rs.next()) {
-				// If a result was returned, then get that number of Jobs and return it.
-				return rs.getInt("weekly_num_jobs");
+			// Each yearly database counts its own part of the week, all at the same time.
+			DBRouter router = DBRouter.getInstance();
+			for (int count : router.fanOut(router.split(DBName.JOB_ORDERS, weekDates[0], weekDates[1]), slice -> {
+				try ( // Try with resources block (requires Java 7+) for the connection and a prepared statement.
+						Connection conn = ConnectionManager.getInstance().getConnection(slice.getDatabase(), DBAccess.READ_ONLY); // The connection to the database, which goes back to its pool afterwards.
+						PreparedStatement stmt = conn.prepareStatement(sql);
+						){
+					
+					// We need two dates, so put the part of the week that's in this database into the PreparedStatement object,
+					// which will be combined with the SQL statement.
+					stmt.setDate(1, DateManager.localDateToSqlDate(slice.getStartDate()));
+					stmt.setDate(2, DateManager.localDateToSqlDate(slice.getEndDate()));
+					
+					// Execute the SQL statement and return the number of Jobs it found, if any.
+					try (ResultSet rs = stmt.executeQuery()) {
+						return rs.next() ? rs.getInt("weekly_num_jobs") : 0;
+					}
+				}
+			})) {
+				total += count;
 			}
 			
-			return 0; // If there were no results, then assume 0 Jobs ship between those dates.
+			return total;
 
 		} catch (SQLException err) { // If there was an error trying to read from the database table.
 			logger.log(Level.SEVERE, "Error attempting to get the total number of jobs for a given week.", err);
 			return 0; // Return 0, which indicates either failure or no results.
-		} finally {
-			if (rs != null)
-				rs.close(); // Make sure to close the ResultSet in case it isn't null, no matter if an error occurred or not.
 		}
 	}
 
@@ -657,42 +1568,59 @@ public class JobManager {
 	 */
 	public static int weeklyCompletedJobs(LocalDate[] weekDates) throws SQLException {
 		
-		Connection conn = ConnectionManager.getInstance().getConnection(DBName.JOB_ORDERS); // The connection to the database.
-
 		// The SQL statement that will be run on the DBMS.
-		String sql = "SELECT COUNT(*) AS 'weekly_completed_jobs' "
+		String sql = "SELECT COUNT(*) AS weekly_completed_jobs "
 				+ "FROM Job "
 				+ "WHERE ship_date BETWEEN ? AND ? "
 				+ "AND job_completed IS NOT NULL";
 		
-		try ( // Try with resources block (requires Java 7+) for a prepared statement.
-				PreparedStatement stmt = conn.prepareStatement(sql);
-				){
-
-			// We need two dates, so put them from the given Array into the PreparedStatement object,
-			// which will be combined with the SQL statement.
-			stmt.setDate(1, DateManager.localDateToSqlDate(weekDates[0]));
-			stmt.setDate(2, DateManager.localDateToSqlDate(weekDates[1]));
-
-			// Execute the SQL statement and store the results in a ResultSet.
-			rs = stmt.executeQuery();
+		try {
+			// Every archived Job has been completed, so start with those.
+			int total = countArchived(weekDates[0], weekDates[1]);
 			
-			if (rs.next()) {
-				// If a result was returned, then get that number of Jobs and return it.
-				return rs.getInt("weekly_completed_jobs");
+			// Each yearly database counts its own part of the week, all at the same time.
+			DBRouter router = DBRouter.getInstance();
+			for (int count : router.fanOut(router.split(DBName.JOB_ORDERS, weekDates[0], weekDates[1]), slice -> {
+				try ( // Try with resources block (requires Java 7+) for the connection and a prepared statement.
+						Connection conn = ConnectionManager.getInstance().getConnection(slice.getDatabase(), DBAccess.READ_ONLY); // The connection to the database, which goes back to its pool afterwards.
+						PreparedStatement stmt = conn.prepareStatement(sql);
+						){
+					
+					// We need two dates, so put the part of the week that's in this database into the PreparedStatement object,
+					// which will be combined with the SQL statement.
+					stmt.setDate(1, DateManager.localDateToSqlDate(slice.getStartDate()));
+					stmt.setDate(2, DateManager.localDateToSqlDate(slice.getEndDate()));
+					
+					// Execute the SQL statement and return the number of Jobs it found, if any.
+					try (ResultSet rs = stmt.executeQuery()) {
+						return rs.next() ? rs.getInt("weekly_completed_jobs") : 0;
+					}
+				}
+			})) {
+				total += count;
 			}
 			
-			return 0; // If there were no results, then assume 0 completed Jobs ship between those dates.
+			return total;
 
 		} catch (SQLException err) { // If there was an error trying to read from the database table.
 			logger.log(Level.SEVERE, "Error attempting to get the total number of completed jobs for a given week.", err);
 			return 0; // Return 0, which indicates either failure or no results.
-		} finally {
-			if (rs != null)
-				rs.close(); // Make sure to close the ResultSet in case it isn't null, no matter if an error occurred or not.
 		}
 	}
 
+	/**
+	 * Counts the archived Jobs that ship between two dates, without reading the archive at all
+	 * for dates that are too new to have been archived.
+	 * 
+	 * @param startDate LocalDate object of the first ship date. (inclusive)
+	 * @param endDate LocalDate object of the last ship date. (inclusive)
+	 * @return The number of archived Jobs.
+	 */
+	private static int countArchived(LocalDate startDate, LocalDate endDate) {
+		JobArchive archive = JobArchive.getInstance();
+		return archive.covers(startDate) ? archive.countJobs(startDate, endDate) : 0;
+	}
+
 	public static void jobCheckboxChanged(ValueChangeEvent event, Job job, TreeTable treeTable) {
 		
 		// True if the change was an un-checked box to a checked box, false if the other way 'round.
@@ -0,0 +1,124 @@
+package info.chrismcgee.sky.tables;
+
+import java.io.Serializable;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import info.chrismcgee.sky.components.DateManager;
+import info.chrismcgee.sky.scheduling.beans.Job;
+
+/**
+ * @author Marketing
+ *
+ * Warms the JobCache with the working days on either side of whatever day a view is showing,
+ * since planners nearly always step through the calendar one day at a time.
+ *
+ * Every view gets its own JobPrefetcher, but they all share one low priority background thread,
+ * so prefetching never competes with the loads the users are actually waiting on.
+ * Whenever the view moves on to another day (or goes away), the prefetches it no longer needs are cancelled.
+ */
+public class JobPrefetcher implements Serializable {
+
+	/**
+	 * Serialization!
+	 */
+	private static final long serialVersionUID = 4718290043761125093L;
+
+	private final static Logger logger = Logger.getLogger(JobPrefetcher.class.getName()); // Logging!
+
+	// The single background thread shared by every prefetcher.
+	private final static ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "job-prefetcher");
+		thread.setDaemon(true); // Never keep the servlet container from shutting down.
+		thread.setPriority(Thread.MIN_PRIORITY);
+		return thread;
+	});
+
+	private final Loader loader;
+	// The prefetches this prefetcher has submitted that may not have run yet. Not worth keeping with the session.
+	private transient List<Future<?>> pending;
+
+	public JobPrefetcher() {
+		this(day -> JobCache.getInstance().getJobsByDate(day));
+	}
+
+	/**
+	 * @param loader Reads a day's Jobs into the cache; a stand-in in the tests.
+	 */
+	JobPrefetcher(Loader loader) {
+		this.loader = loader;
+	}
+
+	/**
+	 * Prefetches the previous and next working days of the given day into the JobCache,
+	 * cancelling whatever was being prefetched for the last day.
+	 *
+	 * @param day The day that was just loaded.
+	 */
+	public synchronized void prefetchAround(LocalDate day) {
+
+		cancel();
+
+		if (DateManager.isSentinelDate(day)) {
+			return; // The special dates have no neighbours worth prefetching.
+		}
+
+		LocalDate previous = DateManager.getPreviousWorkingDay(day);
+		LocalDate next = DateManager.getNextWorkingDay(day);
+
+		if (pending == null) {
+			pending = new ArrayList<Future<?>>(2);
+		}
+		// The next day first, since stepping forward is the more common of the two.
+		if (next != null) {
+			pending.add(executor.submit(() -> prefetch(next)));
+		}
+		pending.add(executor.submit(() -> prefetch(previous)));
+	}
+
+	/**
+	 * Cancels any prefetches that haven't started yet.
+	 * One that is already running is left to finish, since the cache can still use it.
+	 */
+	public synchronized void cancel() {
+
+		if (pending == null) {
+			return;
+		}
+		for (Future<?> future : pending) {
+			future.cancel(false);
+		}
+		pending.clear();
+	}
+
+	private void prefetch(LocalDate day) {
+
+		try {
+			if (loader.load(day) == null) {
+				logger.log(Level.CONFIG, "Could not prefetch the jobs for " + day);
+			}
+		} catch (Exception e) { // A failed prefetch only means the day will be loaded when it's asked for.
+			logger.log(Level.WARNING, "Exception when trying to PREFETCH the jobs for " + day, e);
+		}
+	}
+
+
+	/**
+	 * Reads a day's Jobs through the JobCache, such as JobCache.getJobsByDate().
+	 * Kept with the session along with the prefetcher, so it has to be Serializable.
+	 */
+	interface Loader extends Serializable {
+		/**
+		 * @return List of the Jobs, or null if they could not be read.
+		 */
+		List<Job> load(LocalDate day) throws SQLException;
+	}
+
+}
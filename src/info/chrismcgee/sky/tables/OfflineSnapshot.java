@@ -0,0 +1,412 @@
+package info.chrismcgee.sky.tables;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import info.chrismcgee.sky.components.DateManager;
+import info.chrismcgee.sky.enums.PrintType;
+import info.chrismcgee.sky.enums.PrintingCompany;
+import info.chrismcgee.sky.scheduling.beans.Job;
+import info.chrismcgee.sky.scheduling.beans.OrderDetail;
+
+/**
+ * @author Marketing
+ *
+ * A copy of this week's and next week's Jobs (and their OrderDetail items) on the local disk
+ * (-Dsky.offline, or "data/offline"), so the schedule can still be shown when the database can't be reached,
+ * even right after the server has started and nothing has been cached yet.
+ *
+ * It's refreshed from the database in the background every few minutes ("sky.offline.refresh", 5 by default).
+ * The file is memory-mapped rather than read in, so opening it at startup costs next to nothing:
+ * it starts with an index of where each day's Jobs are, and only the days that are asked for are ever decoded.
+ * The JobCache falls back on it whenever the database can't be read, and any clicks waiting
+ * in the CompletionJournal are shown on top of it.
+ */
+public class OfflineSnapshot {
+
+	private final static Logger logger = Logger.getLogger(OfflineSnapshot.class.getName()); // Logging!
+
+	private static final int MAGIC = 0x534B594F; // "SKYO", at the start of the snapshot file.
+	private static final int VERSION = 1;
+	private static final String FILE_NAME = "schedule.snap";
+	private static final int DAYS = 14; // This week and next week.
+	private static final long NO_TIME = Long.MIN_VALUE; // Stands in for a null Timestamp.
+
+	// The single and only instance of the snapshot; starts off as null.
+	private static OfflineSnapshot instance = null;
+	// Refreshes the snapshot every few minutes, when it's been started.
+	private static ScheduledExecutorService executor = null;
+
+	private final Path file;
+	private final Object refreshing = new Object(); // Held while refreshing, so there's only ever one refresh at a time.
+	private volatile Mapped mapped = null; // The snapshot file as it was last mapped; null if there isn't one.
+
+	/**
+	 * @param root The folder the snapshot is kept in. It's made if it isn't there yet.
+	 */
+	public OfflineSnapshot(Path root) {
+		this.file = root.toAbsolutePath().normalize().resolve(FILE_NAME);
+		try {
+			Files.createDirectories(this.file.getParent());
+			mapped = map(file);
+			logger.log(Level.CONFIG, "Offline snapshot covers " + mapped.firstDay() + " to " + mapped.lastDay()
+					+ ", as of " + new Timestamp(mapped.writtenAt));
+		} catch (NoSuchFileException e) {
+			logger.log(Level.CONFIG, "There's no offline snapshot yet.");
+		} catch (IOException e) {
+			logger.log(Level.SEVERE, "Could not open the offline snapshot " + this.file, e);
+		}
+	}
+
+	/**
+	 * @return The folder the snapshot and the CompletionJournal are kept in.
+	 */
+	static Path getRoot() {
+		return Paths.get(System.getProperty("sky.offline", "data/offline"));
+	}
+
+	/**
+	 * Gets the single instance of the snapshot, making it (and mapping its file) the first time.
+	 *
+	 * @return The OfflineSnapshot.
+	 */
+	public static synchronized OfflineSnapshot getInstance() {
+		if (instance == null) {
+			instance = new OfflineSnapshot(getRoot());
+		}
+		return instance;
+	}
+
+	/**
+	 * Starts refreshing the snapshot every "sky.offline.refresh" minutes (straight away the first time),
+	 * and replaying the CompletionJournal whenever the database can be reached. A value of 0 turns it off.
+	 * Calling it again while it's already running does nothing.
+	 */
+	public static synchronized void start() {
+
+		int minutes = Integer.getInteger("sky.offline.refresh", 5);
+		if (executor != null || minutes <= 0) {
+			return;
+		}
+		executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "offline-snapshot");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		});
+		executor.scheduleWithFixedDelay(() -> {
+			try {
+				CompletionJournal journal = CompletionJournal.getInstance();
+				if (journal.hasPending()) {
+					journal.replay(); // In case the database came back without anyone noticing.
+				}
+				getInstance().refresh(DateManager.getWeek(DateManager.getTodayDate())[0]);
+			} catch (RuntimeException e) {
+				// An exception would otherwise cancel every future run of the scheduled executor.
+				logger.log(Level.SEVERE, "Unexpected exception when refreshing the offline snapshot.", e);
+			}
+		}, 0, minutes, TimeUnit.MINUTES);
+	}
+
+	/**
+	 * Stops the refreshing. Meant to be called when the servlet is destroyed.
+	 */
+	public static synchronized void stop() {
+
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	/**
+	 * Reads two weeks of Jobs from the database and writes them over the snapshot.
+	 * If the database can't be read, the snapshot is left as it is.
+	 *
+	 * @param firstDay The first day of the snapshot; usually the first day of this week.
+	 * @return True if the snapshot was refreshed.
+	 */
+	public boolean refresh(LocalDate firstDay) {
+
+		synchronized (refreshing) {
+			LocalDate lastDay = firstDay.plusDays(DAYS - 1);
+			List<Job> jobs;
+			try {
+				jobs = JobManager.getJobsByDateRange(firstDay, lastDay);
+			} catch (SQLException e) {
+				jobs = null;
+			}
+			if (jobs == null) {
+				logger.log(Level.INFO, "Could not refresh the offline snapshot; keeping the one from "
+						+ (mapped == null ? "never" : new Timestamp(mapped.writtenAt).toString()));
+				return false;
+			}
+
+			long start = System.nanoTime();
+			try {
+				write(firstDay, jobs);
+				mapped = map(file);
+			} catch (IOException e) {
+				logger.log(Level.SEVERE, "Could not write the offline snapshot " + file, e);
+				return false;
+			}
+			logger.log(Level.CONFIG, "Wrote the offline snapshot of " + jobs.size() + " jobs from " + firstDay + " to " + lastDay
+					+ " in " + (System.nanoTime() - start) / 1000000 + " ms");
+			return true;
+		}
+	}
+
+	/**
+	 * Gets the Jobs that shipped on each of a range of dates, as of the last refresh,
+	 * with any clicks that are still waiting in the CompletionJournal shown on top.
+	 *
+	 * @param startDate LocalDate object of the first ship date. (inclusive)
+	 * @param endDate LocalDate object of the last ship date. (inclusive)
+	 * @return A new List of new Job beans for every date in the range, in date order;
+	 * or null if the snapshot doesn't cover the whole range.
+	 */
+	public SortedMap<LocalDate, List<Job>> getJobsByDateRange(LocalDate startDate, LocalDate endDate) {
+
+		Mapped snapshot = mapped;
+		if (snapshot == null || startDate.isBefore(snapshot.firstDay()) || endDate.isAfter(snapshot.lastDay())) {
+			return null;
+		}
+		Map<String, Timestamp> pending = CompletionJournal.getInstance().getPending();
+		SortedMap<LocalDate, List<Job>> result = new TreeMap<LocalDate, List<Job>>();
+		for (LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
+			List<Job> jobList = snapshot.read(date);
+			for (Job job : jobList) {
+				for (OrderDetail detail : job.getOrderDetailList()) {
+					String key = CompletionJournal.key(detail.getOrderId(), detail.getId());
+					if (pending.containsKey(key)) {
+						detail.setItemCompleted(pending.get(key));
+					}
+				}
+			}
+			result.put(date, jobList);
+		}
+		return result;
+	}
+
+	/**
+	 * Writes the snapshot file: the header, the index of where each day starts, and then each day's Jobs.
+	 * It's written beside its final place and then moved in, so it's never found half-written.
+	 *
+	 * @param firstDay The first day of the snapshot.
+	 * @param jobs The Jobs, in the JobManager's order.
+	 */
+	private void write(LocalDate firstDay, List<Job> jobs) throws IOException {
+
+		// Each day is encoded on its own first, so the index can be written ahead of them.
+		List<List<Job>> days = new ArrayList<List<Job>>(DAYS);
+		for (int day = 0; day < DAYS; day++) {
+			days.add(new ArrayList<Job>());
+		}
+		for (Job job : jobs) {
+			days.get((int) (job.getShipDate().toLocalDate().toEpochDay() - firstDay.toEpochDay())).add(job);
+		}
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		DataOutputStream bodyOut = new DataOutputStream(body);
+		int[] offsets = new int[DAYS + 1];
+		int headerSize = 4 + 1 + 8 + 8 + 4 + 4 * (DAYS + 1);
+		for (int day = 0; day < DAYS; day++) {
+			offsets[day] = headerSize + bodyOut.size();
+			writeDay(bodyOut, days.get(day));
+		}
+		offsets[DAYS] = headerSize + bodyOut.size();
+
+		Path temp = Files.createTempFile(file.getParent(), ".snapshot", ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+				out.writeInt(MAGIC);
+				out.writeByte(VERSION);
+				out.writeLong(firstDay.toEpochDay());
+				out.writeLong(System.currentTimeMillis());
+				out.writeInt(DAYS);
+				for (int offset : offsets) {
+					out.writeInt(offset);
+				}
+				body.writeTo(out);
+			}
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private static void writeDay(DataOutputStream out, List<Job> jobs) throws IOException {
+
+		out.writeInt(jobs.size());
+		for (Job job : jobs) {
+			writeString(out, job.getJobId());
+			writeString(out, job.getCustomerName());
+			writeString(out, job.getCustomerPO());
+			writeTimestamp(out, job.getProofSpecDate());
+			writeTimestamp(out, job.getJobCompleted());
+			out.writeByte(job.getPrintingCompany() == null ? -1 : job.getPrintingCompany().getValue());
+			out.writeBoolean(job.isOverruns());
+			out.writeInt(job.getOrderDetailList().size());
+			for (OrderDetail detail : job.getOrderDetailList()) {
+				out.writeInt(detail.getId());
+				writeString(out, detail.getProductId());
+				writeString(out, detail.getProductDetail());
+				out.writeByte(detail.getPrintType() == null ? -1 : PrintType.getIntValue(detail.getPrintType()));
+				out.writeLong(detail.getNumColors());
+				out.writeLong(detail.getQuantity());
+				writeTimestamp(out, detail.getItemCompleted());
+				out.writeInt(detail.getProofNum());
+				writeTimestamp(out, detail.getProofDate());
+				writeString(out, detail.getThumbnail());
+			}
+		}
+	}
+
+	/**
+	 * Nulls are a length of -1, and anything else is its length followed by its UTF-8 bytes.
+	 */
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static void writeTimestamp(DataOutputStream out, Timestamp value) throws IOException {
+		out.writeLong(value == null ? NO_TIME : value.getTime());
+	}
+
+	/**
+	 * Maps the snapshot file and checks its header. The mapping stays valid after the channel is closed,
+	 * and even after a refresh moves a new file in over it.
+	 */
+	private static Mapped map(Path file) throws IOException {
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.limit() < 25 || buffer.getInt(0) != MAGIC || buffer.get(4) != VERSION) {
+				throw new IOException("Not an offline snapshot, or one from a newer version.");
+			}
+			return new Mapped(buffer, buffer.getLong(5), buffer.getLong(13), buffer.getInt(21));
+		}
+	}
+
+
+	/**
+	 * The snapshot file, mapped into memory.
+	 */
+	private static final class Mapped {
+
+		private final ByteBuffer buffer; // Never moved; each read works on its own duplicate.
+		private final long firstDay; // The first day, as an epoch day.
+		private final long writtenAt; // When it was written, in milliseconds.
+		private final int days; // How many days it covers.
+
+		Mapped(ByteBuffer buffer, long firstDay, long writtenAt, int days) {
+			this.buffer = buffer;
+			this.firstDay = firstDay;
+			this.writtenAt = writtenAt;
+			this.days = days;
+		}
+
+		LocalDate firstDay() {
+			return LocalDate.ofEpochDay(firstDay);
+		}
+
+		LocalDate lastDay() {
+			return LocalDate.ofEpochDay(firstDay + days - 1);
+		}
+
+		/**
+		 * Decodes one day's Jobs.
+		 *
+		 * @return A new List of new Job beans, each with a new List of items.
+		 */
+		List<Job> read(LocalDate date) {
+
+			int day = (int) (date.toEpochDay() - firstDay);
+			ByteBuffer in = buffer.duplicate();
+			in.position(in.getInt(25 + 4 * day));
+
+			int jobCount = in.getInt();
+			List<Job> jobList = new ArrayList<Job>(jobCount);
+			for (int i = 0; i < jobCount; i++) {
+				Job job = new Job();
+				job.setShipDate(DateManager.localDateToSqlDate(date));
+				job.setJobId(readString(in));
+				job.setCustomerName(readString(in));
+				job.setCustomerPO(readString(in));
+				job.setProofSpecDate(readTimestamp(in));
+				job.setJobCompleted(readTimestamp(in));
+				byte company = in.get();
+				job.setPrintingCompany(company < 0 ? null : PrintingCompany.getPrintingCompany(company));
+				job.setOverruns(in.get() != 0);
+
+				int itemCount = in.getInt();
+				List<OrderDetail> detailList = new ArrayList<OrderDetail>(itemCount);
+				for (int item = 0; item < itemCount; item++) {
+					OrderDetail detail = new OrderDetail();
+					detail.setId(in.getInt());
+					detail.setOrderId(job.getJobId());
+					detail.setProductId(readString(in));
+					detail.setProductDetail(readString(in));
+					byte printType = in.get();
+					detail.setPrintType(printType < 0 ? null : PrintType.getPrintType(printType));
+					detail.setNumColors(in.getLong());
+					detail.setQuantity(in.getLong());
+					detail.setItemCompleted(readTimestamp(in));
+					detail.setProofNum(in.getInt());
+					detail.setProofDate(readTimestamp(in));
+					detail.setThumbnail(readString(in));
+					detailList.add(detail);
+				}
+				job.setOrderDetailList(detailList);
+				jobList.add(job);
+			}
+			return jobList;
+		}
+
+		private static String readString(ByteBuffer in) {
+			int length = in.getInt();
+			if (length < 0) {
+				return null;
+			}
+			byte[] bytes = new byte[length];
+			in.get(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		private static Timestamp readTimestamp(ByteBuffer in) {
+			long value = in.getLong();
+			return value == NO_TIME ? null : new Timestamp(value);
+		}
+	}
+
+}
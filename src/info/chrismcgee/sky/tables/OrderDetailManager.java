@@ -7,6 +7,7 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -16,8 +17,15 @@ import com.vaadin.ui.CheckBox;
 import com.vaadin.ui.TreeTable;
 
 import info.chrismcgee.dbutil.ConnectionManager;
+import info.chrismcgee.dbutil.DBAccess;
 import info.chrismcgee.dbutil.DBName;
+import info.chrismcgee.dbutil.DBRouter;
 import info.chrismcgee.sky.enums.PrintType;
+import info.chrismcgee.sky.event.JobEvent.OrderDetailCompletedEvent;
+import info.chrismcgee.sky.event.JobEvent.OrderDetailCreatedEvent;
+import info.chrismcgee.sky.event.JobEvent.OrderDetailDeletedEvent;
+import info.chrismcgee.sky.event.JobEvent.OrderDetailUpdatedEvent;
+import info.chrismcgee.sky.event.JobEventStream;
 import info.chrismcgee.sky.scheduling.beans.Job;
 import info.chrismcgee.sky.scheduling.beans.OrderDetail;
 
@@ -29,7 +37,6 @@ import info.chrismcgee.sky.scheduling.beans.OrderDetail;
  */
 public class OrderDetailManager {
 
-	private static ResultSet rs = null; // The result set from a successful SQL query.
 	private final static Logger logger = Logger.getLogger(OrderDetailManager.class.getName()); // Logging!
 
 	/**
@@ -41,7 +48,6 @@ public class OrderDetailManager {
 	 */
 	public static boolean insert(OrderDetail bean) throws Exception {
 		
-		Connection conn = ConnectionManager.getInstance().getConnection(DBName.JOB_ORDERS); // The connection to the database.
 		
 		// The SQL statement that will be run on the DBMS.
 		String sql = "INSERT INTO OrderDetail ("
@@ -57,7 +63,8 @@ public class OrderDetailManager {
 				+ "thumbnail) "
 				+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 		ResultSet keys = null; // Stores the database-created primary key when the entry is created.
-		try ( // Try with resources block (requires Java 7+) for a prepared statement.
+		try ( // Try with resources block (requires Java 7+) for the connection and a prepared statement.
+				Connection conn = ConnectionManager.getInstance().getConnection(JobManager.findDatabase(bean.getOrderId()), DBAccess.READ_WRITE); // The connection to the database, which goes back to its pool afterwards.
 				PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
 				){
 			
@@ -81,6 +88,7 @@ public class OrderDetailManager {
 				keys.next(); // Move to the first key.
 				int newKey = keys.getInt(1); // Get the actual value of that key.
 				bean.setId(newKey); // Update the Java bean of this item so it has the same primary key.
+				JobEventStream.publish(new OrderDetailCreatedEvent(bean)); // Let any subscribers know about the new item.
 			} else {
 				logger.log(Level.CONFIG, "No rows affected");
 				return false; // In case there was a problem and no items were added to the database table.
@@ -105,8 +113,6 @@ public class OrderDetailManager {
 	 */
 	public static boolean update(OrderDetail bean) throws Exception {
 		
-		Connection conn = ConnectionManager.getInstance().getConnection(DBName.JOB_ORDERS); // The connection to the database.
-
 		// The SQL statement that will be run on the DBMS.
 		String sql =
 				"UPDATE OrderDetail SET "
@@ -122,7 +128,8 @@ public class OrderDetailManager {
 				+ "thumbnail = ? "
 				+ "WHERE id = ?";
 		
-		try ( // Try with resources block (requires Java 7+) for a prepared statement.
+		try ( // Try with resources block (requires Java 7+) for the connection and a prepared statement.
+				Connection conn = ConnectionManager.getInstance().getConnection(JobManager.findDatabase(bean.getOrderId()), DBAccess.READ_WRITE); // The connection to the database, which goes back to its pool afterwards.
 				PreparedStatement stmt = conn.prepareStatement(sql);
 				){
 			
@@ -142,6 +149,7 @@ public class OrderDetailManager {
 			int affected = stmt.executeUpdate(); // Store how many lines were affected by this query.
 			
 			if (affected == 1) { // Hopefully, only 1 line was updated.
+				JobEventStream.publish(new OrderDetailUpdatedEvent(bean)); // Let any subscribers know about the change.
 				return true; // If everything worked fine, then return true, indicating success!
 			} else {
 				return false; // In case there was a problem and no items were updated in the database table.
@@ -163,14 +171,14 @@ public class OrderDetailManager {
 	 */
 	public static boolean setItemCompleted(OrderDetail bean) throws Exception {
 		
-		Connection conn = ConnectionManager.getInstance().getConnection(DBName.JOB_ORDERS); // The connection to the database.
 		
 		// The SQL statement that will be run on the DBMS.
 		String sql =
 				"UPDATE OrderDetail SET item_completed = ? "
 				+ "WHERE id = ?";
 		
-		try ( // Try with resources block (requires Java 7+) for a prepared statement.
+		try ( // Try with resources block (requires Java 7+) for the connection and a prepared statement.
+				Connection conn = ConnectionManager.getInstance().getConnection(JobManager.findDatabase(bean.getOrderId()), DBAccess.READ_WRITE); // The connection to the database, which goes back to its pool afterwards.
 				PreparedStatement stmt = conn.prepareStatement(sql);
 				){
 			
@@ -182,6 +190,7 @@ public class OrderDetailManager {
 			int affected = stmt.executeUpdate(); // Store how many lines were affected by this query.
 			
 			if (affected == 1) { // Hopefully, only 1 line was updated.
+				JobEventStream.publish(new OrderDetailCompletedEvent(bean)); // Let any subscribers know about the change.
 				return true; // If everything worked fine, then return true, indicating success!
 			} else {
 				return false; // In case there was a problem and the item was not updated in the database table.
@@ -197,6 +206,8 @@ public class OrderDetailManager {
 	/**
 	 * Standard "delete" method for deleting a job's item from the OrderDetail table.
 	 * This version takes an id (primary key) of the item, so only 1 item will be deleted.
+	 * The ids are only unique within each yearly database, so this only looks in the current year's;
+	 * use delete(String) to delete the items of an older Job.
 	 * 
 	 * @param id The primary key (id) of the job's item.
 	 * @return boolean True if the procedure was successful; false if not.
@@ -204,12 +215,12 @@ public class OrderDetailManager {
 	 */
 	public static boolean delete(int id) throws Exception {
 		
-		Connection conn = ConnectionManager.getInstance().getConnection(DBName.JOB_ORDERS); // The connection to the database.
 		
 		// The SQL statement that will be run on the DBMS.
 		String sql = "DELETE FROM OrderDetail WHERE id = ?";
 		
-		try ( // Try with resources block (requires Java 7+) for a prepared statement.
+		try ( // Try with resources block (requires Java 7+) for the connection and a prepared statement.
+				Connection conn = ConnectionManager.getInstance().getConnection(DBName.JOB_ORDERS, DBAccess.READ_WRITE); // The connection to the database, which goes back to its pool afterwards.
 				PreparedStatement stmt = conn.prepareStatement(sql);
 				){
 			
@@ -220,6 +231,7 @@ public class OrderDetailManager {
 			int affected = stmt.executeUpdate(); // Store how many lines were affected by this query.
 			
 			if (affected == 1) { // Hopefully, only 1 line was deleted.
+				JobEventStream.publish(new OrderDetailDeletedEvent(null, id)); // Let any subscribers know it's gone.
 				return true; // If everything worked fine, then return true, indicating success!
 			} else {
 				return false; // In case there was a problem and the item was not removed from the database table.
@@ -242,12 +254,12 @@ public class OrderDetailManager {
 	 */
 	public static boolean delete(String orderID) throws Exception {
 		
-		Connection conn = ConnectionManager.getInstance().getConnection(DBName.JOB_ORDERS); // The connection to the database.
 		
 		// The SQL statement that will be run on the DBMS.
 		String sql = "DELETE FROM OrderDetail WHERE order_id = ?";
 		
-		try ( // Try with resources block (requires Java 7+) for a prepared statement.
+		try ( // Try with resources block (requires Java 7+) for the connection and a prepared statement.
+				Connection conn = ConnectionManager.getInstance().getConnection(JobManager.findDatabase(orderID), DBAccess.READ_WRITE); // The connection to the database, which goes back to its pool afterwards.
 				PreparedStatement stmt = conn.prepareStatement(sql);
 				){
 			
@@ -258,6 +270,7 @@ public class OrderDetailManager {
 			int affected = stmt.executeUpdate(); // Store how many lines were affected by this query.
 			
 			if (affected >= 1) { // Hopefully, at least 1 line was deleted.
+				JobEventStream.publish(new OrderDetailDeletedEvent(orderID, 0)); // Let any subscribers know they're gone.
 				return true; // If everything worked fine, then return true, indicating success!
 			}
 			return false; // In case there was a problem no items were removed from the database table.
@@ -278,14 +291,15 @@ public class OrderDetailManager {
 	 */
 	public static List<OrderDetail> getRows(String jobId) throws SQLException {
 		
-		Connection conn = ConnectionManager.getInstance().getConnection(DBName.JOB_ORDERS); // The connection to the database.
+		ResultSet rs = null; // The result set from a successful SQL query.
 		
 		// The SQL statement that will be run on the DBMS.
 		String sql = "SELECT * FROM OrderDetail WHERE order_id = ?";
 		// The list of OrderDetail beans associated with the Order Number that will be returned.
 		List<OrderDetail> beanList = new ArrayList<OrderDetail>();
 		
-		try ( // Try with resources block (requires Java 7+) for a prepared statement.
+		try ( // Try with resources block (requires Java 7+) for the connection and a prepared statement.
+				Connection conn = ConnectionManager.getInstance().getConnection(JobManager.findDatabase(jobId)); // The connection to the database, which goes back to its pool afterwards.
 				PreparedStatement stmt = conn.prepareStatement(sql);
 				){
 
@@ -299,20 +313,7 @@ public class OrderDetailManager {
 			// Go through each result in the ResultSet (row) and create an OrderDetail bean from it,
 			// then add each bean to the bean List.
 			while (rs.next()) {
-				OrderDetail bean = new OrderDetail();
-				bean.setId(rs.getInt("id"));
-				bean.setOrderId(jobId);
-				bean.setProductId(rs.getString("product_id"));
-				bean.setProductDetail(rs.getString("product_detail"));
-				bean.setPrintType(PrintType.getPrintType(rs.getInt("print_type")));
-				bean.setNumColors(rs.getLong("num_colors"));
-				bean.setQuantity(rs.getLong("quantity"));
-				bean.setItemCompleted(rs.getTimestamp("item_completed"));
-				bean.setProofNum(rs.getInt("proof_num"));
-				bean.setProofDate(rs.getTimestamp("proof_date"));
-				bean.setThumbnail(rs.getString("thumbnail"));
-				
-				beanList.add(bean); // Add each bean to the bean List.
+				beanList.add(readBean(rs)); // Add each bean to the bean List.
 			}
 			
 			return beanList; // If everything worked fine, then return the List of OrderDetail beans, indicating success!
@@ -327,6 +328,110 @@ public class OrderDetailManager {
 		}
 	}
 
+	/**
+	 * Gets one page of the items whose product starts with some text, from every order,
+	 * ordered by order number and then by id. Each page seeks straight past the last item of the page
+	 * before it on the (order_id, id) index, so every page costs the same no matter how far in it is.
+	 * 
+	 * @param productPrefix Only items whose product starts with this, or null for all.
+	 * @param token The token from the page before, or null for the first page.
+	 * @param pageSize The most items on the page.
+	 * @return The Page of items; or null if there was an error reading from the database.
+	 * @throws SQLException
+	 * @throws IllegalArgumentException If the token isn't one that came from this method.
+	 */
+	public static Page<OrderDetail> getItemPage(String productPrefix, String token, int pageSize) throws SQLException {
+		
+		PageToken after = token == null ? null : PageToken.readOrderDetail(token); // The last item of the page before.
+		
+		// The SQL statement that will be run on the DBMS. The filters are only added when they're used.
+		StringBuilder sql = new StringBuilder("SELECT * FROM OrderDetail WHERE 1 = 1 ");
+		if (productPrefix != null) {
+			sql.append("AND product_id LIKE ? ESCAPE '!' ");
+		}
+		if (after != null) {
+			sql.append("AND (order_id > ? OR (order_id = ? AND id > ?)) ");
+		}
+		sql.append("ORDER BY order_id, id "
+				+ "OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY");
+		
+		try {
+			// Every yearly database is asked for a whole page at the same time, since any of them could hold
+			// the next items in order; then their pages are merged and cut back down to one.
+			DBRouter router = DBRouter.getInstance();
+			List<OrderDetail> beanList = new ArrayList<OrderDetail>();
+			for (List<OrderDetail> part : router.fanOut(router.all(DBName.JOB_ORDERS), slice -> {
+				try ( // Try with resources block (requires Java 7+) for the connection and a prepared statement.
+						Connection conn = ConnectionManager.getInstance().getConnection(slice.getDatabase(), DBAccess.READ_ONLY); // The connection to the database, which goes back to its pool afterwards.
+						PreparedStatement stmt = conn.prepareStatement(sql.toString(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+						){
+	
+					// Put the filter and the last item into the PreparedStatement object,
+					// in the same order they were added to the SQL statement.
+					int index = 1;
+					if (productPrefix != null) {
+						stmt.setString(index++, productPrefix.replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%");
+					}
+					if (after != null) {
+						stmt.setString(index++, after.id);
+						stmt.setString(index++, after.id);
+						stmt.setInt(index++, after.detailId);
+					}
+					stmt.setInt(index++, pageSize + 1); // One extra, just to find out if there's another page.
+					
+					List<OrderDetail> rows = new ArrayList<OrderDetail>(pageSize + 1);
+					try (ResultSet rs = stmt.executeQuery()) {
+						while (rs.next()) {
+							rows.add(readBean(rs));
+						}
+					}
+					return rows;
+				}
+			})) {
+				beanList.addAll(part);
+			}
+			beanList.sort(Comparator.comparing(OrderDetail::getOrderId).thenComparingInt(OrderDetail::getId));
+			while (beanList.size() > pageSize + 1) {
+				beanList.remove(beanList.size() - 1);
+			}
+			
+			String nextToken = null;
+			if (beanList.size() > pageSize) {
+				beanList.remove(pageSize);
+				nextToken = PageToken.after(beanList.get(pageSize - 1));
+			}
+			
+			return new Page<OrderDetail>(beanList, nextToken);
+			
+		} catch (SQLException e) { // If there was an error trying to read from the database table.
+			logger.log(Level.SEVERE, "Error trying to read a page of items from the database table.", e);
+			return null; // Just return null, which indicates a failure.
+		}
+	}
+
+	/**
+	 * Turns the current row of an OrderDetail query into a bean.
+	 * 
+	 * @param rs The ResultSet, positioned on the row.
+	 * @return The OrderDetail bean.
+	 * @throws SQLException
+	 */
+	private static OrderDetail readBean(ResultSet rs) throws SQLException {
+		OrderDetail bean = new OrderDetail();
+		bean.setId(rs.getInt("id"));
+		bean.setOrderId(rs.getString("order_id"));
+		bean.setProductId(rs.getString("product_id"));
+		bean.setProductDetail(rs.getString("product_detail"));
+		bean.setPrintType(PrintType.getPrintType(rs.getInt("print_type")));
+		bean.setNumColors(rs.getLong("num_colors"));
+		bean.setQuantity(rs.getLong("quantity"));
+		bean.setItemCompleted(rs.getTimestamp("item_completed"));
+		bean.setProofNum(rs.getInt("proof_num"));
+		bean.setProofDate(rs.getTimestamp("proof_date"));
+		bean.setThumbnail(rs.getString("thumbnail"));
+		return bean;
+	}
+
 	public static void orderDetailCheckboxChanged(ValueChangeEvent event, OrderDetail orderDetail, TreeTable treeTable, Job job) {
 		
 		// True if the change was an un-checked box to a checked box, false if the other way 'round.
@@ -0,0 +1,51 @@
+package info.chrismcgee.sky.tables;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author Marketing
+ *
+ * One page of the results of a keyset-paginated query, along with the token that picks up
+ * right where it left off. Asking for the next page with that token costs the same
+ * no matter how far into the results it is, since the database seeks straight to it on its index
+ * instead of counting its way past every row before it.
+ *
+ * @param <T> The beans on the page.
+ */
+public class Page<T> implements Serializable {
+
+	/**
+	 * Serialization!
+	 */
+	private static final long serialVersionUID = 3427954604389264219L;
+
+	private final List<T> items;
+	private final String nextToken;
+
+	/**
+	 * @param items The beans on the page, in order.
+	 * @param nextToken The token for the next page, or null if this is the last one.
+	 */
+	public Page(List<T> items, String nextToken) {
+		this.items = Collections.unmodifiableList(items);
+		this.nextToken = nextToken;
+	}
+
+	public List<T> getItems() {
+		return items;
+	}
+
+	/**
+	 * @return The token to pass back for the next page, or null if this is the last one.
+	 */
+	public String getNextToken() {
+		return nextToken;
+	}
+
+	public boolean hasNext() {
+		return nextToken != null;
+	}
+
+}
@@ -0,0 +1,119 @@
+package info.chrismcgee.sky.tables;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.Base64;
+
+import info.chrismcgee.sky.scheduling.beans.Job;
+import info.chrismcgee.sky.scheduling.beans.OrderDetail;
+
+/**
+ * @author Marketing
+ *
+ * The sort key of the last row of a Page, packed into a URL-safe String so it can be handed to the
+ * browser and back. The next page starts with the first row after that key.
+ * Jobs are sorted by (ship_date, proof_spec_date, job_id) and OrderDetail items by (order_id, id).
+ */
+final class PageToken {
+
+	private static final byte JOB = 'J';
+	private static final byte ORDER_DETAIL = 'O';
+
+	final long shipDay; // The Job's ship date, as an epoch day.
+	final Timestamp proofSpecDate; // The Job's proof/spec date, which may be null.
+	final String id; // The job number (of the Job, or of the item's order).
+	final int detailId; // The item's id.
+
+	private PageToken(long shipDay, Timestamp proofSpecDate, String id, int detailId) {
+		this.shipDay = shipDay;
+		this.proofSpecDate = proofSpecDate;
+		this.id = id;
+		this.detailId = detailId;
+	}
+
+	/**
+	 * @param last The last Job on a page.
+	 * @return The token for the page after it.
+	 */
+	static String after(Job last) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeByte(JOB);
+			out.writeLong(last.getShipDate().toLocalDate().toEpochDay());
+			out.writeBoolean(last.getProofSpecDate() != null);
+			if (last.getProofSpecDate() != null) {
+				out.writeLong(last.getProofSpecDate().getTime());
+				out.writeInt(last.getProofSpecDate().getNanos());
+			}
+			out.writeUTF(last.getJobId());
+		} catch (IOException e) {
+			throw new IllegalStateException(e); // Never happens with a ByteArrayOutputStream.
+		}
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+	}
+
+	/**
+	 * @param last The last OrderDetail item on a page.
+	 * @return The token for the page after it.
+	 */
+	static String after(OrderDetail last) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeByte(ORDER_DETAIL);
+			out.writeUTF(last.getOrderId());
+			out.writeInt(last.getId());
+		} catch (IOException e) {
+			throw new IllegalStateException(e); // Never happens with a ByteArrayOutputStream.
+		}
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+	}
+
+	/**
+	 * Unpacks a token of Jobs.
+	 *
+	 * @param token The token.
+	 * @return The key it holds.
+	 * @throws IllegalArgumentException If it isn't a Job token.
+	 */
+	static PageToken readJob(String token) {
+		try (DataInputStream in = open(token, JOB)) {
+			long shipDay = in.readLong();
+			Timestamp proofSpecDate = null;
+			if (in.readBoolean()) {
+				proofSpecDate = new Timestamp(in.readLong());
+				proofSpecDate.setNanos(in.readInt());
+			}
+			return new PageToken(shipDay, proofSpecDate, in.readUTF(), 0);
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Not a page token: " + token);
+		}
+	}
+
+	/**
+	 * Unpacks a token of OrderDetail items.
+	 *
+	 * @param token The token.
+	 * @return The key it holds.
+	 * @throws IllegalArgumentException If it isn't an OrderDetail token.
+	 */
+	static PageToken readOrderDetail(String token) {
+		try (DataInputStream in = open(token, ORDER_DETAIL)) {
+			return new PageToken(0, null, in.readUTF(), in.readInt());
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Not a page token: " + token);
+		}
+	}
+
+	private static DataInputStream open(String token, byte kind) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(token)));
+		if (in.readByte() != kind) {
+			throw new IOException("Wrong kind of token.");
+		}
+		return in;
+	}
+
+}
@@ -15,7 +15,6 @@ import info.chrismcgee.sky.scheduling.beans.User;
 public class UserManager {
 
 	private final static Logger logger = Logger.getLogger(OrderDetailManager.class.getName()); // Logging!
-	private static ResultSet rs = null;
 
 	/**
 	 * Standard retrieval method that gets a single User from the database.
@@ -26,12 +25,13 @@ public class UserManager {
 	 */
 	public static User getRow(String userName) throws SQLException {
 
-		Connection conn = ConnectionManager.getInstance().getConnection(DBName.LOGIN);
+		ResultSet rs = null; // The result set from a successful SQL query.
 		
 		// The SQL statement that will be run on the DBMS.
 		String sql = "SELECT * FROM Login WHERE user_name = ?";
 		
-		try ( // Try with resources block (requires Java 7+) for a prepared statement.
+		try ( // Try with resources block (requires Java 7+) for the connection and a prepared statement.
+				Connection conn = ConnectionManager.getInstance().getConnection(DBName.LOGIN); // The connection to the database, which goes back to its pool afterwards.
 				PreparedStatement stmt = conn.prepareStatement(sql);
 				){
 
@@ -72,7 +72,6 @@ public class UserManager {
 	 */
 	public static boolean insert(User bean) throws Exception {
 
-		Connection conn = ConnectionManager.getInstance().getConnection(DBName.LOGIN);
 
 		// The SQL statement that will be run on the DBMS.
 		String sql = "INSERT INTO Login ("
@@ -81,7 +80,8 @@ public class UserManager {
 				+ "access_level) "
 				+ "VALUES (?, ?, ?)";
 
-		try ( // Try with resources block (requires Java 7+) for a prepared statement.
+		try ( // Try with resources block (requires Java 7+) for the connection and a prepared statement.
+				Connection conn = ConnectionManager.getInstance().getConnection(DBName.LOGIN); // The connection to the database, which goes back to its pool afterwards.
 				PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
 				){
 			
@@ -107,7 +107,6 @@ public class UserManager {
 	 */
 	public static boolean update(User bean) throws Exception {
 
-		Connection conn = ConnectionManager.getInstance().getConnection(DBName.LOGIN);
 
 		// The SQL statement that will be run on the DBMS.
 		String sql =
@@ -117,7 +116,8 @@ public class UserManager {
 				+ "access_level = ? "
 				+ "WHERE user_name = ?";
 		
-		try ( // Try with resources block (requires Java 7+) for a prepared statement.
+		try ( // Try with resources block (requires Java 7+) for the connection and a prepared statement.
+				Connection conn = ConnectionManager.getInstance().getConnection(DBName.LOGIN); // The connection to the database, which goes back to its pool afterwards.
 				PreparedStatement stmt = conn.prepareStatement(sql);
 				){
 			
@@ -151,12 +151,12 @@ public class UserManager {
 	 */
 	public static boolean delete(String userName) {
 
-		Connection conn = ConnectionManager.getInstance().getConnection(DBName.LOGIN);
 
 		// The SQL statement that will be run on the DBMS.
 		String sql = "DELETE FROM Login WHERE user_name = ?";
 
-		try ( // Try with resources block (requires Java 7+) for a prepared statement.
+		try ( // Try with resources block (requires Java 7+) for the connection and a prepared statement.
+				Connection conn = ConnectionManager.getInstance().getConnection(DBName.LOGIN); // The connection to the database, which goes back to its pool afterwards.
 				PreparedStatement stmt = conn.prepareStatement(sql);
 				){
 			
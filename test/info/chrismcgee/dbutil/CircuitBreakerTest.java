@@ -0,0 +1,56 @@
+package info.chrismcgee.dbutil;
+
+import java.sql.SQLException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of when the CircuitBreaker opens, when it's due for another try, and when it closes again.
+ */
+public class CircuitBreakerTest {
+
+	@Test
+	public void opensAfterFailuresInARow() throws SQLException {
+		CircuitBreaker breaker = new CircuitBreaker("test", 3, 60000, 60000);
+		breaker.failure();
+		breaker.failure();
+		breaker.check();
+		assertFalse(breaker.isOpen());
+
+		breaker.failure();
+		assertTrue(breaker.isOpen());
+		assertFalse(breaker.isRetryDue());
+		try {
+			breaker.check();
+			fail("Didn't fail fast.");
+		} catch (SQLException e) {
+			assertEquals("08001", e.getSQLState());
+		}
+	}
+
+	@Test
+	public void aSuccessStartsTheCountAgain() {
+		CircuitBreaker breaker = new CircuitBreaker("test", 2, 60000, 60000);
+		breaker.failure();
+		assertFalse(breaker.success()); // It wasn't open.
+		breaker.failure();
+		assertFalse(breaker.isOpen());
+	}
+
+	@Test
+	public void aSuccessClosesIt() throws SQLException {
+		CircuitBreaker breaker = new CircuitBreaker("test", 1, 0, 0);
+		breaker.failure();
+		assertTrue(breaker.isRetryDue());
+		assertTrue(breaker.success());
+		assertFalse(breaker.isOpen());
+		assertFalse(breaker.isRetryDue());
+		breaker.check();
+	}
+
+}
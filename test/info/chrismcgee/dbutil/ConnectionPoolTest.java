@@ -0,0 +1,151 @@
+package info.chrismcgee.dbutil;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests that the ConnectionPool reuses connections that were given back in working order,
+ * throws out the ones that failed with a connection error (even while reading a ResultSet),
+ * and keeps its CircuitBreaker up to date. The connections are stand-ins, so no database is needed.
+ */
+public class ConnectionPoolTest {
+
+	private final List<FakeConnection> opened = new ArrayList<FakeConnection>();
+	private CircuitBreaker breaker;
+	private ConnectionPool pool;
+
+	@Before
+	public void newPool() {
+		opened.clear();
+		breaker = new CircuitBreaker("test", 2, 0, 0);
+		pool = new ConnectionPool("test", () -> {
+			FakeConnection fake = new FakeConnection();
+			opened.add(fake);
+			return fake.proxy;
+		}, 2, 1000, 60000, 1, breaker);
+	}
+
+	/**
+	 * A stand-in for a real connection, whose ResultSets fail with a connection error once it's been cut off.
+	 */
+	private static final class FakeConnection {
+
+		private boolean closed = false;
+		private boolean cutOff = false;
+		private final Connection proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+				new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+			switch (method.getName()) {
+			case "close": closed = true; return null;
+			case "isClosed": return closed;
+			case "isValid": return !cutOff;
+			case "getAutoCommit": return true;
+			case "prepareStatement": return statement();
+			default: return null;
+			}
+		});
+
+		private PreparedStatement statement() {
+			return (PreparedStatement) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+					new Class<?>[] {PreparedStatement.class}, (proxy, method, args) -> {
+				return "executeQuery".equals(method.getName()) ? resultSet() : null;
+			});
+		}
+
+		private ResultSet resultSet() {
+			return (ResultSet) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+					new Class<?>[] {ResultSet.class}, (proxy, method, args) -> {
+				if ("next".equals(method.getName())) {
+					if (cutOff) {
+						throw new SQLException("Connection reset", "08S01");
+					}
+					return false;
+				}
+				return null;
+			});
+		}
+	}
+
+	@Test
+	public void workingConnectionsAreReused() throws SQLException {
+		pool.borrow().close();
+		pool.borrow().close();
+		assertEquals(1, opened.size());
+		assertFalse(opened.get(0).closed);
+	}
+
+	@Test
+	public void aConnectionErrorWhileReadingThrowsItOut() throws SQLException {
+		try (Connection conn = pool.borrow();
+				PreparedStatement stmt = conn.prepareStatement("SELECT 1");
+				ResultSet rs = stmt.executeQuery()) {
+			opened.get(0).cutOff = true;
+			rs.next();
+			fail("The connection error was swallowed.");
+		} catch (SQLException e) {
+			assertEquals("08S01", e.getSQLState());
+		}
+		assertTrue(opened.get(0).closed);
+
+		pool.borrow().close();
+		assertEquals(2, opened.size()); // A new one, rather than the broken one.
+	}
+
+	@Test
+	public void aCleanGiveBackResetsTheBreaker() throws SQLException {
+		Connection conn = pool.borrow();
+		breaker.failure(); // Some other connection was lost.
+		conn.close();
+		breaker.failure();
+		assertFalse(breaker.isOpen()); // Not two failures in a row.
+		breaker.failure();
+		assertTrue(breaker.isOpen());
+	}
+
+	@Test
+	public void aCleanGiveBackClosesAnOpenBreaker() throws SQLException {
+		Connection conn = pool.borrow();
+		breaker.failure();
+		breaker.failure();
+		assertTrue(pool.isDown());
+		try {
+			pool.borrow();
+			fail("Borrowed from a database that's down.");
+		} catch (SQLException e) {
+			assertEquals("08001", e.getSQLState());
+		}
+
+		conn.close();
+		assertFalse(pool.isDown());
+		assertTrue(pool.maintain(Long.MAX_VALUE)); // Tells the ConnectionManager that the database is back, once.
+		assertFalse(pool.maintain(Long.MAX_VALUE));
+	}
+
+	@Test
+	public void closedStandInsCantBeUsed() throws SQLException {
+		Connection conn = pool.borrow();
+		conn.close();
+		conn.close(); // Closing again does nothing.
+		assertTrue(conn.isClosed());
+		try {
+			conn.prepareStatement("SELECT 1");
+			fail("Used a connection that was given back.");
+		} catch (SQLException e) {
+			// Expected.
+		}
+		assertEquals(1, opened.size());
+	}
+
+}
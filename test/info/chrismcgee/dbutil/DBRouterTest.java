@@ -0,0 +1,166 @@
+package info.chrismcgee.dbutil;
+
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of which yearly database a ship date is routed to, especially across New Year's Day.
+ */
+public class DBRouterTest {
+
+	private static final LocalDate HOLD_DATE = LocalDate.of(9999, 12, 31);
+	private static final LocalDate PROOF_DATE = LocalDate.of(9999, 12, 30);
+
+	private static DBRouter routerOn(String years, LocalDate today, int aheadDays) {
+		ZoneId zone = ZoneId.systemDefault();
+		return new DBRouter(years, null, aheadDays, 2, Clock.fixed(today.atStartOfDay(zone).toInstant(), zone));
+	}
+
+	private static String db(DBRouter router, LocalDate date) {
+		return router.getDatabase(DBName.JOB_ORDERS, date);
+	}
+
+	@Test
+	public void sentinelDatesStayPutOverNewYear() {
+		for (int aheadDays : new int[] {0, 92}) {
+			DBRouter before = routerOn("2014+", LocalDate.of(2016, 12, 31), aheadDays);
+			DBRouter after = routerOn("2014+", LocalDate.of(2017, 1, 1), aheadDays);
+			assertEquals("job_orders_2014", db(before, HOLD_DATE));
+			assertEquals("job_orders_2014", db(after, HOLD_DATE));
+			assertEquals("job_orders_2014", db(before, PROOF_DATE));
+			assertEquals("job_orders_2014", db(after, PROOF_DATE));
+		}
+	}
+
+	@Test
+	public void theSentinelYearCanBeChosen() {
+		ZoneId zone = ZoneId.systemDefault();
+		DBRouter router = new DBRouter("2014,2015,2016", 2015, 0, 2, Clock.fixed(LocalDate.of(2017, 6, 1).atStartOfDay(zone).toInstant(), zone));
+		assertEquals("job_orders_2015", db(router, HOLD_DATE));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void theSentinelYearMustBeListed() {
+		new DBRouter("2014,2015", 2013, 0, 2, Clock.systemDefaultZone());
+	}
+
+	@Test
+	public void aJanuaryJobEnteredInDecemberKeepsItsDatabase() {
+		LocalDate january = LocalDate.of(2017, 1, 5);
+		DBRouter december = routerOn("2014+", LocalDate.of(2016, 12, 1), 92);
+		DBRouter newYear = routerOn("2014+", LocalDate.of(2017, 1, 2), 92);
+		assertEquals("job_orders_2017", db(december, january));
+		assertEquals("job_orders_2017", db(newYear, january));
+		assertEquals("job_orders_2016", db(december, LocalDate.of(2016, 12, 30)));
+		assertEquals("job_orders_2016", db(newYear, LocalDate.of(2016, 12, 30)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void aYearWithoutADatabaseIsTurnedDown() {
+		db(routerOn("2014+", LocalDate.of(2016, 12, 31), 0), LocalDate.of(2017, 1, 5));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void aYearAfterAFixedListIsTurnedDown() {
+		db(routerOn("2014,2015", LocalDate.of(2015, 6, 1), 0), LocalDate.of(2016, 1, 1));
+	}
+
+	@Test
+	public void earlyAndSkippedYearsGoInTheYearBefore() {
+		DBRouter router = routerOn("2014,2016", LocalDate.of(2016, 6, 1), 0);
+		assertEquals("job_orders_2014", db(router, LocalDate.of(2010, 3, 1)));
+		assertEquals("job_orders_2014", db(router, LocalDate.of(2015, 3, 1)));
+		assertEquals("job_orders_2016", db(router, LocalDate.of(2016, 3, 1)));
+	}
+
+	@Test
+	public void oneDatabaseHoldsEverything() {
+		DBRouter router = routerOn("2014", LocalDate.of(2017, 6, 1), 0);
+		assertEquals("job_orders_2014", db(router, LocalDate.of(2017, 6, 1)));
+		assertEquals("job_orders_2014", db(router, HOLD_DATE));
+		List<DBRouter.Slice> slices = router.all(DBName.JOB_ORDERS);
+		assertEquals(1, slices.size());
+		assertEquals(LocalDate.MAX, slices.get(0).getEndDate());
+	}
+
+	@Test
+	public void rangesAreSplitAtNewYear() {
+		DBRouter router = routerOn("2014+", LocalDate.of(2017, 1, 1), 0);
+		List<DBRouter.Slice> slices = router.split(DBName.JOB_ORDERS, LocalDate.of(2016, 12, 28), LocalDate.of(2017, 1, 3));
+		assertEquals(2, slices.size());
+		assertEquals("job_orders_2016 2016-12-28 to 2016-12-31", slices.get(0).toString());
+		assertEquals("job_orders_2017 2017-01-01 to 2017-01-03", slices.get(1).toString());
+	}
+
+	@Test
+	public void everythingEndsWithTheSentinelDates() {
+		DBRouter router = routerOn("2014+", LocalDate.of(2016, 6, 1), 0);
+		List<DBRouter.Slice> slices = router.split(DBName.JOB_ORDERS, LocalDate.MIN, LocalDate.MAX);
+		assertEquals(4, slices.size());
+		assertEquals(LocalDate.MIN, slices.get(0).getStartDate());
+		assertEquals("job_orders_2016 2016-01-01 to 2016-12-31", slices.get(2).toString());
+		assertEquals("job_orders_2014 9999-12-30 to 9999-12-31", slices.get(3).toString());
+
+		slices = router.split(DBName.JOB_ORDERS, HOLD_DATE, HOLD_DATE);
+		assertEquals(1, slices.size());
+		assertEquals("job_orders_2014", slices.get(0).getDatabase());
+	}
+
+	@Test
+	public void allHasEachDatabaseOnce() {
+		DBRouter router = routerOn("2014+", LocalDate.of(2016, 6, 1), 0);
+		List<DBRouter.Slice> slices = router.all(DBName.JOB_ORDERS);
+		assertEquals(3, slices.size());
+		assertEquals("job_orders_2014", slices.get(0).getDatabase());
+		assertEquals("job_orders_2016", slices.get(2).getDatabase());
+	}
+
+	@Test
+	public void backwardsRangesAreEmpty() {
+		DBRouter router = routerOn("2014+", LocalDate.of(2016, 6, 1), 0);
+		assertEquals(0, router.split(DBName.JOB_ORDERS, LocalDate.of(2016, 2, 1), LocalDate.of(2016, 1, 1)).size());
+	}
+
+	@Test
+	public void otherDatabasesAreNeverSplit() {
+		DBRouter router = routerOn("2014+", LocalDate.of(2016, 6, 1), 0);
+		assertEquals("logins", router.getDatabase(DBName.LOGIN, LocalDate.of(2015, 1, 1)));
+		assertEquals(1, router.all(DBName.LOGIN).size());
+	}
+
+	@Test
+	public void fanOutKeepsTheSlicesInOrder() throws SQLException {
+		DBRouter router = routerOn("2014+", LocalDate.of(2016, 6, 1), 0);
+		List<String> databases = router.fanOut(router.split(DBName.JOB_ORDERS, LocalDate.MIN, LocalDate.MAX), slice -> {
+			if (slice.getDatabase().endsWith("2014") && slice.getStartDate().getYear() < 9999) {
+				try {
+					Thread.sleep(50); // Finish last, but still come first.
+				} catch (InterruptedException e) {
+					throw new SQLException(e);
+				}
+			}
+			return slice.getDatabase();
+		});
+		assertEquals(Arrays.asList("job_orders_2014", "job_orders_2015", "job_orders_2016", "job_orders_2014"), databases);
+	}
+
+	@Test(expected = SQLException.class)
+	public void fanOutPassesOnFailures() throws SQLException {
+		DBRouter router = routerOn("2014+", LocalDate.of(2016, 6, 1), 0);
+		router.fanOut(router.all(DBName.JOB_ORDERS), slice -> {
+			if (slice.getDatabase().endsWith("2015")) {
+				throw new SQLException("No such database");
+			}
+			return slice.getDatabase();
+		});
+	}
+
+}
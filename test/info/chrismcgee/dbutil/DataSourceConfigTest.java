@@ -0,0 +1,100 @@
+package info.chrismcgee.dbutil;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests that the datasource settings have no built-in server or login, and that a reload
+ * only ever swaps in settings that can be used.
+ */
+public class DataSourceConfigTest {
+
+	private File file;
+
+	@Before
+	public void newFile() throws IOException {
+		file = File.createTempFile("datasource", ".properties");
+		System.setProperty("sky.datasource", file.getPath());
+	}
+
+	@After
+	public void deleteFile() {
+		System.clearProperty("sky.datasource");
+		file.delete();
+	}
+
+	private void write(long modified, String... lines) throws IOException {
+		Files.write(file.toPath(), Arrays.asList(lines));
+		Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(modified));
+	}
+
+	@Test
+	public void nothingIsMadeUp() throws IOException {
+		write(1000, "type = HSQLDB", "pool.size = 3");
+		DataSourceConfig config = DataSourceConfig.load();
+		assertFalse(config.isValid());
+		assertTrue(config.getProblem().contains("HSQLDB.url"));
+		assertTrue(config.getProblem().contains("username"));
+		assertTrue(config.getProblem().contains("password"));
+		assertNull(config.getUrl(DBType.MSSQL));
+		assertNull(config.getUsername());
+		assertNull(config.getPassword());
+		assertEquals(3, config.getPoolSize("job_orders_2016"));
+	}
+
+	@Test
+	public void anEmptyPasswordIsStillAPassword() throws IOException {
+		write(1000, "type = HSQLDB", "HSQLDB.url = jdbc:hsqldb:mem:", "username = SA", "password =");
+		DataSourceConfig config = DataSourceConfig.load();
+		assertTrue(config.isValid());
+		assertEquals("", config.getPassword());
+	}
+
+	@Test
+	public void badReloadsKeepTheOldSettings() throws IOException {
+		write(1000, "type = HSQLDB", "HSQLDB.url = jdbc:hsqldb:mem:", "username = SA", "password =", "pool.size = 3");
+		ConnectionManager manager = new ConnectionManager();
+		assertEquals(3, manager.getConfig().getPoolSize("a"));
+
+		write(2000, "type = HSQLDB", "HSQLDB.url = jdbc:hsqldb:mem:", "pool.size = 5"); // Lost its login.
+		assertFalse(manager.reload());
+		assertEquals(3, manager.getConfig().getPoolSize("a"));
+		assertEquals("SA", manager.getConfig().getUsername());
+		assertFalse(manager.getConfig().isStale()); // Not read again until it changes again.
+
+		file.delete();
+		assertFalse(manager.reload());
+		assertEquals("SA", manager.getConfig().getUsername());
+
+		write(3000, "type = HSQLDB", "HSQLDB.url = jdbc:hsqldb:mem:", "username = SA", "password =", "pool.size = 5");
+		assertTrue(manager.reload());
+		assertEquals(5, manager.getConfig().getPoolSize("a"));
+	}
+
+	@Test
+	public void noConnectionsWithoutSettings() throws IOException {
+		write(1000, "type = HSQLDB");
+		ConnectionManager manager = new ConnectionManager();
+		try {
+			manager.getConnection("job_orders_2016").close();
+			fail("Connected without a server or a login.");
+		} catch (SQLException e) {
+			assertTrue(e.getMessage().contains("missing"));
+		}
+	}
+
+}
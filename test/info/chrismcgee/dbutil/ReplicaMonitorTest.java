@@ -0,0 +1,171 @@
+package info.chrismcgee.dbutil;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests that the ReplicaMonitor only picks replicas that were checked, weren't too far behind,
+ * and have caught up with this server's last write. The primary and replicas are stand-ins, so no database is needed.
+ */
+public class ReplicaMonitorTest {
+
+	private static final String DATABASE = "Scheduling";
+	private static final String R1 = "jdbc:fake://r1/";
+	private static final String R2 = "jdbc:fake://r2/";
+
+	private FakeManager manager;
+	private ReplicaMonitor monitor;
+
+	@Before
+	public void newMonitor() {
+		manager = new FakeManager();
+		monitor = new ReplicaMonitor(manager, Arrays.asList(R1, R2), 5000, 60000); // Checked by hand, not by the clock.
+	}
+
+	@After
+	public void stopMonitor() {
+		monitor.stop();
+	}
+
+	/**
+	 * Hands out stand-in connections whose heartbeat is the primary's, less however far behind each replica is.
+	 */
+	private static final class FakeManager extends ConnectionManager {
+
+		private final Timestamp primaryBeat = new Timestamp(System.currentTimeMillis());
+		private final Map<String, Long> lags = new HashMap<String, Long>(); // Replicas that aren't in it can't be reached.
+		private boolean primaryDown = false;
+
+		@Override
+		public Connection getConnection(String database) throws SQLException {
+			if (primaryDown) {
+				throw new SQLException("Connection refused", "08001");
+			}
+			return connection(primaryBeat);
+		}
+
+		@Override
+		Connection getReplicaConnection(String replica, String database) throws SQLException {
+			Long lag = lags.get(replica);
+			if (lag == null) {
+				throw new SQLException("Connection refused", "08001");
+			}
+			return connection(new Timestamp(primaryBeat.getTime() - lag));
+		}
+
+		private static Connection connection(Timestamp beat) {
+			ResultSet rs = (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+					new Class<?>[] {ResultSet.class}, (proxy, method, args) -> {
+				switch (method.getName()) {
+				case "next": return true;
+				case "getTimestamp": return beat;
+				default: return null;
+				}
+			});
+			PreparedStatement stmt = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+					new Class<?>[] {PreparedStatement.class}, (proxy, method, args) -> {
+				switch (method.getName()) {
+				case "executeQuery": return rs;
+				case "executeUpdate": return 1;
+				default: return null;
+				}
+			});
+			return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+					new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+				return "prepareStatement".equals(method.getName()) ? stmt : null;
+			});
+		}
+	}
+
+	/**
+	 * Starts watching the database, and checks it.
+	 */
+	private void watchAndCheck() throws InterruptedException {
+		monitor.choose(DATABASE);
+		Thread.sleep(2); // So the check is after anything written just before it.
+		monitor.check();
+	}
+
+	@Test
+	public void nothingIsChosenBeforeItsChecked() {
+		manager.lags.put(R1, 0L);
+		assertNull(monitor.choose(DATABASE));
+	}
+
+	@Test
+	public void caughtUpReplicasTakeTurns() throws InterruptedException {
+		manager.lags.put(R1, 0L);
+		manager.lags.put(R2, 100L);
+		watchAndCheck();
+		assertEquals(new HashSet<String>(Arrays.asList(R1, R2)),
+				new HashSet<String>(Arrays.asList(monitor.choose(DATABASE), monitor.choose(DATABASE))));
+	}
+
+	@Test
+	public void laggingAndUnreachableReplicasAreSkipped() throws InterruptedException {
+		manager.lags.put(R1, 10000L); // More than the 5 seconds allowed.
+		watchAndCheck();
+		assertNull(monitor.choose(DATABASE));
+
+		manager.lags.put(R2, 0L);
+		monitor.check();
+		for (int i = 0; i < 4; i++) {
+			assertEquals(R2, monitor.choose(DATABASE));
+		}
+	}
+
+	@Test
+	public void writesAreReadFromThePrimaryUntilTheReplicasCatchUp() throws InterruptedException {
+		manager.lags.put(R1, 0L);
+		monitor.choose("Other");
+		watchAndCheck();
+		assertEquals(R1, monitor.choose(DATABASE));
+
+		monitor.markWritten(DATABASE);
+		assertNull(monitor.choose(DATABASE)); // Checked before the write.
+		assertEquals(R1, monitor.choose("Other")); // Other databases don't care.
+
+		Thread.sleep(2);
+		monitor.check();
+		assertEquals(R1, monitor.choose(DATABASE));
+	}
+
+	@Test
+	public void replicasMarkedDownWaitForTheNextCheck() throws InterruptedException {
+		manager.lags.put(R1, 0L);
+		watchAndCheck();
+		monitor.markDown(R1, DATABASE);
+		assertNull(monitor.choose(DATABASE));
+		monitor.check();
+		assertEquals(R1, monitor.choose(DATABASE));
+
+		manager.lags.remove(R1); // Can't be reached at the next check.
+		monitor.check();
+		assertNull(monitor.choose(DATABASE));
+	}
+
+	@Test
+	public void aMissedHeartbeatKeepsTheLastCheck() throws InterruptedException {
+		manager.lags.put(R1, 0L);
+		watchAndCheck();
+		manager.primaryDown = true;
+		monitor.check(); // Nothing new is known, and the old check is still recent.
+		assertEquals(R1, monitor.choose(DATABASE));
+	}
+
+}
@@ -0,0 +1,152 @@
+package info.chrismcgee.sky.components;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the BusinessCalendar's rank and select lookups agree with counting day by day,
+ * inside and outside of the kept years, and that holidays that move around are worked out for every year.
+ */
+public class BusinessCalendarTest {
+
+	private static final LocalDate HOLD_DATE = LocalDate.of(9999, 12, 31);
+	private static final LocalDate PROOF_DATE = LocalDate.of(9999, 12, 30);
+
+	private static File calendarFile;
+	private static BusinessCalendar calendar;
+
+	@BeforeClass
+	public static void usCalendar() throws IOException {
+		calendarFile = File.createTempFile("business-calendar", ".properties");
+		write("workdays = MONDAY,TUESDAY,WEDNESDAY,THURSDAY,FRIDAY",
+				"holidays = 01-01,last MONDAY of MAY,07-04,1st MONDAY of SEPTEMBER,\\",
+				"\t4th THURSDAY of NOVEMBER,4th THURSDAY of NOVEMBER + 1,12-25,2026-12-24",
+				"closures = 2026-12-28..2026-12-31");
+		System.setProperty("sky.calendar", calendarFile.getPath());
+		BusinessCalendar.reload();
+		calendar = BusinessCalendar.getDefault();
+	}
+
+	@AfterClass
+	public static void forgetCalendar() {
+		System.clearProperty("sky.calendar");
+		calendarFile.delete();
+	}
+
+	private static void write(String... lines) throws IOException {
+		Files.write(calendarFile.toPath(), Arrays.asList(lines));
+	}
+
+	private static int countDayByDay(LocalDate startDate, LocalDate endDate) {
+		int count = 0;
+		for (LocalDate date = startDate; date.isBefore(endDate); date = date.plusDays(1)) {
+			if (calendar.isWorkingDay(date)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Test
+	public void holidaysAreWorkedOutForEveryYear() {
+		assertFalse(calendar.isWorkingDay(LocalDate.of(2026, 11, 26))); // Thanksgiving.
+		assertFalse(calendar.isWorkingDay(LocalDate.of(2026, 11, 27))); // The day after.
+		assertFalse(calendar.isWorkingDay(LocalDate.of(2030, 5, 27))); // Memorial Day.
+		assertFalse(calendar.isWorkingDay(LocalDate.of(2031, 9, 1))); // Labor Day.
+		assertTrue(calendar.isWorkingDay(LocalDate.of(2031, 9, 2)));
+		assertFalse(calendar.isWorkingDay(LocalDate.of(2026, 12, 24))); // Just that once.
+		assertTrue(calendar.isWorkingDay(LocalDate.of(2027, 12, 24)));
+		assertFalse(calendar.isWorkingDay(LocalDate.of(2026, 12, 30))); // Closed.
+	}
+
+	@Test
+	public void weekdaysOfAMonth() {
+		assertEquals(LocalDate.of(2024, 11, 28), BusinessCalendar.weekdayOfMonth("4th THURSDAY of NOVEMBER", 2024));
+		// November 2024 starts on a Friday, so the day after Thanksgiving is the 5th Friday, not the 4th.
+		assertEquals(LocalDate.of(2024, 11, 29), BusinessCalendar.weekdayOfMonth("4th thursday of november + 1", 2024));
+		assertEquals(LocalDate.of(2026, 5, 25), BusinessCalendar.weekdayOfMonth("last MONDAY of MAY", 2026));
+		assertNull(BusinessCalendar.weekdayOfMonth("5th FRIDAY of FEBRUARY", 2026));
+	}
+
+	@Test
+	public void rankMatchesCountingDayByDay() {
+		Random random = new Random(7);
+		LocalDate from = LocalDate.of(2010, 1, 1); // Starts before the kept years...
+		for (int i = 0; i < 200; i++) {
+			LocalDate start = from.plusDays(random.nextInt(365 * 40)); // ...and ends after them.
+			LocalDate end = start.plusDays(random.nextInt(800));
+			assertEquals(start + ".." + end, countDayByDay(start, end), calendar.workingDaysBetween(start, end));
+			assertEquals(-countDayByDay(start, end), calendar.workingDaysBetween(end, start));
+		}
+	}
+
+	@Test
+	public void selectUndoesRank() {
+		Random random = new Random(11);
+		LocalDate from = LocalDate.of(2010, 1, 1);
+		for (int i = 0; i < 200; i++) {
+			LocalDate date = from.plusDays(random.nextInt(365 * 40));
+			int days = 1 + random.nextInt(300);
+			LocalDate forward = calendar.addWorkingDays(date, days);
+			LocalDate backward = calendar.addWorkingDays(date, -days);
+			assertTrue(calendar.isWorkingDay(forward));
+			assertTrue(calendar.isWorkingDay(backward));
+			// Counting from the day after the date, up to and including the answer.
+			assertEquals(date + " + " + days, days, countDayByDay(date.plusDays(1), forward.plusDays(1)));
+			assertEquals(date + " - " + days, days, countDayByDay(backward, date));
+		}
+	}
+
+	@Test
+	public void zeroDaysFindsAWorkingDay() {
+		LocalDate thanksgiving = LocalDate.of(2026, 11, 26);
+		assertEquals(LocalDate.of(2026, 11, 30), calendar.addWorkingDays(thanksgiving, 0));
+		assertEquals(LocalDate.of(2026, 11, 30), calendar.getNextWorkingDay(thanksgiving));
+		assertEquals(LocalDate.of(2026, 11, 25), calendar.getPreviousWorkingDay(thanksgiving));
+		assertEquals(LocalDate.of(2026, 11, 25), calendar.addWorkingDays(LocalDate.of(2026, 11, 25), 0));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void theHoldDateCantBeCountedFrom() {
+		calendar.addWorkingDays(HOLD_DATE, -1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void theProofDateCantBeCountedTo() {
+		calendar.workingDaysBetween(LocalDate.of(2026, 3, 2), PROOF_DATE);
+	}
+
+	@Test
+	public void nothingComesAfterTheSpecialDates() {
+		assertNull(DateManager.getNextWorkingDay(PROOF_DATE));
+		assertNull(DateManager.getNextWorkingDay(HOLD_DATE));
+	}
+
+	@Test
+	public void noWorkdaysGetsTheDefault() throws IOException {
+		try {
+			write("workdays = FUNDAY");
+			BusinessCalendar.reload();
+			BusinessCalendar plain = BusinessCalendar.getDefault();
+			assertTrue(plain.isWorkingDay(LocalDate.of(2026, 3, 2)));
+			assertEquals(DayOfWeek.MONDAY, plain.addWorkingDays(LocalDate.of(2026, 3, 6), 1).getDayOfWeek());
+		} finally {
+			usCalendar();
+		}
+	}
+
+}
@@ -0,0 +1,56 @@
+package info.chrismcgee.sky.components;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests that reading a displayed date gives just what the "MM/dd/yy" formatter always gave,
+ * whether or not it takes the shortcut.
+ */
+public class DateManagerTest {
+
+	private static final DateTimeFormatter DISPLAY = DateTimeFormatter.ofPattern("MM/dd/yy");
+
+	@Test
+	public void theUsualFormIsRead() {
+		assertEquals(LocalDate.of(2016, 3, 1), DateManager.getLocalDate("03/01/16"));
+		assertEquals(LocalDate.of(2016, 2, 29), DateManager.getLocalDate("02/29/16"));
+		assertEquals(LocalDate.of(2000, 12, 31), DateManager.getLocalDate("12/31/00"));
+		assertEquals(LocalDate.of(9999, 12, 31), DateManager.getLocalDate("On Hold"));
+		assertEquals(LocalDate.of(9999, 12, 30), DateManager.getLocalDate("Proofs"));
+	}
+
+	@Test
+	public void daysPastTheEndOfTheMonthAreResolvedAsBefore() {
+		for (String date : new String[] {"02/30/16", "02/29/17", "04/31/16", "02/31/17"}) {
+			assertEquals(date, LocalDate.parse(date, DISPLAY), DateManager.getLocalDate(date));
+		}
+		assertEquals(LocalDate.of(2016, 2, 29), DateManager.getLocalDate("02/30/16"));
+	}
+
+	@Test
+	public void everyDayOfAYearMatchesTheFormatter() {
+		for (LocalDate date = LocalDate.of(2016, 1, 1); date.getYear() == 2016; date = date.plusDays(1)) {
+			assertEquals(date, DateManager.getLocalDate(date.format(DISPLAY)));
+		}
+	}
+
+	@Test
+	public void nonsenseIsAParseException() {
+		for (String date : new String[] {"13/01/16", "00/10/16", "01/00/16", "01/32/16", "1/1/2016", "ab/cd/ef"}) {
+			try {
+				DateManager.getLocalDate(date);
+				fail(date + " was read.");
+			} catch (DateTimeParseException e) {
+				// Expected, just as the formatter always threw.
+			}
+		}
+	}
+
+}
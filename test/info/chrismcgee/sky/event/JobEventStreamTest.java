@@ -0,0 +1,193 @@
+package info.chrismcgee.sky.event;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import info.chrismcgee.sky.event.JobEvent.EventsDroppedEvent;
+import info.chrismcgee.sky.event.JobEvent.JobCompletedEvent;
+import info.chrismcgee.sky.event.JobEvent.JobUpdatedEvent;
+import info.chrismcgee.sky.event.JobEvent.OrderDetailDeletedEvent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the JobEventStream never makes a publisher wait, that an overflow is logged as an EventsDroppedEvent,
+ * that the event log reads back what was written to it, and that the log's segments are rolled and trimmed.
+ */
+public class JobEventStreamTest {
+
+	private File folder;
+	private File logFile;
+
+	@Before
+	public void newLog() throws IOException {
+		folder = Files.createTempDirectory("job-events").toFile();
+		logFile = new File(folder, "job-events.log");
+	}
+
+	@After
+	public void deleteLog() {
+		for (File file : folder.listFiles()) {
+			file.delete();
+		}
+		folder.delete();
+	}
+
+	/**
+	 * Starts a stream on the log, publishes the events (which are logged as one batch), and stops it again.
+	 */
+	private JobEventStream publish(long segmentBytes, int keptSegments, String... jobIds) {
+		JobEventStream stream = new JobEventStream(logFile, segmentBytes, keptSegments);
+		for (String jobId : jobIds) {
+			stream.add(updated(jobId));
+		}
+		stream.start();
+		stream.stop();
+		return stream;
+	}
+
+	private static List<String> jobIds(List<JobEvent> events) {
+		List<String> jobIds = new ArrayList<String>();
+		for (JobEvent event : events) {
+			jobIds.add(event instanceof EventsDroppedEvent ? "dropped" : event.getJobId());
+		}
+		return jobIds;
+	}
+
+	private List<String> segmentNames() {
+		List<String> names = new ArrayList<String>(Arrays.asList(folder.list()));
+		names.sort(null);
+		return names;
+	}
+
+	private static JobEvent updated(String jobId) {
+		return new JobUpdatedEvent(jobId, Date.valueOf("2026-03-02"), 1000L);
+	}
+
+	@Test
+	public void aFullRingDropsInsteadOfWaiting() {
+		JobEventStream stream = new JobEventStream(logFile); // Not started, so nothing is taken out of the ring.
+		for (int i = 0; i < JobEventStream.RING_SIZE; i++) {
+			assertTrue(stream.add(updated(String.valueOf(i))));
+		}
+		assertFalse(stream.add(updated("late")));
+		assertFalse(stream.add(updated("later")));
+
+		stream.start();
+		stream.stop(); // Only quits once everything has been dispatched.
+
+		List<JobEvent> events = stream.replay(0);
+		assertEquals(JobEventStream.RING_SIZE + 1, events.size());
+		JobEvent last = events.get(events.size() - 1);
+		assertTrue(last instanceof EventsDroppedEvent);
+		assertEquals(JobEventStream.RING_SIZE + 1, last.getSequence());
+		assertNull(last.getJobId());
+		assertNull(last.getShipDate());
+	}
+
+	@Test
+	public void numberingCarriesOnFromTheLog() {
+		JobEventStream stream = new JobEventStream(logFile);
+		stream.start();
+		stream.add(updated("1"));
+		stream.add(updated("2"));
+		stream.stop();
+
+		JobEventStream again = new JobEventStream(logFile);
+		again.start();
+		again.add(updated("3"));
+		again.stop();
+
+		List<JobEvent> events = again.replay(1);
+		assertEquals(2, events.size());
+		assertEquals("2", events.get(0).getJobId());
+		assertEquals(3, events.get(1).getSequence());
+		assertEquals("3", events.get(1).getJobId());
+	}
+
+	@Test
+	public void fullSegmentsAreRolledAndTheOldestDeleted() {
+		publish(1, 2, "1", "2"); // Any batch after the first starts a new segment.
+		publish(1, 2, "3");
+		assertEquals(Arrays.asList("job-events.1.log", "job-events.3.log"), segmentNames());
+		JobEventStream stream = publish(1, 2, "4", "5");
+		assertEquals(Arrays.asList("job-events.3.log", "job-events.4.log"), segmentNames());
+
+		assertEquals(Arrays.asList("3", "4", "5"), jobIds(stream.replay(2)));
+		assertEquals(Arrays.asList("5"), jobIds(stream.replay(4)));
+		// Events 1 and 2 are gone, so whoever wanted them has to start afresh.
+		List<JobEvent> events = stream.replay(0);
+		assertEquals(Arrays.asList("dropped", "3", "4", "5"), jobIds(events));
+		assertEquals(2, events.get(0).getSequence());
+
+		assertEquals(Arrays.asList("6"), jobIds(publish(1, 2, "6").replay(5))); // The numbering carries on.
+	}
+
+	@Test
+	public void replayOnlyReadsTheSegmentsItNeeds() throws IOException {
+		publish(1, 10, "1", "2");
+		JobEventStream stream = publish(1, 10, "3", "4");
+		// Something in the first segment that a replay from the second would pick up, if it read it.
+		JobEvent planted = updated("planted");
+		planted.setSequence(99);
+		Files.write(new File(folder, "job-events.1.log").toPath(), Arrays.asList(planted.toLogLine()),
+				StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+		assertEquals(Arrays.asList("4"), jobIds(stream.replay(3)));
+		assertEquals(Arrays.asList("3", "4"), jobIds(stream.replay(2))); // Event 3 starts the second segment.
+		assertEquals(Arrays.asList("2", "planted", "3", "4"), jobIds(stream.replay(1))); // Event 2 is in the first.
+	}
+
+	@Test
+	public void aLogFromBeforeSegmentsBecomesTheFirstSegment() throws IOException {
+		List<String> lines = new ArrayList<String>();
+		for (int i = 1; i <= 3; i++) {
+			JobEvent event = updated(String.valueOf(i));
+			event.setSequence(i);
+			lines.add(event.toLogLine());
+		}
+		Files.write(logFile.toPath(), lines, StandardCharsets.UTF_8);
+
+		JobEventStream stream = publish(1 << 20, 8, "4");
+		assertEquals(Arrays.asList("job-events.1.log"), segmentNames());
+		List<JobEvent> events = stream.replay(0);
+		assertEquals(Arrays.asList("1", "2", "3", "4"), jobIds(events));
+		assertEquals(4, events.get(3).getSequence());
+	}
+
+	@Test
+	public void logLinesReadBack() {
+		for (JobEvent event : Arrays.asList(
+				updated("N1234"),
+				new JobCompletedEvent("N1234", null, 2000L, true),
+				new OrderDetailDeletedEvent(null, null, 3000L, 42),
+				new EventsDroppedEvent(null, null, 4000L))) {
+			event.setSequence(7);
+			JobEvent read = JobEvent.fromLogLine(event.toLogLine());
+			assertEquals(event.getClass(), read.getClass());
+			assertEquals(event.toLogLine(), read.toLogLine());
+		}
+	}
+
+	@Test
+	public void brokenLinesAreSkipped() {
+		assertNull(JobEvent.fromLogLine("12\t1000\tJobUpdatedEvent\tN1")); // Cut off partway.
+		assertNull(JobEvent.fromLogLine("12\t1000\tNoSuchEvent\t-\t-\t0\t0"));
+		assertNull(JobEvent.fromLogLine("x\t1000\tJobUpdatedEvent\t-\t-\t0\t0"));
+	}
+
+}
@@ -0,0 +1,194 @@
+package info.chrismcgee.sky.scheduling.beans;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import info.chrismcgee.sky.enums.PrintType;
+import info.chrismcgee.sky.enums.PrintingCompany;
+
+/**
+ * Compares the BeanCodec with default Java serialization, on a week's worth of Jobs (300 Jobs, 900 items).
+ * The default serialization is measured on copies of the beans that are plain Serializable,
+ * the way Job and OrderDetail used to be.
+ *
+ * Run main() to print the sizes and then run the benchmarks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BeanCodecBenchmark {
+
+	private List<Job> jobs;
+	private ArrayList<PlainJob> plainJobs;
+	private byte[] codecBytes;
+	private byte[] externalizedBytes;
+	private byte[] defaultBytes;
+
+	@Setup
+	public void setUp() throws IOException {
+		jobs = new ArrayList<Job>();
+		plainJobs = new ArrayList<PlainJob>();
+		for (int i = 0; i < 300; i++) {
+			Job job = BeanCodecTest.makeJob(i, LocalDate.of(2016, 3, 1).plusDays(i / 60), 3);
+			jobs.add(job);
+			plainJobs.add(new PlainJob(job));
+		}
+		codecBytes = codecWrite();
+		externalizedBytes = serialize(new ArrayList<Job>(jobs));
+		defaultBytes = serialize(plainJobs);
+	}
+
+	@Benchmark
+	public byte[] codecWrite() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new BeanCodec().writeJobs(new DataOutputStream(bytes), jobs);
+		return bytes.toByteArray();
+	}
+
+	@Benchmark
+	public List<Job> codecRead() throws IOException {
+		return new BeanCodec().readJobs(new DataInputStream(new ByteArrayInputStream(codecBytes)));
+	}
+
+	@Benchmark
+	public byte[] externalizedWrite() throws IOException {
+		return serialize(new ArrayList<Job>(jobs));
+	}
+
+	@Benchmark
+	public Object externalizedRead() throws IOException, ClassNotFoundException {
+		return deserialize(externalizedBytes);
+	}
+
+	@Benchmark
+	public byte[] defaultWrite() throws IOException {
+		return serialize(plainJobs);
+	}
+
+	@Benchmark
+	public Object defaultRead() throws IOException, ClassNotFoundException {
+		return deserialize(defaultBytes);
+	}
+
+	private static byte[] serialize(Serializable value) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(value);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+			return in.readObject();
+		}
+	}
+
+	public static void main(String[] args) throws IOException, RunnerException {
+		BeanCodecBenchmark sizes = new BeanCodecBenchmark();
+		sizes.setUp();
+		System.out.println("BeanCodec:           " + sizes.codecBytes.length + " bytes");
+		System.out.println("Externalized beans:  " + sizes.externalizedBytes.length + " bytes");
+		System.out.println("Default serialized:  " + sizes.defaultBytes.length + " bytes");
+		new Runner(new OptionsBuilder().include(BeanCodecBenchmark.class.getSimpleName()).build()).run();
+	}
+
+
+	/**
+	 * A Job the way it used to be serialized: every field, with the default serialization.
+	 */
+	static final class PlainJob implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Date shipDate;
+		private final String jobId;
+		private final String customerName;
+		private final String customerPO;
+		private final Timestamp proofSpecDate;
+		private final Timestamp jobCompleted;
+		private final PrintingCompany printingCompany;
+		private final boolean overruns;
+		private final ArrayList<PlainItem> orderDetailList = new ArrayList<PlainItem>();
+		private final boolean treeExpanded;
+
+		PlainJob(Job job) {
+			shipDate = job.getShipDate();
+			jobId = job.getJobId();
+			customerName = job.getCustomerName();
+			customerPO = job.getCustomerPO();
+			proofSpecDate = job.getProofSpecDate();
+			jobCompleted = job.getJobCompleted();
+			printingCompany = job.getPrintingCompany();
+			overruns = job.isOverruns();
+			treeExpanded = job.isTreeExpanded();
+			for (OrderDetail detail : job.getOrderDetailList()) {
+				orderDetailList.add(new PlainItem(detail));
+			}
+		}
+	}
+
+	/**
+	 * An OrderDetail the way it used to be serialized.
+	 */
+	static final class PlainItem implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int id;
+		private final String orderId;
+		private final String productId;
+		private final String productDetail;
+		private final PrintType printType;
+		private final long numColors;
+		private final long quantity;
+		private final Timestamp itemCompleted;
+		private final int proofNum;
+		private final Timestamp proofDate;
+		private final String thumbnail;
+
+		PlainItem(OrderDetail detail) {
+			id = detail.getId();
+			orderId = detail.getOrderId();
+			productId = detail.getProductId();
+			productDetail = detail.getProductDetail();
+			printType = detail.getPrintType();
+			numColors = detail.getNumColors();
+			quantity = detail.getQuantity();
+			itemCompleted = detail.getItemCompleted();
+			proofNum = detail.getProofNum();
+			proofDate = detail.getProofDate();
+			thumbnail = detail.getThumbnail();
+		}
+	}
+
+}
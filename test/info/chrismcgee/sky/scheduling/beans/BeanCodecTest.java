@@ -0,0 +1,192 @@
+package info.chrismcgee.sky.scheduling.beans;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import info.chrismcgee.sky.enums.PrintType;
+import info.chrismcgee.sky.enums.PrintingCompany;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Round-trip tests of the compact BeanCodec format, both on its own and through Java serialization
+ * (which is how Vaadin stores the beans in a session).
+ */
+public class BeanCodecTest {
+
+	/**
+	 * Makes a Job much like the ones the JobManager reads, with a few items.
+	 */
+	static Job makeJob(int number, LocalDate shipDate, int items) {
+		Job job = new Job();
+		job.setShipDate(Date.valueOf(shipDate));
+		job.setJobId(Integer.toString(425000 + number));
+		job.setCustomerName("Customer " + (number % 5));
+		job.setCustomerPO("PO-" + number);
+		job.setProofSpecDate(Timestamp.valueOf(shipDate.minusDays(3).atTime(9, 30)));
+		job.setJobCompleted(number % 2 == 0 ? Timestamp.valueOf(shipDate.atTime(15, 45, 12)) : null);
+		job.setPrintingCompany(PrintingCompany.values()[number % PrintingCompany.values().length]);
+		job.setOverruns(number % 3 == 0);
+		List<OrderDetail> detailList = new ArrayList<OrderDetail>();
+		for (int i = 0; i < items; i++) {
+			OrderDetail detail = new OrderDetail();
+			detail.setId(number * 10 + i);
+			detail.setOrderId(job.getJobId());
+			detail.setProductId(i % 2 == 0 ? "N10" : "ST16");
+			detail.setProductDetail("White 3-ply");
+			detail.setPrintType(PrintType.values()[i % PrintType.values().length]);
+			detail.setNumColors(1 + i % 4);
+			detail.setQuantity(500L * (i + 1));
+			detail.setItemCompleted(i == 0 ? Timestamp.valueOf(shipDate.atTime(11, 2, 3)) : null);
+			detail.setProofNum(i);
+			detail.setProofDate(Timestamp.valueOf(shipDate.minusDays(5).atTime(8, 0)));
+			detail.setThumbnail(i == 0 ? null : job.getJobId() + "-" + i + ".jpg");
+			detailList.add(detail);
+		}
+		job.setOrderDetailList(detailList);
+		return job;
+	}
+
+	static void assertSameJob(Job expected, Job actual) {
+		assertEquals(expected.getShipDate(), actual.getShipDate());
+		assertEquals(expected.getJobId(), actual.getJobId());
+		assertEquals(expected.getCustomerName(), actual.getCustomerName());
+		assertEquals(expected.getCustomerPO(), actual.getCustomerPO());
+		assertEquals(expected.getProofSpecDate(), actual.getProofSpecDate());
+		assertEquals(expected.getJobCompleted(), actual.getJobCompleted());
+		assertEquals(expected.getPrintingCompany(), actual.getPrintingCompany());
+		assertEquals(expected.isOverruns(), actual.isOverruns());
+		assertEquals(expected.isTreeExpanded(), actual.isTreeExpanded());
+		if (expected.getOrderDetailList() == null) {
+			assertNull(actual.getOrderDetailList());
+			return;
+		}
+		assertEquals(expected.getOrderDetailList().size(), actual.getOrderDetailList().size());
+		for (int i = 0; i < expected.getOrderDetailList().size(); i++) {
+			assertSameItem(expected.getOrderDetailList().get(i), actual.getOrderDetailList().get(i));
+		}
+	}
+
+	static void assertSameItem(OrderDetail expected, OrderDetail actual) {
+		assertEquals(expected.getId(), actual.getId());
+		assertEquals(expected.getOrderId(), actual.getOrderId());
+		assertEquals(expected.getProductId(), actual.getProductId());
+		assertEquals(expected.getProductDetail(), actual.getProductDetail());
+		assertEquals(expected.getPrintType(), actual.getPrintType());
+		assertEquals(expected.getNumColors(), actual.getNumColors());
+		assertEquals(expected.getQuantity(), actual.getQuantity());
+		assertEquals(expected.getItemCompleted(), actual.getItemCompleted());
+		assertEquals(expected.getProofNum(), actual.getProofNum());
+		assertEquals(expected.getProofDate(), actual.getProofDate());
+		assertEquals(expected.getThumbnail(), actual.getThumbnail());
+	}
+
+	private static List<Job> roundTrip(List<Job> jobs) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new BeanCodec().writeJobs(new DataOutputStream(bytes), jobs);
+		return new BeanCodec().readJobs(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T serialize(T bean) throws IOException, ClassNotFoundException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(bean);
+		}
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			return (T) in.readObject();
+		}
+	}
+
+	@Test
+	public void jobsRoundTrip() throws IOException {
+		List<Job> jobs = new ArrayList<Job>();
+		for (int i = 0; i < 40; i++) {
+			jobs.add(makeJob(i, LocalDate.of(2016, 3, 1).plusDays(i / 6), 1 + i % 4));
+		}
+		List<Job> copies = roundTrip(jobs);
+		assertEquals(jobs.size(), copies.size());
+		for (int i = 0; i < jobs.size(); i++) {
+			assertSameJob(jobs.get(i), copies.get(i));
+		}
+	}
+
+	@Test
+	public void emptyJobRoundTrip() throws IOException {
+		Job job = new Job(); // Every field null, false or 0.
+		job.setTreeExpanded(false);
+		Job copy = roundTrip(Arrays.asList(job)).get(0);
+		assertSameJob(job, copy);
+		assertFalse(copy.isTreeExpanded());
+	}
+
+	@Test
+	public void oddValuesRoundTrip() throws IOException {
+		Job job = makeJob(7, LocalDate.of(1969, 12, 31), 2); // Before the epoch.
+		job.setCustomerName("Caf\u00e9 \u00dcn\u00efc\u00f8d\u00e9 \u2615");
+		Timestamp precise = Timestamp.valueOf("2016-03-01 10:15:30.123456789");
+		job.setJobCompleted(precise);
+		OrderDetail detail = job.getOrderDetailList().get(0);
+		detail.setId(-5);
+		detail.setQuantity(Long.MAX_VALUE);
+		detail.setNumColors(Long.MIN_VALUE);
+		detail.setPrintType(null);
+		detail.setOrderId("999999"); // Not the Job's own number.
+		job.setPrintingCompany(null);
+
+		Job copy = roundTrip(Arrays.asList(job)).get(0);
+		assertSameJob(job, copy);
+		assertEquals(123456789, copy.getJobCompleted().getNanos());
+	}
+
+	@Test
+	public void javaSerializationUsesTheCodec() throws Exception {
+		Job job = makeJob(2, LocalDate.of(2016, 3, 4), 3);
+		assertSameJob(job, serialize(job));
+
+		OrderDetail detail = job.getOrderDetailList().get(1);
+		assertSameItem(detail, serialize(detail));
+	}
+
+	private static int sizeWithCustomer(String customerName) throws IOException {
+		List<Job> jobs = new ArrayList<Job>();
+		for (int i = 0; i < 100; i++) {
+			Job job = makeJob(i, LocalDate.of(2016, 3, 1), 3);
+			job.setCustomerName(customerName);
+			jobs.add(job);
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new BeanCodec().writeJobs(new DataOutputStream(bytes), jobs);
+		return bytes.size();
+	}
+
+	@Test
+	public void repeatedTextsAreWrittenOnce() throws IOException {
+		String longName = "The Very Long Name Of A Customer Who Orders A Lot";
+		// The long name only costs its length once, not once for each of the 100 Jobs.
+		assertEquals(longName.length() - 1, sizeWithCustomer(longName) - sizeWithCustomer("X"));
+	}
+
+	@Test(expected = InvalidObjectException.class)
+	public void newerVersionsAreTurnedDown() throws IOException {
+		new BeanCodec().readJobs(new DataInputStream(new ByteArrayInputStream(new byte[] {(byte) (BeanCodec.VERSION + 1), 0})));
+	}
+
+}
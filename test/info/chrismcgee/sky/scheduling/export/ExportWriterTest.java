@@ -0,0 +1,98 @@
+package info.chrismcgee.sky.scheduling.export;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Scanner;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of what the CSV and Excel export writers put out, both when they finish and when they're cut short.
+ */
+public class ExportWriterTest {
+
+	@Test
+	public void csvQuotesOnlyWhatNeedsIt() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		CsvExportWriter writer = new CsvExportWriter(bytes);
+		writer.writeRow(new Object[] {"425001", "Acme, Inc.", "12\" plate", null, 500L});
+		writer.writeRow(new Object[] {"two\nlines", 1.5});
+		writer.finish();
+		assertEquals("425001,\"Acme, Inc.\",\"12\"\" plate\",,500\r\n\"two\nlines\",1.5\r\n",
+				new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void csvSaysWhenItWasCutShort() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		CsvExportWriter writer = new CsvExportWriter(bytes);
+		writer.writeRow(new Object[] {"425001"});
+		writer.abort("The database could not be read.");
+		String csv = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+		assertTrue(csv.startsWith("425001\r\nERROR: The database could not be read."));
+		assertTrue(csv.endsWith("incomplete.\r\n"));
+	}
+
+	@Test
+	public void xlsxIsAWholeWorkbook() throws IOException {
+		File file = File.createTempFile("export", ".xlsx");
+		try {
+			try (OutputStream out = Files.newOutputStream(file.toPath())) {
+				XlsxExportWriter writer = new XlsxExportWriter(out, "March <1>");
+				writer.writeRow(new Object[] {"Job #", "Quantity"});
+				writer.writeRow(new Object[] {"A & B\u0001", 500L, null});
+				writer.finish();
+			}
+
+			try (ZipFile zip = new ZipFile(file)) {
+				assertNotNull(zip.getEntry("[Content_Types].xml"));
+				assertNotNull(zip.getEntry("_rels/.rels"));
+				assertTrue(read(zip, "xl/workbook.xml").contains("name=\"March &lt;1&gt;\""));
+				String sheet = read(zip, "xl/worksheets/sheet1.xml");
+				assertTrue(sheet.contains("<row><c t=\"inlineStr\"><is><t>A &amp; B</t></is></c><c><v>500</v></c><c/></row>"));
+				assertTrue(sheet.endsWith("</sheetData></worksheet>"));
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void xlsxCutShortIsNoWorkbook() throws IOException {
+		File file = File.createTempFile("export", ".xlsx");
+		try {
+			try (OutputStream out = Files.newOutputStream(file.toPath())) {
+				XlsxExportWriter writer = new XlsxExportWriter(out, "Jobs");
+				writer.writeRow(new Object[] {"425001"});
+				writer.abort("The database could not be read.");
+			}
+			try {
+				new ZipFile(file).close(); // Only opening it matters; there's nothing in it to read.
+				fail("An export that was cut short opened as a complete workbook.");
+			} catch (ZipException e) {
+				// As it should be.
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	private static String read(ZipFile zip, String name) throws IOException {
+		try (InputStream in = zip.getInputStream(zip.getEntry(name)); Scanner scanner = new Scanner(in, "UTF-8")) {
+			return scanner.useDelimiter("\\A").next();
+		}
+	}
+
+}
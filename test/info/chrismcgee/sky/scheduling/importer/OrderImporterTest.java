@@ -0,0 +1,100 @@
+package info.chrismcgee.sky.scheduling.importer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import info.chrismcgee.sky.scheduling.importer.ImportReport.Reject;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of how the OrderImporter checks each line, and rejects the whole of a Job when any of its lines is no good.
+ * Every Job in these files is turned down, so nothing ever reaches the database.
+ */
+public class OrderImporterTest {
+
+	private static final String HEADER = "job,ship,customer,po,proof,company,overruns,product,detail,type,colors,quantity";
+
+	private static ImportReport importLines(String... lines) throws IOException {
+		StringBuilder file = new StringBuilder(HEADER).append('\n');
+		for (String line : lines) {
+			file.append(line).append('\n');
+		}
+		return new OrderImporter(new CsvRecordFormat(), true)
+				.importOrders(new BufferedReader(new StringReader(file.toString())), "test.csv", null);
+	}
+
+	private static List<Long> rejectedLines(ImportReport report) {
+		List<Long> lines = new ArrayList<Long>();
+		for (Reject reject : report.getRejects()) {
+			lines.add(reject.getLine());
+		}
+		lines.sort(null);
+		return lines;
+	}
+
+	@Test
+	public void aBadLineRejectsTheLinesBeforeIt() throws IOException {
+		ImportReport report = importLines(
+				"425001,2016-03-01,Acme,PO1,,,N,N10,White,Screen Cups,2,500",
+				"425001,2016-03-01,Acme,PO1,,,N,N10,White,Screen Cups,2,-5");
+		assertEquals(2, report.getLinesRejected());
+		assertEquals(0, report.getJobsImported());
+		assertEquals(Arrays.asList(2L, 3L), rejectedLines(report));
+	}
+
+	@Test
+	public void aBadLineRejectsTheLinesAfterIt() throws IOException {
+		ImportReport report = importLines(
+				"425001,2016-03-01,Acme,PO1,,,N,N10,White,Screen Cups,two,500",
+				"425001,2016-03-01,Acme,PO1,,,N,N10,White,Screen Cups,2,500",
+				"425001,2016-03-01,Acme,PO1,,,N,ST16,White,Pad,1,500");
+		assertEquals(3, report.getLinesRejected());
+		assertEquals(0, report.getJobsImported());
+		assertTrue(report.getRejects().get(1).getReason().contains("Another line"));
+	}
+
+	@Test
+	public void mismatchedDetailsRejectTheWholeJob() throws IOException {
+		ImportReport report = importLines(
+				"425001,2016-03-01,Acme,PO1,,,N,N10,White,Screen Cups,2,500",
+				"425001,2016-03-02,Acme,PO1,,,N,N10,White,Screen Cups,2,500",
+				"425001,2016-03-01,Acme,PO1,,,N,N10,White,Screen Cups,2,500");
+		assertEquals(3, report.getLinesRejected());
+		assertEquals(0, report.getJobsImported());
+	}
+
+	@Test
+	public void eachLineIsChecked() throws IOException {
+		ImportReport report = importLines(
+				"425001,2016-03-01,Acme",
+				"425002,someday,Acme,PO1,,,N,N10,White,Screen Cups,2,500",
+				"425003,2016-03-01,,PO1,,,N,N10,White,Screen Cups,2,500",
+				"425004,2016-03-01,Acme,PO1,,Nowhere,N,N10,White,Screen Cups,2,500",
+				"425005,2016-03-01,Acme,PO1,,,maybe,N10,White,Screen Cups,2,500",
+				"425006,2016-03-01,Acme,PO1,,,N,N10,White,Etching,2,500",
+				",2016-03-01,Acme,PO1,,,N,N10,White,Screen Cups,2,500",
+				"");
+		assertEquals(8, report.getLinesRead());
+		assertEquals(7, report.getLinesRejected());
+		assertTrue(report.isFinished());
+	}
+
+	@Test
+	public void aRejectedJobCantComeBackLater() throws IOException {
+		ImportReport report = importLines(
+				"425001,2016-03-01,Acme,PO1,,,N,N10,White,Screen Cups,2,0",
+				"425002,2016-03-01,Acme,PO1,,,N,N10,White,Screen Cups,2,x",
+				"425001,2016-03-01,Acme,PO1,,,N,N10,White,Screen Cups,2,500");
+		assertEquals(3, report.getLinesRejected());
+		assertEquals(0, report.getJobsImported());
+	}
+
+}
@@ -0,0 +1,115 @@
+package info.chrismcgee.sky.scheduling.service;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import info.chrismcgee.sky.enums.PrintType;
+import info.chrismcgee.sky.scheduling.beans.Job;
+import info.chrismcgee.sky.scheduling.beans.OrderDetail;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the PressSequencer only ever reorders a line's items, and that the order it settles on
+ * can't be made any better by reversing a stretch of it (which is what 2-opt promises).
+ */
+public class PressSequencerTest {
+
+	private final PressSequencer sequencer = new PressSequencer(10, 15);
+
+	private static OrderDetail item(String productId, long colors) {
+		OrderDetail item = new OrderDetail();
+		item.setProductId(productId);
+		item.setNumColors(colors);
+		item.setPrintType(PrintType.PAD);
+		return item;
+	}
+
+	@Test
+	public void changeoversAddColorsAndProducts() {
+		assertEquals(0, sequencer.getChangeover(item("A", 2), item("A", 2)));
+		assertEquals(20, sequencer.getChangeover(item("A", 3), item("A", 1)));
+		assertEquals(25, sequencer.getChangeover(item("A", 1), item("B", 2)));
+		assertEquals(25 + 20, sequencer.getTotalChangeover(Arrays.asList(item("A", 1), item("B", 2), item("B", 4))));
+	}
+
+	@Test
+	public void shortLinesAreStillOrdered() {
+		assertTrue(sequencer.sequence(new ArrayList<OrderDetail>(), 100).isEmpty());
+		OrderDetail many = item("A", 4);
+		OrderDetail few = item("A", 1);
+		assertEquals(Arrays.asList(few, many), sequencer.sequence(Arrays.asList(many, few), 100)); // Fewest colors first.
+	}
+
+	@Test
+	public void noReversalMakesItBetter() {
+		Random random = new Random(42);
+		for (int round = 0; round < 20; round++) {
+			List<OrderDetail> items = new ArrayList<OrderDetail>();
+			int n = 3 + random.nextInt(20);
+			for (int i = 0; i < n; i++) {
+				items.add(item("P" + random.nextInt(4), 1 + random.nextInt(6)));
+			}
+			List<OrderDetail> order = sequencer.sequence(items, 10000);
+
+			assertSameItems(items, order);
+			int total = sequencer.getTotalChangeover(order);
+			for (int i = 0; i < n - 1; i++) {
+				for (int j = i + 1; j < n; j++) {
+					List<OrderDetail> reversed = new ArrayList<OrderDetail>(order);
+					Collections.reverse(reversed.subList(i, j + 1));
+					assertTrue("Reversing " + i + ".." + j + " would have saved time.", sequencer.getTotalChangeover(reversed) >= total);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void theBestOrderIsFoundForASmallLine() {
+		// Such as A1, A2, A3, then B3, B2, B1: one color at a time, and only one change of product.
+		List<OrderDetail> items = Arrays.asList(item("B", 3), item("A", 2), item("B", 1), item("A", 3), item("A", 1), item("B", 2));
+		assertEquals(10 + 10 + 15 + 10 + 10, sequencer.getTotalChangeover(sequencer.sequence(items, 10000)));
+	}
+
+	@Test
+	public void daysAreSplitByLineWithoutTheCompletedItems() {
+		Job job = new Job();
+		OrderDetail pad = item("A", 1);
+		OrderDetail done = item("A", 2);
+		done.setItemCompleted(new Timestamp(0));
+		OrderDetail screen = item("A", 1);
+		screen.setPrintType(PrintType.SCREEN_CUPS);
+		job.setOrderDetailList(Arrays.asList(pad, done, screen));
+
+		Map<PrintType, List<OrderDetail>> sequences = sequencer.sequenceDay(Arrays.asList(job, new Job()), 100);
+		assertEquals(2, sequences.size());
+		assertEquals(Collections.singletonList(pad), sequences.get(PrintType.PAD));
+		assertEquals(Collections.singletonList(screen), sequences.get(PrintType.SCREEN_CUPS));
+	}
+
+	/**
+	 * Checks that an order holds exactly the same item beans as the list it came from.
+	 */
+	private static void assertSameItems(List<OrderDetail> items, List<OrderDetail> order) {
+		Map<OrderDetail, Integer> counts = new IdentityHashMap<OrderDetail, Integer>();
+		for (OrderDetail item : items) {
+			counts.merge(item, 1, Integer::sum);
+		}
+		for (OrderDetail item : order) {
+			counts.merge(item, -1, Integer::sum);
+		}
+		for (int count : counts.values()) {
+			assertEquals(0, count);
+		}
+	}
+
+}
@@ -0,0 +1,175 @@
+package info.chrismcgee.sky.scheduling.service;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedSet;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import info.chrismcgee.sky.components.BusinessCalendar;
+import info.chrismcgee.sky.enums.PrintType;
+import info.chrismcgee.sky.enums.PrintingCompany;
+import info.chrismcgee.sky.scheduling.beans.Job;
+
+import static info.chrismcgee.sky.scheduling.service.SchedulingEngineTest.FRIDAY;
+import static info.chrismcgee.sky.scheduling.service.SchedulingEngineTest.MONDAY;
+import static info.chrismcgee.sky.scheduling.service.SchedulingEngineTest.SATURDAY;
+import static info.chrismcgee.sky.scheduling.service.SchedulingEngineTest.TUESDAY;
+import static info.chrismcgee.sky.scheduling.service.SchedulingEngineTest.WEDNESDAY;
+import static info.chrismcgee.sky.scheduling.service.SchedulingEngineTest.makeJob;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that forking a ScheduleSnapshot never changes the snapshot it came from,
+ * and that the moves and loads of every fork add up.
+ */
+public class ScheduleSnapshotTest {
+
+	private ScheduleSnapshot original;
+
+	@BeforeClass
+	public static void plainCalendar() throws IOException {
+		SchedulingEngineTest.plainCalendar();
+	}
+
+	@AfterClass
+	public static void forgetCalendar() {
+		SchedulingEngineTest.forgetCalendar();
+	}
+
+	@Before
+	public void load() {
+		original = ScheduleSnapshot.of(Arrays.asList(
+				makeJob("1", MONDAY, PrintType.SCREEN_CUPS, 600),
+				makeJob("2", MONDAY, PrintType.SCREEN_CUPS, 300, PrintType.PAD, 50),
+				makeJob("3", TUESDAY, PrintType.PAD, 200),
+				makeJob("4", LocalDate.of(9999, 12, 31), PrintType.PAD, 70)), // On Hold, so outside the schedule.
+				MONDAY, 40); // More than one chunk of days.
+	}
+
+	@Test
+	public void loadsAreAddedUpByDayAndLine() {
+		assertEquals(900, original.getLoad(PrintType.SCREEN_CUPS, MONDAY));
+		assertEquals(50, original.getLoad(PrintType.PAD, MONDAY));
+		assertEquals(200, original.getLoad(PrintType.PAD, TUESDAY));
+		assertEquals(0, original.getLoad(PrintType.PAD, MONDAY.minusDays(1)));
+		assertEquals(Long.valueOf(900), original.getLoads(MONDAY).get(PrintType.SCREEN_CUPS));
+	}
+
+	@Test
+	public void movingForksWithoutChangingTheOriginal() {
+		ScheduleSnapshot moved = original.move("1", WEDNESDAY);
+		assertEquals(900, original.getLoad(PrintType.SCREEN_CUPS, MONDAY));
+		assertEquals(0, original.getLoad(PrintType.SCREEN_CUPS, WEDNESDAY));
+		assertEquals(MONDAY, original.getShipDate("1"));
+		assertTrue(original.getMoves().isEmpty());
+
+		assertEquals(300, moved.getLoad(PrintType.SCREEN_CUPS, MONDAY));
+		assertEquals(600, moved.getLoad(PrintType.SCREEN_CUPS, WEDNESDAY));
+		assertEquals(WEDNESDAY, moved.getShipDate("1"));
+		assertEquals(Collections.singletonMap("1", WEDNESDAY), moved.getMoves());
+	}
+
+	@Test
+	public void siblingForksDontSeeEachOther() {
+		ScheduleSnapshot base = original.move("3", WEDNESDAY);
+		ScheduleSnapshot left = base.move("1", TUESDAY);
+		ScheduleSnapshot right = base.move("1", FRIDAY);
+
+		assertEquals(TUESDAY, left.getShipDate("1"));
+		assertEquals(FRIDAY, right.getShipDate("1"));
+		assertEquals(MONDAY, base.getShipDate("1"));
+		assertEquals(600, left.getLoad(PrintType.SCREEN_CUPS, TUESDAY));
+		assertEquals(0, right.getLoad(PrintType.SCREEN_CUPS, TUESDAY));
+		assertEquals(WEDNESDAY, left.getShipDate("3"));
+		assertEquals(WEDNESDAY, right.getShipDate("3"));
+		assertEquals(2, left.getMoves().size());
+	}
+
+	@Test
+	public void movingBackIsNoLongerAMove() {
+		ScheduleSnapshot back = original.move("1", WEDNESDAY).move("1", MONDAY);
+		assertTrue(back.getMoves().isEmpty());
+		assertEquals(900, back.getLoad(PrintType.SCREEN_CUPS, MONDAY));
+	}
+
+	@Test
+	public void longChainsOfForksStillAddUp() {
+		ScheduleSnapshot snapshot = original;
+		for (int i = 0; i < 50; i++) {
+			snapshot = snapshot.move(i % 2 == 0 ? "1" : "3", MONDAY.plusDays(i % 30));
+		}
+		// The last moves were "1" to day 48 % 30 = 18, and "3" to day 49 % 30 = 19.
+		assertEquals(MONDAY.plusDays(18), snapshot.getShipDate("1"));
+		assertEquals(MONDAY.plusDays(19), snapshot.getShipDate("3"));
+		assertEquals(600, snapshot.getLoad(PrintType.SCREEN_CUPS, MONDAY.plusDays(18)));
+		assertEquals(200, snapshot.getLoad(PrintType.PAD, MONDAY.plusDays(19)));
+		assertEquals(300, snapshot.getLoad(PrintType.SCREEN_CUPS, MONDAY));
+		Map<String, LocalDate> moves = new HashMap<String, LocalDate>();
+		moves.put("1", MONDAY.plusDays(18));
+		moves.put("3", MONDAY.plusDays(19));
+		assertEquals(moves, snapshot.getMoves());
+	}
+
+	@Test
+	public void jobsOutsideTheScheduleCanBeMovedIn() {
+		ScheduleSnapshot moved = original.move("4", FRIDAY);
+		assertEquals(70, moved.getLoad(PrintType.PAD, FRIDAY));
+		assertEquals(FRIDAY, moved.getShipDate("4"));
+	}
+
+	@Test
+	public void unknownJobsAreSkipped() {
+		ScheduleSnapshot moved = original.move("99", FRIDAY);
+		assertTrue(moved.getMoves().isEmpty());
+		assertNull(moved.getShipDate("99"));
+	}
+
+	@Test
+	public void movingToTheSameDayKeepsTheMoves() {
+		ScheduleSnapshot moved = original.move("1", WEDNESDAY);
+		ScheduleSnapshot again = moved.move("1", WEDNESDAY);
+		assertEquals(moved.getMoves(), again.getMoves());
+		assertEquals(WEDNESDAY, again.getShipDate("1"));
+	}
+
+	@Test
+	public void overloadedDaysAreFlagged() {
+		Map<PrintType, Long> capacities = new EnumMap<PrintType, Long>(PrintType.class);
+		capacities.put(PrintType.SCREEN_CUPS, 800L);
+		capacities.put(PrintType.PAD, 1000L);
+
+		Map<PrintType, SortedSet<LocalDate>> overloaded = original.getOverloadedDays(capacities, BusinessCalendar.getDefault());
+		assertEquals(Collections.singleton(MONDAY), overloaded.get(PrintType.SCREEN_CUPS));
+		assertNull(overloaded.get(PrintType.PAD));
+
+		ScheduleSnapshot fixed = original.move("2", TUESDAY).move("3", SATURDAY);
+		overloaded = fixed.getOverloadedDays(capacities, BusinessCalendar.getDefault());
+		assertNull(overloaded.get(PrintType.SCREEN_CUPS));
+		assertEquals(Collections.singleton(SATURDAY), overloaded.get(PrintType.PAD)); // A day off.
+	}
+
+	@Test
+	public void aJobOnItsPlantsDayOffIsFlagged() {
+		Job yachts = makeJob("5", WEDNESDAY, PrintType.PAD, 10);
+		yachts.setPrintingCompany(PrintingCompany.AMERICAN_YACHT_SUPPLY);
+		ScheduleSnapshot snapshot = ScheduleSnapshot.of(Arrays.asList(makeJob("1", TUESDAY, PrintType.SCREEN_CUPS, 10), yachts), MONDAY, 40);
+		Map<PrintType, Long> capacities = Collections.emptyMap();
+
+		assertTrue(snapshot.getOverloadedDays(capacities, BusinessCalendar.getDefault()).isEmpty());
+		Map<PrintType, SortedSet<LocalDate>> overloaded = snapshot.move("5", TUESDAY).getOverloadedDays(capacities, BusinessCalendar.getDefault());
+		assertEquals(Collections.singleton(TUESDAY), overloaded.get(PrintType.PAD)); // The yacht supply plant is closed then...
+		assertNull(overloaded.get(PrintType.SCREEN_CUPS)); // ...but the other plants aren't.
+	}
+
+}
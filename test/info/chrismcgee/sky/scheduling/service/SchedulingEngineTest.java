@@ -0,0 +1,239 @@
+package info.chrismcgee.sky.scheduling.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import info.chrismcgee.sky.components.BusinessCalendar;
+import info.chrismcgee.sky.enums.PrintType;
+import info.chrismcgee.sky.enums.PrintingCompany;
+import info.chrismcgee.sky.scheduling.beans.Job;
+import info.chrismcgee.sky.scheduling.beans.OrderDetail;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the SchedulingEngine's first-fit search, placing and moving Jobs, and overload tracking,
+ * on a plain Monday-to-Friday calendar.
+ */
+public class SchedulingEngineTest {
+
+	static final LocalDate MONDAY = LocalDate.of(2026, 3, 2);
+	static final LocalDate TUESDAY = MONDAY.plusDays(1);
+	static final LocalDate WEDNESDAY = MONDAY.plusDays(2);
+	static final LocalDate FRIDAY = MONDAY.plusDays(4);
+	static final LocalDate SATURDAY = MONDAY.plusDays(5);
+	static final LocalDate NEXT_MONDAY = MONDAY.plusDays(7);
+
+	private static File calendarFile;
+
+	private SchedulingEngine engine;
+
+	/**
+	 * Points the BusinessCalendar at a configuration with no holidays at all, so only weekends are days off,
+	 * except that the yacht supply plant is also closed on TUESDAY.
+	 */
+	@BeforeClass
+	public static void plainCalendar() throws IOException {
+		calendarFile = File.createTempFile("business-calendar", ".properties");
+		Files.write(calendarFile.toPath(), Arrays.asList(
+				"workdays = MONDAY,TUESDAY,WEDNESDAY,THURSDAY,FRIDAY",
+				PrintingCompany.AMERICAN_YACHT_SUPPLY.name() + ".closures = " + TUESDAY));
+		System.setProperty("sky.calendar", calendarFile.getPath());
+		BusinessCalendar.reload();
+	}
+
+	@AfterClass
+	public static void forgetCalendar() {
+		System.clearProperty("sky.calendar");
+		calendarFile.delete();
+	}
+
+	@Before
+	public void newEngine() {
+		Map<PrintType, Long> capacities = new EnumMap<PrintType, Long>(PrintType.class);
+		capacities.put(PrintType.SCREEN_CUPS, 1000L);
+		capacities.put(PrintType.PAD, 500L);
+		engine = new SchedulingEngine(MONDAY, 28, capacities, BusinessCalendar.getDefault());
+	}
+
+	/**
+	 * Makes a Job with one item on each line given, each with the given number of imprints (one color).
+	 */
+	static Job makeJob(String jobId, LocalDate shipDate, Object... linesAndImprints) {
+		Job job = new Job();
+		job.setJobId(jobId);
+		job.setShipDate(shipDate == null ? null : Date.valueOf(shipDate));
+		List<OrderDetail> items = new ArrayList<OrderDetail>();
+		for (int i = 0; i < linesAndImprints.length; i += 2) {
+			OrderDetail item = new OrderDetail();
+			item.setOrderId(jobId);
+			item.setPrintType((PrintType) linesAndImprints[i]);
+			item.setNumColors(1);
+			item.setQuantity(((Number) linesAndImprints[i + 1]).longValue());
+			items.add(item);
+		}
+		job.setOrderDetailList(items);
+		return job;
+	}
+
+	@Test
+	public void firstFitSkipsFullDays() {
+		engine.place(makeJob("1", null, PrintType.SCREEN_CUPS, 800), MONDAY);
+		assertEquals(MONDAY, engine.propose(makeJob("2", null, PrintType.SCREEN_CUPS, 200), MONDAY));
+		assertEquals(TUESDAY, engine.propose(makeJob("3", null, PrintType.SCREEN_CUPS, 300), MONDAY));
+	}
+
+	@Test
+	public void firstFitSkipsWeekends() {
+		engine.place(makeJob("1", null, PrintType.SCREEN_CUPS, 1000), FRIDAY);
+		assertEquals(NEXT_MONDAY, engine.propose(makeJob("2", null, PrintType.SCREEN_CUPS, 1), FRIDAY));
+		assertEquals(NEXT_MONDAY, engine.propose(makeJob("3", null), SATURDAY)); // Nothing to print still needs a working day.
+	}
+
+	@Test
+	public void firstFitSkipsThePlantsDaysOff() {
+		engine.place(makeJob("1", null, PrintType.SCREEN_CUPS, 1000), MONDAY);
+		Job yachts = makeJob("2", null, PrintType.SCREEN_CUPS, 100);
+		yachts.setPrintingCompany(PrintingCompany.AMERICAN_YACHT_SUPPLY);
+		assertEquals(WEDNESDAY, engine.propose(yachts, MONDAY));
+		Job accents = makeJob("3", null, PrintType.SCREEN_CUPS, 100);
+		accents.setPrintingCompany(PrintingCompany.AMERICAN_ACCENTS);
+		assertEquals(TUESDAY, engine.propose(accents, MONDAY));
+		Job nothingToPrint = makeJob("4", null);
+		nothingToPrint.setPrintingCompany(PrintingCompany.AMERICAN_YACHT_SUPPLY);
+		assertEquals(WEDNESDAY, engine.propose(nothingToPrint, TUESDAY));
+	}
+
+	@Test
+	public void firstFitNeedsRoomOnEveryLine() {
+		engine.place(makeJob("1", null, PrintType.PAD, 500), MONDAY);
+		engine.place(makeJob("2", null, PrintType.SCREEN_CUPS, 1000), TUESDAY);
+		Job both = makeJob("3", null, PrintType.SCREEN_CUPS, 100, PrintType.PAD, 100);
+		assertEquals(WEDNESDAY, engine.propose(both, MONDAY));
+	}
+
+	@Test
+	public void oversizedItemsGoOnAnEmptyDay() {
+		engine.place(makeJob("1", null, PrintType.SCREEN_CUPS, 1), MONDAY);
+		assertEquals(TUESDAY, engine.propose(makeJob("2", null, PrintType.SCREEN_CUPS, 5000), MONDAY));
+	}
+
+	@Test
+	public void unlimitedLinesAlwaysFit() {
+		engine.place(makeJob("1", null, PrintType.DIGITAL, 1000000), MONDAY);
+		assertEquals(MONDAY, engine.propose(makeJob("2", null, PrintType.DIGITAL, 1000000), MONDAY));
+	}
+
+	@Test
+	public void noRoomInTheHorizon() {
+		assertNull(engine.propose(makeJob("1", null, PrintType.SCREEN_CUPS, 1), MONDAY.plusDays(28)));
+		assertFalse(engine.place(makeJob("2", null, PrintType.SCREEN_CUPS, 1), MONDAY.minusDays(1)));
+		assertNull(engine.getScheduledDate("2"));
+	}
+
+	@Test
+	public void proposingLeavesTheJobWhereItWas() {
+		Job job = makeJob("1", null, PrintType.SCREEN_CUPS, 900);
+		engine.place(job, TUESDAY);
+		assertEquals(MONDAY, engine.propose(job, MONDAY));
+		assertEquals(TUESDAY, engine.getScheduledDate("1"));
+		assertEquals(900, engine.getLoad(PrintType.SCREEN_CUPS, TUESDAY));
+		assertEquals(0, engine.getLoad(PrintType.SCREEN_CUPS, MONDAY));
+	}
+
+	@Test
+	public void placingAgainMovesTheJob() {
+		Job job = makeJob("1", null, PrintType.SCREEN_CUPS, 600, PrintType.PAD, 100);
+		engine.place(job, MONDAY);
+		engine.place(job, WEDNESDAY);
+		assertEquals(0, engine.getLoad(PrintType.SCREEN_CUPS, MONDAY));
+		assertEquals(0, engine.getLoad(PrintType.PAD, MONDAY));
+		assertEquals(600, engine.getLoad(PrintType.SCREEN_CUPS, WEDNESDAY));
+		assertEquals(WEDNESDAY, engine.getScheduledDate("1"));
+	}
+
+	@Test
+	public void removingFreesTheDay() {
+		engine.place(makeJob("1", null, PrintType.SCREEN_CUPS, 1000), MONDAY);
+		assertTrue(engine.remove("1"));
+		assertFalse(engine.remove("1"));
+		assertEquals(0, engine.getLoad(PrintType.SCREEN_CUPS, MONDAY));
+		assertEquals(MONDAY, engine.propose(makeJob("2", null, PrintType.SCREEN_CUPS, 1000), MONDAY));
+	}
+
+	@Test
+	public void completedItemsDontCount() {
+		Job job = makeJob("1", null, PrintType.SCREEN_CUPS, 1000);
+		job.getOrderDetailList().get(0).setItemCompleted(new Timestamp(0));
+		engine.place(job, MONDAY);
+		assertEquals(0, engine.getLoad(PrintType.SCREEN_CUPS, MONDAY));
+	}
+
+	@Test
+	public void overloadedDaysAreTrackedAndCleared() {
+		engine.place(makeJob("1", null, PrintType.SCREEN_CUPS, 700), MONDAY);
+		engine.place(makeJob("2", null, PrintType.SCREEN_CUPS, 700), MONDAY);
+		engine.place(makeJob("3", null, PrintType.PAD, 1), SATURDAY); // Anything on a day off is an overload.
+		assertEquals(Collections.singleton(MONDAY), engine.getOverloadedDays(PrintType.SCREEN_CUPS));
+		assertEquals(Collections.singleton(SATURDAY), engine.getOverloadedDays(PrintType.PAD));
+		assertEquals(2, engine.getOverloadedDays().size());
+
+		engine.remove("2");
+		engine.place(makeJob("3", null, PrintType.PAD, 1), MONDAY);
+		assertTrue(engine.getOverloadedDays().isEmpty());
+	}
+
+	@Test
+	public void aJobOnItsPlantsDayOffIsAnOverload() {
+		Job yachts = makeJob("1", null, PrintType.PAD, 1);
+		yachts.setPrintingCompany(PrintingCompany.AMERICAN_YACHT_SUPPLY);
+		engine.place(yachts, TUESDAY);
+		engine.place(makeJob("2", null, PrintType.SCREEN_CUPS, 1), TUESDAY); // Another plant can still use the day.
+		assertEquals(Collections.singleton(TUESDAY), engine.getOverloadedDays(PrintType.PAD));
+		assertTrue(engine.getOverloadedDays(PrintType.SCREEN_CUPS).isEmpty());
+
+		engine.place(yachts, WEDNESDAY);
+		assertTrue(engine.getOverloadedDays().isEmpty());
+	}
+
+	@Test
+	public void scheduleAllGoesByProofDate() {
+		Job late = makeJob("1", null, PrintType.SCREEN_CUPS, 1000);
+		late.setProofSpecDate(Timestamp.valueOf(MONDAY.minusDays(1).atTime(12, 0)));
+		Job early = makeJob("2", null, PrintType.SCREEN_CUPS, 1000);
+		early.setProofSpecDate(Timestamp.valueOf(MONDAY.minusDays(5).atTime(12, 0)));
+		Map<String, LocalDate> shipDates = engine.scheduleAll(Arrays.asList(late, early), MONDAY);
+		assertEquals(Arrays.asList("2", "1"), new ArrayList<String>(shipDates.keySet()));
+		assertEquals(MONDAY, shipDates.get("2"));
+		assertEquals(TUESDAY, shipDates.get("1"));
+	}
+
+	@Test
+	public void placeAllLeavesOutTheQueues() {
+		int placed = engine.placeAll(Arrays.asList(
+				makeJob("1", MONDAY, PrintType.PAD, 10),
+				makeJob("2", LocalDate.of(9999, 12, 31), PrintType.PAD, 10),
+				makeJob("3", null, PrintType.PAD, 10)));
+		assertEquals(1, placed);
+		assertEquals(10, engine.getLoad(PrintType.PAD, MONDAY));
+	}
+
+}
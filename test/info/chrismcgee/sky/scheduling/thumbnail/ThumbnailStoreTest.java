@@ -0,0 +1,75 @@
+package info.chrismcgee.sky.scheduling.thumbnail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that artwork is stored and found under its name, and that no name can get outside of the artwork folder.
+ */
+public class ThumbnailStoreTest {
+
+	private Path root;
+	private ThumbnailStore store;
+
+	@Before
+	public void newStore() throws IOException {
+		root = Files.createTempDirectory("sky-artwork");
+		store = new ThumbnailStore(root);
+	}
+
+	@After
+	public void deleteStore() throws IOException {
+		try (Stream<Path> paths = Files.walk(root)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	private boolean store(String name, String contents) throws IOException {
+		return store.store(name, new ByteArrayInputStream(contents.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	@Test
+	public void storedArtworkIsFoundByName() throws IOException {
+		assertTrue(store("N1234/proof.pdf", "first"));
+		assertTrue(store("N1234\\proof.pdf", "second")); // The same name, written the Windows way.
+		Path original = store.getOriginal("N1234/proof.pdf");
+		assertEquals(root.toAbsolutePath().normalize().resolve("N1234").resolve("proof.pdf"), original);
+		assertArrayEquals("second".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(original));
+		try (Stream<Path> files = Files.list(original.getParent())) {
+			assertEquals(1, files.count()); // No temporary files left behind.
+		}
+	}
+
+	@Test
+	public void namesCantGetOut() throws IOException {
+		for (String name : new String[] {"../escape.jpg", "N1234/../../escape.jpg", root.resolve("x.jpg").toAbsolutePath().toString(),
+				".resized/48/fake.png", "", "   ", null}) {
+			assertFalse(name, store(name, "bad"));
+			assertNull(name, store.getOriginal(name));
+		}
+	}
+
+	@Test
+	public void widthsSnapToTheSizes() {
+		assertEquals(48, ThumbnailStore.snapWidth(1));
+		assertEquals(200, ThumbnailStore.snapWidth(49));
+		assertEquals(800, ThumbnailStore.snapWidth(800));
+		assertEquals(0, ThumbnailStore.snapWidth(801));
+	}
+
+}
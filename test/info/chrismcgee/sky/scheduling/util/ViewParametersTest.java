@@ -0,0 +1,66 @@
+package info.chrismcgee.sky.scheduling.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that whatever ViewParameters.format() writes, parse() reads back the same.
+ */
+public class ViewParametersTest {
+
+	@Test
+	public void plainValuesRoundTrip() {
+		Map<String, String> values = new LinkedHashMap<String, String>();
+		values.put("date", "2016-03-01");
+		values.put("range", "week");
+		values.put("expanded", "N100,N200");
+		String parameters = ViewParameters.format(values);
+		assertEquals("date=2016-03-01&range=week&expanded=N100,N200", parameters);
+		Map<String, String> parsed = ViewParameters.parse(parameters);
+		assertEquals(values, parsed);
+		assertEquals(new ArrayList<String>(values.keySet()), new ArrayList<String>(parsed.keySet())); // In the same order.
+	}
+
+	@Test
+	public void awkwardValuesRoundTrip() {
+		Map<String, String> values = new LinkedHashMap<String, String>();
+		values.put("filter", "cups & mugs = 50% off/#1+2");
+		values.put("name with spaces", "caf\u00e9");
+		String parameters = ViewParameters.format(values);
+		assertEquals(1, parameters.split("&").length - 1); // Only the separator is a plain "&".
+		assertTrue(parameters, parameters.contains("%20") && !parameters.contains("+") && !parameters.contains("#"));
+		assertEquals(values, ViewParameters.parse(parameters));
+	}
+
+	@Test
+	public void nullValuesAreLeftOut() {
+		Map<String, String> values = new LinkedHashMap<String, String>();
+		values.put("date", null);
+		values.put("filter", "N1");
+		values.put("to", null);
+		assertEquals("filter=N1", ViewParameters.format(values));
+		values.put("filter", null);
+		assertEquals("", ViewParameters.format(values));
+	}
+
+	@Test
+	public void looseParametersAreRead() {
+		assertTrue(ViewParameters.parse(null).isEmpty());
+		assertTrue(ViewParameters.parse("").isEmpty());
+		Map<String, String> parsed = ViewParameters.parse("&&expanded&filter=&date=2016-03-01&");
+		assertEquals(Arrays.asList("expanded", "filter", "date"), new ArrayList<String>(parsed.keySet()));
+		assertEquals("", parsed.get("expanded"));
+		assertEquals("", parsed.get("filter"));
+		assertEquals("2016-03-01", parsed.get("date"));
+		assertEquals("100%", ViewParameters.parse("filter=100%").get("filter")); // Not encoded, so taken as it is.
+		assertEquals("a=b", ViewParameters.parse("filter=a=b").get("filter"));
+	}
+
+}
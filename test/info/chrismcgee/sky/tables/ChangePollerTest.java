@@ -0,0 +1,39 @@
+package info.chrismcgee.sky.tables;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of how the ChangePoller tells which keys have been deleted between two reads of a table.
+ */
+public class ChangePollerTest {
+
+	@Test
+	public void nothingMissing() {
+		assertEquals(Collections.emptyList(), ChangePoller.missing(new String[] {"1", "2"}, new String[] {"1", "2", "3"}));
+		assertEquals(Collections.emptyList(), ChangePoller.missing(new int[0], new int[] {4}));
+	}
+
+	@Test
+	public void missingFromTheStartMiddleAndEnd() {
+		String[] before = {"425001", "425002", "425003", "425004", "425005"};
+		String[] after = {"425002", "425004", "425006"};
+		assertEquals(Arrays.asList(0, 2, 4), ChangePoller.missing(before, after));
+	}
+
+	@Test
+	public void everythingMissing() {
+		assertEquals(Arrays.asList(0, 1), ChangePoller.missing(new int[] {7, 9}, new int[0]));
+		assertEquals(Arrays.asList(0, 1), ChangePoller.missing(new int[] {7, 9}, new int[] {1, 8, 10}));
+	}
+
+	@Test
+	public void newKeysInBetweenDontHide() {
+		assertEquals(Arrays.asList(1), ChangePoller.missing(new int[] {1, 5, 9}, new int[] {1, 2, 3, 4, 6, 9}));
+	}
+
+}
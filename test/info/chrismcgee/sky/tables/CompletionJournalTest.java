@@ -0,0 +1,189 @@
+package info.chrismcgee.sky.tables;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import info.chrismcgee.sky.scheduling.beans.OrderDetail;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the CompletionJournal keeps the clicks made while the database is down (even over a restart),
+ * and replays them in order once it's back. The database is a stand-in, so no real one is needed.
+ */
+public class CompletionJournalTest {
+
+	private static final Timestamp MONDAY_NOON = Timestamp.valueOf("2026-03-02 12:00:00");
+
+	private Path root;
+	private boolean down = false;
+	private int savesBeforeGoingDown = Integer.MAX_VALUE; // How many more saves work before the database goes away.
+	private final Set<String> rejected = new HashSet<String>(); // Items the database turns down, such as deleted ones.
+	private final List<String> saved = new ArrayList<String>(); // Every click that reached the database, in order.
+
+	@Before
+	public void newFolder() throws IOException {
+		root = Files.createTempDirectory("sky-journal");
+	}
+
+	@After
+	public void deleteFolder() throws IOException {
+		try (Stream<Path> paths = Files.walk(root)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	private CompletionJournal open() {
+		return new CompletionJournal(root, bean -> {
+			if (savesBeforeGoingDown-- <= 0) {
+				down = true;
+			}
+			if (down) {
+				throw new SQLException("Connection refused", "08001");
+			}
+			if (rejected.contains(CompletionJournal.key(bean.getOrderId(), bean.getId()))) {
+				return false;
+			}
+			saved.add(CompletionJournal.key(bean.getOrderId(), bean.getId()) + "=" + bean.getItemCompleted());
+			return true;
+		}, () -> down);
+	}
+
+	private static OrderDetail click(String orderId, int id, Timestamp completed) {
+		OrderDetail bean = new OrderDetail();
+		bean.setOrderId(orderId);
+		bean.setId(id);
+		bean.setItemCompleted(completed);
+		return bean;
+	}
+
+	/**
+	 * Checks off item 1, then item 2, then unchecks item 1 again.
+	 */
+	private void threeClicks(CompletionJournal journal) {
+		assertTrue(journal.setItemCompleted(click("N100", 1, MONDAY_NOON)));
+		assertTrue(journal.setItemCompleted(click("N100", 2, MONDAY_NOON)));
+		assertTrue(journal.setItemCompleted(click("N100", 1, null)));
+	}
+
+	private static final List<String> THREE_CLICKS = Arrays.asList("N100/1=" + MONDAY_NOON, "N100/2=" + MONDAY_NOON, "N100/1=null");
+
+	@Test
+	public void clicksGoStraightToAWorkingDatabase() {
+		CompletionJournal journal = open();
+		threeClicks(journal);
+		assertEquals(THREE_CLICKS, saved);
+		assertFalse(journal.hasPending());
+	}
+
+	@Test
+	public void clicksAreJournaledWhileItsDownAndSurviveARestart() {
+		down = true;
+		threeClicks(open());
+
+		CompletionJournal restarted = open();
+		assertTrue(restarted.hasPending());
+		Map<String, Timestamp> pending = restarted.getPending();
+		assertEquals(2, pending.size());
+		assertTrue(pending.containsKey("N100/1"));
+		assertNull(pending.get("N100/1")); // The last click wins.
+		assertEquals(MONDAY_NOON, pending.get("N100/2"));
+		assertTrue(saved.isEmpty());
+	}
+
+	@Test
+	public void replayKeepsTheOrderAndEmptiesTheJournal() {
+		down = true;
+		CompletionJournal journal = open();
+		threeClicks(journal);
+
+		down = false;
+		assertEquals(3, journal.replay());
+		assertEquals(THREE_CLICKS, saved);
+		assertFalse(journal.hasPending());
+		assertFalse(open().hasPending());
+		assertEquals(0, journal.replay());
+	}
+
+	@Test
+	public void replayStopsWhenTheDatabaseGoesAgain() {
+		down = true;
+		CompletionJournal journal = open();
+		threeClicks(journal);
+
+		down = false;
+		savesBeforeGoingDown = 1;
+		assertEquals(1, journal.replay());
+		assertEquals(2, open().getPending().size()); // The other two are still on the disk.
+
+		down = false;
+		savesBeforeGoingDown = Integer.MAX_VALUE;
+		assertEquals(2, journal.replay());
+		assertEquals(THREE_CLICKS, saved);
+		assertFalse(open().hasPending());
+	}
+
+	@Test
+	public void turnedDownClicksAreDropped() {
+		rejected.add("N100/2");
+		assertFalse(open().setItemCompleted(click("N100", 2, MONDAY_NOON))); // Not journaled, since the database is there.
+
+		down = true;
+		CompletionJournal journal = open();
+		threeClicks(journal);
+		down = false;
+		assertEquals(3, journal.replay());
+		assertEquals(Arrays.asList("N100/1=" + MONDAY_NOON, "N100/1=null"), saved);
+		assertFalse(journal.hasPending());
+	}
+
+	@Test
+	public void newClicksWaitBehindTheJournal() {
+		down = true;
+		CompletionJournal journal = open();
+		assertTrue(journal.setItemCompleted(click("N100", 1, MONDAY_NOON)));
+
+		down = false;
+		assertTrue(journal.setItemCompleted(click("N100", 2, MONDAY_NOON)));
+		assertEquals(Arrays.asList("N100/1=" + MONDAY_NOON, "N100/2=" + MONDAY_NOON), saved);
+		assertFalse(journal.hasPending());
+	}
+
+	@Test
+	public void brokenLinesAreSkipped() throws IOException {
+		Files.write(root.resolve("completions.journal"), Arrays.asList(
+				"N100\t1\t" + MONDAY_NOON.getTime(),
+				"not a click",
+				"N100\tone\t",
+				"\t3\t",
+				"N100\t2\t"), StandardCharsets.UTF_8);
+		Files.write(root.resolve("completions.journal"), "N100\t4".getBytes(StandardCharsets.UTF_8),
+				StandardOpenOption.APPEND); // Cut off part way through writing it.
+
+		Map<String, Timestamp> pending = open().getPending();
+		assertEquals(2, pending.size());
+		assertEquals(MONDAY_NOON, pending.get("N100/1"));
+		assertTrue(pending.containsKey("N100/2"));
+	}
+
+}
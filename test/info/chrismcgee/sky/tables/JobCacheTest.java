@@ -0,0 +1,226 @@
+package info.chrismcgee.sky.tables;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import info.chrismcgee.sky.components.DateManager;
+import info.chrismcgee.sky.event.JobEvent;
+import info.chrismcgee.sky.scheduling.beans.Job;
+import info.chrismcgee.sky.tables.JobCache.JobsByDate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the JobCache only goes to the database for the dates it hasn't got, throws dates out when their Jobs change
+ * (without caching a load that raced with a change), and shows the last copy while the database can't be reached.
+ * The database and the OfflineSnapshot are stand-ins.
+ */
+public class JobCacheTest {
+
+	private static final LocalDate MONDAY = LocalDate.of(2026, 3, 2);
+	private static final LocalDate TUESDAY = MONDAY.plusDays(1);
+	private static final LocalDate WEDNESDAY = MONDAY.plusDays(2);
+
+	private final Map<String, Job> database = new HashMap<String, Job>(); // The Jobs, by their job number.
+	private final List<String> loads = new ArrayList<String>(); // The ranges that were read from the database, in order.
+	private boolean down = false;
+	private Runnable duringLoad = null; // Something that happens while the database is being read.
+	private SortedMap<LocalDate, List<Job>> snapshot = null; // What the OfflineSnapshot has, if it covers the dates.
+	private JobCache cache;
+
+	@Before
+	public void newCache() {
+		cache = new JobCache((startDate, endDate) -> {
+			loads.add(startDate + ".." + endDate);
+			if (down) {
+				return null;
+			}
+			List<Job> jobList = new ArrayList<Job>();
+			for (Job job : database.values()) {
+				LocalDate shipDate = job.getShipDate().toLocalDate();
+				if (!shipDate.isBefore(startDate) && !shipDate.isAfter(endDate)) {
+					jobList.add(job);
+				}
+			}
+			if (duringLoad != null) {
+				duringLoad.run();
+				duringLoad = null;
+			}
+			return jobList;
+		}, (startDate, endDate) -> snapshot);
+		ship("N100", MONDAY);
+		ship("N200", TUESDAY);
+	}
+
+	private Job ship(String jobId, LocalDate shipDate) {
+		Job job = new Job();
+		job.setJobId(jobId);
+		job.setShipDate(Date.valueOf(shipDate));
+		database.put(jobId, job);
+		return job;
+	}
+
+	private static List<String> jobIds(List<Job> jobList) {
+		List<String> jobIds = new ArrayList<String>();
+		for (Job job : jobList) {
+			jobIds.add(job.getJobId());
+		}
+		Collections.sort(jobIds);
+		return jobIds;
+	}
+
+	@Test
+	public void onlyTheMissingDatesAreLoaded() throws SQLException {
+		JobsByDate week = cache.getJobsByDateRange(MONDAY, TUESDAY);
+		assertEquals(Arrays.asList(MONDAY, TUESDAY), new ArrayList<LocalDate>(week.keySet()));
+		assertEquals(Arrays.asList("N100"), jobIds(week.get(MONDAY)));
+		assertFalse(week.isStale());
+
+		assertSame(week.get(TUESDAY), cache.getJobsByDate(TUESDAY));
+		assertEquals(Arrays.asList("N200"), jobIds(cache.getJobsByDateRange(MONDAY, WEDNESDAY).get(TUESDAY)));
+		assertTrue(cache.getJobsByDate(WEDNESDAY).isEmpty()); // Nothing ships that day, which is cached as well.
+		assertEquals(Arrays.asList(MONDAY + ".." + TUESDAY, WEDNESDAY + ".." + WEDNESDAY), loads);
+	}
+
+	@Test
+	public void changedJobsThrowOutTheirOldAndNewDates() throws SQLException {
+		cache.getJobsByDateRange(MONDAY, WEDNESDAY);
+		Job moved = ship("N100", WEDNESDAY);
+		cache.jobChanged(new JobEvent.JobUpdatedEvent(moved));
+		loads.clear();
+
+		assertEquals(Collections.emptyList(), jobIds(cache.getJobsByDate(MONDAY)));
+		assertEquals(Arrays.asList("N200"), jobIds(cache.getJobsByDate(TUESDAY)));
+		assertEquals(Arrays.asList("N100"), jobIds(cache.getJobsByDate(WEDNESDAY)));
+		assertEquals(Arrays.asList(MONDAY + ".." + MONDAY, WEDNESDAY + ".." + WEDNESDAY), loads);
+	}
+
+	@Test
+	public void droppedEventsThrowOutEverything() throws SQLException {
+		cache.getJobsByDateRange(MONDAY, WEDNESDAY);
+		cache.jobChanged(new JobEvent.EventsDroppedEvent());
+		loads.clear();
+		cache.getJobsByDateRange(MONDAY, WEDNESDAY);
+		assertEquals(Arrays.asList(MONDAY + ".." + WEDNESDAY), loads);
+	}
+
+	@Test
+	public void aLoadThatRacesAChangeIsntCached() throws SQLException {
+		duringLoad = () -> {
+			ship("N300", MONDAY);
+			cache.invalidate(Collections.singleton(MONDAY));
+		};
+		JobsByDate raced = cache.getJobsByDateRange(MONDAY, TUESDAY);
+		assertEquals(Arrays.asList("N100"), jobIds(raced.get(MONDAY))); // Read just before the change.
+		assertFalse(raced.isStale()); // Still fresh, for when it was read.
+
+		assertEquals(Arrays.asList("N100", "N300"), jobIds(cache.getJobsByDateRange(MONDAY, TUESDAY).get(MONDAY)));
+		assertEquals(2, loads.size()); // Neither date was kept from the load that raced.
+		cache.getJobsByDateRange(MONDAY, TUESDAY);
+		assertEquals(2, loads.size()); // Cached once nothing changed while it was read.
+	}
+
+	@Test
+	public void aChangeJustAfterTheLoadIsntUndone() throws SQLException, InterruptedException {
+		final Thread[] changer = new Thread[1];
+		Job late = new Job() {
+			private static final long serialVersionUID = 1L;
+			private boolean changed = false;
+
+			@Override
+			public String getJobId() {
+				if (changed || changer[0] == null) {
+					return super.getJobId();
+				}
+				// The loader has returned and the Jobs are being cached when the change comes in.
+				changed = true;
+				changer[0].start();
+				try {
+					changer[0].join(200); // Waits for as long as invalidate() is allowed to run.
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return super.getJobId();
+			}
+		};
+		late.setJobId("N300");
+		late.setShipDate(Date.valueOf(WEDNESDAY));
+		database.put("N300", late);
+		changer[0] = new Thread(() -> cache.invalidate(Collections.singleton(WEDNESDAY)));
+
+		cache.getJobsByDate(WEDNESDAY);
+		changer[0].join();
+		loads.clear();
+		cache.getJobsByDate(WEDNESDAY);
+		assertEquals(Arrays.asList(WEDNESDAY + ".." + WEDNESDAY), loads); // Not cached from before the change.
+	}
+
+	@Test
+	public void theLastCopyIsShownWhileTheDatabaseIsDown() throws SQLException {
+		List<Job> monday = cache.getJobsByDate(MONDAY);
+		cache.invalidate(Collections.singleton(MONDAY));
+		down = true;
+
+		JobsByDate stale = cache.getJobsByDateRange(MONDAY, MONDAY);
+		assertTrue(stale.isStale());
+		assertSame(monday, stale.get(MONDAY));
+		assertNull(cache.getJobsByDateRange(MONDAY, TUESDAY)); // Tuesday has never been seen.
+
+		down = false;
+		JobsByDate fresh = cache.getJobsByDateRange(MONDAY, MONDAY);
+		assertFalse(fresh.isStale());
+		cache.invalidate(Collections.singleton(MONDAY));
+		down = true;
+		assertSame(fresh.get(MONDAY), cache.getJobsByDate(MONDAY)); // The newest copy, not the first.
+	}
+
+	@Test
+	public void theOfflineSnapshotComesBeforeTheLastCopy() throws SQLException {
+		cache.getJobsByDate(MONDAY);
+		cache.invalidate(Collections.singleton(MONDAY));
+		down = true;
+		snapshot = new TreeMap<LocalDate, List<Job>>();
+		Job offline = new Job();
+		offline.setJobId("N999");
+		offline.setShipDate(Date.valueOf(MONDAY));
+		snapshot.put(MONDAY, Collections.singletonList(offline));
+		snapshot.put(TUESDAY, Collections.<Job>emptyList());
+
+		JobsByDate shown = cache.getJobsByDateRange(MONDAY, TUESDAY);
+		assertTrue(shown.isStale());
+		assertEquals(Arrays.asList("N999"), jobIds(shown.get(MONDAY)));
+		assertTrue(shown.get(TUESDAY).isEmpty());
+	}
+
+	@Test
+	public void theDatesFurthestFromTodayAreDroppedFirst() throws SQLException {
+		LocalDate today = DateManager.getTodayDate();
+		LocalDate first = today.minusDays(100);
+		LocalDate last = today.plusDays(100); // More dates than the 120 kept.
+		cache.getJobsByDateRange(first, last);
+		loads.clear();
+
+		cache.getJobsByDateRange(today.minusDays(50), today.plusDays(50));
+		assertTrue(loads.isEmpty());
+		cache.getJobsByDate(first);
+		cache.getJobsByDate(last);
+		assertEquals(Arrays.asList(first + ".." + first, last + ".." + last), loads);
+	}
+
+}
@@ -0,0 +1,124 @@
+package info.chrismcgee.sky.tables;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import info.chrismcgee.sky.components.BusinessCalendar;
+import info.chrismcgee.sky.components.DateManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the JobPrefetcher warms the working days on either side of a day (and nothing for the special dates),
+ * and that moving on to another day cancels the prefetches that haven't started yet.
+ * The JobCache is a stand-in; the prefetches still run on the shared background thread.
+ */
+public class JobPrefetcherTest {
+
+	private static final LocalDate LAST_FRIDAY = LocalDate.of(2026, 2, 27);
+	private static final LocalDate MONDAY = LocalDate.of(2026, 3, 2);
+	private static final LocalDate TUESDAY = MONDAY.plusDays(1); // Closed.
+	private static final LocalDate WEDNESDAY = MONDAY.plusDays(2);
+	private static final LocalDate THURSDAY = MONDAY.plusDays(3);
+	private static final LocalDate FRIDAY = MONDAY.plusDays(4);
+
+	private static File calendarFile;
+
+	private final List<LocalDate> loads = Collections.synchronizedList(new ArrayList<LocalDate>()); // The days prefetched, in order.
+	private final Semaphore loaded = new Semaphore(0); // Released once for every finished prefetch.
+	private volatile CountDownLatch started = null; // Counted down when a prefetch starts, if a test is waiting on it.
+	private volatile CountDownLatch gate = null; // Holds the prefetches up until it's opened, if a test sets it.
+	private JobPrefetcher prefetcher;
+
+	/**
+	 * Points the BusinessCalendar at a configuration where only the weekends and TUESDAY are days off.
+	 */
+	@BeforeClass
+	public static void plainCalendar() throws IOException {
+		calendarFile = File.createTempFile("business-calendar", ".properties");
+		Files.write(calendarFile.toPath(), Arrays.asList(
+				"workdays = MONDAY,TUESDAY,WEDNESDAY,THURSDAY,FRIDAY",
+				"closures = " + TUESDAY));
+		System.setProperty("sky.calendar", calendarFile.getPath());
+		BusinessCalendar.reload();
+	}
+
+	@AfterClass
+	public static void forgetCalendar() {
+		System.clearProperty("sky.calendar");
+		calendarFile.delete();
+	}
+
+	@Before
+	public void newPrefetcher() {
+		prefetcher = new JobPrefetcher(day -> {
+			loads.add(day);
+			if (started != null) {
+				started.countDown();
+			}
+			try {
+				if (gate != null) {
+					gate.await(5, TimeUnit.SECONDS);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			loaded.release();
+			return Collections.emptyList();
+		});
+	}
+
+	/**
+	 * Waits for a number of prefetches to finish. Since they all run on one thread, in order,
+	 * anything submitted before the last of them has either run by then or was cancelled.
+	 */
+	private void awaitLoads(int count) throws InterruptedException {
+		assertTrue("The prefetches never ran", loaded.tryAcquire(count, 5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void onlyTheWorkingDaysEitherSideAreWarmed() throws InterruptedException {
+		prefetcher.prefetchAround(MONDAY);
+		awaitLoads(2);
+		assertEquals(Arrays.asList(WEDNESDAY, LAST_FRIDAY), loads); // The next day first.
+	}
+
+	@Test
+	public void theSpecialDatesAreSkipped() throws InterruptedException {
+		prefetcher.prefetchAround(DateManager.HOLD_DATE);
+		prefetcher.prefetchAround(DateManager.PROOF_DATE);
+		prefetcher.prefetchAround(THURSDAY);
+		awaitLoads(2);
+		assertEquals(Arrays.asList(FRIDAY, WEDNESDAY), loads);
+	}
+
+	@Test
+	public void aNewDayCancelsThePrefetchesStillWaiting() throws InterruptedException {
+		started = new CountDownLatch(1);
+		gate = new CountDownLatch(1);
+		prefetcher.prefetchAround(MONDAY);
+		assertTrue(started.await(5, TimeUnit.SECONDS)); // WEDNESDAY is being loaded, and LAST_FRIDAY is waiting behind it.
+
+		prefetcher.prefetchAround(THURSDAY);
+		gate.countDown();
+		awaitLoads(3);
+		// The one that was already running is left to finish, but LAST_FRIDAY never is.
+		assertEquals(Arrays.asList(WEDNESDAY, FRIDAY, WEDNESDAY), loads);
+	}
+
+}
@@ -0,0 +1,164 @@
+package info.chrismcgee.sky.tables;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import info.chrismcgee.sky.enums.PrintType;
+import info.chrismcgee.sky.scheduling.beans.Job;
+import info.chrismcgee.sky.scheduling.beans.OrderDetail;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests that PageTokens read back the key they were made from, and that paging through the JobArchive
+ * with them visits every Job exactly once, in ORDER, even when the proof/spec dates are missing or tied.
+ */
+public class PageTokenTest {
+
+	private static final LocalDate FIRST = LocalDate.of(2015, 3, 2);
+	private static final LocalDate SECOND = FIRST.plusDays(1);
+	private static final Timestamp EARLY = Timestamp.valueOf("2015-02-20 09:00:00");
+	private static final Timestamp LATE = Timestamp.valueOf("2015-02-25 14:30:00");
+
+	private Path root;
+	private JobArchive archive;
+	private List<Job> jobs;
+
+	@Before
+	public void newArchive() throws IOException {
+		root = Files.createTempDirectory("sky-archive");
+		archive = new JobArchive(root);
+		Timestamp lateAndABit = new Timestamp(LATE.getTime());
+		lateAndABit.setNanos(LATE.getNanos() + 1); // Only a nanosecond after LATE.
+		jobs = new ArrayList<Job>(Arrays.asList(
+				makeJob("N300", FIRST, LATE),
+				makeJob("N100", FIRST, null),
+				makeJob("N500", FIRST, lateAndABit),
+				makeJob("N200", FIRST, LATE),
+				makeJob("N050", FIRST, EARLY),
+				makeJob("N400", FIRST, null),
+				makeJob("N000", SECOND, EARLY),
+				makeJob("N900", SECOND, null)));
+		archive.put(YearMonth.from(FIRST), new ArrayList<Job>(jobs));
+		jobs.sort(JobArchive.ORDER);
+	}
+
+	@After
+	public void deleteArchive() throws IOException {
+		try (Stream<Path> paths = Files.walk(root)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	private static Job makeJob(String jobId, LocalDate shipDate, Timestamp proofSpecDate) {
+		Job job = new Job();
+		job.setJobId(jobId);
+		job.setShipDate(Date.valueOf(shipDate));
+		job.setProofSpecDate(proofSpecDate);
+		OrderDetail item = new OrderDetail();
+		item.setId(1);
+		item.setOrderId(jobId);
+		item.setPrintType(PrintType.PAD);
+		job.setOrderDetailList(new ArrayList<OrderDetail>(Collections.singletonList(item)));
+		return job;
+	}
+
+	private static List<String> jobIds(List<Job> jobList) {
+		List<String> jobIds = new ArrayList<String>();
+		for (Job job : jobList) {
+			jobIds.add(job.getJobId());
+		}
+		return jobIds;
+	}
+
+	@Test
+	public void jobKeysRoundTrip() {
+		Job job = makeJob("N100", FIRST, null);
+		PageToken key = PageToken.readJob(PageToken.after(job));
+		assertEquals(FIRST.toEpochDay(), key.shipDay);
+		assertNull(key.proofSpecDate);
+		assertEquals("N100", key.id);
+
+		Timestamp precise = Timestamp.valueOf("2015-02-25 14:30:00.123456789");
+		key = PageToken.readJob(PageToken.after(makeJob("N101", FIRST, precise)));
+		assertEquals(precise, key.proofSpecDate); // Down to the nanosecond.
+	}
+
+	@Test
+	public void itemKeysRoundTrip() {
+		OrderDetail item = new OrderDetail();
+		item.setOrderId("N100");
+		item.setId(42);
+		PageToken key = PageToken.readOrderDetail(PageToken.after(item));
+		assertEquals("N100", key.id);
+		assertEquals(42, key.detailId);
+	}
+
+	@Test
+	public void foreignTokensAreTurnedDown() {
+		OrderDetail item = new OrderDetail();
+		item.setOrderId("N100");
+		String itemToken = PageToken.after(item);
+		String jobToken = PageToken.after(makeJob("N100", FIRST, LATE));
+		for (String token : new String[] {itemToken, jobToken.substring(0, jobToken.length() / 2), "", "not a token!"}) {
+			try {
+				PageToken.readJob(token);
+				fail("Read a job key from " + token);
+			} catch (IllegalArgumentException e) {
+				// Turned down, as it should be.
+			}
+		}
+		try {
+			PageToken.readOrderDetail(jobToken);
+			fail("Read an item key from a job token.");
+		} catch (IllegalArgumentException e) {
+			// Turned down, as it should be.
+		}
+	}
+
+	@Test
+	public void pagesVisitEveryJobOnceInOrder() throws IOException {
+		assertEquals(Arrays.asList("N100", "N400", "N050", "N200", "N300", "N500", "N900", "N000"), jobIds(jobs));
+		// Both as it was just archived, and as it's read back from its file.
+		for (JobArchive tier : new JobArchive[] {archive, new JobArchive(root)}) {
+			for (int pageSize = 1; pageSize <= jobs.size() + 1; pageSize++) {
+				List<Job> visited = new ArrayList<Job>();
+				PageToken after = null;
+				while (visited.size() <= jobs.size()) { // Any more and it's going round in circles.
+					List<Job> page = tier.getJobPage(FIRST, SECOND, null, after, pageSize);
+					if (page.isEmpty()) {
+						break;
+					}
+					visited.addAll(page);
+					after = PageToken.readJob(PageToken.after(page.get(page.size() - 1)));
+				}
+				assertEquals("Pages of " + pageSize, jobIds(jobs), jobIds(visited));
+			}
+		}
+	}
+
+	@Test
+	public void mergedPagesKeepTheOrder() {
+		List<Job> hot = new ArrayList<Job>(Arrays.asList(makeJob("N250", FIRST, null), makeJob("N200", FIRST, LATE)));
+		List<Job> merged = JobArchive.merge(hot, jobs);
+		assertEquals(Arrays.asList("N100", "N250", "N400", "N050", "N200", "N300", "N500", "N900", "N000"), jobIds(merged));
+	}
+
+}